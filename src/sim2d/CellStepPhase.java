@@ -0,0 +1,462 @@
+package sim2d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim2d.cell.Cell;
+import sim2d.compartment.Compartment;
+import sim2d.molecule.Molecule;
+
+/**
+ * Steps all of the simulation's cells, in place of each cell being scheduled with MASON individually, such that the steps of cells may be spread across
+ * several threads.
+ *
+ * A cell's step reads and alters only the cells in the 3x3 block of grid spaces centred on it. Each compartment colours its grid spaces such that the blocks
+ * around any two grid spaces of the same colour never overlap (see 'Compartment.sublatticeOf'), so the cells of one colour, across all compartments, are
+ * stepped together; cells sharing a grid space are stepped in turn by one thread. The colours are stepped one after another, in an order shuffled on every
+ * timestep.
+ *
+ * Changes that reach beyond a cell's block are not made whilst cells are being stepped, but recorded in a command buffer ('Commands') belonging to the run of
+ * grid spaces being stepped: molecules secreted into the compartment, cells born, data logged, and so on. Once every colour has stepped, the buffers are applied
+ * in the order of the grid spaces they were recorded for, and lastly the cells that died are taken out of their compartments. Neither the order in which
+ * cells are stepped nor the order in which buffers are applied depends on the number of threads, and every cell draws from its own random stream, so a run's
+ * results do not depend on the number of threads either (sim2d.experiment.TestCellStepThreads checks this). They do differ from those of a run in which MASON
+ * steps the cells.
+ *
+ * @author mark
+ *
+ */
+public class CellStepPhase implements Steppable
+{
+	private static final long serialVersionUID = 1L;
+	private static final int minSitesPerTask = 32;						// the grid spaces of a colour are not split between threads more finely than this.
+
+	/* the command buffer of the grid spaces being stepped on the calling thread, null when cells are not being stepped in parallel. */
+	private static final ThreadLocal<Commands> deferred = new ThreadLocal<Commands>();
+
+	private final TregSimulation sim;
+	private final ForkJoinPool pool;									// null if cells are stepped on the simulation's own thread.
+	private final RandomStream random;									// shuffles the order in which colours are stepped.
+	private final Lattice[] lattices;									// one for each compartment.
+	private final int[] colourOrder;
+
+	/* The cells held by the phase, in the order they were added, and the time at which each is first to be stepped. Cells that are removed leave a gap, which
+	 * is closed up on the following timestep. A cell knows its own slot (see 'Cell.getStepSlot'), so removal is immediate. */
+	private Cell[] cells = new Cell[256];
+	private double[] firstStep = new double[256];
+	private int count = 0;
+
+	/* Buffers used on each timestep, kept between timesteps so that stepping does not allocate. */
+	private Cell[] due = new Cell[256];									// the cells to be stepped on this timestep.
+	private int[] nextAtSite = new int[256];							// index of the next cell to be stepped in the same grid space, or -1.
+	private Lattice[] chunkLattice = new Lattice[64];					// the runs of grid spaces of the colour presently being stepped.
+	private int[] chunkFrom = new int[64];
+	private int[] chunkTo = new int[64];
+	private final ArrayList<Commands> commands = new ArrayList<Commands>();	// one for each run of grid spaces stepped this timestep, in the order stepped.
+
+	public CellStepPhase(TregSimulation sim, int threads, Compartment... compartments)
+	{
+		this.sim = sim;
+		pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+		random = sim.newAgentStream();
+		lattices = new Lattice[compartments.length];
+		int colours = 0;
+		for(int i = 0; i < compartments.length; i++)
+		{
+			lattices[i] = new Lattice(compartments[i]);
+			colours = Math.max(colours, lattices[i].colourSites.length);
+		}
+		colourOrder = new int[colours];
+		for(int c = 0; c < colours; c++)
+			colourOrder[c] = c;
+	}
+
+	/**
+	 * Returns the command buffer into which the calling thread must record changes reaching beyond the cell it is stepping, or null if cells are not being
+	 * stepped in parallel on this thread, in which case changes are made straight away.
+	 */
+	public static Commands deferred()
+	{	return deferred.get();	}
+
+	/**
+	 * Performs the action straight away, or, if cells are being stepped in parallel on the calling thread, once they have all stepped. Used for the birth of
+	 * cells, which must not be placed into a compartment whilst their neighbours may be stepping.
+	 */
+	public static void performOrDefer(Runnable action)
+	{
+		final Commands commands = deferred.get();
+		if(commands == null)
+			action.run();
+		else
+			commands.add(action);
+	}
+
+	/**
+	 * Adds the cell to those stepped, from the given time onwards.
+	 */
+	public void add(Cell cell, double time)
+	{
+		if(deferred.get() != null)
+			throw new RuntimeException("CellStepPhase: cells may not be created whilst cells are being stepped in parallel, their birth must be deferred.");
+		if(count == cells.length)
+		{
+			cells = Arrays.copyOf(cells, count * 2);
+			firstStep = Arrays.copyOf(firstStep, count * 2);
+		}
+		cell.setStepSlot(count);
+		cells[count] = cell;
+		firstStep[count] = time;
+		count++;
+	}
+
+	/**
+	 * Stops the cell being stepped. May be called whilst cells are being stepped, by the cell itself or by a neighbour; a cell removed part way through a
+	 * timestep that has yet to step will not step.
+	 */
+	public void remove(Cell cell)
+	{
+		final int slot = cell.getStepSlot();
+		if(slot < 0)
+			return;
+		cells[slot] = null;
+		cell.setStepSlot(-1);
+	}
+
+	/**
+	 * The number of cells presently held.
+	 */
+	public int size()
+	{
+		int size = 0;
+		for(int i = 0; i < count; i++)
+			if(cells[i] != null)
+				size++;
+		return size;
+	}
+
+	/**
+	 * Releases the threads used to step cells. Called when the simulation finishes.
+	 */
+	public void shutdown()
+	{
+		if(pool != null)
+			pool.shutdown();
+	}
+
+	public void step(SimState state)
+	{
+		final double now = sim.schedule.getTime();
+		sim.timerWheel.advance();										// whilst cells are stepped the wheel is only read, other than to register handles.
+
+		final int dueCount = gather(now);
+
+		/* step the cells of each colour in turn. */
+		for(int i = colourOrder.length - 1; i > 0; i--)
+		{
+			final int j = random.nextInt(i + 1);
+			final int swap = colourOrder[i];
+			colourOrder[i] = colourOrder[j];
+			colourOrder[j] = swap;
+		}
+		int buffers = 0;
+		for(int colour : colourOrder)
+		{
+			final int chunks = chunk(colour);
+			while(commands.size() < buffers + chunks)
+				commands.add(new Commands());
+			if(pool == null || chunks == 1)
+				for(int k = 0; k < chunks; k++)
+					stepChunk(k, commands.get(buffers + k));
+			else
+				pool.invoke(new Stepping(0, chunks, buffers));
+			buffers += chunks;
+		}
+
+		/* empty the grid space lists ready for the next timestep. */
+		for(Lattice lattice : lattices)
+			lattice.clear();
+		Arrays.fill(due, 0, dueCount, null);							// do not keep dead cells from being garbage collected.
+		for(int k = 0; k < chunkLattice.length; k++)
+			chunkLattice[k] = null;
+
+		/* apply the changes recorded whilst stepping, in the order the grid spaces were stepped, then take the cells that died out of their compartments. */
+		for(int k = 0; k < buffers; k++)
+			commands.get(k).applyChanges();
+		for(int k = 0; k < buffers; k++)
+			commands.get(k).applyRemovals();
+	}
+
+	/**
+	 * Closes up the gaps left by removed cells, and groups the cells due to be stepped at the given time by grid space, and the grid spaces by colour. Returns
+	 * the number of cells due.
+	 */
+	private int gather(final double now)
+	{
+		int kept = 0;
+		int dueCount = 0;
+		for(int i = 0; i < count; i++)
+		{
+			final Cell cell = cells[i];
+			if(cell == null)
+				continue;
+			if(kept != i)
+			{
+				cells[kept] = cell;
+				firstStep[kept] = firstStep[i];
+				cell.setStepSlot(kept);
+			}
+			kept++;
+			if(firstStep[kept - 1] > now)
+				continue;
+
+			if(dueCount == due.length)
+			{
+				due = Arrays.copyOf(due, dueCount * 2);
+				nextAtSite = Arrays.copyOf(nextAtSite, dueCount * 2);
+			}
+			due[dueCount] = cell;
+			nextAtSite[dueCount] = -1;
+			latticeOf(cell).place(cell, dueCount);
+			dueCount++;
+		}
+		Arrays.fill(cells, kept, count, null);
+		count = kept;
+		return dueCount;
+	}
+
+	private Lattice latticeOf(final Cell cell)
+	{
+		final Compartment compartment = cell.getCompartment();
+		for(Lattice lattice : lattices)
+			if(lattice.compartment == compartment)
+				return lattice;
+		throw new RuntimeException("CellStepPhase: cell " + cell + " is not placed in any compartment known to the phase.");
+	}
+
+	/**
+	 * Divides the grid spaces of the given colour, in every compartment, into runs to be stepped by one thread each. Returns the number of runs.
+	 */
+	private int chunk(final int colour)
+	{
+		int chunks = 0;
+		for(Lattice lattice : lattices)
+		{
+			if(colour >= lattice.colourSites.length)
+				continue;
+			final int sites = lattice.colourSiteCount[colour];
+			for(int from = 0; from < sites; from += minSitesPerTask)
+			{
+				if(chunks == chunkLattice.length)
+				{
+					chunkLattice = Arrays.copyOf(chunkLattice, chunks * 2);
+					chunkFrom = Arrays.copyOf(chunkFrom, chunks * 2);
+					chunkTo = Arrays.copyOf(chunkTo, chunks * 2);
+				}
+				chunkLattice[chunks] = lattice.forColour(colour);
+				chunkFrom[chunks] = from;
+				chunkTo[chunks] = Math.min(sites, from + minSitesPerTask);
+				chunks++;
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * Steps the cells in run k of the colour presently being stepped, recording changes into the given buffer. May be called on any thread.
+	 */
+	private void stepChunk(final int k, final Commands into)
+	{
+		deferred.set(into);
+		try
+		{
+			final Lattice lattice = chunkLattice[k];
+			final int[] sites = lattice.colourSites[lattice.colour];
+			for(int s = chunkFrom[k]; s < chunkTo[k]; s++)
+				for(int i = lattice.siteFirst[sites[s]]; i >= 0; i = nextAtSite[i])
+					if(due[i].getStepSlot() >= 0)					// the cell may have been removed by a neighbour stepped earlier.
+						due[i].step(sim);
+		}
+		finally
+		{
+			deferred.remove();
+		}
+	}
+
+	/**
+	 * Steps runs 'from' to 'to - 1' of the colour presently being stepped, splitting them between threads.
+	 */
+	private class Stepping extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final int firstBuffer;									// the buffer belonging to run 0 of this colour.
+
+		Stepping(int from, int to, int firstBuffer)
+		{
+			this.from = from;
+			this.to = to;
+			this.firstBuffer = firstBuffer;
+		}
+
+		protected void compute()
+		{
+			if(to - from == 1)
+			{
+				stepChunk(from, commands.get(firstBuffer + from));
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			invokeAll(new Stepping(from, mid, firstBuffer), new Stepping(mid, to, firstBuffer));
+		}
+	}
+
+	/**
+	 * The cells due to be stepped in one compartment, grouped by grid space, with the grid spaces grouped by colour.
+	 */
+	private class Lattice
+	{
+		final Compartment compartment;
+		final int height;
+		final int[] siteFirst;											// for each grid space, the index in 'due' of the first cell to be stepped there, or -1.
+		final int[] siteLast;											// for each grid space, the index of the last cell to be stepped there.
+		final int[][] colourSites;										// for each colour, the grid spaces holding cells to be stepped, in the order they were first met.
+		final int[] colourSiteCount;
+		int colour;														// the colour presently being stepped.
+
+		Lattice(Compartment compartment)
+		{
+			this.compartment = compartment;
+			height = compartment.getHeight();
+			siteFirst = new int[compartment.getWidth() * height];
+			Arrays.fill(siteFirst, -1);
+			siteLast = new int[compartment.getWidth() * height];
+			colourSiteCount = new int[compartment.sublattices()];
+			for(int x = 0; x < compartment.getWidth(); x++)				// size each colour's list to the number of grid spaces it holds.
+				for(int y = 0; y < height; y++)
+					colourSiteCount[compartment.sublatticeOf(x, y)]++;
+			colourSites = new int[colourSiteCount.length][];
+			for(int c = 0; c < colourSites.length; c++)
+			{
+				colourSites[c] = new int[colourSiteCount[c]];
+				colourSiteCount[c] = 0;
+			}
+		}
+
+		void place(final Cell cell, final int i)
+		{
+			final int site = cell.getGridX() * height + cell.getGridY();
+			if(siteFirst[site] < 0)
+			{
+				siteFirst[site] = i;
+				final int c = compartment.sublatticeOf(cell.getGridX(), cell.getGridY());
+				colourSites[c][colourSiteCount[c]++] = site;
+			}
+			else
+				nextAtSite[siteLast[site]] = i;
+			siteLast[site] = i;
+		}
+
+		Lattice forColour(final int c)
+		{
+			colour = c;
+			return this;
+		}
+
+		void clear()
+		{
+			for(int c = 0; c < colourSites.length; c++)
+			{
+				for(int s = 0; s < colourSiteCount[c]; s++)
+					siteFirst[colourSites[c][s]] = -1;
+				colourSiteCount[c] = 0;
+			}
+		}
+	}
+
+	/**
+	 * The changes recorded whilst stepping one run of grid spaces, to be applied once all cells have stepped.
+	 */
+	public static final class Commands
+	{
+		/* molecules secreted into compartments. These are by far the most common, so are held without allocating. */
+		private Compartment[] moleculeCompartment = new Compartment[16];
+		private Molecule[] molecule = new Molecule[16];
+		private double[] quantity = new double[16];
+		private int[] moleculeX = new int[16];
+		private int[] moleculeY = new int[16];
+		private int molecules = 0;
+
+		private final ArrayList<Runnable> actions = new ArrayList<Runnable>();	// anything else, such as the birth of cells, in the order recorded.
+
+		/* cells that died, and the compartments they are to be taken out of. */
+		private final ArrayList<Compartment> removalCompartments = new ArrayList<Compartment>();
+		private final ArrayList<Cell> removals = new ArrayList<Cell>();
+
+		private Commands() {}
+
+		/**
+		 * Records that the given quantity of molecule is to be placed at (x, y) in the compartment.
+		 */
+		public void addMolecules(Compartment compartment, Molecule m, double q, int x, int y)
+		{
+			if(molecules == molecule.length)
+			{
+				final int size = molecules * 2;
+				moleculeCompartment = Arrays.copyOf(moleculeCompartment, size);
+				molecule = Arrays.copyOf(molecule, size);
+				quantity = Arrays.copyOf(quantity, size);
+				moleculeX = Arrays.copyOf(moleculeX, size);
+				moleculeY = Arrays.copyOf(moleculeY, size);
+			}
+			moleculeCompartment[molecules] = compartment;
+			molecule[molecules] = m;
+			quantity[molecules] = q;
+			moleculeX[molecules] = x;
+			moleculeY[molecules] = y;
+			molecules++;
+		}
+
+		/**
+		 * Records an action to be performed once all cells have stepped.
+		 */
+		public void add(Runnable action)
+		{	actions.add(action);	}
+
+		/**
+		 * Records that the cell, having died, is to be taken out of the compartment. This is done after all other changes, such that cells born in place
+		 * of the dead one may still find where it was.
+		 */
+		public void removeFollowingDeath(Compartment compartment, Cell cell)
+		{
+			removalCompartments.add(compartment);
+			removals.add(cell);
+		}
+
+		private void applyChanges()
+		{
+			for(int i = 0; i < molecules; i++)
+			{
+				moleculeCompartment[i].receiveMolecules(molecule[i], quantity[i], moleculeX[i], moleculeY[i]);
+				moleculeCompartment[i] = null;
+			}
+			molecules = 0;
+			for(int i = 0; i < actions.size(); i++)
+				actions.get(i).run();
+			actions.clear();
+		}
+
+		private void applyRemovals()
+		{
+			for(int i = 0; i < removals.size(); i++)
+				removalCompartments.get(i).removeCellFollowingDeath(removals.get(i));
+			removalCompartments.clear();
+			removals.clear();
+		}
+	}
+}
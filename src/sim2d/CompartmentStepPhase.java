@@ -0,0 +1,94 @@
+package sim2d;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim2d.compartment.Compartment;
+
+/**
+ * Steps all of the simulation's compartments, in place of each compartment being scheduled individually, such that they may be stepped concurrently.
+ *
+ * A compartment's step (diffusion of molecules and movement of its cells) touches nothing outside of the compartment, save for cells that migrate out of it
+ * into another. Whilst compartments are being stepped they hold such cells back, queued on the edge of the compartments network they leave by (see
+ * 'Compartment.holdMigrants'). Once every compartment has stepped, the queues are emptied into the compartments they lead to: compartment by compartment in
+ * the order given here, edge by edge in the order of the network, and cell by cell in the order they left. Cells that migrate as they are admitted (such as
+ * those fast tracked through the spleen) do so straight away.
+ *
+ * Neither the order of admission nor anything drawn at random depends on the number of threads, so a run's results do not depend on the number of threads
+ * either. They do differ from those of a run in which compartments are scheduled individually, since a migrating cell no longer moves in its new compartment
+ * on the timestep that it arrives.
+ *
+ * @author mark
+ *
+ */
+public class CompartmentStepPhase implements Steppable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final TregSimulation sim;
+	private final ForkJoinPool pool;									// null if compartments are stepped on the simulation's own thread.
+	private final Compartment[] compartments;
+
+	public CompartmentStepPhase(TregSimulation sim, int threads, Compartment... compartments)
+	{
+		this.sim = sim;
+		pool = (threads > 1) ? new ForkJoinPool(Math.min(threads, compartments.length)) : null;
+		this.compartments = compartments;
+	}
+
+	/**
+	 * Releases the threads used to step compartments. Called when the simulation finishes.
+	 */
+	public void shutdown()
+	{
+		if(pool != null)
+			pool.shutdown();
+	}
+
+	public void step(SimState state)
+	{
+		for(Compartment compartment : compartments)
+			compartment.holdMigrants(true);
+
+		if(pool == null)
+			for(Compartment compartment : compartments)
+				compartment.step(state);
+		else
+			pool.invoke(new Stepping(0, compartments.length));
+
+		for(Compartment compartment : compartments)
+			compartment.holdMigrants(false);
+		for(Compartment compartment : compartments)
+			compartment.admitMigrants();
+	}
+
+	/**
+	 * Steps compartments 'from' to 'to - 1', splitting them between threads.
+	 */
+	private class Stepping extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		Stepping(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute()
+		{
+			if(to - from > 1)
+			{
+				final int mid = (from + to) >>> 1;
+				invokeAll(new Stepping(from, mid), new Stepping(mid, to));
+				return;
+			}
+			compartments[from].step(sim);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package sim2d;
+
+import java.util.ArrayList;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim2d.cell.Cell;
+import sim2d.compartment.Compartment;
+
+/**
+ * Removes the cells that died during a timestep from the schedule and from their compartments, all together once the timestep's cells, compartments and
+ * generators have stepped, rather than each one at the moment it dies.
+ *
+ * Whilst collecting, a cell that dies is only marked as dead (its 'isDead' flag serves as its tombstone) and recorded here; it stays in its compartment's grid
+ * and in the schedule. Cells and compartments pass over dead cells: they are not stepped, moved or counted as neighbours. They do still occupy their grid
+ * space until swept. The sweep then removes every recorded cell in turn, from the schedule first and then from the compartment it is found in.
+ *
+ * @author mark
+ *
+ */
+public class DeadCellSweep implements Steppable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final TregSimulation sim;
+	private final ArrayList<Cell> dead = new ArrayList<Cell>();	// cells that died this timestep, in the order they died.
+	private boolean sweeping = false;
+
+	public DeadCellSweep(TregSimulation sim)
+	{
+		this.sim = sim;
+	}
+
+	/**
+	 * Returns true if cells that die are presently being recorded for the sweep, rather than removed straight away.
+	 */
+	public boolean isCollecting()
+	{	return sweeping == false;	}
+
+	/**
+	 * Records a cell that has died, to be removed at the end of the timestep.
+	 */
+	public void bury(Cell cell)
+	{
+		dead.add(cell);
+	}
+
+	/**
+	 * The number of dead cells awaiting the sweep.
+	 */
+	public int size()
+	{	return dead.size();	}
+
+	public void step(SimState state)
+	{
+		sweeping = true;
+		try
+		{
+			for(int i = 0; i < dead.size(); i++)
+			{
+				final Cell cell = dead.get(i);
+				sim.removeFromSimulationSchedule(cell);
+				final Compartment compartment = cell.getCompartment();
+				if(compartment != null)								// null if the cell was recorded twice, and has already been removed.
+					compartment.removeCellFollowingDeath(cell);
+			}
+			dead.clear();
+		}
+		finally
+		{
+			sweeping = false;
+		}
+	}
+}
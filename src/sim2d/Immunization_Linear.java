@@ -29,6 +29,7 @@ public class Immunization_Linear implements Steppable
 	 * that continuous variable into a discrete number. Sampling of the above equation is used. If the sample time is very low, then there will be a great deal more DCs influxing than if the sample time
 	 * is high. This is because the equation describes the number of DCs influxing (their rate), NOT the actual number present in the compartment. That in turn will depend on other factors like DC lifespan.   
 	 * 
+	 * @sim - the simulation run into which DCs influx
 	 * @initialInflux - the number of DCs that initially influx
 	 * @dc0 - the number of migrating DCs at time zero, this is altered each timestep by @gradient. 
 	 * @gradient - should be a negative number, how quickly influx reduces
@@ -36,7 +37,7 @@ public class Immunization_Linear implements Steppable
 	 * @interval - how frequently DCs actually influx in the simulation, since this immunization mechanism represents continuous variables, and we can not have fractions of DCs migrating
 	 * 				at a time, so sampling of the continuous variables is used instead.    
 	 */
-	public Immunization_Linear(int initialInflux, double dc0, double gradient, double startTime, double interval)
+	public Immunization_Linear(TregSimulation sim, int initialInflux, double dc0, double gradient, double startTime, double interval)
 	{
 		this.gradient = gradient;
 		this.dc0 = dc0;
@@ -47,7 +48,7 @@ public class Immunization_Linear implements Steppable
 		this.immunizeTime = startTime;			
 		
 		final int immunizationPriority = 2;								// the immunization should be stepped after all other things. 
-		TregSimulation.sim.addToSimulationScheduleRepeating(immunizeTime, immunizationPriority, this, interval);
+		sim.addToSimulationScheduleRepeating(immunizeTime, immunizationPriority, this, interval);
 	}
 
 	private boolean deliveredInitial = false;
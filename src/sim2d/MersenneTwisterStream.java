@@ -0,0 +1,32 @@
+package sim2d;
+
+import sim.engine.SimState;
+
+/**
+ * Draws from the simulation's Mersenne Twister generator. When the simulation runs in its compatibility mode, every agent is given this same stream, and so
+ * random numbers are drawn exactly as they were before agents had streams of their own.
+ *
+ * @author mark
+ *
+ */
+final class MersenneTwisterStream implements RandomStream
+{
+	private final SimState state;					// the generator is retrieved on every draw, since the GUI may replace it when reseeding.
+
+	MersenneTwisterStream(SimState state)
+	{
+		this.state = state;
+	}
+
+	public int nextInt(int n)
+	{	return state.random.nextInt(n);	}
+
+	public double nextDouble()
+	{	return state.random.nextDouble();	}
+
+	public boolean nextBoolean()
+	{	return state.random.nextBoolean();	}
+
+	public double nextGaussian()
+	{	return state.random.nextGaussian();	}
+}
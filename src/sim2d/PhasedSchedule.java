@@ -0,0 +1,174 @@
+package sim2d;
+
+import java.util.Arrays;
+
+import sim.engine.Schedule;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim2d.cell.Cell;
+
+/**
+ * Holds the simulation's repeating agents (cells, compartments, the naive T cell generators and the watchdog), which all step once every timeslice, in place
+ * of scheduling each with MASON. MASON's schedule keeps every agent in a heap, so each one is popped and pushed back on every timestep, and each removal is a
+ * lookup of the agent's Stoppable. Here each ordering is a phase holding a dense array of agents, and MASON schedules only the phases.
+ *
+ * On each timestep a phase closes up the gaps left by removed agents, shuffles its agents (as MASON does those sharing a time and ordering), and steps those
+ * whose first step has been reached. Cells know their own slot within the phase (see 'Cell.getStepSlot'), so removing a cell is immediate; other agents are
+ * few and rarely removed, and are searched for. An agent removed part way through a timestep does not step if it has yet to. Agents added during a timestep
+ * are first stepped at the time they were added for, which is always a later timestep.
+ *
+ * Runs using this schedule differ from those using MASON's, since the shuffling draws different random numbers.
+ *
+ * @author mark
+ *
+ */
+public class PhasedSchedule
+{
+	private final TregSimulation sim;
+	private final RandomStream random;								// shuffles the agents of each phase.
+	private final Phase[] phases;
+
+	/**
+	 * Creates one phase for each ordering from 0 to orderings - 1, and schedules them with MASON from the epoch onwards, once every timeslice.
+	 */
+	public PhasedSchedule(TregSimulation sim, int orderings)
+	{
+		this.sim = sim;
+		random = sim.newAgentStream();
+		phases = new Phase[orderings];
+		for(int o = 0; o < orderings; o++)
+		{
+			phases[o] = new Phase();
+			sim.schedule.scheduleRepeating(Schedule.EPOCH, o, phases[o], sim.timeSlice);
+		}
+	}
+
+	/**
+	 * Returns true if the given ordering is one of the phases.
+	 */
+	public boolean holdsOrdering(int ordering)
+	{	return ordering >= 0 && ordering < phases.length;	}
+
+	/**
+	 * Adds the agent to the phase of the given ordering, to be stepped from the given time onwards.
+	 */
+	public void add(int ordering, Steppable agent, double time)
+	{
+		final int slot = phases[ordering].add(agent, time);
+		if(agent instanceof Cell)
+			((Cell) agent).setStepSlot(slot);
+	}
+
+	/**
+	 * Stops the agent being stepped. Returns false if this schedule does not hold it.
+	 */
+	public boolean remove(Steppable agent)
+	{
+		if(agent instanceof Cell)
+		{
+			final Cell cell = (Cell) agent;
+			final int slot = cell.getStepSlot();
+			if(slot < 0)
+				return false;
+			phases[TregSimulation.cellsOrdering].agents[slot] = null;
+			cell.setStepSlot(-1);
+			return true;
+		}
+		for(Phase phase : phases)
+			for(int i = 0; i < phase.count; i++)
+				if(phase.agents[i] == agent)
+				{
+					phase.agents[i] = null;
+					return true;
+				}
+		return false;
+	}
+
+	/**
+	 * The number of agents presently held.
+	 */
+	public int size()
+	{
+		int size = 0;
+		for(Phase phase : phases)
+			for(int i = 0; i < phase.count; i++)
+				if(phase.agents[i] != null)
+					size++;
+		return size;
+	}
+
+	/**
+	 * The agents of one ordering.
+	 */
+	private class Phase implements Steppable
+	{
+		private static final long serialVersionUID = 1L;
+
+		Steppable[] agents = new Steppable[16];
+		double[] firstStep = new double[16];
+		int count = 0;
+
+		int add(Steppable agent, double time)
+		{
+			if(count == agents.length)
+			{
+				agents = Arrays.copyOf(agents, count * 2);
+				firstStep = Arrays.copyOf(firstStep, count * 2);
+			}
+			agents[count] = agent;
+			firstStep[count] = time;
+			return count++;
+		}
+
+		public void step(SimState state)
+		{
+			/* close up the gaps left by removed agents. */
+			int kept = 0;
+			for(int i = 0; i < count; i++)
+			{
+				if(agents[i] == null)
+					continue;
+				move(i, kept);
+				kept++;
+			}
+			Arrays.fill(agents, kept, count, null);
+			count = kept;
+
+			/* shuffle. */
+			for(int i = count - 1; i > 0; i--)
+			{
+				final int j = random.nextInt(i + 1);
+				final Steppable a = agents[i];
+				final double t = firstStep[i];
+				move(j, i);
+				agents[j] = a;
+				firstStep[j] = t;
+				if(a instanceof Cell)
+					((Cell) a).setStepSlot(j);
+			}
+
+			/* step. Agents added in the meantime lie beyond 'stepping', and are not yet due. */
+			final double now = sim.schedule.getTime();
+			final int stepping = count;
+			for(int i = 0; i < stepping; i++)
+			{
+				final Steppable a = agents[i];
+				if(a != null && firstStep[i] <= now)
+					a.step(state);
+			}
+		}
+
+		/**
+		 * Places the agent in slot 'from' into slot 'to'.
+		 */
+		private void move(int from, int to)
+		{
+			if(from == to)
+				return;
+			agents[to] = agents[from];
+			firstStep[to] = firstStep[from];
+			if(agents[to] instanceof Cell)
+				((Cell) agents[to]).setStepSlot(to);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package sim2d;
+
+import sim.engine.Schedule;
+
+/**
+ * A counter-based random stream, using the Philox4x32-10 generator (Salmon et al., "Parallel random numbers: as easy as 1, 2, 3", SC 2011). Philox encrypts
+ * a 128 bit counter under a 64 bit key; here the key is the run's seed and the counter is made up of (agent, lane, timestep, block), so the numbers an agent
+ * draws on a timestep depend on nothing but those values and how many numbers it has already drawn on that timestep. They do not depend on the thread the
+ * agent is stepped on, nor on when other agents draw theirs.
+ *
+ * Lane 0 is an agent's own stream, as handed out by 'TregSimulation.newAgentStream'. Other lanes are used where some activity concerning an agent must draw
+ * independently of the agent itself, such as a compartment moving a cell.
+ *
+ * A stream either follows a schedule, restarting from the first block whenever the schedule's step changes, or is explicitly pointed at an
+ * (agent, timestep, lane) through 'select'.
+ *
+ * @author mark
+ *
+ */
+public final class PhiloxStream implements RandomStream
+{
+	private static final int M0 = 0xD2511F53;						// Philox4x32 multipliers and Weyl constants.
+	private static final int M1 = 0xCD9E8D57;
+	private static final int W0 = 0x9E3779B9;
+	private static final int W1 = 0xBB67AE85;
+	private static final long LOW = 0xFFFFFFFFL;
+
+	private final int key0;
+	private final int key1;
+	private final Schedule schedule;								// null if the stream is pointed at timesteps through 'select'.
+
+	private long agent;
+	private int lane;
+	private long step = -1;
+	private int block;												// how many blocks of four numbers have been generated on this timestep.
+	private final int[] out = new int[4];
+	private int used = 4;											// how many numbers of 'out' have been drawn.
+
+	/**
+	 * A stream for the given agent and lane that follows the schedule's timesteps.
+	 */
+	public PhiloxStream(long seed, long agent, int lane, Schedule schedule)
+	{
+		key0 = (int) seed;
+		key1 = (int) (seed >>> 32);
+		this.agent = agent;
+		this.lane = lane;
+		this.schedule = schedule;
+	}
+
+	/**
+	 * A stream that draws nothing until pointed somewhere with 'select'.
+	 */
+	public PhiloxStream(long seed)
+	{
+		this(seed, 0, 0, null);
+	}
+
+	/**
+	 * Starts drawing, from the beginning, the numbers belonging to the given agent, timestep and lane.
+	 */
+	public void select(long agent, long step, int lane)
+	{
+		this.agent = agent;
+		this.lane = lane;
+		restart(step);
+	}
+
+	/**
+	 * Points this stream at the beginning of another agent's numbers, as if it had been created for that agent.
+	 */
+	public void reassign(long agent)
+	{
+		this.agent = agent;
+		restart(-1);
+	}
+
+	public int nextInt(int n)
+	{
+		if(n <= 0)
+			throw new IllegalArgumentException("n must be positive, was given " + n);
+		int bits, val;
+		do
+		{
+			bits = next32() >>> 1;									// 31 random bits.
+			val = bits % n;
+		} while(bits - val + (n - 1) < 0);							// reject the values that would bias the result towards low numbers.
+		return val;
+	}
+
+	public double nextDouble()
+	{	return (((long) (next32() >>> 6) << 27) + (next32() >>> 5)) * 0x1.0p-53;	}
+
+	public boolean nextBoolean()
+	{	return next32() < 0;	}
+
+	/**
+	 * Marsaglia's polar method. The second of the pair of numbers generated is discarded, such that a draw depends only on the numbers preceding it.
+	 */
+	public double nextGaussian()
+	{
+		double v1, v2, s;
+		do
+		{
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while(s >= 1 || s == 0);
+		return v1 * StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+	}
+
+	private int next32()
+	{
+		if(schedule != null)
+		{
+			final long now = schedule.getSteps();
+			if(now != step)
+				restart(now);
+		}
+		if(used == 4)
+			generate();
+		return out[used++];
+	}
+
+	private void restart(long step)
+	{
+		this.step = step;
+		block = 0;
+		used = 4;
+	}
+
+	/**
+	 * Fills 'out' with the next block, ten rounds of Philox4x32 applied to the counter (block, timestep, agent, agent and lane).
+	 */
+	private void generate()
+	{
+		int c0 = block++;
+		int c1 = (int) step;
+		int c2 = (int) agent;
+		int c3 = ((int) (agent >>> 32) & 0x00FFFFFF) | (lane << 24);
+		int k0 = key0;
+		int k1 = key1;
+		for(int round = 0; round < 10; round++)
+		{
+			if(round > 0)
+			{
+				k0 += W0;
+				k1 += W1;
+			}
+			final long p0 = (M0 & LOW) * (c0 & LOW);
+			final long p1 = (M1 & LOW) * (c2 & LOW);
+			final int n0 = (int) (p1 >>> 32) ^ c1 ^ k0;
+			final int n2 = (int) (p0 >>> 32) ^ c3 ^ k1;
+			c1 = (int) p1;
+			c3 = (int) p0;
+			c0 = n0;
+			c2 = n2;
+		}
+		out[0] = c0;
+		out[1] = c1;
+		out[2] = c2;
+		out[3] = c3;
+		used = 0;
+	}
+}
@@ -0,0 +1,23 @@
+package sim2d;
+
+/**
+ * The random numbers drawn by a cell, compartment or other agent of the simulation. Every agent draws through one of these, obtained from
+ * 'TregSimulation.newAgentStream', and the simulation decides whether all agents share its Mersenne Twister generator (as they always have) or whether
+ * each has a stream of its own.
+ *
+ * @author mark
+ *
+ */
+public interface RandomStream
+{
+	/** Returns a uniformly distributed int in [0, n). */
+	public int nextInt(int n);
+
+	/** Returns a uniformly distributed double in [0, 1). */
+	public double nextDouble();
+
+	public boolean nextBoolean();
+
+	/** Returns a normally distributed double, mean 0.0 and standard deviation 1.0. */
+	public double nextGaussian();
+}
@@ -0,0 +1,162 @@
+package sim2d;
+
+import java.util.ArrayList;
+
+import sim.engine.Schedule;
+
+/**
+ * A timer wheel that tells cells when their state maintenance timers (time of death, time of becoming an effector, and so on) may have expired, such that
+ * cells need not compare every one of their timers against the schedule's time on every timestep.
+ *
+ * Simulated time is divided into buckets one timeslice wide, and the wheel holds a ring of such buckets. A cell owns a 'Handle', and registers with the wheel
+ * the earliest absolute time at which one of its timers expires. When the simulation reaches the bucket containing that time, the handle is marked as due.
+ * A cell whose handle is due evaluates its timers exactly as it always did (against the schedule's time), and then re-registers its earliest remaining
+ * timer. Handles are only ever woken at or before the first timestep at which a timer expires, never after, so timers fire at exactly the same timesteps
+ * as they would if every cell polled its timers on every step.
+ *
+ * Times lying beyond the span of the ring are held in an overflow list, and are moved into the ring once per revolution. Cancellation is lazy: a timer that
+ * is reset simply leaves a stale entry in the wheel, which causes (at worst) a harmless early wake-up.
+ *
+ * Cells stepped in parallel (see CellStepPhase) may register handles at the same time. The wheel is advanced before they step, so that they only ever read
+ * the present bucket, and additions to the wheel's lists are synchronized. The order of handles within a list has no bearing on when they are woken.
+ *
+ * @author mark
+ *
+ */
+public class TimerWheel
+{
+	private static final long NOT_SCHEDULED = Long.MIN_VALUE;
+	private static final int slotsCount = 1024;						// number of buckets in the ring. At the usual timeslice of 0.125 hours this covers 128 hours.
+
+	/**
+	 * Each cell that uses the wheel owns one of these.
+	 */
+	public static class Handle
+	{
+		private long wakeBucket = NOT_SCHEDULED;					// the bucket at which this handle is next to be marked due.
+		private boolean due = false;								// when true, the owning cell must evaluate its timers.
+
+		/**
+		 * Returns the handle to the state of a new one, for an owner that is being reused. Any entries it still has in the wheel become stale.
+		 */
+		public void reset()
+		{
+			wakeBucket = NOT_SCHEDULED;
+			due = false;
+		}
+	}
+
+	private final Schedule schedule;
+	private final double bucketWidth;								// in hours; the simulation's timeslice.
+	private final ArrayList<Handle>[] slots;
+	private final ArrayList<Handle> overflow = new ArrayList<Handle>();	// handles due to be woken beyond the span of the ring.
+	private long currentBucket;										// the bucket that the schedule's time presently lies in.
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TimerWheel(Schedule schedule, double bucketWidth)
+	{
+		this.schedule = schedule;
+		this.bucketWidth = bucketWidth;
+		slots = new ArrayList[slotsCount];
+		for(int i = 0; i < slotsCount; i++)
+			slots[i] = new ArrayList<Handle>();
+		currentBucket = bucketOf(schedule.getTime());
+	}
+
+	/**
+	 * Registers that the owner of the handle has a timer expiring at the given absolute time. If the handle is already registered to be woken earlier (or is
+	 * already due) then this does nothing. Double.MAX_VALUE represents a timer that is not set.
+	 */
+	public void schedule(Handle handle, double time)
+	{
+		if(time == Double.MAX_VALUE || handle.due)
+			return;
+		advance();
+
+		final long bucket = bucketOf(time);
+		if(bucket <= currentBucket)									// the timer may expire during the present timestep.
+		{
+			handle.due = true;
+			handle.wakeBucket = NOT_SCHEDULED;
+			return;
+		}
+		if(handle.wakeBucket != NOT_SCHEDULED && handle.wakeBucket <= bucket)
+			return;													// already to be woken in time for this timer.
+
+		handle.wakeBucket = bucket;
+		final ArrayList<Handle> list = (bucket - currentBucket < slotsCount) ? slots[slotOf(bucket)] : overflow;
+		synchronized(list)
+		{
+			list.add(handle);
+		}
+	}
+
+	/**
+	 * Returns true if the owner of the handle must evaluate its timers on this timestep.
+	 */
+	public boolean isDue(Handle handle)
+	{
+		advance();
+		return handle.due;
+	}
+
+	/**
+	 * Called by the owner of a due handle once it has evaluated its timers, to register the earliest of those that remain.
+	 */
+	public void rearm(Handle handle, double time)
+	{
+		handle.due = false;
+		handle.wakeBucket = NOT_SCHEDULED;
+		schedule(handle, time);
+	}
+
+	/**
+	 * Brings the wheel up to the schedule's present time, marking as due all the handles whose buckets have been reached. Called by the wheel itself as
+	 * needed, and before cells are stepped in parallel. 
+	 */
+	public void advance()
+	{
+		final long now = bucketOf(schedule.getTime());
+		while(currentBucket < now)
+		{
+			currentBucket++;
+			if(slotOf(currentBucket) == 0)							// one revolution of the ring has completed, bring overflowed handles into the ring.
+				redistributeOverflow();
+
+			final ArrayList<Handle> slot = slots[slotOf(currentBucket)];
+			for(int i = 0; i < slot.size(); i++)
+			{
+				final Handle h = slot.get(i);
+				if(h.wakeBucket == currentBucket)					// entries for handles that have since been re-registered are stale, and ignored.
+				{
+					h.due = true;
+					h.wakeBucket = NOT_SCHEDULED;
+				}
+			}
+			slot.clear();
+		}
+	}
+
+	private void redistributeOverflow()
+	{
+		int kept = 0;
+		for(int i = 0; i < overflow.size(); i++)
+		{
+			final Handle h = overflow.get(i);
+			if(h.wakeBucket == NOT_SCHEDULED || h.wakeBucket < currentBucket)
+				continue;											// stale.
+			if(h.wakeBucket - currentBucket < slotsCount)
+				slots[slotOf(h.wakeBucket)].add(h);
+			else
+				overflow.set(kept++, h);
+		}
+		for(int i = overflow.size() - 1; i >= kept; i--)
+			overflow.remove(i);
+	}
+
+	private long bucketOf(double time)
+	{	return (long) Math.floor(time / bucketWidth);	}
+
+	private static int slotOf(long bucket)
+	{	return (int) Math.floorMod(bucket, (long) slotsCount);	}
+}
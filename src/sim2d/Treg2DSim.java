@@ -16,7 +16,7 @@ public class Treg2DSim
     											FileSystemIO.openXMLFile("parameters.xml"),
     											180
     											);
-    	TregSimulation.sim.setupSimulationParameters();						// essential that we do this here.
+    	sim.setupSimulationParameters();						// essential that we do this here.
     	
         sim.start();
         long steps;
@@ -144,7 +144,7 @@ public class Treg2DSim_GUI extends GUIState
 //		));
 		
 		
-		TregSimulation.sim.setupSimulationParameters();						// essential that we do this here.
+		TregSimulation.sim().setupSimulationParameters();						// essential that we do this here.
 		colsMap.put("CD4Th", CD4ThCol);
 		colsMap.put("CD4Th1", CD4Th1Col);
 		colsMap.put("CD4Th2", CD4Th2Col);
@@ -1,7 +1,9 @@
 package sim2d;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -13,6 +15,7 @@ import sim.engine.SimState;
 import sim.engine.Steppable;
 import sim.engine.Stoppable;
 import sim.field.network.Network;
+import sim2d.cell.Cell;
 import sim2d.cell.impl.APC_Impl;
 import sim2d.cell.impl.CD4THelper;
 import sim2d.cell.impl.CD4Treg;
@@ -21,6 +24,8 @@ import sim2d.cell.impl.Neuron;
 import sim2d.cell.impl.CNSMacrophage;
 import sim2d.cell.impl.DendriticCell;
 import sim2d.cell.impl.DendriticCellMigrates;
+import sim2d.cell.impl.CellPools;
+import sim2d.cell.impl.TCellStore;
 import sim2d.cell.impl.TCell_Impl;
 import sim2d.cell.impl.Th1Polarization;
 import sim2d.cell.impl.Th2Polarization;
@@ -49,15 +54,75 @@ import sim2d.molecule.Molecule;
  */
 public class TregSimulation extends SimState
 {
-	public static TregSimulation sim;							// static so that other objects can get hold of key items such as the schedule. 
+	/*
+	 * Each simulation run is its own context: the random number generator, schedule, parameters and data loggers all belong to the TregSimulation instance, not to any 
+	 * static field, so that many independent runs can execute concurrently in one JVM. Cells and compartments hold the simulation they belong to from their 
+	 * construction. A run is also bound to the thread that constructs, starts and runs it, which is how the GUI driver classes find it through 'sim()'.  
+	 */
+	private static final ThreadLocal<TregSimulation> current = new ThreadLocal<TregSimulation>();
+	private static volatile TregSimulation mostRecent;			// fallback for threads that never had a run bound to them, such as the MASON GUI's model thread.
+	private static final AtomicInteger runsExecuting = new AtomicInteger();		// runs currently inside 'run'. 
+	
+	/**
+	 * Returns the simulation run bound to the calling thread. If no run is bound to this thread then the most recently bound run is returned, which is what the GUI 
+	 * (where a single simulation is started on one thread and stepped on another) relies upon. That fallback is ambiguous when several runs are executing 
+	 * concurrently, so it throws instead. 
+	 */
+	public static TregSimulation sim()
+	{
+		final TregSimulation s = current.get();
+		if(s != null)
+			return s;
+		if(runsExecuting.get() > 1)
+			throw new RuntimeException("TregSimulation: no simulation is bound to this thread, and several simulations are executing concurrently.");
+		return mostRecent;
+	}
+	
+	/** Makes this run the one returned by 'sim()' on the calling thread. */
+	public void bindToCurrentThread()
+	{
+		current.set(this);
+		mostRecent = this;
+	}
+	
+	/** Releases the calling thread from this run, so that it does not keep a finished simulation alive. */
+	public void unbindFromCurrentThread()
+	{
+		if(current.get() == this)
+			current.remove();
+	}
+	
+	/*
+	 * The parameters loaded by the cell, compartment and molecule classes for this run. Each of those classes takes a slot through 'newParameterSlot' when it is 
+	 * loaded, stores its parameters in that slot in 'loadParameters', and reads them back from the simulation it belongs to. Runs with different parameter files 
+	 * therefore do not interfere with one another, and reading parameters is an array access. 
+	 */
+	private static int parameterSlots = 0;
+	public static synchronized int newParameterSlot()
+	{	return parameterSlots++;	}
+	
+	private Object[] classParameters = new Object[0];
+	public void setClassParameters(int slot, Object params)
+	{
+		if(slot >= classParameters.length)
+			classParameters = Arrays.copyOf(classParameters, slot + 1);
+		classParameters[slot] = params;
+	}
+	/** Returns the parameters held in the given slot, or null if they have not been loaded. */
+	public Object getClassParameters(int slot)
+	{
+		if(slot >= classParameters.length)
+			return null;
+		return classParameters[slot];
+	}
 	
 	// TODO remove this, always two dimensional. 
 	public static enum Dimension { TwoD }						// this is only used to set up the correct compartment types.
 	public Dimension dimension;									// this is only used to set up the correct compartment types.
 	
-	public static Document parameters;							// java representation of the XML document holding parameters for this simulation run. 
+	public Document parameters;								// java representation of the XML document holding parameters for this simulation run. 
 	
-	public static double timeSlice;								// how long, in hours, that a simulation timestep corresponds to.
+	public double timeSlice;									// how long, in hours, that a simulation timestep corresponds to.
 	
 	public static enum ImmunizationType {Linear, Exponential}	// The two immunization mechanisms that exist for the simulation. 
 	
@@ -67,50 +132,113 @@ public class TregSimulation extends SimState
 	 * artefacts. 
 	 */
 	private Map<Steppable, Stoppable> stoppables = new HashMap<Steppable, Stoppable>();
-	public int getNumStoppables() {	return stoppables.size();	}
+	public int getNumStoppables() 
+	{	return stoppables.size() + ((cellStepPhase == null) ? 0 : cellStepPhase.size()) + ((phasedSchedule == null) ? 0 : phasedSchedule.size());	}
+	
+	/* Which schedule holds the agents that step every timeslice. 'MASON' (the default) schedules each agent with MASON's schedule. 'Phased' holds them in 
+	 * dense arrays, one for each ordering, with only those arrays scheduled with MASON; see PhasedSchedule. */
+	public static enum Scheduler { MASON, Phased }
+	private Scheduler scheduler = Scheduler.MASON;
+	private PhasedSchedule phasedSchedule;
+	private static final int phasedOrderings = 4;				// cells, compartments, naive T cell generators, and the watchdog.
+	
+	/* When 'cellStepThreads' is given, cells are not scheduled with MASON individually but stepped by 'cellStepPhase', which spreads their steps across that
+	 * many threads. 0 (the default) leaves cells to MASON. */
+	private int cellStepThreads = 0;
+	private CellStepPhase cellStepPhase;
+	
+	/* When 'compartmentThreads' is given, compartments are not scheduled individually but stepped by 'compartmentStepPhase', concurrently across that many
+	 * threads, with cells migrating between compartments admitted once they have all stepped. 0 (the default) schedules each compartment on its own. */
+	private int compartmentThreads = 0;
+	private CompartmentStepPhase compartmentStepPhase;
+	
+	/* How cells that die are taken out of the simulation. 'Immediate' (the default) removes each from the schedule and its compartment as it dies. 'Sweep' 
+	 * leaves dead cells in place until the end of the timestep, and then removes them all together; see DeadCellSweep. */
+	public static enum DeadCellRemoval { Immediate, Sweep }
+	private DeadCellRemoval deadCellRemoval = DeadCellRemoval.Immediate;
+	private DeadCellSweep deadCellSweep;
+	private static final int deadCellSweepOrdering = 4;			// after the cells, compartments, generators and watchdog, and before data is collected.
+	
+	/* Where T cells keep their state. 'Objects' (the default) has each T cell hold its own. 'Store' holds the state of the whole T cell population in 
+	 * 'tCellStore', as primitive arrays indexed by cell, such that the census taken by the data stores is a scan over those arrays; see TCellStore. */
+	public static enum TCellState { Objects, Store }
+	private TCellState tCellState = TCellState.Objects;
+	public TCellStore tCellStore;								// null unless 'tCellState' is 'Store'. Created in 'start', before any cells.
+	
+	/* How the data stores take their census of T cells and APCs. 'Scan' (the default) visits every cell in every compartment each time data is collected.
+	 * 'Incremental' has each compartment keep a TCellCensus and an APCCensus, updated as cells enter and leave it and change state, which are read in place
+	 * of the scan. */
+	public static enum Census { Scan, Incremental }
+	private Census census = Census.Scan;
+	
+	/* Whether cells of the kinds with the highest turnover (CD4Th, CD8Treg, neurons, DCMigrates and CNS macrophages) that die are kept in 'cellPools' and 
+	 * reused in place of creating new ones. Off by default; runs give the same results either way. See CellPools. */
+	private boolean cellPooling = false;
+	public CellPools cellPools;									// null unless 'cellPooling'. Created in 'start', before any cells.
 	
 	/* We order compartments to be scheduled before cells. These figures relate to the Schedule MASON class. */
 	public static int cellsOrdering = 0;						// the ordering at which cells scheduled. Cells first, makes the visuals match behaviour better (else they lag behind)
-	public static int compartmentsOrdering = 1;					// the ordering at which compartments are scheduled.
+	public static int compartmentsOrdering = 1;					// the ordering at which compartments are scheduled by the phased schedule. MASON steps them alongside the cells.
 	
 	
 	public Network compartmentsNetwork;
 	
+	/* 
+	 * Data loggers that are part of the simulation's logic; cells log events into them and the data stores read them. They belong to this run, and are created in 'start'. 
+	 */
+	public CD4Th1ApoptosisedDataLogger cd4Th1ApopDL;			// where and when CD4Th1 cells are killed by CD8Treg cells.
+	public TCellPrimingLocationDataLogger primingDL;			// whenever a T cell is primed, it is logged here. 
+	public NeuronsKilledDataLogger neuronsKilledDL;				// how many neurons have been killed over time. 
+	public DCApoptosedPeptidePresentationDataLogger peptidePresentationDL;	// what antigenic peptides apoptotic DCMigrates cells express.
+	
+	public TimerWheel timerWheel;								// wakes cells when their state maintenance timers may have expired. Created in 'start'.
+	
+	public final long runSeed;									// the seed this run was constructed with. Random streams belonging to individual agents are derived from it.
+	private long agentSerials;									// how many agents (cells, compartments, generators) have been created in this run; each one's serial number is taken from here.
+	
+	/* How the agents of this run draw random numbers. 'MersenneTwister' (the default) has every agent draw in turn from 'random', as the simulation always has. 
+	 * 'Counter' gives each agent a PhiloxStream of its own, derived from the run's seed, the agent's serial number and the timestep, such that an agent's draws do
+	 * not depend on when other agents draw theirs, nor on which thread it is stepped on. */
+	public static enum RandomStreams { MersenneTwister, Counter }
+	private RandomStreams randomStreams = RandomStreams.MersenneTwister;
+	private final RandomStream sharedStream = new MersenneTwisterStream(this);	// every agent's stream, in 'MersenneTwister' mode.
+	private RandomStream simulationStream;						// draws made by the simulation itself, such as where to place the initial T cells. 
+	
 	public Compartment cns;										// central nervous system
 	public Compartment circulation;								// circulatory system	
 	public Compartment slo;										// secondary lymphoid organ
 	public Compartment cln;										// cervical lymph node
 	public Compartment spleen;									// the spleen
 	
-	private static boolean immunize;							// boolean value dictates whether an immunization is to take place at time zero. (this is mostly for testing, there is no reason for it not to be).
+	private boolean immunize;							// boolean value dictates whether an immunization is to take place at time zero. (this is mostly for testing, there is no reason for it not to be).
 	
-	private static boolean secondImmunization = false;			// default case is not to have a second immunization. 
-	private static double secondImmunizationStartTime;			// if there is to be a second immunization, this variable dictates when it should happen. 
+	private boolean secondImmunization = false;			// default case is not to have a second immunization. 
+	private double secondImmunizationStartTime;			// if there is to be a second immunization, this variable dictates when it should happen. 
 	
 	
 	/* linear immunization. An initial number of DCs are placed into the SLO compartment as the result of immunization, thereafter a certain (linearly decreasing) additional DCs
 	 * appear in the SLO at certain periods of time. 
 	 * For a more detailed view of how this immunization works, see @Immunization_Linear 
 	 */
-	private static double immunizationTime;                // time at which first immunization is to take place
-	private static double immunizationLinearFreq;				// how frequently this steppable object will be scheduled. Equivalent to how frequently immunized DC influx occurs.
-	private static int immunizationLinearInitial;				// the initial number of cells that will influx at time of immunization (time zero) - other cells may follow. 
-	private static double immunizationLinearDC0;				// The intial number of influxing DCs - this is NOT the same as the initial influx.
-	private static double immunizationLinearGradient;			// how quickly the number of DCs influxing will decrease. should be a negative number (else the number will increase)
+	private double immunizationTime;                // time at which first immunization is to take place
+	private double immunizationLinearFreq;				// how frequently this steppable object will be scheduled. Equivalent to how frequently immunized DC influx occurs.
+	private int immunizationLinearInitial;				// the initial number of cells that will influx at time of immunization (time zero) - other cells may follow. 
+	private double immunizationLinearDC0;				// The intial number of influxing DCs - this is NOT the same as the initial influx.
+	private double immunizationLinearGradient;			// how quickly the number of DCs influxing will decrease. should be a negative number (else the number will increase)
 			
-	private static int numCD4Th;								// the basal level of CD4Th (naive - no polarization) cells in the simulation.
-	private static int numCD4Treg;								// the basal level of naive CD4Treg cells in the simulation.
-	private static int numCD8Treg;								// the basal level of naive CD8Treg cells in the simulation.
-	private static int numCNS;									// the number of neurons in the CNS. This is homeostatically maintained. 
-	private static int numCNSMacrophage;						// the number of CNS macrophages (microglia) in the CNS. This is homeostatically maintained. 
-	private static int numDC;									// the number of DCs that reside in the SLO and CLN compartments. This is homeostatically maintained. 
-	private static int numDCCNS;								// dendritic cells in the CNS compartment. This is homeostatically maintained. 
-	private static int numDCSpleen;								// number of resident DCs in the spleen compartment. This is homeostatically maintained.  
-	
-	private static boolean splenectomy = false;					// when turned on, this turns simulation behaviour into a splenectomy experiment. 
+	private int numCD4Th;								// the basal level of CD4Th (naive - no polarization) cells in the simulation.
+	private int numCD4Treg;								// the basal level of naive CD4Treg cells in the simulation.
+	private int numCD8Treg;								// the basal level of naive CD8Treg cells in the simulation.
+	private int numCNS;									// the number of neurons in the CNS. This is homeostatically maintained. 
+	private int numCNSMacrophage;						// the number of CNS macrophages (microglia) in the CNS. This is homeostatically maintained. 
+	private int numDC;									// the number of DCs that reside in the SLO and CLN compartments. This is homeostatically maintained. 
+	private int numDCCNS;								// dendritic cells in the CNS compartment. This is homeostatically maintained. 
+	private int numDCSpleen;								// number of resident DCs in the spleen compartment. This is homeostatically maintained.  
+	
+	private boolean splenectomy = false;					// when turned on, this turns simulation behaviour into a splenectomy experiment. 
 																// all DCs are removed from the spleen, any cells that would enter it leave immediately. And if any of those cells
 																// are apoptotic, they are simply removed from the simulation immediately. 
-	public static boolean cd4TregAbrogation = false;			// represents an experimental setup in which CD4Treg cells are removed from the simulation. 
+	public boolean cd4TregAbrogation = false;			// represents an experimental setup in which CD4Treg cells are removed from the simulation. 
 																// help to CD8Tregs is constitutive when this variable is set to true. 
 	
 	/*
@@ -146,10 +274,11 @@ public class TregSimulation extends SimState
     public TregSimulation (long seed, Dimension d, Document params, int timeoutSeconds)
     {
         super(seed);
-        sim = this;											// singleton pattern
+        runSeed = seed;
         dimension = d;
         parameters = params;
     	timeout = timeoutSeconds * 1000;					// convert from seconds into miliseconds. 
+    	bindToCurrentThread();								// the constructing thread will normally be the one that runs the simulation.
     }
         
     /**
@@ -177,27 +306,47 @@ public class TregSimulation extends SimState
      * 
      */
     public void run(double endTime, Steppable... events)
+    {
+    	bindToCurrentThread();
+    	runsExecuting.incrementAndGet();
+    	try
+    	{
+    		runBound(endTime, events);
+    	}
+    	finally
+    	{
+    		runsExecuting.decrementAndGet();
+    		unbindFromCurrentThread();
+    	}
+    }
+    
+    private void runBound(double endTime, Steppable... events)
     {    	
-        start();											// sets up the simulation. 
-        
-        // schedule the events into the schedule.
-        for(Steppable event : events)
-        {
-        	addToSimulationScheduleRepeating(Schedule.EPOCH, 10, event, 1.0);
-        }
-        
         long steps;
         double time;
-        do
-        {            
-            if (!sim.schedule.step(sim)) 			// performs the step, and if return is false, stops looping.
-                break;
-            steps = sim.schedule.getSteps();		// How many steps have been performed?
-            time = sim.schedule.getTime();			// retrieve the current time in the simulation.  
-            
-        } while(time <= endTime);					// stopping condition. 
-        
-        finish();									// tears down the simulation
+        try
+        {
+	        start();											// sets up the simulation. 
+	        
+	        // schedule the events into the schedule.
+	        for(Steppable event : events)
+	        {
+	        	addToSimulationScheduleRepeating(Schedule.EPOCH, 10, event, 1.0);
+	        }
+	        
+	        do
+	        {            
+	            if (!schedule.step(this)) 				// performs the step, and if return is false, stops looping.
+	                break;
+	            steps = schedule.getSteps();			// How many steps have been performed?
+	            time = schedule.getTime();				// retrieve the current time in the simulation.  
+	            
+	        } while(time <= endTime);					// stopping condition. 
+        }
+        finally
+        {
+        	finish();								// tears down the simulation, releasing its threads even if a step threw (such as the watchdog's timeout).
+        }
     }
     
     
@@ -209,7 +358,14 @@ public class TregSimulation extends SimState
     public void start()
     {
     	super.start();														// call supertype's start method. 
-		TregSimulation.sim.setupSimulationParameters();						// essential that we do this here.
+    	bindToCurrentThread();												// parameters and cells created from here on belong to this run.
+		setupSimulationParameters();										// essential that we do this here.
+		timerWheel = new TimerWheel(schedule, timeSlice);					// must exist before any cells are created.
+		agentSerials = 0;
+		simulationStream = newAgentStream();
+		phasedSchedule = (scheduler == Scheduler.Phased) ? new PhasedSchedule(this, phasedOrderings) : null;
+		tCellStore = (tCellState == TCellState.Store) ? new TCellStore(1024) : null;
+		cellPools = cellPooling ? new CellPools(schedule) : null;
     	compartmentsNetwork = new Network();								// compartments in the simulation are connected together as a MASON network. 
 
     	/* Set up the correct type of compartments, based on the requested dimensions. */
@@ -225,6 +381,20 @@ public class TregSimulation extends SimState
     	    else	
     	    	spleen = new Spleen2D(this);								// otherwise create a normal spleen compartment. 
     	}
+    	
+    	/* cells stepped in parallel are held by a single steppable, which must exist before any cells are created. */
+    	cellStepPhase = null;
+    	if(cellStepThreads > 0)
+    	{
+    		cellStepPhase = new CellStepPhase(this, cellStepThreads, cns, cln, circulation, slo, spleen);
+    		addToSimulationScheduleRepeating(Schedule.EPOCH, cellsOrdering, cellStepPhase, timeSlice);
+    	}
+    	deadCellSweep = null;
+    	if(deadCellRemoval == DeadCellRemoval.Sweep)
+    	{
+    		deadCellSweep = new DeadCellSweep(this);
+    		addToSimulationScheduleRepeating(Schedule.EPOCH, deadCellSweepOrdering, deadCellSweep, timeSlice);
+    	}
     	     	
     	// treat our compartments as nodes in a network
     	compartmentsNetwork.addNode(cns);
@@ -256,14 +426,30 @@ public class TregSimulation extends SimState
 
    		compartmentsNetwork.addEdge(circulation, spleen, null);
    		compartmentsNetwork.addEdge(spleen, circulation, null);
+   		
+   		/* compile the network into the routes that migrating cells take out of each compartment. */
+   		cns.compileRoutes();
+   		cln.compileRoutes();
+   		circulation.compileRoutes();
+   		slo.compileRoutes();
+   		spleen.compileRoutes();
 
     	
     	/* schedule the compartments with the scheduler. That will handle things like cell movements and cytokine diffusions. */
-    	addCompartmentToSimulationScheduleRepeatingEpoch(cns);
-    	addCompartmentToSimulationScheduleRepeatingEpoch(cln);	
-    	addCompartmentToSimulationScheduleRepeatingEpoch(circulation);		
-    	addCompartmentToSimulationScheduleRepeatingEpoch(slo);
-   		addCompartmentToSimulationScheduleRepeatingEpoch(spleen);
+    	compartmentStepPhase = null;
+    	if(compartmentThreads > 0)
+    	{
+    		compartmentStepPhase = new CompartmentStepPhase(this, compartmentThreads, cns, cln, circulation, slo, spleen);
+    		addCompartmentToSimulationScheduleRepeatingEpoch(compartmentStepPhase);
+    	}
+    	else
+    	{
+    		addCompartmentToSimulationScheduleRepeatingEpoch(cns);
+    		addCompartmentToSimulationScheduleRepeatingEpoch(cln);	
+    		addCompartmentToSimulationScheduleRepeatingEpoch(circulation);		
+    		addCompartmentToSimulationScheduleRepeatingEpoch(slo);
+    		addCompartmentToSimulationScheduleRepeatingEpoch(spleen);
+    	}
     	
     	
     	populateCompartments();									// populate the compartments with cells
@@ -271,13 +457,13 @@ public class TregSimulation extends SimState
     	/* create and schedule a Steppable object to perform the immunization at the end of the user specified time */  	
     	if(immunize == true)										// if immunization is to take place. 
     	{
-    		new Immunization_Linear(immunizationLinearInitial, immunizationLinearDC0, immunizationLinearGradient, immunizationTime, immunizationLinearFreq);    		
+    		new Immunization_Linear(this, immunizationLinearInitial, immunizationLinearDC0, immunizationLinearGradient, immunizationTime, immunizationLinearFreq);    		
     	}
     	
     	/* Same as above, but this allows testing of the hypothesis that the persistence of Tregs in the system will allow for a faster secondary response to a second immunization with MBP */
     	if(secondImmunization == true)
     	{
-    		new Immunization_Linear(immunizationLinearInitial, immunizationLinearDC0, immunizationLinearGradient, secondImmunizationStartTime, immunizationLinearFreq);    		
+    		new Immunization_Linear(this, immunizationLinearInitial, immunizationLinearDC0, immunizationLinearGradient, secondImmunizationStartTime, immunizationLinearFreq);    		
     	}
     		
     	/* create and schedule the naive T cell generators
@@ -287,12 +473,12 @@ public class TregSimulation extends SimState
     	 */
     	final double timesliceForNaiveTCellGenerators = timeSlice;	// in hours, how frequently the generators are to be run. 
     	final int orderingForNaiveTCellGenerators = 2;				// what ordering in the schedule the generators will be run at. 
-    	addToSimulationScheduleRepeating(Schedule.EPOCH, orderingForNaiveTCellGenerators, new CD4THelper.NaiveCD4THelperGenerator(timesliceForNaiveTCellGenerators, numCD4Th), timesliceForNaiveTCellGenerators);
+    	addToSimulationScheduleRepeating(Schedule.EPOCH, orderingForNaiveTCellGenerators, new CD4THelper.NaiveCD4THelperGenerator(this, timesliceForNaiveTCellGenerators, numCD4Th), timesliceForNaiveTCellGenerators);
     	if(cd4TregAbrogation == false)								// homeostatic addition of CD4Tregs should not occur if CD4Treg abrogation experiment is being executed. 
     	{
-    		addToSimulationScheduleRepeating(Schedule.EPOCH, orderingForNaiveTCellGenerators, new CD4Treg.NaiveCD4TregGenerator(timesliceForNaiveTCellGenerators, numCD4Treg), timesliceForNaiveTCellGenerators);
+    		addToSimulationScheduleRepeating(Schedule.EPOCH, orderingForNaiveTCellGenerators, new CD4Treg.NaiveCD4TregGenerator(this, timesliceForNaiveTCellGenerators, numCD4Treg), timesliceForNaiveTCellGenerators);
     	}
-    	addToSimulationScheduleRepeating(Schedule.EPOCH, orderingForNaiveTCellGenerators, new CD8Treg.NaiveCD8TregGenerator(timesliceForNaiveTCellGenerators, numCD8Treg), timesliceForNaiveTCellGenerators);
+    	addToSimulationScheduleRepeating(Schedule.EPOCH, orderingForNaiveTCellGenerators, new CD8Treg.NaiveCD8TregGenerator(this, timesliceForNaiveTCellGenerators, numCD8Treg), timesliceForNaiveTCellGenerators);
     	
     	/* The mechanism that handles shutting down the simulation if a timeout has occurred. */
     	addToSimulationScheduleRepeating(Schedule.EPOCH, 3, 
@@ -326,13 +512,67 @@ public class TregSimulation extends SimState
 				},
 			timeSlice);
     	
-    	/* create data loggers, and attach them to owner classes */
-    	CD8Treg.cd4Th1ApopDL = new CD4Th1ApoptosisedDataLogger();
-    	TCell_Impl.primingDL = new TCellPrimingLocationDataLogger();
-    	Neuron.neuronsKilledDL = new NeuronsKilledDataLogger();
-    	DendriticCellMigrates.peptidePresentationDL = new DCApoptosedPeptidePresentationDataLogger();   // logs which combinations of peptides DCMs have been presenting. 
+    	/* create this run's data loggers */
+    	cd4Th1ApopDL = new CD4Th1ApoptosisedDataLogger();
+    	primingDL = new TCellPrimingLocationDataLogger();
+    	neuronsKilledDL = new NeuronsKilledDataLogger();
+    	peptidePresentationDL = new DCApoptosedPeptidePresentationDataLogger();   // logs which combinations of peptides DCMs have been presenting. 
+    }
+    
+    /**
+     * Method is called when the simulation is torn down. Releases any threads that this run holds. 
+     */
+    public void finish()
+    {
+    	super.finish();
+    	Compartment.shutdownThreadPools(this);
+    	if(cellStepPhase != null)
+    		cellStepPhase.shutdown();
+    	if(compartmentStepPhase != null)
+    		compartmentStepPhase.shutdown();
+    }
+    
+    /**
+     * Returns a number unique to a newly created agent within this run. Agents are created in the same order whatever the number of threads used, so an 
+     * agent's serial number is a stable name for it, from which its own random streams can be derived. 
+     */
+    public long nextAgentSerial()
+    {	return agentSerials++;	}
+    
+    /**
+     * Returns the stream through which the agent with the given serial number is to draw its random numbers. 
+     */
+    public RandomStream newAgentStream(long serial)
+    {
+    	if(randomStreams == RandomStreams.MersenneTwister)
+    		return sharedStream;
+    	return new PhiloxStream(runSeed, serial, 0, schedule);
     }
     
+    /**
+     * Returns the stream through which a cell that is being reused under the given serial number is to draw its random numbers. The cell's previous stream
+     * is pointed at the new serial number, rather than another created. 
+     */
+    public RandomStream renewAgentStream(RandomStream previous, long serial)
+    {
+    	if(randomStreams == RandomStreams.MersenneTwister)
+    		return sharedStream;
+    	((PhiloxStream) previous).reassign(serial);
+    	return previous;
+    }
+    
+    /**
+     * As above, for an agent that has no serial number of its own. 
+     */
+    public RandomStream newAgentStream()
+    {	return newAgentStream(nextAgentSerial());	}
+    
+    /**
+     * Returns true if agents each have a random stream of their own, rather than sharing the simulation's generator. 
+     */
+    public boolean counterRandomStreams()
+    {	return randomStreams == RandomStreams.Counter;	}
+    
     private int totalSimulationCells()
     {
     	int total = 0;
@@ -369,7 +609,7 @@ public class TregSimulation extends SimState
     	}
     	
     	/* populate SLO and CLN compartments with dendritic cells.	 */
-		double proportionImmatureOfTotal = (APC_Impl.retrieveImmatureDurationMean() / (APC_Impl.retrieveImmatureDurationMean() + APC_Impl.retrieveTimeOfDeathMean()));
+		double proportionImmatureOfTotal = (APC_Impl.retrieveImmatureDurationMean(this) / (APC_Impl.retrieveImmatureDurationMean(this) + APC_Impl.retrieveTimeOfDeathMean(this)));
 		int numberImmatureInCompartment = (int) (numDC * proportionImmatureOfTotal);
 		int numberMatureInCompartment = numDC - numberImmatureInCompartment;
     	
@@ -427,7 +667,7 @@ public class TregSimulation extends SimState
     	if(splenectomy == false) {
 	    	if(dimension == Dimension.TwoD) {
 	    			
-				final double rand = sim.random.nextInt(4);
+				final double rand = simulationStream.nextInt(4);
 	    		if(rand == 0)
 	        		return circulation;
 	        	else if (rand == 1)
@@ -440,7 +680,7 @@ public class TregSimulation extends SimState
 	        		return null;			// should never happen.    		    		
 	    	}
     	} else {
-	    	final double rand = sim.random.nextInt(3);
+	    	final double rand = simulationStream.nextInt(3);
     		if(rand == 0)
         		return circulation;
         	else if (rand == 1)
@@ -459,6 +699,18 @@ public class TregSimulation extends SimState
      */
     public void removeFromSimulationSchedule(Steppable event)
     {
+    	if(event instanceof Cell && sweepsDeadCells())
+    	{
+    		deadCellSweep.bury((Cell) event);						// removed from the schedule, and from its compartment, at the end of the timestep.
+    		return;
+    	}
+    	if(cellStepPhase != null && event instanceof Cell)
+    	{
+    		cellStepPhase.remove((Cell) event);
+    		return;
+    	}
+    	if(phasedSchedule != null && phasedSchedule.remove(event))
+    		return;
     	if(stoppables.containsKey(event))
     	{
     		Stoppable stop = stoppables.remove(event);
@@ -466,6 +718,19 @@ public class TregSimulation extends SimState
     	}
     }
     
+    /**
+     * Returns true if cells that die are at present left in place, to be removed by the sweep at the end of the timestep. A cell's compartment leaves it be
+     * when asked to remove it; the cell's removal from the simulation's schedule records it for the sweep. 
+     */
+    public boolean sweepsDeadCells()
+    {	return deadCellSweep != null && deadCellSweep.isCollecting();	}
+    
+    /**
+     * Returns true if compartments keep a census of their T cells and APCs; see 'Census'.
+     */
+    public boolean keepsCensus()
+    {	return census == Census.Incremental;	}
+    
     /**
      * This method adds the given event to the simulation's schedule, with the given ordering and interval. It keeps track of the event's stoppable object
      * such that the event can later be removed from the schedule. 
@@ -475,11 +740,26 @@ public class TregSimulation extends SimState
      */
     public void addCellToSimulationScheduleRepeating(Steppable event, double time)
     {    	
+    	if(cellStepPhase != null)
+    	{
+    		cellStepPhase.add((Cell) event, time);
+    		return;
+    	}
+    	if(phasedSchedule != null)
+    	{
+    		phasedSchedule.add(cellsOrdering, event, time);
+    		return;
+    	}
     	Stoppable stoppable = schedule.scheduleRepeating(time, cellsOrdering, event, timeSlice);
     	stoppables.put(event, stoppable);							// store the stoppable so that we can get at it later.
     } 
     private void addCompartmentToSimulationScheduleRepeatingEpoch(Steppable event)
     {
+    	if(phasedSchedule != null)
+    	{
+    		phasedSchedule.add(compartmentsOrdering, event, 1.0);	// compartments have a phase of their own, after the cells.
+    		return;
+    	}
     	Stoppable stoppable = schedule.scheduleRepeating(1.0, cellsOrdering, event, timeSlice);		// not sure why we add 1.0, but it is necessary.
     	stoppables.put(event, stoppable);							// store the stoppable so that we can get at it later.
     }
@@ -488,6 +768,12 @@ public class TregSimulation extends SimState
      */
     public void addToSimulationScheduleRepeating(double time, int ordering, Steppable event, double interval)
     {
+    	/* events that step every timeslice from the start go into the phased schedule, if there is one; anything else is left to MASON. */
+    	if(phasedSchedule != null && phasedSchedule.holdsOrdering(ordering) && time == Schedule.EPOCH && interval == timeSlice)
+    	{
+    		phasedSchedule.add(ordering, event, time);
+    		return;
+    	}
     	Stoppable stoppable = schedule.scheduleRepeating(time, ordering, event, interval);
     	stoppables.put(event, stoppable);
     }
@@ -496,7 +782,7 @@ public class TregSimulation extends SimState
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for the top level simulation.
      * @param params
      */
-    private static void loadParameters(Document params)
+    private void loadParameters(Document params)
     {
 		
 		Element pE = (Element) params.getElementsByTagName("Simulation").item(0);			// collect those items under 'Simulation'
@@ -548,6 +834,81 @@ public class TregSimulation extends SimState
 		
 		/* retrieve the timeslice */
 		timeSlice = Double.parseDouble(pE.getElementsByTagName("timeSlice").item(0).getTextContent());
+		
+		/* agents share the simulation's generator unless told otherwise; this tag need not be present in the parameters xml file. */
+		NodeList randomStreamsNL = pE.getElementsByTagName("randomStreams");
+		if(randomStreamsNL.getLength() > 0)
+			randomStreams = RandomStreams.valueOf(randomStreamsNL.item(0).getTextContent().trim());
+		else
+			randomStreams = RandomStreams.MersenneTwister;
+		
+		/* agents are scheduled with MASON unless told otherwise; this tag need not be present in the parameters xml file. */
+		NodeList schedulerNL = pE.getElementsByTagName("scheduler");
+		if(schedulerNL.getLength() > 0)
+			scheduler = Scheduler.valueOf(schedulerNL.item(0).getTextContent().trim());
+		else
+			scheduler = Scheduler.MASON;
+		
+		/* cells are stepped by MASON unless told otherwise; this tag need not be present in the parameters xml file. Stepping cells in parallel requires that
+		 * each cell draws from its own random stream. */
+		NodeList cellStepThreadsNL = pE.getElementsByTagName("cellStepThreads");
+		if(cellStepThreadsNL.getLength() > 0)
+		{
+			cellStepThreads = Integer.parseInt(cellStepThreadsNL.item(0).getTextContent().trim());
+			if(cellStepThreads < 1)
+				throw new RuntimeException("Simulation: cellStepThreads must be at least 1, was given " + cellStepThreads);
+			if(randomStreams != RandomStreams.Counter)
+				throw new RuntimeException("Simulation: cellStepThreads requires randomStreams to be Counter.");
+		}
+		else
+			cellStepThreads = 0;
+		
+		/* compartments are scheduled individually unless told otherwise; this tag need not be present in the parameters xml file. Compartments stepped 
+		 * concurrently move their cells with the cells' own random streams. */
+		NodeList compartmentThreadsNL = pE.getElementsByTagName("compartmentThreads");
+		if(compartmentThreadsNL.getLength() > 0)
+		{
+			compartmentThreads = Integer.parseInt(compartmentThreadsNL.item(0).getTextContent().trim());
+			if(compartmentThreads < 1)
+				throw new RuntimeException("Simulation: compartmentThreads must be at least 1, was given " + compartmentThreads);
+			if(randomStreams != RandomStreams.Counter)
+				throw new RuntimeException("Simulation: compartmentThreads requires randomStreams to be Counter.");
+		}
+		else
+			compartmentThreads = 0;
+		
+		/* dead cells are removed as they die unless told otherwise; this tag need not be present in the parameters xml file. Cells stepped in parallel are 
+		 * already removed together, at the end of their phase. */
+		NodeList deadCellRemovalNL = pE.getElementsByTagName("deadCellRemoval");
+		if(deadCellRemovalNL.getLength() > 0)
+		{
+			deadCellRemoval = DeadCellRemoval.valueOf(deadCellRemovalNL.item(0).getTextContent().trim());
+			if(deadCellRemoval == DeadCellRemoval.Sweep && cellStepThreads > 0)
+				throw new RuntimeException("Simulation: deadCellRemoval Sweep cannot be used with cellStepThreads, which removes dead cells at the end of its phase.");
+		}
+		else
+			deadCellRemoval = DeadCellRemoval.Immediate;
+		
+		/* T cells hold their own state unless told otherwise; this tag need not be present in the parameters xml file. */
+		NodeList tCellStateNL = pE.getElementsByTagName("tCellState");
+		if(tCellStateNL.getLength() > 0)
+			tCellState = TCellState.valueOf(tCellStateNL.item(0).getTextContent().trim());
+		else
+			tCellState = TCellState.Objects;
+		
+		/* the census is taken by scanning every cell unless told otherwise; this tag need not be present in the parameters xml file. */
+		NodeList censusNL = pE.getElementsByTagName("census");
+		if(censusNL.getLength() > 0)
+			census = Census.valueOf(censusNL.item(0).getTextContent().trim());
+		else
+			census = Census.Scan;
+		
+		/* dead cells are left to the garbage collector unless told otherwise; this tag need not be present in the parameters xml file. */
+		NodeList cellPoolingNL = pE.getElementsByTagName("cellPooling");
+		if(cellPoolingNL.getLength() > 0)
+			cellPooling = Boolean.parseBoolean(cellPoolingNL.item(0).getTextContent().trim());
+		else
+			cellPooling = false;
     }
     
     /**
@@ -561,31 +922,31 @@ public class TregSimulation extends SimState
 		/* read in the default parameters for the various classes in the simulation */
         loadParameters(parameters);
         
-        TCell_Impl.loadParameters(parameters);				// load parameters from abstract before concrete
-        CD4THelper.loadParameters(parameters);
-        Th1Polarization.loadParameters(parameters);
-        Th2Polarization.loadParameters(parameters);
-        CD4Treg.loadParameters(parameters);
-        CD8Treg.loadParameters(parameters);
+        TCell_Impl.loadParameters(this, parameters);				// load parameters from abstract before concrete
+        CD4THelper.loadParameters(this, parameters);
+        Th1Polarization.loadParameters(this, parameters);
+        Th2Polarization.loadParameters(this, parameters);
+        CD4Treg.loadParameters(this, parameters);
+        CD8Treg.loadParameters(this, parameters);
         
-        APC_Impl.loadParameters(parameters);				// load parameters from abstract before concrete
-        CNSMacrophage.loadParameters(parameters);
-        DendriticCell.loadParameters(parameters);
-        DendriticCellMigrates.loadParameters(parameters);
+        APC_Impl.loadParameters(this, parameters);				// load parameters from abstract before concrete
+        CNSMacrophage.loadParameters(this, parameters);
+        DendriticCell.loadParameters(this, parameters);
+        DendriticCellMigrates.loadParameters(this, parameters);
         
-        Neuron.loadParameters(parameters);
-        Molecule.loadParameters(parameters);
+        Neuron.loadParameters(this, parameters);
+        Molecule.loadParameters(this, parameters);
         
-        Compartment.loadParameters(parameters);
+        Compartment.loadParameters(this, parameters);
         
         switch(dimension)
         {
         case TwoD:
-	        Circulation2D.loadParameters(parameters);
-	        CNS2D.loadParameters(parameters);
-	        CLN2D.loadParameters(parameters);
-	        SLO2D.loadParameters(parameters);
-	        Spleen2D.loadParameters(parameters);
+	        Circulation2D.loadParameters(this, parameters);
+	        CNS2D.loadParameters(this, parameters);
+	        CLN2D.loadParameters(this, parameters);
+	        SLO2D.loadParameters(this, parameters);
+	        Spleen2D.loadParameters(this, parameters);
 	        break;
         }
     }
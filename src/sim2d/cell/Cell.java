@@ -1,12 +1,11 @@
 package sim2d.cell;
 
 
-import java.util.Set;
-
 import sim.engine.Steppable;
+import sim2d.RandomStream;
 import sim2d.TregSimulation;
 import sim2d.compartment.Compartment;
-import sim2d.molecule.Molecule;
+import sim2d.molecule.MoleculeSet;
 
 public interface Cell extends Steppable 
 {
@@ -15,21 +14,65 @@ public interface Cell extends Steppable
 	 */
 	public void migrateIntoCompartment(Compartment newCompartment);
 	
+	/**
+	 * The grid space that this cell occupies within its compartment, or -1 if it has not been placed in one. These are maintained by the compartment, and 
+	 * held by the cell to spare the compartment from looking up the cell's location. 
+	 */
+	public int getGridX();
+	public int getGridY();
+	
+	/**
+	 * Called only by the compartment, whenever it places, moves or removes this cell. 
+	 */
+	public void setGridLocation(int x, int y);
+	
+	/**
+	 * The compartment this cell presently resides in, or null if it has been removed from the simulation. 
+	 */
+	public Compartment getCompartment();
+	
+	/**
+	 * Where this cell is held by the simulation's CellStepPhase or PhasedSchedule, or -1 if it is held by neither. Called only by them. 
+	 */
+	public int getStepSlot();
+	public void setStepSlot(int slot);
+	
+	/**
+	 * A number unique to this cell within its simulation run, assigned in order of creation. 
+	 */
+	public long getSerial();
+	
+	/**
+	 * The stream from which this cell draws its random numbers. Compartments also draw from it when placing this cell. 
+	 */
+	public RandomStream getRandom();
+	
+	/**
+	 * The kind of this cell, one of those given in CellKind. Fixed for the life of the cell. 
+	 */
+	public int getKind();
+	
+	/**
+	 * A code for the state of this cell, as far as it bears on how the cell moves (see CellKind), such that compartments can look up how to move it. 
+	 */
+	public int getStateCode();
+	
 	/**
 	 * Returns true if this cell is apoptotic.
 	 */
 	public boolean isApoptotic();
 	
 	/**
-	 * Called by an APC to phagocytose a cell. 
+	 * Called by an APC to phagocytose a cell. Returns the peptides that the APC may derive from the cell, or null if there are none to be derived.
 	 * @param sim 	The simulation object. Required to call a method that removes the cell from the simulation.
 	 */
-	public Set<Molecule> bePhagocytosised(TregSimulation sim);
+	public MoleculeSet bePhagocytosised(TregSimulation sim);
 	
 	/**
 	 * Due to the operation of the schedule, and that all cells are stepped and can interact with one another,
 	 * this method is required to ensure that a cell that was phagocytosed in a particular 'step' does not get
-	 * restepped.
+	 * restepped. When dead cells are swept at the end of the timestep (see DeadCellSweep) this also marks the
+	 * cells that remain in their compartments awaiting removal.
 	 */
 	public abstract boolean isDead();
 }
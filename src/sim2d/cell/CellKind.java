@@ -0,0 +1,55 @@
+package sim2d.cell;
+
+/**
+ * The kinds of cell in the simulation, as small integers, and the codes for the states of a cell that bear on how it moves. Every cell reports its kind and
+ * state code (see 'Cell.getKind' and 'Cell.getStateCode'), such that compartments and cells can look up how to treat it in tables indexed by kind and
+ * state, or switch on its kind, rather than testing it against a chain of classes.
+ *
+ * Sets of kinds are held as bitmasks, each kind's bit given by 'bit'.
+ *
+ * @author mark
+ *
+ */
+public final class CellKind
+{
+	public static final int NEURON = 0;
+	public static final int CD4TH = 1;
+	public static final int CD4TREG = 2;
+	public static final int CD8TREG = 3;
+	public static final int DENDRITIC_CELL = 4;
+	public static final int DENDRITIC_CELL_MIGRATES = 5;
+	public static final int CNS_MACROPHAGE = 6;
+	public static final int kinds = 7;
+
+	/* sets of kinds. */
+	public static final int ANY = (1 << kinds) - 1;
+	public static final int T_CELLS = bit(CD4TH) | bit(CD4TREG) | bit(CD8TREG);
+	public static final int APCS = bit(DENDRITIC_CELL) | bit(DENDRITIC_CELL_MIGRATES) | bit(CNS_MACROPHAGE);
+	public static final int DENDRITIC_CELLS = bit(DENDRITIC_CELL) | bit(DENDRITIC_CELL_MIGRATES);
+
+	/* State codes. A T cell's code is the ordinal of its maturity. DCMigrates and CNS macrophages are either mobile or not. Other cells have only the one
+	 * state, 0. */
+	public static final int states = 5;
+	public static final int IMMOBILE = 0;
+	public static final int MOBILE = 1;
+
+	private CellKind() {}
+
+	public static int bit(int kind)
+	{	return 1 << kind;	}
+
+	/**
+	 * Returns true if the kind is one of the given set.
+	 */
+	public static boolean isIn(int kind, int set)
+	{	return (set & (1 << kind)) != 0;	}
+
+	public static boolean isTCell(int kind)
+	{	return isIn(kind, T_CELLS);	}
+
+	/**
+	 * The index of the given kind and state within a table holding an entry for each.
+	 */
+	public static int index(int kind, int state)
+	{	return kind * states + state;	}
+}
@@ -0,0 +1,144 @@
+package sim2d.cell.impl;
+
+import sim2d.CellStepPhase;
+
+/**
+ * Counts the APCs held in one compartment's grid by group (dendritic cells, including DCMigrates, or other APCs), state, and for dendritic cells presenting
+ * MHC-peptide, polarization. It is kept up to date as APCs change, in the same way as TCellCensus: an APC is counted from when it is placed in the
+ * compartment's grid until it is removed from it (see 'enter' and 'leave', called by the compartment), and its count moves whenever its state may have
+ * changed (see 'APC_Impl.recount').
+ *
+ * The states are those that the data stores record, tested in the same order as they test them: immature, else tolerogenic and presenting MHC-peptide,
+ * else immunogenic and presenting MHC-peptide, else apoptotic, else none of these.
+ *
+ * @author mark
+ *
+ */
+public final class APCCensus
+{
+	/* groups of APC. */
+	public static final int DENDRITIC_CELL = 0;
+	public static final int OTHER_APC = 1;
+	private static final int groups = 2;
+
+	/* states of APC. */
+	public static final int IMMATURE = 0;
+	public static final int TOLEROGENIC = 1;
+	public static final int IMMUNOGENIC = 2;
+	public static final int APOPTOTIC = 3;
+	public static final int OTHER_STATE = 4;
+	private static final int states = 5;
+
+	private static final int polarizations = DendriticCell.Polarization.values().length;	// 'None' for APCs that are not presenting MHC-peptide.
+
+	private final int[] counts = new int[groups * states * polarizations];		// indexed by 'keyOf'.
+
+	/**
+	 * Starts counting the given APC, which has just been placed in the compartment's grid.
+	 */
+	public void enter(APC_Impl apc)
+	{
+		apc.census = this;
+		final int key = keyOf(apc);
+		counts[key]++;
+		apc.censusKey = key;
+	}
+
+	/**
+	 * Stops counting the given APC, which has just been removed from the compartment's grid.
+	 */
+	public void leave(APC_Impl apc)
+	{
+		if(apc.census != this)
+			return;
+		counts[apc.censusKey]--;
+		apc.census = null;
+	}
+
+	/**
+	 * Moves the count of the given APC to match its present state.
+	 */
+	void recount(APC_Impl apc)
+	{
+		final int key = keyOf(apc);
+		if(key == apc.censusKey)
+			return;
+		counts[apc.censusKey]--;
+		counts[key]++;
+		apc.censusKey = key;
+	}
+
+	/**
+	 * The number of APCs of the given group.
+	 */
+	public int count(int group)
+	{
+		final int from = key(group, 0, 0);
+		int n = 0;
+		for(int k = 0; k < states * polarizations; k++)
+			n += counts[from + k];
+		return n;
+	}
+
+	/**
+	 * The number of APCs of the given group and state, of any polarization.
+	 */
+	public int count(int group, int state)
+	{
+		final int from = key(group, state, 0);
+		int n = 0;
+		for(int p = 0; p < polarizations; p++)
+			n += counts[from + p];
+		return n;
+	}
+
+	/**
+	 * The number of dendritic cells presenting MHC-peptide with the given polarization, in any state.
+	 */
+	public int countPresenting(DendriticCell.Polarization polarization)
+	{
+		int n = 0;
+		for(int s = 0; s < states; s++)
+			n += counts[key(DENDRITIC_CELL, s, polarization.ordinal())];
+		return n;
+	}
+
+	private static int key(int group, int state, int polarization)
+	{	return (group * states + state) * polarizations + polarization;	}
+
+	private static int keyOf(APC_Impl apc)
+	{
+		final int state;
+		if(apc.isImmature())
+			state = IMMATURE;
+		else if(apc.isTolerogenic() && apc.isExpressing_MHCPeptide())
+			state = TOLEROGENIC;
+		else if(apc.isImmunogenic() && apc.isExpressing_MHCPeptide())
+			state = IMMUNOGENIC;
+		else if(apc.isApoptotic())
+			state = APOPTOTIC;
+		else
+			state = OTHER_STATE;
+
+		if((apc instanceof DendriticCell) == false)
+			return key(OTHER_APC, state, 0);
+		final DendriticCell.Polarization p = ((DendriticCell) apc).getPolarization();	// null until the DC's own fields are initialised.
+		final int polarization = (p != null && apc.isExpressing_MHCPeptide()) ? p.ordinal() : 0;
+		return key(DENDRITIC_CELL, state, polarization);
+	}
+
+	/**
+	 * Brings the census counting the given APC, if any, up to date with its state. When cells are stepped in parallel this happens once they have all
+	 * stepped, since the census is shared by every cell in the compartment; APCs whose count would not move are passed over without deferring anything.
+	 */
+	static void recountLater(final APC_Impl apc)
+	{
+		if(apc.census == null)
+			return;
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred == null)
+			apc.census.recount(apc);
+		else if(keyOf(apc) != apc.censusKey)
+			deferred.add(new Runnable() { public void run() { if(apc.census != null) apc.census.recount(apc); } });
+	}
+}
@@ -1,59 +1,94 @@
 package sim2d.cell.impl;
 
-import java.util.Set;
-
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import sim.engine.SimState;
+import sim2d.RandomStream;
+import sim2d.TimerWheel;
 import sim2d.TregSimulation;
 import sim2d.cell.APC;
 import sim2d.cell.Cell;
 import sim2d.cell.molecule.MHC_II_Fr3;
 import sim2d.compartment.Compartment;
-import sim2d.molecule.Molecule;
+import sim2d.molecule.MoleculeSet;
 import sim2d.molecule.Type1;
 
 public abstract class APC_Impl extends Cell_Impl implements APC
 {
 
 	/*
-	 * General properties of all APCs 
+	 * General properties of all APCs. Loaded once per simulation run and held by that run. 
 	 */
-	private static double immatureDurationMean;							// the mean length of time that a DC will be immature and stationary for before it migrates.
-	private static double immatureDurationStdDev;						// the std dev of mean length of time that a DC will be immature and stationary for before it migrates. 
-	
-	private static double costimExpressionDelayStdDev;
-	private static double costimExpressionDelayMean;
-	
-	private static double mhcExpressionDelayMean;						// following the phagocytosis of a peptide, this is the mean time before MHC-peptide appears.
-	private static double mhcExpressionDelayStdDev;						// this is the standard deviation around the mean that defines when the MHC-peptide appears.
-
-	private static double timeOfDeathMean;								// the mean length of time that an APC will remain in a mature state before dying. 
-	private static double timeOfDeathStdDev;							// the standard deviation for the above distribution. 
-	public static double retrieveTimeOfDeathMean()
-	{	return timeOfDeathMean;		}
-		
+	private static class Parameters
+	{
+		double immatureDurationMean;							// the mean length of time that a DC will be immature and stationary for before it migrates.
+		double immatureDurationStdDev;						// the std dev of mean length of time that a DC will be immature and stationary for before it migrates. 
+		double costimExpressionDelayStdDev;
+		double costimExpressionDelayMean;
+		double mhcExpressionDelayMean;						// following the phagocytosis of a peptide, this is the mean time before MHC-peptide appears.
+		double mhcExpressionDelayStdDev;						// this is the standard deviation around the mean that defines when the MHC-peptide appears.
+		double timeOfDeathMean;								// the mean length of time that an APC will remain in a mature state before dying. 
+		double timeOfDeathStdDev;							// the standard deviation for the above distribution. 
+		double probabilityPhagocytosisToPeptide;			// when a cell is phagocytosed, this variable dictates the probability that peptides will be displayed. 
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
-	protected static double probabilityPhagocytosisToPeptide;			// when a cell is phagocytosed, this variable dictates the probability that peptides will be displayed. 
+	public static double retrieveTimeOfDeathMean(TregSimulation sim)
+	{	return params(sim).timeOfDeathMean;		}
+	protected static double retrieveProbabilityPhagocytosisToPeptide(TregSimulation sim)
+	{	return params(sim).probabilityPhagocytosisToPeptide;	}
 	
 	/*
 	 * Properties and state specific to instances of APCs. 
 	 */	
 	protected double timeImmatureDurationEnds = Double.MAX_VALUE;	// the time at which this instance will become either tolerogenic or immunogenic
 	protected double timeOfDeath = Double.MAX_VALUE;						// time at which this APC will die following differentiation away from immaturity. 
+	private final TimerWheel.Handle timers = new TimerWheel.Handle();		// tells this APC when one of the timers above may have expired.
 
 	
 	protected boolean isApoptotic = false;
 	
+	/* The census of the compartment whose grid holds this APC, if it keeps one, and where this APC is counted within it; see APCCensus. */
+	APCCensus census;
+	int censusKey;
+	
 	
 	public APC_Impl(Compartment location)
 	{
 		super(location, true);
-		
+		beginImmature();
+	}
+	private void beginImmature()
+	{
 		// calculate a time at which this cell will cease to be immature, and it will migrate. Note that to stop everything migrating at once we subtract some random proportion
 		// of the mean value (to make it appear that this has been going on for a long time already) 
-		timeImmatureDurationEnds = calculateTimeImmatureDurationEnds();
+		timeImmatureDurationEnds = calculateTimeImmatureDurationEnds(simulation, random);
+		armTimers();
+	}
+	
+	/**
+	 * Reuses this APC, taken from the simulation's CellPools, as a new one placed randomly in the compartment, exactly as the constructor would create one.
+	 */
+	protected final void revive(Compartment location)
+	{
+		reset();
+		enterRandomly(location);
+		beginImmature();
+	}
+	
+	/**
+	 * Returns this APC's fields to their initial values, for reuse. 
+	 */
+	protected void reset()
+	{
+		super.reset();
+		timeImmatureDurationEnds = Double.MAX_VALUE;
+		timeOfDeath = Double.MAX_VALUE;
+		timers.reset();
+		isApoptotic = false;
 	}
 	
 	/**
@@ -68,10 +103,10 @@ public abstract class APC_Impl extends Cell_Impl implements APC
 	protected abstract double getPhagocytosisProbabilityImmature();	
 	protected abstract double getPhagocytosisProbabilityMature();
 	
-	public static double retrieveImmatureDurationMean()
-	{	return immatureDurationMean;	}
-	public static double retrieveImmatureDurationStdDev()
-	{	return immatureDurationStdDev;	}
+	public static double retrieveImmatureDurationMean(TregSimulation sim)
+	{	return params(sim).immatureDurationMean;	}
+	public static double retrieveImmatureDurationStdDev(TregSimulation sim)
+	{	return params(sim).immatureDurationStdDev;	}
 	
 	protected abstract void perceiveMolecules(TregSimulation sim);
 	protected abstract void secreteCytokines();
@@ -97,8 +132,15 @@ public abstract class APC_Impl extends Cell_Impl implements APC
 		interactWithOtherCellsGeneric(simulation);
 		secreteCytokines();		
 		checkStateMaintenanceTimers();						// this comes last because it handles this cell becoming apoptotic, and when that happens none of the other steps should be completed.	
-	
+		recount();
 	}
+	
+	/**
+	 * Brings the census of this APC's compartment, if it keeps one, up to date with this APC's state. Called at the end of each step, and wherever this APC's 
+	 * state is changed other than by its own step. 
+	 */
+	protected void recount()
+	{	APCCensus.recountLater(this);	}
 
 	/**
 	 * Method check and handles the timers that dictate the transition between states in an APC (note that timers are not the only events that dictate state changes...)
@@ -106,7 +148,11 @@ public abstract class APC_Impl extends Cell_Impl implements APC
 	 */
 	protected void checkStateMaintenanceTimers()
 	{
-		final double timeNow = TregSimulation.sim.schedule.getTime();
+		final TregSimulation sim = simulation;
+		if(sim.timerWheel.isDue(timers) == false)				// neither timer can have expired yet. 
+			return;
+		
+		final double timeNow = sim.schedule.getTime();
 		
 		if(timeNow >= timeImmatureDurationEnds)
 		{
@@ -118,8 +164,16 @@ public abstract class APC_Impl extends Cell_Impl implements APC
 			timeOfDeath = Double.MAX_VALUE;								// reset timer
 			becomeApoptotic();
 		}
+		sim.timerWheel.rearm(timers, Math.min(timeImmatureDurationEnds, timeOfDeath));
 	}
 	
+	/**
+	 * Must be called whenever 'timeImmatureDurationEnds' or 'timeOfDeath' is brought forward, such that the simulation's timer wheel wakes this APC in time
+	 * for it. Timers that are cleared need not be registered. 
+	 */
+	protected void armTimers()
+	{	simulation.timerWheel.schedule(timers, Math.min(timeImmatureDurationEnds, timeOfDeath));	}
+	
 	/**
 	 * publicly available entry point that handles the phagocytosis of another cell by this APC. This method performs a lot of guard checks, there are several conditions and
 	 * probabilities in which phagocytosis will not happen. If all the guards and checks pass, then the method 'performPhagocytosisOfCell' handles the phagocytosis itself. 
@@ -140,45 +194,46 @@ public abstract class APC_Impl extends Cell_Impl implements APC
 			probOfPhagocytosis = getPhagocytosisProbabilityMature();
 		
 		
-		if(sim.random.nextDouble() >= probOfPhagocytosis)		// if we are unstimulated (no MHC) then we will continue, if we are stimulated then there is a high chance that we will not phagocytose this cell.
+		if(random.nextDouble() >= probOfPhagocytosis)		// if we are unstimulated (no MHC) then we will continue, if we are stimulated then there is a high chance that we will not phagocytose this cell.
 			return;
 		
-		Set<Molecule> presentable = cell.bePhagocytosised(sim);
+		final MoleculeSet presentable = cell.bePhagocytosised(sim);
 		if(presentable == null)
 			return;												// nothing to be derived.
 		
 		/* anything UPTO 'probabilityPhagocytosisToPeptide' will result in peptides being derived. Else, save computation time and return now instead. */ 
-		if(sim.random.nextDouble() >= probabilityPhagocytosisToPeptide)
+		if(random.nextDouble() >= params(simulation).probabilityPhagocytosisToPeptide)
 			return;
 			
 		performPhagocytosisOfCell(presentable);
+		recount();											// may be called by the cell being phagocytosed, from its own step.
 	}
 	
 	/**
 	 * Once a cell has been phagocytosed, as handled by 'phagocytoseCell', this method will process the peptides that are derived from that cell. Different APCs, in different compartments, are interested in different
 	 * peptides; overriding this method allows cell specific behaviours to be implemented. 
 	 */
-	protected abstract void performPhagocytosisOfCell(Set<Molecule> presentable);
+	protected abstract void performPhagocytosisOfCell(MoleculeSet presentable);
 	
 	/**
 	 * Returns a time at which an immature APC will become mature, based on the probability distribution parameters. 
 	 * @return
 	 */
-	protected static double calculateTimeImmatureDurationEnds()
+	protected static double calculateTimeImmatureDurationEnds(TregSimulation sim, RandomStream random)
 	{
-		double interval = TregSimulation.sim.random.nextGaussian();
-		interval *= (retrieveImmatureDurationStdDev()/ 2.0);	// one random.gaussian stdDev = 2* stdDevs for apoptosis in partial maturity.
-		interval += retrieveImmatureDurationMean();				// shift the mean from 0.0 to what we desire.
-		return interval + TregSimulation.sim.schedule.getTime();		// convert into absolute time and return.
+		double interval = random.nextGaussian();
+		interval *= (retrieveImmatureDurationStdDev(sim)/ 2.0);	// one random.gaussian stdDev = 2* stdDevs for apoptosis in partial maturity.
+		interval += retrieveImmatureDurationMean(sim);				// shift the mean from 0.0 to what we desire.
+		return interval + sim.schedule.getTime();		// convert into absolute time and return.
 	}
 	
 	
-	protected static double calculateAbsoluteTimeOfDeath()
+	protected static double calculateAbsoluteTimeOfDeath(TregSimulation sim, RandomStream random)
 	{
-		double interval = TregSimulation.sim.random.nextGaussian();
-		interval *= (timeOfDeathStdDev / 2.0);
-		interval += timeOfDeathMean;
-		return interval + TregSimulation.sim.schedule.getTime();
+		double interval = random.nextGaussian();
+		interval *= (params(sim).timeOfDeathStdDev / 2.0);
+		interval += params(sim).timeOfDeathMean;
+		return interval + sim.schedule.getTime();
 		
 	}
 	
@@ -186,23 +241,26 @@ public abstract class APC_Impl extends Cell_Impl implements APC
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("APC").item(0);
 		
-		immatureDurationStdDev = Double.parseDouble(pE.getElementsByTagName("immatureDurationStdDev").item(0).getTextContent());
-		immatureDurationMean = Double.parseDouble(pE.getElementsByTagName("immatureDurationMean").item(0).getTextContent());
+		p.immatureDurationStdDev = Double.parseDouble(pE.getElementsByTagName("immatureDurationStdDev").item(0).getTextContent());
+		p.immatureDurationMean = Double.parseDouble(pE.getElementsByTagName("immatureDurationMean").item(0).getTextContent());
+		
+		p.costimExpressionDelayStdDev = Double.parseDouble(pE.getElementsByTagName("costimExpressionDelayStdDev").item(0).getTextContent());
+		p.costimExpressionDelayMean = Double.parseDouble(pE.getElementsByTagName("costimExpressionDelayMean").item(0).getTextContent());
 		
-		costimExpressionDelayStdDev = Double.parseDouble(pE.getElementsByTagName("costimExpressionDelayStdDev").item(0).getTextContent());
-		costimExpressionDelayMean = Double.parseDouble(pE.getElementsByTagName("costimExpressionDelayMean").item(0).getTextContent());
+		p.mhcExpressionDelayMean = Double.parseDouble(pE.getElementsByTagName("mhcExpressionDelayMean").item(0).getTextContent());
+		p.mhcExpressionDelayStdDev = Double.parseDouble(pE.getElementsByTagName("mhcExpressionDelayStdDev").item(0).getTextContent());
 		
-		mhcExpressionDelayMean = Double.parseDouble(pE.getElementsByTagName("mhcExpressionDelayMean").item(0).getTextContent());
-		mhcExpressionDelayStdDev = Double.parseDouble(pE.getElementsByTagName("mhcExpressionDelayStdDev").item(0).getTextContent());
+		p.timeOfDeathMean = Double.parseDouble(pE.getElementsByTagName("timeOfDeathMean").item(0).getTextContent());
+		p.timeOfDeathStdDev = Double.parseDouble(pE.getElementsByTagName("timeOfDeathStdDev").item(0).getTextContent());
 		
-		timeOfDeathMean = Double.parseDouble(pE.getElementsByTagName("timeOfDeathMean").item(0).getTextContent());
-		timeOfDeathStdDev = Double.parseDouble(pE.getElementsByTagName("timeOfDeathStdDev").item(0).getTextContent());
+		p.probabilityPhagocytosisToPeptide = Double.parseDouble(pE.getElementsByTagName("probabilityPhagocytosisToPeptide").item(0).getTextContent());
 		
-		probabilityPhagocytosisToPeptide = Double.parseDouble(pE.getElementsByTagName("probabilityPhagocytosisToPeptide").item(0).getTextContent());
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
 
@@ -1,22 +1,22 @@
 package sim2d.cell.impl;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import sim.engine.SimState;
 import sim.engine.Steppable;
+import sim2d.CellStepPhase;
+import sim2d.RandomStream;
 import sim2d.TregSimulation;
 import sim2d.cell.APC;
 import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
 import sim2d.cell.molecule.MHC_II_MBP;
 import sim2d.cell.molecule.MHC_I_CDR12;
 import sim2d.compartment.Compartment;
 import sim2d.molecule.CDR12;
 import sim2d.molecule.Fr3;
-import sim2d.molecule.Molecule;
+import sim2d.molecule.MoleculeSet;
 import sim2d.molecule.Type1;
 import sim2d.molecule.Type2;
 
@@ -25,8 +25,16 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 	/*
 	 * read-in parameters that affect all CD4THelper cells.  
 	 */ 		
-	private static double diff00;			// the probability that a Th cell will adopt a type 1 polarisation if type1 cytokine represents 0 to 80 percent of the local cytokine mix. 
-	private static double diff08;			// the probability that a Th cell will adopt a type 1 polarisation if type1 cytokine represents 80 or more percent of the local cytokine mix.
+	private static class Parameters
+	{
+		double diff00;			// the probability that a Th cell will adopt a type 1 polarisation if type1 cytokine represents 0 to 80 percent of the local cytokine mix. 
+		double diff08;			// the probability that a Th cell will adopt a type 1 polarisation if type1 cytokine represents 80 or more percent of the local cytokine mix.
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
+	
+	private static final MoleculeSet contents = MoleculeSet.of(Fr3.instance, CDR12.instance);	// the Vb8.2 derived peptides that an APC can derive from phagocytosing this cell.
 	
 	private Polarization wasPolarized = null;
 	
@@ -51,6 +59,40 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 	{
 		super(sim, location, parent);
 	}
+	
+	/**
+	 * Creates a naive cell placed randomly within the specified compartment, as the first constructor does, reusing a dead cell if the simulation keeps them. 
+	 */
+	public static CD4THelper createNaiveCD4THelper(TregSimulation sim, Compartment location)
+	{
+		final CD4THelper cell = (sim.cellPools == null) ? null : sim.cellPools.cd4THelpers.take();
+		if(cell == null)
+			return new CD4THelper(location);
+		cell.reviveNaive(sim, location);
+		return cell;
+	}
+	
+	/**
+	 * Creates a daughter cell at the coordinates of the parent, as the second constructor does, reusing a dead cell if the simulation keeps them. 
+	 */
+	public static CD4THelper createDaughterCD4THelper(TregSimulation sim, Compartment location, TCell_Impl parent)
+	{
+		final CD4THelper cell = (sim.cellPools == null) ? null : sim.cellPools.cd4THelpers.take();
+		if(cell == null)
+			return new CD4THelper(sim, location, parent);
+		cell.reviveDaughter(sim, location, parent);
+		return cell;
+	}
+	
+	/**
+	 * Returns this cell to the state of a new one, for reuse. 
+	 */
+	protected void reset()
+	{
+		super.reset();
+		wasPolarized = null;
+		polarization = null;
+	}
 
 
 	/**
@@ -58,7 +100,7 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 	 */
 	protected void spawnDaughterCell(TregSimulation sim)
 	{
-		new CD4THelper(sim, compartment, this); 
+		createDaughterCD4THelper(sim, compartment, this); 
 	}
 	
 	/**
@@ -67,10 +109,12 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 	public void step(SimState state) 
 	{
 		super.step(state);
+		if(isDead)														// a dead cell awaiting removal does nothing further.
+			return;
 		
 		if(polarization != null)										// the following activities cannot happen unless the cell has a polarization (ie, it is an effector).
 		{
-			polarization.updateMoleculeExpression(TregSimulation.sim);
+			polarization.updateMoleculeExpression(simulation);
 			if(getEffectorFunctionFromLocalActivation() == true)		// only secrete cytokines if Th cell has been locally activated. 
 			{
 				polarization.secreteCytokines();						// perform effector functions (cytokine secretion)
@@ -85,10 +129,19 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 	 */
 	protected void interactWithOtherCell(TregSimulation sim, Cell otherCell)
 	{
-		if(otherCell instanceof APC)
+		if(CellKind.isIn(otherCell.getKind(), CellKind.APCS))
 			interactWithAPC( sim, (APC)otherCell );
 	}	
 	
+	/**
+	 * Th cells interact only with APCs, co-located T cells need not be visited.
+	 */
+	protected int interactionPartnerKinds()
+	{	return CellKind.APCS;	}
+	
+	public int getKind()
+	{	return CellKind.CD4TH;	}
+	
 	/**
 	 * What happens when an effector CD4Th1 cell interacts with an APC. At this point it has already been established that the APC expressed MHC:peptide complexes for which this cell is specific. 
 	 */
@@ -128,6 +181,8 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 	{
 		super.becomeApoptotic(sim);										// perform parent class operations.
 		polarization = null;											// apoptotic THelper cells lose their polarity. 
+		setCode(TCellStore.POLARIZATION, TCellStore.UNPOLARIZED);
+		TCellCensus.recountLater(this);
 	}
 	
 	/**
@@ -159,22 +214,24 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 		double chanceOfTh1;												// will store the probability that the CD4T cell differentates in a Th1 direction.
 
 		if (type1 + type2 == 0)											// no quantity of either cytokine, favour type2 polarization. 
-			chanceOfTh1 = diff00;					
+			chanceOfTh1 = params(simulation).diff00;					
 		else 															// there are cytokines, so calculate probability based on ratios. 
 		{
 			/* stepwise probabilities dependent on the ratios of type1 to type2 cytokines */
 			double t1PropTotal = type1 / (type1 + type2);
-			if(t1PropTotal >= 0.8) 	{	chanceOfTh1 = diff08;}
-			else 					{	chanceOfTh1 = diff00;}
+			if(t1PropTotal >= 0.8) 	{	chanceOfTh1 = params(simulation).diff08;}
+			else 					{	chanceOfTh1 = params(simulation).diff00;}
 		}
 		
-		chosenPolarization = (sim.random.nextDouble() <= chanceOfTh1) ? Th1 : Th2; // chosen polarisation is determined here. 
+		chosenPolarization = (random.nextDouble() <= chanceOfTh1) ? Th1 : Th2; // chosen polarisation is determined here. 
 			
 		// perform the actual differentiation
 		if(chosenPolarization == Th1) 
 			this.polarization = new Th1Polarization(this); 
 		 else
 			this.polarization = new Th2Polarization(this);
+		setCode(TCellStore.POLARIZATION, (chosenPolarization == Th1) ? TCellStore.TH1 : TCellStore.TH2);	// held in the store for its census.
+		TCellCensus.recountLater(this);
 		
 		/* when Th cells become apoptotic they lose their polarization. However, only Th1 cells should be phagocytosed, so a record of which polarisation a cell had is maintained. 
 		 * This is in place of leaving the polarization variable assigned because there are tests regarding a cell's polarization based on it - a record is required, but not in a
@@ -188,7 +245,7 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 	 */
 	public boolean isEffector()
 	{
-		return (maturity == Maturity.Effector);
+		return (getMaturity() == Maturity.Effector);
 	}
 	
 	/**
@@ -196,20 +253,26 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 	 */
 	public void beApoptosised()
 	{
-		becomeApoptotic(TregSimulation.sim);
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred != null)								// cells are being stepped in parallel, this cell becomes apoptotic once they have all stepped.
+		{
+			deferred.add(new Runnable() { public void run() { beApoptosised(); } });
+			return;
+		}
+		becomeApoptotic(simulation);
 	}
 		
 	
 	/**
 	 *  Called on a cell by an APC when it phagocytoses a cell. This method is responsible for removing the cell from the compartment. 
 	 */
-	public Set<Molecule> bePhagocytosised(TregSimulation sim)
+	public MoleculeSet bePhagocytosised(TregSimulation sim)
 	{
 		isDead = true;												// to prevent any further activity with the cell in the current simulation step. 
 		sim.removeFromSimulationSchedule(this);						// critical, remove this cell from the simulation's schedule.
 		compartment.removeCellFollowingDeath(this);					// cell removes itself from the compartment.
-		
-		Set<Molecule> contents = new HashSet<Molecule>();		
+		leavePopulation(sim);
+		offerForReuse(sim);
 		
 		/* There is not a completely clear distinction between various Th cell lineages in the simulation. This ensures that instances of this generic 'Th' class that were at any point
 		 * polarized in a Th2 direction do not release Vb8.2 derived peptides to APCs (Vb8.2 cells tend to be type1 polarized. see
@@ -217,11 +280,8 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 		 * for more details.)
 		 */
 		if((wasPolarized instanceof Th2Polarization) == false)		// 'null' will return false here, so naive cells will return these values. 
-		{
-			contents.add(Fr3.instance);
-			contents.add(CDR12.instance);
-		}
-		return contents;											// pass peptides to the APC. 
+			return contents;										// pass peptides to the APC. 
+		return MoleculeSet.EMPTY;
 	}	
 	
 	/**
@@ -262,7 +322,7 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 	
 	public boolean getExpressingQa1()				// for use with the MASON gui ONLY. 
 	{
-		if(this.maturity == Maturity.Effector)													// only effector Th1 cells express Qa1. Note that naive Th1 cells do not have Polarization objects. 
+		if(getMaturity() == Maturity.Effector)													// only effector Th1 cells express Qa1. Note that naive Th1 cells do not have Polarization objects. 
 			if(this.getPolarization() instanceof Th1Polarization)
 			{
 				Th1Polarization polarization = (Th1Polarization) this.getPolarization();
@@ -273,7 +333,7 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 		
 	public double getTimeStopExpressingQa1()		// for use with the MASON gui only!
 	{
-		if(this.maturity == Maturity.Effector)													// only effector cells express Qa1 (and only Th1s do that). This is also safety in case a naive cell is quieried, since it does not have a Polarization object. 
+		if(getMaturity() == Maturity.Effector)													// only effector cells express Qa1 (and only Th1s do that). This is also safety in case a naive cell is quieried, since it does not have a Polarization object. 
 			if(this.getPolarization() instanceof Th1Polarization)
 			{
 				Th1Polarization polarization = (Th1Polarization) this.getPolarization();
@@ -310,12 +370,15 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{ 
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("CD4THelper").item(0);
 				
-		diff00 = Double.parseDouble(pE.getElementsByTagName("diff00").item(0).getTextContent());
-		diff08 = Double.parseDouble(pE.getElementsByTagName("diff08").item(0).getTextContent());
+		p.diff00 = Double.parseDouble(pE.getElementsByTagName("diff00").item(0).getTextContent());
+		p.diff08 = Double.parseDouble(pE.getElementsByTagName("diff08").item(0).getTextContent());
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 	
 	
@@ -329,15 +392,17 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 		// since naive cells will die without stimulation, this parameter defines the rate at which new cells are introduced into the system. It is automatically generated below
 		// in the constructor. It represents how many cells should be introduced per time step. 
 		public double probabilityNaiveTCellGenerated;
+		private final RandomStream random;				// the generator's own random numbers.
 		
-		public NaiveCD4THelperGenerator(double scheduledTimeSlice, int initialPopn)
+		public NaiveCD4THelperGenerator(TregSimulation sim, double scheduledTimeSlice, int initialPopn)
 		{
+			random = sim.newAgentStream();
 			/* cells are injected at roughly the same rate that they die of neglect (in absence of immunisation). For any one cell, the probability of death due to neglect
 			 * is calculated as the mean time taken for death by neglect, divided by the time slice (the resolution in the temporal domain that the simulation runs at), 
 			 * and then multiplied by the homeostatic number of cells that should be in the system (initialPopn). This gives the probability that a naive cell
 			 * is to be placed into the simulation at each timestep. 
 			 */ 
-			probabilityNaiveTCellGenerated = (initialPopn / retrieveApoptosisNaiveMean() ) * scheduledTimeSlice;
+			probabilityNaiveTCellGenerated = (initialPopn / retrieveApoptosisNaiveMean(sim) ) * scheduledTimeSlice;
 		}
 		
 		/**
@@ -347,9 +412,9 @@ public class CD4THelper extends TCell_Impl implements MHC_I_CDR12
 		{
 			final TregSimulation sim = (TregSimulation) state;
 			
-			if(sim.random.nextDouble() <= probabilityNaiveTCellGenerated)
+			if(random.nextDouble() <= probabilityNaiveTCellGenerated)
 			{
-				new CD4THelper(sim.circulation);
+				createNaiveCD4THelper(sim, sim.circulation);
 			}
 		}
 	}
@@ -5,9 +5,11 @@ import org.w3c.dom.Element;
 
 import sim.engine.SimState;
 import sim.engine.Steppable;
+import sim2d.RandomStream;
 import sim2d.TregSimulation;
 import sim2d.cell.APC;
 import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
 import sim2d.cell.molecule.MHC_II_Fr3;
 import sim2d.compartment.Compartment;
 import sim2d.molecule.Type1;
@@ -28,9 +30,14 @@ public class CD4Treg extends TCell_Impl
 	 * General properties of all CD4Treg cells. The difference between type1 secreted per hour and per time slice is to allow different length of time slice (simulation
 	 * steps) to be run without affecting the dynamics of how much is secreted in the longer term. 
 	 */	
-	private static double type1SecretedPerHourWhenActivated;				// the quantity of type 1 cytokines secreted per hour by an activated CD4Th1 cell.
-	private static double type1SecretedPerTimeslice;						// the quantity of type 1 cytokines secreted per simulation time slice by an activated CD4Th1 cell.
-
+	private static class Parameters
+	{
+		double type1SecretedPerHourWhenActivated;				// the quantity of type 1 cytokines secreted per hour by an activated CD4Th1 cell.
+		double type1SecretedPerTimeslice;						// the quantity of type 1 cytokines secreted per simulation time slice by an activated CD4Th1 cell.
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
 	/**
 	 * Constructor that places the cell in a random location within the specified compartment.
@@ -65,6 +72,8 @@ public class CD4Treg extends TCell_Impl
 	public void step(SimState state) 
 	{
 		super.step(state);											// this method is overridden, a lot of function common to all T cells is carried out in the superclass method. 
+		if(isDead)													// a dead cell awaiting removal does nothing further.
+			return;
 		
 		if(getEffectorFunctionFromLocalActivation())				// cytokine secretion is considered an effector function, and the cell must be locally activated to perform it.  
 			secreteCytokines();
@@ -75,10 +84,19 @@ public class CD4Treg extends TCell_Impl
 	 */
 	protected void interactWithOtherCell(TregSimulation sim, Cell otherCell)
 	{
-		if(otherCell instanceof APC)
+		if(CellKind.isIn(otherCell.getKind(), CellKind.APCS))
 			interactWithAPC( sim, (APC)otherCell );
 	}
 	
+	/**
+	 * CD4Tregs interact only with APCs.
+	 */
+	protected int interactionPartnerKinds()
+	{	return CellKind.APCS;	}
+	
+	public int getKind()
+	{	return CellKind.CD4TREG;	}
+	
 	/**
 	 * Handles interaction between an effector CD4Treg and an APC.  
 	 */
@@ -104,9 +122,9 @@ public class CD4Treg extends TCell_Impl
 	 */
 	private void secreteCytokines()
 	{		
-		if(maturity == Maturity.Effector)							// if the CD4Treg is an effector cell... 
+		if(getMaturity() == Maturity.Effector)							// if the CD4Treg is an effector cell... 
 		{	
-			compartment.receiveSecretedMolecules(Type1.instance, type1SecretedPerTimeslice, this);	// then secrete type1 cytokine.
+			compartment.receiveSecretedMolecules(Type1.instance, params(simulation).type1SecretedPerTimeslice, this);	// then secrete type1 cytokine.
 		}
 	}
 	
@@ -134,13 +152,15 @@ public class CD4Treg extends TCell_Impl
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("CD4Treg").item(0);
 
-		type1SecretedPerHourWhenActivated = Double.parseDouble(pE.getElementsByTagName("type1SecretedPerHourWhenActivated").item(0).getTextContent());
-		type1SecretedPerTimeslice = type1SecretedPerHourWhenActivated * TregSimulation.sim.timeSlice;
+		p.type1SecretedPerHourWhenActivated = Double.parseDouble(pE.getElementsByTagName("type1SecretedPerHourWhenActivated").item(0).getTextContent());
+		p.type1SecretedPerTimeslice = p.type1SecretedPerHourWhenActivated * sim.timeSlice;
 		
+		sim.setClassParameters(parameterSlot, p);
 	}
 	
 	
@@ -154,15 +174,17 @@ public class CD4Treg extends TCell_Impl
 		// since naive cells will die without stimulation, this parameter defines the rate at which new cells are introduced into the system. It is automatically generated below
 		// in the constructor. It represents how many cells should be introduced per time step. 
 		public double probabilityNaiveTCellGenerated;	
+		private final RandomStream random;				// the generator's own random numbers.
 		
-		public NaiveCD4TregGenerator(double scheduledTimeSlice, int initialPopn)
+		public NaiveCD4TregGenerator(TregSimulation sim, double scheduledTimeSlice, int initialPopn)
 		{
+			random = sim.newAgentStream();
 			/* cells are injected at roughly the same rate that they die of neglect (in absence of immunisation). For any one cell, the probability of death due to neglect
 			 * is calculated as the mean time taken for death by neglect, divided by the time slice (the resolution in the temporal domain that the simulation runs at), 
 			 * and then multiplied by the homeostatic number of cells that should be in the system (initialPopn). This gives the probability that a naive cell
 			 * is to be placed into the simulation at each timestep. 
 			 */
-			probabilityNaiveTCellGenerated = (initialPopn / retrieveApoptosisNaiveMean() ) * scheduledTimeSlice;
+			probabilityNaiveTCellGenerated = (initialPopn / retrieveApoptosisNaiveMean(sim) ) * scheduledTimeSlice;
 		}
 		
 		/**
@@ -172,7 +194,7 @@ public class CD4Treg extends TCell_Impl
 		{
 			final TregSimulation sim = (TregSimulation) state;
 			
-			if(sim.random.nextDouble() <= probabilityNaiveTCellGenerated)
+			if(random.nextDouble() <= probabilityNaiveTCellGenerated)
 			{
 				new CD4Treg(sim.circulation) ;
 			}
@@ -5,14 +5,15 @@ import org.w3c.dom.Element;
 
 import sim.engine.SimState;
 import sim.engine.Steppable;
+import sim2d.RandomStream;
 import sim2d.TregSimulation;
 import sim2d.cell.APC;
 import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
 import sim2d.cell.molecule.CD200;
 import sim2d.cell.molecule.CD200R;
 import sim2d.cell.molecule.MHC_I_CDR12;
 import sim2d.compartment.Compartment;
-import sim2d.dataCollection.dataLoggers.CD4Th1ApoptosisedDataLogger;
 import sim2d.molecule.Type1;
 
 /**
@@ -25,14 +26,16 @@ public class CD8Treg extends TCell_Impl implements CD200
 	/*
 	 * General properties of all CD8Treg cells
 	 */
-	private static double type1SecretedPerHourWhenActivated;				// the quantity of type 1 cytokines secreted per hour by an activated CD4Th1 cell.
-	private static double type1SecretedPerTimeslice;						// the quantity of type 1 cytokines secreted per simulation time slice by an activated CD4Th1 cell. This is dynamically calculated.
-	
-	private static double cd8TregToCD4ThelperSpecificityDropOff;			// 0.0 will remove all interaction between CD8Treg and Th1, 1.0 will have a normal interaction with no dropoff. 
+	private static class Parameters
+	{
+		double type1SecretedPerHourWhenActivated;				// the quantity of type 1 cytokines secreted per hour by an activated CD4Th1 cell.
+		double type1SecretedPerTimeslice;						// the quantity of type 1 cytokines secreted per simulation time slice by an activated CD4Th1 cell. This is dynamically calculated.
+		double cd8TregToCD4ThelperSpecificityDropOff;			// 0.0 will remove all interaction between CD8Treg and Th1, 1.0 will have a normal interaction with no dropoff. 
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
-	public static CD4Th1ApoptosisedDataLogger cd4Th1ApopDL;					// this is a data logger that collects data on where and when CD4Th1 cells are killed by CD8Treg cells.
-																			// it is static, because we wish to know how many are being killed throughout the system, not how many are being killed by individual
-																			// CD8Treg instances. Making this static provides an easy way for all CD8Treg instances to access the logger to record events. 
 	private boolean expressingCD200 = false;								// does not express CD200 upon instantiation. 
 	
 	/**
@@ -52,6 +55,39 @@ public class CD8Treg extends TCell_Impl implements CD200
 	{
 		super(sim, location, parent);
 	}
+	
+	/**
+	 * Creates a naive cell placed randomly within the specified compartment, as the first constructor does, reusing a dead cell if the simulation keeps them. 
+	 */
+	public static CD8Treg createNaiveCD8Treg(TregSimulation sim, Compartment location)
+	{
+		final CD8Treg cell = (sim.cellPools == null) ? null : sim.cellPools.cd8Tregs.take();
+		if(cell == null)
+			return new CD8Treg(location);
+		cell.reviveNaive(sim, location);
+		return cell;
+	}
+	
+	/**
+	 * Creates a daughter cell at the coordinates of the parent, as the second constructor does, reusing a dead cell if the simulation keeps them. 
+	 */
+	public static CD8Treg createDaughterCD8Treg(TregSimulation sim, Compartment location, TCell_Impl parent)
+	{
+		final CD8Treg cell = (sim.cellPools == null) ? null : sim.cellPools.cd8Tregs.take();
+		if(cell == null)
+			return new CD8Treg(sim, location, parent);
+		cell.reviveDaughter(sim, location, parent);
+		return cell;
+	}
+	
+	/**
+	 * Returns this cell to the state of a new one, for reuse. 
+	 */
+	protected void reset()
+	{
+		super.reset();
+		expressingCD200 = false;
+	}
 
 	
 	/**
@@ -59,7 +95,7 @@ public class CD8Treg extends TCell_Impl implements CD200
 	 */
 	protected void spawnDaughterCell(TregSimulation sim)
 	{
-		new CD8Treg(sim, compartment, this);
+		createDaughterCD8Treg(sim, compartment, this);
 	}
 	
 	/**
@@ -68,6 +104,8 @@ public class CD8Treg extends TCell_Impl implements CD200
 	public void step(SimState state) 
 	{
 		super.step(state);										// make sure that all things in the super class are performed first. 
+		if(isDead)												// a dead cell awaiting removal does nothing further.
+			return;
 		
 		if(getEffectorFunctionFromLocalActivation())			// local activation must take place before effector functions can be performed. 
 			secreteCytokines();
@@ -78,27 +116,37 @@ public class CD8Treg extends TCell_Impl implements CD200
 	 */
 	protected void interactWithOtherCell(TregSimulation sim, Cell otherCell)
 	{
-		if(otherCell instanceof APC)
+		final int kind = otherCell.getKind();
+		if(CellKind.isIn(kind, CellKind.APCS))
 			interactWithAPC( sim, (APC)otherCell );
-		else if (otherCell instanceof CD4THelper)
+		else if (kind == CellKind.CD4TH)
 			if( ((CD4THelper)otherCell).getPolarization() instanceof Th1Polarization )		// interaction is only with Th1 cells, not Th2 cells. 
 				interactWithCD4Th1( (CD4THelper)otherCell );
 		
-		if(otherCell instanceof CD200R)
+		if(CellKind.isIn(kind, CellKind.DENDRITIC_CELLS))		// the cells expressing CD200R.
 		{														// CD200 negative signalling, but only if this pathway has been activated in the simulation
-			if( DendriticCell.cd200CytokineSwitching == true || DendriticCell.cd200GradualReductionPrimingCapacity == true)
+			if( DendriticCell.retrieveCD200CytokineSwitching(simulation) == true || DendriticCell.retrieveCD200GradualReductionPrimingCapacity(simulation) == true)
 				if( ((CD200R)otherCell).getExpressing_CD200R() && this.expressingCD200 )   // other cell must currently express CD200R, and this one must express CD200
 					((CD200R)otherCell).receiveCD200RNegativeSignal();
 		}
 	}	
 	
+	/**
+	 * CD8Tregs interact with APCs and with CD4Th cells; other T cells need not be visited.
+	 */
+	protected int interactionPartnerKinds()
+	{	return CellKind.APCS | CellKind.bit(CellKind.CD4TH);	}
+	
+	public int getKind()
+	{	return CellKind.CD8TREG;	}
+	
 	/**
 	 * What happens when an effector CD8Treg cell interacts with an APC. Since activated CD8Treg cells are interested in CD4THelper cells, rather than APCs, we don't perform any killing or anything here,
 	 * just local activation in case is has not already occurred. 
 	 */
 	protected void interactWithAPCEffector(APC apc)
 	{	
-		effectorTCellStimulated(TregSimulation.sim);			// perform some housekeeping, since we are performing effector function here. 
+		effectorTCellStimulated(simulation);			// perform some housekeeping, since we are performing effector function here. 
 	}
 	
 	/**
@@ -106,7 +154,7 @@ public class CD8Treg extends TCell_Impl implements CD200
 	 */
 	public void interactWithCD4Th1(CD4THelper cd4th1)
 	{
-		if(maturity != Maturity.Effector)						// only activated CD8Treg cells can apoptosise CD4Th1 cells
+		if(getMaturity() != Maturity.Effector)						// only activated CD8Treg cells can apoptosise CD4Th1 cells
 			return;
 		
 		if(cd4th1.isEffector() == false)						// only activated CD4Th1 cells can be apoptosised
@@ -114,10 +162,10 @@ public class CD8Treg extends TCell_Impl implements CD200
 						 
 		if(attemptToInstigateSpecificityBasedBinding(cd4th1)) 	// probabilistic, specificity-determined attempt to form a binding with Qa-1 expressed on the CD4Th1 cell.
 		{
-			effectorTCellStimulated(TregSimulation.sim);		// perform some housekeeping, since we are performing effector function here. 
+			effectorTCellStimulated(simulation);		// perform some housekeeping, since we are performing effector function here. 
 							
 			cd4th1.beApoptosised();								// apoptosise the CD4Th1 cell
-			cd4Th1ApopDL.logApoptosisEvent(this);				// record that this Th1 has been killed (this is data logging, not logic of the simulation)
+			simulation.cd4Th1ApopDL.logApoptosisEvent(this);				// record that this Th1 has been killed (this is data logging, not logic of the simulation)
 		}
 	}
 	
@@ -135,9 +183,9 @@ public class CD8Treg extends TCell_Impl implements CD200
 	 */
 	private void secreteCytokines()
 	{
-		if(maturity == Maturity.Effector)						// if this cell is an effector cell.
+		if(getMaturity() == Maturity.Effector)						// if this cell is an effector cell.
 		{	
-			compartment.receiveSecretedMolecules(Type1.instance, type1SecretedPerTimeslice, this);	// then secrete type1 cytokine.
+			compartment.receiveSecretedMolecules(Type1.instance, params(simulation).type1SecretedPerTimeslice, this);	// then secrete type1 cytokine.
 		}
 	}
 
@@ -155,18 +203,18 @@ public class CD8Treg extends TCell_Impl implements CD200
 	{			
 		if( specificForThisCell(cell) )							// is cell expressing MHC-peptides for which this cell is specific?
 		{
-			double probabilityOfBinding = specificity;			// binding instigation with all cells is dependent on specificity
+			double probabilityOfBinding = getSpecificity();			// binding instigation with all cells is dependent on specificity
 			
 			if( cell instanceof CD4THelper ) 					// binding with a CD4Th1 can be further subject to a decreased number of adhesive molecules expressed on the T cell compared to the APC. 
-				probabilityOfBinding *= cd8TregToCD4ThelperSpecificityDropOff;	// ... and that's what this represents. 
+				probabilityOfBinding *= params(simulation).cd8TregToCD4ThelperSpecificityDropOff;	// ... and that's what this represents. 
 
 							// if CD200 negative signalling on DCs is active, then reduce probability of binding according to how suppressed DC is. 
-			if( DendriticCell.cd200CytokineSwitching == true || DendriticCell.cd200GradualReductionPrimingCapacity == true)
+			if( DendriticCell.retrieveCD200CytokineSwitching(simulation) == true || DendriticCell.retrieveCD200GradualReductionPrimingCapacity(simulation) == true)
 				if(cell instanceof DendriticCell)
 					probabilityOfBinding *= ((DendriticCell)cell).getCD200PrimingCapacity();
 				
 			
-			return (TregSimulation.sim.random.nextDouble() <= probabilityOfBinding);	// probabilistically decide if the binding succeeds. 
+			return (random.nextDouble() <= probabilityOfBinding);	// probabilistically decide if the binding succeeds. 
 				
 		}
 		
@@ -200,15 +248,18 @@ public class CD8Treg extends TCell_Impl implements CD200
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		
 		Element pE = (Element) params.getElementsByTagName("CD8Treg").item(0);
 		
-		type1SecretedPerHourWhenActivated = Double.parseDouble(pE.getElementsByTagName("type1SecretedPerHourWhenActivated").item(0).getTextContent());
-		type1SecretedPerTimeslice = type1SecretedPerHourWhenActivated * TregSimulation.timeSlice;
+		p.type1SecretedPerHourWhenActivated = Double.parseDouble(pE.getElementsByTagName("type1SecretedPerHourWhenActivated").item(0).getTextContent());
+		p.type1SecretedPerTimeslice = p.type1SecretedPerHourWhenActivated * sim.timeSlice;
 				
-		cd8TregToCD4ThelperSpecificityDropOff = Double.parseDouble(pE.getElementsByTagName("cd8TregToCD4ThelperSpecificityDropOff").item(0).getTextContent());
+		p.cd8TregToCD4ThelperSpecificityDropOff = Double.parseDouble(pE.getElementsByTagName("cd8TregToCD4ThelperSpecificityDropOff").item(0).getTextContent());
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 
 	
@@ -222,15 +273,17 @@ public class CD8Treg extends TCell_Impl implements CD200
 		// since naive cells will die without stimulation, this parameter defines the rate at which new cells are introduced into the system. It is automatically generated below
 		// in the constructor. It represents how many cells should be introduced per time step. 
 		public double probabilityNaiveTCellGenerated;	
+		private final RandomStream random;				// the generator's own random numbers.
 		
-		public NaiveCD8TregGenerator(double scheduledTimeSlice, int initialPopn)
+		public NaiveCD8TregGenerator(TregSimulation sim, double scheduledTimeSlice, int initialPopn)
 		{
+			random = sim.newAgentStream();
 			/* cells are injected at roughly the same rate that they die of neglect (in absence of immunisation). For any one cell, the probability of death due to neglect
 			 * is calculated as the mean time taken for death by neglect, divided by the time slice (the resolution in the temporal domain that the simulation runs at), 
 			 * and then multiplied by the homeostatic number of cells that should be in the system (initialPopn). This gives the probability that a naive cell
 			 * is to be placed into the simulation at each timestep. 
 			 */
-			probabilityNaiveTCellGenerated = (initialPopn / retrieveApoptosisNaiveMean() ) * scheduledTimeSlice;
+			probabilityNaiveTCellGenerated = (initialPopn / retrieveApoptosisNaiveMean(sim) ) * scheduledTimeSlice;
 		}
 		
 		/**
@@ -240,9 +293,9 @@ public class CD8Treg extends TCell_Impl implements CD200
 		{
 			final TregSimulation sim = (TregSimulation) state;
 			
-			if(sim.random.nextDouble() <= probabilityNaiveTCellGenerated)
+			if(random.nextDouble() <= probabilityNaiveTCellGenerated)
 			{
-				new CD8Treg(sim.circulation);
+				createNaiveCD8Treg(sim, sim.circulation);
 			}
 		}
 	}
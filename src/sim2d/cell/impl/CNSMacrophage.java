@@ -1,17 +1,17 @@
 package sim2d.cell.impl;
 
-import java.util.Set;
-
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import sim.engine.SimState;
+import sim2d.CellStepPhase;
 import sim2d.TregSimulation;
 import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
 import sim2d.cell.molecule.MHC_II_MBP;
 import sim2d.compartment.Compartment;
 import sim2d.molecule.MBP;
-import sim2d.molecule.Molecule;
+import sim2d.molecule.MoleculeSet;
 import sim2d.molecule.SDA;
 import sim2d.molecule.Type1;
 
@@ -30,16 +30,18 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 	/*
 	 * Properties of all CNS Macrophages
 	 */
-	private static double phagocytosisProbabilityImmature;			// the probability that an APC will phagocytose an apoptotic cell if the APC is immature.
-	private static double phagocytosisProbabilityMature;			// the probability that an APC will phagocytose an apoptotic cell if the APC is mature.
-	
-	
-	private static double type1RequiredForActivation;				// the quanitity of type 1 cytokines that must be perceived for (an MHC-expressing) APC to express costim molecules.
-	
-	private static double sdaSecretedPerHourWhenStimulated;		// the quantity of SDA molecules secreted every hour when this CNSMacrophage is stimulated. 
-	private static double sdaSecretedPerTimeslice;					// the quantity of SDA molecules secreted every timestep when this CNSM is stimulated.
-	
-	private static double basalMBPExpressionProbability;			// the proportion (range 0 - 1.0 ) of CNSM's that, at start of simulation, express MHC-II-MBP.  
+	private static class Parameters
+	{
+		double phagocytosisProbabilityImmature;			// the probability that an APC will phagocytose an apoptotic cell if the APC is immature.
+		double phagocytosisProbabilityMature;			// the probability that an APC will phagocytose an apoptotic cell if the APC is mature.
+		double type1RequiredForActivation;				// the quanitity of type 1 cytokines that must be perceived for (an MHC-expressing) APC to express costim molecules.
+		double sdaSecretedPerHourWhenStimulated;		// the quantity of SDA molecules secreted every hour when this CNSMacrophage is stimulated. 
+		double sdaSecretedPerTimeslice;					// the quantity of SDA molecules secreted every timestep when this CNSM is stimulated.
+		double basalMBPExpressionProbability;			// the proportion (range 0 - 1.0 ) of CNSM's that, at start of simulation, express MHC-II-MBP.  
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
 	/*
 	 * properties of CNS Macrophage instances
@@ -57,8 +59,11 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 	public CNSMacrophage(Compartment location)
 	{
 		super(location);
-		
-		if(TregSimulation.sim.random.nextDouble() <= basalMBPExpressionProbability)
+		beginResident();
+	}
+	private void beginResident()
+	{
+		if(random.nextDouble() <= params(simulation).basalMBPExpressionProbability)
 		{
 			// set up such that CNSM is able to present to Th1 and Th2 cells
 			this.canExpressMBP = true;
@@ -68,6 +73,31 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 			// set up such that CNSM is not activated and secreting SDA
 			this.stimulated = false;		// this is default, but repeated for clarity.
 		}
+		recount();
+	}
+	
+	/**
+	 * Creates a CNSMacrophage in the specified compartment, as the constructor does, reusing a dead one if the simulation keeps them. 
+	 */
+	public static CNSMacrophage createCNSMacrophage(TregSimulation sim, Compartment location)
+	{
+		final CNSMacrophage cnsm = (sim.cellPools == null) ? null : sim.cellPools.cnsMacrophages.take();
+		if(cnsm == null)
+			return new CNSMacrophage(location);
+		cnsm.revive(location);
+		cnsm.beginResident();
+		return cnsm;
+	}
+	
+	/**
+	 * Returns this CNSMacrophage's fields to their initial values, for reuse. 
+	 */
+	protected void reset()
+	{
+		super.reset();
+		canExpressMBP = false;
+		canExpressCoStim = false;
+		stimulated = false;
 	}
 	
 	/**
@@ -80,7 +110,8 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 		CNSMacrophage cnsm = new CNSMacrophage(location);				// create a normal CNSM. 
 	
 		// pick a time of death that lies somewhere in the range of now and what would have been chosen in a normal simulation run.
-		cnsm.timeOfDeath = calculateAbsoluteTimeOfDeath() * TregSimulation.sim.random.nextDouble();	
+		cnsm.timeOfDeath = calculateAbsoluteTimeOfDeath(cnsm.simulation, cnsm.random) * cnsm.random.nextDouble();	
+		cnsm.armTimers();
 		
 		return cnsm;
 	}
@@ -100,7 +131,7 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 	{
 		if(stimulated)		// if the CNS M has been stimulated (through receipt of type 1 cytokines) then it will secrete SDA.  
 		{
-			compartment.receiveSecretedMolecules(SDA.instance, sdaSecretedPerTimeslice, this);
+			compartment.receiveSecretedMolecules(SDA.instance, params(simulation).sdaSecretedPerTimeslice, this);
 		}
 	}
 	
@@ -140,7 +171,7 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 	protected void perceiveMolecules(TregSimulation sim)
 	{	
 		double quantity = compartment.getConcentrationMolecule(Type1.instance, this);
-		if(quantity >= type1RequiredForActivation)	// if there are enough type1 cytokines, and if the APC is expressing MHC, then become licensed for costims. 				
+		if(quantity >= params(simulation).type1RequiredForActivation)	// if there are enough type1 cytokines, and if the APC is expressing MHC, then become licensed for costims. 				
 		{		
 			/*
 			 * This is done even if the cell is not expressing MHC to prevent a never starting loop. CNS Macrophages will only express mhc if they phagocytose
@@ -170,29 +201,30 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 			return;												// dead APCs can't phagocytose anything.
 
 		/* APCs that are stimulated (and express MHC) are less likely to phagocytose other cells. */
-		double probOfPhagocytosis = phagocytosisProbabilityImmature;
+		double probOfPhagocytosis = params(simulation).phagocytosisProbabilityImmature;
 		if(expressingMHC())									// if DC is expressing MHC molecules (ie, it is stimulated)
-			probOfPhagocytosis = phagocytosisProbabilityMature;
+			probOfPhagocytosis = params(simulation).phagocytosisProbabilityMature;
 		
-		if(sim.random.nextDouble() >= probOfPhagocytosis)	// if we are unstimulated (no MHC) then we will continue, if we are stimulated then there is a high chance that we will not phagocytose this cell.
+		if(random.nextDouble() >= probOfPhagocytosis)	// if we are unstimulated (no MHC) then we will continue, if we are stimulated then there is a high chance that we will not phagocytose this cell.
 			return;
 		
-		Set<Molecule> presentable = cell.bePhagocytosised(sim);
+		final MoleculeSet presentable = cell.bePhagocytosised(sim);
 		if(presentable == null)
 			return;											// the phagocytosed cell contained no presentable peptides. 
 		
 		/* anything UPTO 'probabilityPhagocytosisToPeptide' will result in peptides being derived. Else, save computation time and return now instead. */ 
-		if(sim.random.nextDouble() >= probabilityPhagocytosisToPeptide)
+		if(random.nextDouble() >= retrieveProbabilityPhagocytosisToPeptide(simulation))
 			return;
 			
 		performPhagocytosisOfCell(presentable);
+		recount();											// may be called by the cell being phagocytosed, from its own step.
 	}
 	
 	/**
 	 * Handles the actual phagocytosis of a cell. It is protected, so it cannot be an entry point for the phagocytosis behaviour; there are guards that need to be checked first, and these
 	 * are handled in 'phagocytoseCell'. Here the molecules in 'presentable' are examined and CNSMacrophage specific behaviours are created in this method. 
 	 */
-	protected void performPhagocytosisOfCell(Set<Molecule> presentable)
+	protected void performPhagocytosisOfCell(MoleculeSet presentable)
 	{
 		if(presentable.contains(MBP.instance))				// check if the cell contains MBP. 
 		{
@@ -214,10 +246,15 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 		isApoptotic = true;
 		
 		// replace this cell with another immature one. 
-		new CNSMacrophage(this.compartment);						// homeostatic replacement of dead cells with immature ones. 
+		final TregSimulation sim = simulation;
+		final Compartment location = this.compartment;
+		CellStepPhase.performOrDefer(new Runnable() {
+			public void run() { createCNSMacrophage(sim, location); }	// homeostatic replacement of dead cells with immature ones. 
+		});
 		
-		TregSimulation.sim.removeFromSimulationSchedule(this);		// critical, remove this cell from the simulation's schedule.
+		simulation.removeFromSimulationSchedule(this);		// critical, remove this cell from the simulation's schedule.
 		compartment.removeCellFollowingDeath(this);					// remove yourself from the compartment. 
+		offerForReuse(sim);
 	}
 
 	
@@ -226,10 +263,22 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 	 */
 	protected void interactWithOtherCell(TregSimulation sim, Cell otherCell) 
 	{	 
-		if(otherCell instanceof APC_Impl && otherCell.isApoptotic())		// only deal with APCs here, T cells instigate this though their own step functions. 
+		if(CellKind.isIn(otherCell.getKind(), CellKind.APCS) && otherCell.isApoptotic())		// only deal with APCs here, T cells instigate this though their own step functions. 
 			phagocytoseCell(sim, otherCell);
 	}
 	
+	/**
+	 * As with DCs, only apoptotic APCs are phagocytosed here; other neighbours are ignored.
+	 */
+	protected int interactionPartnerKinds()
+	{	return CellKind.APCS;	}
+	
+	public int getKind()
+	{	return CellKind.CNS_MACROPHAGE;	}
+	
+	public int getStateCode()
+	{	return isMobile() ? CellKind.MOBILE : CellKind.IMMOBILE;	}
+	
 	public boolean isImmature()
 	{
 		return (expressingMHC() == false) && (getExpressing_CoStimulatory() == false) && (isApoptotic() == false);
@@ -263,11 +312,12 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 	}
 	
 	/**
-	 * Returns true when this cell has been phagocytosed, to prevent it being phagocytosed again in the same timestep. However, since these cells are immediately removed from
-	 * the simulation upon becoming apoptotic, this method is redundant here, and hence always returns false;
+	 * Returns true when this cell has been phagocytosed, to prevent it being phagocytosed again in the same timestep. These cells are removed from the simulation 
+	 * upon becoming apoptotic, so this is the case exactly when the cell is apoptotic. Ordinarily that makes this method redundant, but cells stepped in parallel
+	 * are not removed from their compartment until all have stepped, and must not be treated as neighbours in the meantime. 
 	 */
 	public boolean isDead()
-	{	return false;	}
+	{	return isApoptotic;	}
 	
 	/**
 	 * When this cell leaves an immature state, and starts to express MHC molecules (and potentially co-stims too) then its time of death must be set.
@@ -278,7 +328,8 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 		if(timeOfDeath != Double.MAX_VALUE)								// time of death is already set. 
 			return;
 		
-		timeOfDeath = calculateAbsoluteTimeOfDeath();
+		timeOfDeath = calculateAbsoluteTimeOfDeath(simulation, random);
+		armTimers();
 	}
 	
 	/**
@@ -296,28 +347,31 @@ public class CNSMacrophage extends APC_Impl implements MHC_II_MBP
 	}
 	
 	protected double getPhagocytosisProbabilityImmature()
-	{	return phagocytosisProbabilityImmature;		}
+	{	return params(simulation).phagocytosisProbabilityImmature;		}
 	
 	protected double getPhagocytosisProbabilityMature()
-	{	return phagocytosisProbabilityMature;		}
+	{	return params(simulation).phagocytosisProbabilityMature;		}
 	
 	
     /**
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("CNSMacrophage").item(0);
 
-		phagocytosisProbabilityImmature = Double.parseDouble(pE.getElementsByTagName("phagocytosisProbabilityImmature").item(0).getTextContent());
-		phagocytosisProbabilityMature = Double.parseDouble(pE.getElementsByTagName("phagocytosisProbabilityMature").item(0).getTextContent());
+		p.phagocytosisProbabilityImmature = Double.parseDouble(pE.getElementsByTagName("phagocytosisProbabilityImmature").item(0).getTextContent());
+		p.phagocytosisProbabilityMature = Double.parseDouble(pE.getElementsByTagName("phagocytosisProbabilityMature").item(0).getTextContent());
+		
+		p.basalMBPExpressionProbability = Double.parseDouble(pE.getElementsByTagName("basalMBPExpressionProbability").item(0).getTextContent());
 		
-		basalMBPExpressionProbability = Double.parseDouble(pE.getElementsByTagName("basalMBPExpressionProbability").item(0).getTextContent());
+		p.type1RequiredForActivation = Double.parseDouble(pE.getElementsByTagName("type1RequiredForActivation").item(0).getTextContent());
 		
-		type1RequiredForActivation = Double.parseDouble(pE.getElementsByTagName("type1RequiredForActivation").item(0).getTextContent());
+		p.sdaSecretedPerHourWhenStimulated = Double.parseDouble(pE.getElementsByTagName("sdaSecretedPerHourWhenStimulated").item(0).getTextContent());
+		p.sdaSecretedPerTimeslice = p.sdaSecretedPerHourWhenStimulated * sim.timeSlice;
 		
-		sdaSecretedPerHourWhenStimulated = Double.parseDouble(pE.getElementsByTagName("sdaSecretedPerHourWhenStimulated").item(0).getTextContent());
-		sdaSecretedPerTimeslice = sdaSecretedPerHourWhenStimulated * TregSimulation.sim.timeSlice;
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
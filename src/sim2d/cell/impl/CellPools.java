@@ -0,0 +1,103 @@
+package sim2d.cell.impl;
+
+import java.util.ArrayList;
+
+import sim.engine.Schedule;
+import sim2d.cell.CellKind;
+
+/**
+ * Keeps the cells of the kinds with the highest turnover that have died, such that they can be reused in place of creating new cells. CD4Th and CD8Treg
+ * cells proliferate and die of neglect in large numbers, and neurons, DCMigrates and CNS macrophages are replaced whenever one dies; without pooling every
+ * one of these is a new object, and every dead cell is garbage.
+ *
+ * A cell that dies is offered to the pool of its class (see 'Cell_Impl.offerForReuse'). It is not handed out again until the following timestep, by which
+ * time it has been removed from its compartment and from the schedule, and nothing that took place on the timestep of its death can still refer to it.
+ * A cell taken from a pool is returned to the state of a new one by its 'reset' methods, and then goes through the same steps as its constructor would,
+ * drawing a new serial number and the same random numbers in the same order. Runs are therefore identical with and without pooling.
+ *
+ * @author mark
+ *
+ */
+public final class CellPools
+{
+	final Pool<CD4THelper> cd4THelpers;
+	final Pool<CD8Treg> cd8Tregs;
+	final Pool<Neuron> neurons;
+	final Pool<DendriticCellMigrates> dendriticCellsMigrates;
+	final Pool<CNSMacrophage> cnsMacrophages;
+
+	public CellPools(Schedule schedule)
+	{
+		cd4THelpers = new Pool<CD4THelper>(schedule);
+		cd8Tregs = new Pool<CD8Treg>(schedule);
+		neurons = new Pool<Neuron>(schedule);
+		dendriticCellsMigrates = new Pool<DendriticCellMigrates>(schedule);
+		cnsMacrophages = new Pool<CNSMacrophage>(schedule);
+	}
+
+	/**
+	 * Places a cell that has died in the pool of its kind, if there is one. Cells of other classes are left to the garbage collector.
+	 */
+	void retire(Cell_Impl cell)
+	{
+		switch(cell.getKind())
+		{
+			case CellKind.CD4TH:					cd4THelpers.retire((CD4THelper) cell);							break;
+			case CellKind.CD8TREG:					cd8Tregs.retire((CD8Treg) cell);								break;
+			case CellKind.NEURON:					neurons.retire((Neuron) cell);									break;
+			case CellKind.DENDRITIC_CELL_MIGRATES:	dendriticCellsMigrates.retire((DendriticCellMigrates) cell);	break;
+			case CellKind.CNS_MACROPHAGE:			cnsMacrophages.retire((CNSMacrophage) cell);					break;
+		}
+	}
+
+	/**
+	 * The dead cells of one class.
+	 */
+	static final class Pool<T extends Cell_Impl>
+	{
+		private final Schedule schedule;
+		private final ArrayList<T> free = new ArrayList<T>();			// cells that died before the present timestep, ready for reuse.
+		private final ArrayList<T> retiring = new ArrayList<T>();		// cells that died on timestep 'retiringStep'.
+		private long retiringStep = -1;
+
+		Pool(Schedule schedule)
+		{
+			this.schedule = schedule;
+		}
+
+		/**
+		 * Returns a cell for reuse, or null if there is none. The caller must reset it.
+		 */
+		T take()
+		{
+			promote();
+			if(free.isEmpty())
+				return null;
+			final T cell = free.remove(free.size() - 1);
+			cell.pooled = false;
+			return cell;
+		}
+
+		void retire(T cell)
+		{
+			if(cell.pooled)												// a cell can be killed twice on the same timestep.
+				return;
+			promote();
+			cell.pooled = true;
+			retiring.add(cell);
+		}
+
+		/**
+		 * Once the timestep on which the retiring cells died is over, they are free to be reused.
+		 */
+		private void promote()
+		{
+			final long now = schedule.getSteps();
+			if(now == retiringStep)
+				return;
+			free.addAll(retiring);
+			retiring.clear();
+			retiringStep = now;
+		}
+	}
+}
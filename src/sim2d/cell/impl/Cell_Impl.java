@@ -1,24 +1,56 @@
 package sim2d.cell.impl;
 
 
-import java.util.Set;
-
+import sim2d.CellStepPhase;
+import sim2d.RandomStream;
 import sim2d.TregSimulation;
 import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
 import sim2d.compartment.Compartment;
-import sim2d.molecule.Molecule;
+import sim2d.compartment.Neighbours;
+import sim2d.molecule.MoleculeSet;
 
 public abstract class Cell_Impl implements Cell 
 {
 	public Compartment compartment;			// the compartment where this cell resides.
+	private int gridX = -1;					// the grid space this cell occupies within that compartment. 
+	private int gridY = -1;
+	private int stepSlot = -1;				// where the simulation's CellStepPhase holds this cell, if it does. 
+	protected final TregSimulation simulation;		// the simulation run this cell belongs to, that of the compartment it is created in.
+	private long serial;					// names this cell within its simulation run.
+	protected RandomStream random;			// all random numbers drawn by this cell come from here.
+	boolean pooled = false;					// true whilst this cell, having died, is held by the simulation's CellPools.
 	
 		
-	private Cell_Impl() {}					// a cell must have a compartment. No cell in the simulation can be instantiated without specifying a compartment. 
+	private Cell_Impl() { simulation = null; }	// a cell must have a compartment. No cell in the simulation can be instantiated without specifying a compartment. 
 	/**
 	 * Constructor places cell in a random location within the specified compartment. Intended to be used at setup of the simulation, not during its run. 
 	 * @param placeCloseToFirstPick
 	 */
 	public Cell_Impl(Compartment location, boolean placeCloseToFirstPick)
+	{
+		if(location == null)
+			throw new RuntimeException("null location!");
+		simulation = location.getSimulation();
+		serial = simulation.nextAgentSerial();
+		random = simulation.newAgentStream(serial);
+		enterRandomly(location);
+	}
+	/**
+	 * Constructor places the cell at the specified coordinates within the specified compartment. Intended to be used for the proliferation of cells.
+	 */
+	public Cell_Impl (TregSimulation sim, Compartment location, Cell parent)
+	{
+		simulation = sim;
+		serial = simulation.nextAgentSerial();
+		random = simulation.newAgentStream(serial);
+		enterBeside(location, parent);
+	}
+	
+	/**
+	 * Schedules this cell and places it in a random location within the compartment; the work of the first constructor. 
+	 */
+	protected final void enterRandomly(Compartment location)
 	{
 		if(location == null)
 			throw new RuntimeException("null location!");
@@ -28,10 +60,11 @@ public abstract class Cell_Impl implements Cell
 		compartment = location;
 		compartment.placeCellRandomlyInCompartmentCloseIfOccupied(this);
 	}
+	
 	/**
-	 * Constructor places the cell at the specified coordinates within the specified compartment. Intended to be used for the proliferation of cells.
+	 * Schedules this cell and places it at the location of the given cell; the work of the second constructor. 
 	 */
-	public Cell_Impl (TregSimulation sim, Compartment location, Cell parent)
+	protected final void enterBeside(Compartment location, Cell parent)
 	{
 		scheduleCell();
 		
@@ -39,9 +72,41 @@ public abstract class Cell_Impl implements Cell
 		compartment.receiveDaugherCell(this, parent);
 	}
 	
+	/**
+	 * Returns a cell taken from the simulation's CellPools to the state of a newly created one, before it enters a compartment. Subclasses that are pooled
+	 * override this to reset their own fields to their initial values, calling this first. The cell takes a new serial number, and the random stream that
+	 * goes with it, just as a new cell would.
+	 */
+	protected void reset()
+	{
+		final TregSimulation sim = simulation;
+		compartment = null;
+		gridX = -1;
+		gridY = -1;
+		stepSlot = -1;
+		serial = sim.nextAgentSerial();
+		random = sim.renewAgentStream(random, serial);
+	}
+	
+	/**
+	 * Called once this cell has died and left the simulation, offering it to the simulation's CellPools for reuse, if it keeps them. When cells are stepped
+	 * in parallel this happens once they have all stepped. 
+	 */
+	protected final void offerForReuse(TregSimulation sim)
+	{
+		final CellPools pools = sim.cellPools;
+		if(pools == null)
+			return;
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred == null)
+			pools.retire(this);
+		else
+			deferred.add(new Runnable() { public void run() { pools.retire(Cell_Impl.this); } });
+	}
+	
 	private void scheduleCell()
 	{
-		final TregSimulation sim = TregSimulation.sim;
+		final TregSimulation sim = simulation;
 		double time = sim.schedule.getTime() + sim.timeSlice;
 		if(time < sim.schedule.EPOCH)
 			time = sim.schedule.EPOCH;
@@ -54,6 +119,31 @@ public abstract class Cell_Impl implements Cell
 		compartment = newCompartment;
 	}
 	
+	public int getGridX()
+	{	return gridX;	}
+	public int getGridY()
+	{	return gridY;	}
+	
+	public Compartment getCompartment()
+	{	return compartment;	}
+	
+	public int getStepSlot()
+	{	return stepSlot;	}
+	public void setStepSlot(int slot)
+	{	stepSlot = slot;	}
+	
+	public long getSerial()
+	{	return serial;	}
+	
+	public RandomStream getRandom()
+	{	return random;	}
+	
+	public void setGridLocation(int x, int y)
+	{
+		gridX = x;
+		gridY = y;
+	}
+	
 	/**
 	 * At this high level abstract class we define which cells are chosen to interact with eachohter. Because this is at a high level the rules
 	 * are the same for all cells.
@@ -65,16 +155,29 @@ public abstract class Cell_Impl implements Cell
 	 */
 	protected final void interactWithOtherCellsGeneric(TregSimulation simulation)
 	{
-		Cell[] neighbours = compartment.getNeighbours(this);
-		if(neighbours.length <= 0)								// if there's nothing to interact with then we can return.
-			return;					
+		final Neighbours neighbours = Neighbours.acquire();
+		compartment.collectNeighbours(this, interactionPartnerKinds(), neighbours);
 		
-		for(Cell otherCell : neighbours)						// iterate over neighbours, and perform cell specific interactions
+		for(int i = 0; i < neighbours.size(); i++)				// iterate over neighbours, and perform cell specific interactions
 		{
-			interactWithOtherCell( simulation, otherCell );
+			interactWithOtherCell( simulation, neighbours.get(i) );
 		}
+		neighbours.release();
 	}
 	
+	/**
+	 * The kinds of cell (a set of CellKind) that this cell can interact with, such that neighbours it would ignore in 'interactWithOtherCell' need not be 
+	 * visited. Every neighbour is considered here. 
+	 */
+	protected int interactionPartnerKinds()
+	{	return CellKind.ANY;	}
+	
+	/**
+	 * Cells have only the one state unless a subclass says otherwise. 
+	 */
+	public int getStateCode()
+	{	return 0;	}
+	
 	/**
 	 * This method must be implemented in all concrete classes to indicate which cells types can interact with one another. 
 	 * @param sim TODO
@@ -87,7 +190,7 @@ public abstract class Cell_Impl implements Cell
 	 * Note that in most cases the cells of the simulation simply disappear when they become apoptotic, rather than having to seek out an APC to be removed from the simulation. Where this is not the
 	 * case this method should be overridden. 
 	 */
-	public Set<Molecule> bePhagocytosised(TregSimulation sim) 
+	public MoleculeSet bePhagocytosised(TregSimulation sim) 
 	{		return null;	
 	}
 }
@@ -1,15 +1,16 @@
 package sim2d.cell.impl;
 
 import java.util.Map;
-import java.util.Set;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import sim.engine.SimState;
+import sim2d.CellStepPhase;
 import sim2d.TregSimulation;
 import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
 import sim2d.cell.molecule.CD200;
 import sim2d.cell.molecule.CD200R;
 import sim2d.cell.molecule.MHC_II_Fr3;
@@ -20,7 +21,7 @@ import sim2d.compartment.Compartment;
 import sim2d.molecule.CDR12;
 import sim2d.molecule.Fr3;
 import sim2d.molecule.MBP;
-import sim2d.molecule.Molecule;
+import sim2d.molecule.MoleculeSet;
 import sim2d.molecule.Type1;
 import sim2d.molecule.Type2;
 
@@ -34,22 +35,30 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 {
 	
 	/*
-	 * general properties of all dendritic cells. 
+	 * general properties of all dendritic cells. Loaded once per simulation run and held by that run. 
 	 */
-	private static double phagocytosisProbabilityImmature;			// the probability that an APC will phagocytose an apoptotic cell if the APC is immature.
-	private static double phagocytosisProbabilityMature;				// the probability that an APC will phagocytose an apoptotic cell if the APC is mature.
-	
-	private static double type1RequiredForActivation;			// the quanitity of type 1 cytokines that must be perceived for (an MHC-expressing) APC to express costim molecules.   	
-	private static double type1SecretedPerTimesliceImmunized;	// immunized DCs secrete type1 cytokines, this determines how many.  
-		
-	private static double cytokineType2PolarizationRatio;		// the ratio of type2 to type1 cytokines required for the DC to become polarized in a type2 direction 
+	private static class Parameters
+	{
+		double phagocytosisProbabilityImmature;			// the probability that an APC will phagocytose an apoptotic cell if the APC is immature.
+		double phagocytosisProbabilityMature;				// the probability that an APC will phagocytose an apoptotic cell if the APC is mature.
+		double type1RequiredForActivation;			// the quanitity of type 1 cytokines that must be perceived for (an MHC-expressing) APC to express costim molecules.   	
+		double type1SecretedPerTimesliceImmunized;	// immunized DCs secrete type1 cytokines, this determines how many.  
+		double cytokineType2PolarizationRatio;		// the ratio of type2 to type1 cytokines required for the DC to become polarized in a type2 direction 
+		boolean mutualExclusivePeptidePresentation;					// whether DC Mutual Exclusive presentation of MBP & Type1 is ON
+		boolean costimRequiredForCytokineSecretion = false;	// whether co-stimulatory molecule expression is a pre-requisite for cytokine secretion (and hence type 1 polarization)
+		boolean cd200CytokineSwitching = false;					// whether or not CD200 negative signaling results in cytokine switching on DCs.
+		boolean cd200GradualReductionPrimingCapacity = false;    // whether or not CD200 negative signaling results in gradual reduction in DC priming capacity. 
+		double cd200PrimingCapacityReductionFactor = 1.0;		// factor by which priming capacity is multiplied upon each receipt of CD200 negative signalling. 
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
-	private static boolean mutualExclusivePeptidePresentation;					// whether DC Mutual Exclusive presentation of MBP & Type1 is ON
-	private static boolean costimRequiredForCytokineSecretion = false;	// whether co-stimulatory molecule expression is a pre-requisite for cytokine secretion (and hence type 1 polarization)
+	public static boolean retrieveCD200CytokineSwitching(TregSimulation sim)
+	{	return params(sim).cd200CytokineSwitching;	}
+	public static boolean retrieveCD200GradualReductionPrimingCapacity(TregSimulation sim)
+	{	return params(sim).cd200GradualReductionPrimingCapacity;	}
 	
-	public static boolean cd200CytokineSwitching = false;					// whether or not CD200 negative signaling results in cytokine switching on DCs.
-	public static boolean cd200GradualReductionPrimingCapacity = false;    // whether or not CD200 negative signaling results in gradual reduction in DC priming capacity. 
-	private static double cd200PrimingCapacityReductionFactor = 1.0;		// factor by which priming capacity is multiplied upon each receipt of CD200 negative signalling. 
 	/*
 	 * properties of dendritic cell instances. 
 	 */
@@ -86,6 +95,27 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		super(location);
 	}
 	
+	/**
+	 * Returns this DC's fields to their initial values, for reuse. 
+	 */
+	protected void reset()
+	{
+		super.reset();
+		canExpressMBP = false;
+		canExpressFr3 = false;
+		canExpressCDR12 = false;
+		canExpressMHCII = false;
+		canExpressQa1 = false;
+		canExpressCoStim = false;
+		expressingCD200R = false;
+		isDead = false;
+		immigrantFromPeriphery = false;
+		awaitingFirstPhagocytosisEvent = true;
+		immunizationDC = false;
+		polarization = Polarization.None;
+		cd200PrimingCapacity = 1.0;
+	}
+	
 	/**
 	 * Constructor is called when populating the simulation with Dendritic Cells. Some of these cells should be mature, and some should be immature, this constructor handles the creation 
 	 * of immature dendritic cells. Should not be used during the simulation run. 
@@ -99,7 +129,8 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		
 		// calculate a time at which this cell will cease to be immature. Note that to stop everything becoming mature at once we subtract some random proportion
 		// of the mean value (to make it appear that this has been going on for a long time already) 
-		dc.timeImmatureDurationEnds = sim.random.nextDouble() * calculateTimeImmatureDurationEnds();
+		dc.timeImmatureDurationEnds = dc.random.nextDouble() * calculateTimeImmatureDurationEnds(dc.simulation, dc.random);
+		dc.armTimers();
 
 		return dc;
 	}
@@ -120,7 +151,9 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		dc.polarization = DendriticCell.Polarization.Type2;	
 		
 		dc.canExpressMHCII = true;								// cell is going to become mature, so it will be able to express MHCII.  
-		dc.timeOfDeath = sim.random.nextDouble() * calculateAbsoluteTimeOfDeath();									// the cell will expire some time after it migrates. 
+		dc.timeOfDeath = dc.random.nextDouble() * calculateAbsoluteTimeOfDeath(dc.simulation, dc.random);									// the cell will expire some time after it migrates. 
+		dc.armTimers();
+		dc.recount();
 		
 		return dc;
 	}
@@ -143,7 +176,9 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		cell.canExpressMHCII = true;
 		
 		cell.timeImmatureDurationEnds = Double.MAX_VALUE;
-		cell.timeOfDeath = calculateAbsoluteTimeOfDeath(); 
+		cell.timeOfDeath = calculateAbsoluteTimeOfDeath(cell.simulation, cell.random); 
+		cell.armTimers();
+		cell.recount();
 		
 		cell.immigrantFromPeriphery = true;				// this cell should not be replaced when it dies. 
 		
@@ -162,7 +197,7 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		determinePolarization();							// pick a polarisation. 
 		setTimeToDeath();									// the cell will expire some time after it migrates.
 		
-		if(TregSimulation.cd4TregAbrogation == true)		// check conditions of CD4Treg abrogation experiment, if true, then Qa-1 expression by DCs is constitutive. 
+		if(simulation.cd4TregAbrogation == true)		// check conditions of CD4Treg abrogation experiment, if true, then Qa-1 expression by DCs is constitutive. 
 			canExpressQa1 = true;
 		else												// CD4Treg abrogation experiment is NOT set. Hence, Qa-1 expression must be induced. 
 			canExpressQa1 = false;
@@ -173,11 +208,11 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		if (polarization.equals(Polarization.Type1))
 		{
 			// if costimulatory molecules are required for cytokine secretion, and if co-stimulatory molecules are not expressed, then return immediately;
-			if(costimRequiredForCytokineSecretion && (canExpressCoStim == false))
+			if(params(simulation).costimRequiredForCytokineSecretion && (canExpressCoStim == false))
 				return;
 			
 			// if costimulatory molecules are not required, or if they are and they are being expressed, then proceed.
-			compartment.receiveSecretedMolecules(Type1.instance, type1SecretedPerTimesliceImmunized, this);	// then secrete type1 cytokine.
+			compartment.receiveSecretedMolecules(Type1.instance, params(simulation).type1SecretedPerTimesliceImmunized, this);	// then secrete type1 cytokine.
 		}
 	}
 	
@@ -199,10 +234,17 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		if(this.getExpressing_MHC_II_Fr3() == false)	// safety. DC cannot become licensed if it is not expressing the very molecules that CD4Th cells require to bind with it. 
 			throw new RuntimeException("Cannot become licensed for Qa-1 expression is no MHC-II-Fr3 is being expressed to attract the attention of a CD4Treg");
 		
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred != null)								// cells are being stepped in parallel, licensing takes effect once they have all stepped.
+		{
+			deferred.add(new Runnable() { public void run() { canExpressQa1 = true; recount(); } });
+			return;
+		}
 		if(canExpressQa1 == false)							// if Qa1 is not already being expressed. 
 		{
 			canExpressQa1 = true;			
 		}
+		recount();
 	}
 	
 	public boolean getLicensedForQa1()
@@ -224,11 +266,18 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 	 */
 	public void becomeLicensedForCoStim() 
 	{
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred != null)								// cells are being stepped in parallel, licensing takes effect once they have all stepped.
+		{
+			deferred.add(new Runnable() { public void run() { becomeLicensedForCoStim(); } });
+			return;
+		}
 		// not been licensed yet, and not expressing
 		if(canExpressCoStim == false)
 		{
 			canExpressCoStim = true;
 		}
+		recount();
 	}
 	
 	
@@ -238,11 +287,11 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 	 * in the vanilla DC (this this behaviour is likely to be amended to reflect that of the DCM). 
 	 * @param presentable
 	 */
-	protected void performPhagocytosisOfCell(Set<Molecule> presentable)
+	protected void performPhagocytosisOfCell(MoleculeSet presentable)
 	{
 		// if mutual exclusive peptide presentation is on, and the first phagocytosis even has occurred, then return immediately, and do not perform any
 		// peptide processing. 
-		if(mutualExclusivePeptidePresentation == true && awaitingFirstPhagocytosisEvent == false)
+		if(params(simulation).mutualExclusivePeptidePresentation == true && awaitingFirstPhagocytosisEvent == false)
 			return;											
 		
 		// perform peptide processing. 
@@ -260,7 +309,7 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 				canExpressMBP = true;
 
 		
-		if(mutualExclusivePeptidePresentation == true)		// relevant only for mutually exclusive peptide presentation. 
+		if(params(simulation).mutualExclusivePeptidePresentation == true)		// relevant only for mutually exclusive peptide presentation. 
 			// if, by the end of this potential peptide derivation, one of the 3 peptides has been derived, then we set the state flag accordingly. 
 			if(canExpressMBP || canExpressCDR12 || canExpressFr3)
 				awaitingFirstPhagocytosisEvent = false;
@@ -286,7 +335,7 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		 * For DCMigrates class it is not executed until the DCM becomes non-immature, since that is when MHCII is expressable; and the cell will not become licensed for Qa1 until 
 		 * 	MHCII is expressed.  
 		 */
-		if(quantity >= type1RequiredForActivation && expressingMHC())	// if there are enough type1 cytokines, and if the APC is expressing MHC, then become licensed for costims. 				
+		if(quantity >= params(simulation).type1RequiredForActivation && expressingMHC())	// if there are enough type1 cytokines, and if the APC is expressing MHC, then become licensed for costims. 				
 		{	
 			// receipt of type 1 cytokines allows cell to express co-stim molecules.
 			if(canExpressCoStim == false)
@@ -315,15 +364,33 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		final double proportion = type2 / (type1 + type2);								// proportion of the total cytokines that type 2 comprises.
 		
 		/* choose polarization based on the ratio of type2 to (type1 and 2) cytokines, and do some logging for data collection purposes. */
-		if(proportion >= cytokineType2PolarizationRatio) {
+		if(proportion >= params(simulation).cytokineType2PolarizationRatio) {
 			polarization = Polarization.Type2;
-			if(compartment == TregSimulation.sim.cns)
-				CNS2D.cumulativeCNSDCType2Polarized ++;	// record the polarization of a type2 DC.
+			if(compartment == simulation.cns)
+				recordCNSPolarization((CNS2D) compartment, Polarization.Type2);
 		} else {
 			polarization = Polarization.Type1;
-			if(compartment == TregSimulation.sim.cns)
-				CNS2D.cumulativeCNSDCType1Polarized ++;	// record the polarization of a type1 DC.
+			if(compartment == simulation.cns)
+				recordCNSPolarization((CNS2D) compartment, Polarization.Type1);
+		}
+	}
+	
+	/**
+	 * Counts the polarization of a DC in the CNS. The counts are shared by all the CNS's DCs, so when cells are stepped in parallel this is done once they have 
+	 * all stepped. 
+	 */
+	private static void recordCNSPolarization(final CNS2D cns, final Polarization p)
+	{
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred != null)
+		{
+			deferred.add(new Runnable() { public void run() { recordCNSPolarization(cns, p); } });
+			return;
 		}
+		if(p == Polarization.Type2)
+			cns.cumulativeCNSDCType2Polarized ++;						// record the polarization of a type2 DC.
+		else
+			cns.cumulativeCNSDCType1Polarized ++;						// record the polarization of a type1 DC.
 	}
 	
 
@@ -338,10 +405,13 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		
 		if(immunizationDC == false)							// assuming the cell is not the result of an immunization (and originates from the periphery), then replace it when it dies. 
 		{
-			new DendriticCell(this.compartment);	// homeostatic replacement of dead cells with immature ones.
+			final Compartment location = this.compartment;
+			CellStepPhase.performOrDefer(new Runnable() {
+				public void run() { new DendriticCell(location); }	// homeostatic replacement of dead cells with immature ones.
+			});
 		}
 		
-		TregSimulation.sim.removeFromSimulationSchedule(this);		// critical, remove this cell from the simulation's schedule.
+		simulation.removeFromSimulationSchedule(this);		// critical, remove this cell from the simulation's schedule.
 		compartment.removeCellFollowingDeath(this);					// remove yourself from the compartment. 
 	}
 	
@@ -350,12 +420,13 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 	 */
 	public void receiveCD200RNegativeSignal()
 	{
-		if(cd200CytokineSwitching)  								// CD200 induced cytokine switching
+		if(params(simulation).cd200CytokineSwitching)  								// CD200 induced cytokine switching
 			polarization = polarization.Type2;	             
 		
-		if(cd200GradualReductionPrimingCapacity) {					// CD200 induced reduction in priming capacity
-			cd200PrimingCapacity *= cd200PrimingCapacityReductionFactor;
+		if(params(simulation).cd200GradualReductionPrimingCapacity) {					// CD200 induced reduction in priming capacity
+			cd200PrimingCapacity *= params(simulation).cd200PrimingCapacityReductionFactor;
 		}
+		recount();
 	}
 	
 	/**
@@ -365,9 +436,18 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 	 */
 	protected void interactWithOtherCell(TregSimulation sim, Cell otherCell) 
 	{
-		if(otherCell instanceof APC_Impl && otherCell.isApoptotic())		// only deal with APCs here, T cells instigate this though their own step functions. 
+		if(CellKind.isIn(otherCell.getKind(), CellKind.APCS) && otherCell.isApoptotic())		// only deal with APCs here, T cells instigate this though their own step functions. 
 			phagocytoseCell(sim, otherCell);
 	}
+	
+	/**
+	 * DCs phagocytose only apoptotic APCs, no other neighbour is of interest.
+	 */
+	protected int interactionPartnerKinds()
+	{	return CellKind.APCS;	}
+	
+	public int getKind()
+	{	return CellKind.DENDRITIC_CELL;	}
 
 
 	public boolean isImmature()
@@ -404,7 +484,8 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 		if(timeOfDeath != Double.MAX_VALUE)								// if a time of death is already set, then do nothing and return. 
 			return;
 		
-		timeOfDeath = calculateAbsoluteTimeOfDeath();					// calculate the time of death. 
+		timeOfDeath = calculateAbsoluteTimeOfDeath(simulation, random);			// calculate the time of death. 
+		armTimers();
 	}
 	
 	/**
@@ -490,44 +571,47 @@ public class DendriticCell extends APC_Impl implements MHC_I_CDR12, MHC_II_Fr3,
 	
 
 	protected double getPhagocytosisProbabilityImmature()
-	{	return phagocytosisProbabilityImmature;		}
+	{	return params(simulation).phagocytosisProbabilityImmature;		}
 	
 	protected double getPhagocytosisProbabilityMature()
-	{	return phagocytosisProbabilityMature;		}
+	{	return params(simulation).phagocytosisProbabilityMature;		}
 	
 	/**
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("DendriticCell").item(0);
 		
-		phagocytosisProbabilityImmature = Double.parseDouble(pE.getElementsByTagName("phagocytosisProbabilityImmature").item(0).getTextContent());
-		phagocytosisProbabilityMature = Double.parseDouble(pE.getElementsByTagName("phagocytosisProbabilityMature").item(0).getTextContent());
+		p.phagocytosisProbabilityImmature = Double.parseDouble(pE.getElementsByTagName("phagocytosisProbabilityImmature").item(0).getTextContent());
+		p.phagocytosisProbabilityMature = Double.parseDouble(pE.getElementsByTagName("phagocytosisProbabilityMature").item(0).getTextContent());
 			
-		type1RequiredForActivation = Double.parseDouble(pE.getElementsByTagName("type1RequiredForActivation").item(0).getTextContent());
+		p.type1RequiredForActivation = Double.parseDouble(pE.getElementsByTagName("type1RequiredForActivation").item(0).getTextContent());
 				
 		final double type1SecretedPerHourImmunized = Double.parseDouble(pE.getElementsByTagName("type1SecretedPerHourImmunized").item(0).getTextContent());
-		type1SecretedPerTimesliceImmunized = type1SecretedPerHourImmunized * TregSimulation.sim.timeSlice;
+		p.type1SecretedPerTimesliceImmunized = type1SecretedPerHourImmunized * sim.timeSlice;
 				
-		cytokineType2PolarizationRatio = Double.parseDouble(pE.getElementsByTagName("cytokineType2PolarizationRatio").item(0).getTextContent());
+		p.cytokineType2PolarizationRatio = Double.parseDouble(pE.getElementsByTagName("cytokineType2PolarizationRatio").item(0).getTextContent());
 		
 		NodeList mutExPPNL = pE.getElementsByTagName("mutualExclusivePeptidePresentation");
 		if(mutExPPNL.getLength() > 0)
 		{
-			mutualExclusivePeptidePresentation = Boolean.parseBoolean(mutExPPNL.item(0).getTextContent()); 
+			p.mutualExclusivePeptidePresentation = Boolean.parseBoolean(mutExPPNL.item(0).getTextContent()); 
 		}
 		
 		NodeList coStimReqSecNL = pE.getElementsByTagName("costimRequiredForCytokineSecretion");
 		if(coStimReqSecNL.getLength() > 0)
 		{
-			costimRequiredForCytokineSecretion = Boolean.parseBoolean(coStimReqSecNL.item(0).getTextContent()); 
+			p.costimRequiredForCytokineSecretion = Boolean.parseBoolean(coStimReqSecNL.item(0).getTextContent()); 
 		}
 		
 		pE = (Element) params.getElementsByTagName("CD200").item(0);
-		cd200CytokineSwitching = Boolean.parseBoolean(pE.getElementsByTagName("cd200CytokineSwitching").item(0).getTextContent());
-		cd200GradualReductionPrimingCapacity = Boolean.parseBoolean(pE.getElementsByTagName("cd200GradualReductionPrimingCapacity").item(0).getTextContent());
-		cd200PrimingCapacityReductionFactor = Double.parseDouble(pE.getElementsByTagName("cd200PrimingCapacityReductionFactor").item(0).getTextContent());
+		p.cd200CytokineSwitching = Boolean.parseBoolean(pE.getElementsByTagName("cd200CytokineSwitching").item(0).getTextContent());
+		p.cd200GradualReductionPrimingCapacity = Boolean.parseBoolean(pE.getElementsByTagName("cd200GradualReductionPrimingCapacity").item(0).getTextContent());
+		p.cd200PrimingCapacityReductionFactor = Double.parseDouble(pE.getElementsByTagName("cd200PrimingCapacityReductionFactor").item(0).getTextContent());
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
@@ -6,10 +6,11 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import sim.engine.SimState;
+import sim2d.CellStepPhase;
 import sim2d.TregSimulation;
 import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
 import sim2d.compartment.Compartment;
-import sim2d.dataCollection.dataLoggers.DCApoptosedPeptidePresentationDataLogger;
 import sim2d.molecule.CDR12;
 import sim2d.molecule.Fr3;
 import sim2d.molecule.MBP;
@@ -24,12 +25,16 @@ import sim2d.molecule.Molecule;
  */
 public class DendriticCellMigrates extends DendriticCell 
 {
-	public static DCApoptosedPeptidePresentationDataLogger peptidePresentationDL;					// this is a data logger that collects data on what antigenic peptides an apoptotic DCMigrates cell expresses.
-	
 	/*
-	 * Static variables that are specific to all instances of DendriticCellMigrates
+	 * Static variables that are specific to all instances of DendriticCellMigrates, held per simulation run. 
 	 */
-	private static double lengthOfTimeMovingFollowingMigration; 	// when a DC migrates, it moves around for a short while before becoming statically placed. This variable dictates how long it can move around for.
+	private static class Parameters
+	{
+		double lengthOfTimeMovingFollowingMigration; 	// when a DC migrates, it moves around for a short while before becoming statically placed. This variable dictates how long it can move around for.
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
 	/*
 	 * local variables that are specific to individual instantiations of this class.
@@ -53,10 +58,38 @@ public class DendriticCellMigrates extends DendriticCell
 	public DendriticCellMigrates(Compartment location)
 	{
 		super(location);
-		
+		beginResident(location);
+	}
+	private void beginResident(Compartment location)
+	{
 		originalCompartment = location;								// note this cell's original location (where it is to be replaced in the event that this instance dies).
 												
 		canExpressMHCII = false;									// by default a DCMigrages cannot express MHCII molecules. 
+		recount();
+	}
+	
+	/**
+	 * Creates a DCM in the specified compartment, as the constructor does, reusing a dead DCM if the simulation keeps them. 
+	 */
+	public static DendriticCellMigrates createDendriticCellMigrates(final TregSimulation sim, final Compartment location)
+	{
+		final DendriticCellMigrates dcm = (sim.cellPools == null) ? null : sim.cellPools.dendriticCellsMigrates.take();
+		if(dcm == null)
+			return new DendriticCellMigrates(location);
+		dcm.revive(location);
+		dcm.beginResident(location);
+		return dcm;
+	}
+	
+	/**
+	 * Returns this DCM's fields to their initial values, for reuse. 
+	 */
+	protected void reset()
+	{
+		super.reset();
+		originalCompartment = null;
+		timeToStopMovingAfterMaturation = Double.MAX_VALUE;
+		isMobile = false;
 	}
 	
 	/**
@@ -73,7 +106,8 @@ public class DendriticCellMigrates extends DendriticCell
 		
 		// calculate a time at which this cell will cease to be immature, and it will migrate. Note that to stop everything migrating at once we subtract some random proportion
 		// of the mean value (to make it appear that this has been going on for a long time already) 
-		dcm.timeImmatureDurationEnds = sim.random.nextDouble() * calculateTimeImmatureDurationEnds();
+		dcm.timeImmatureDurationEnds = dcm.random.nextDouble() * calculateTimeImmatureDurationEnds(dcm.simulation, dcm.random);
+		dcm.armTimers();
 		
 		return dcm;
 	}
@@ -88,7 +122,6 @@ public class DendriticCellMigrates extends DendriticCell
 	 * @param compartmentDestination
 	 * @return
 	 */
-	private static int total = 0;
 	public static DendriticCellMigrates createDendriticCellMigratesMigrated(final TregSimulation sim, final Compartment compartmentSource, final Compartment compartmentDestination)
 	{
 		DendriticCellMigrates dcm = new DendriticCellMigrates(compartmentDestination);
@@ -103,7 +136,9 @@ public class DendriticCellMigrates extends DendriticCell
 		dcm.polarization = DendriticCell.Polarization.Type2;	
 		
 		dcm.canExpressMHCII = true;								// cell is going to become mature, so it will be able to express MHCII.  
-		dcm.timeOfDeath = sim.random.nextDouble() * calculateAbsoluteTimeOfDeath();									// the cell will expire some time after it migrates. 
+		dcm.timeOfDeath = dcm.random.nextDouble() * calculateAbsoluteTimeOfDeath(dcm.simulation, dcm.random);									// the cell will expire some time after it migrates. 
+		dcm.armTimers();
+		dcm.recount();
 
 		return dcm;
 	}
@@ -114,6 +149,8 @@ public class DendriticCellMigrates extends DendriticCell
 	public void step(SimState state)
 	{
 		super.step(state);
+		if(isDead)											// a dead cell awaiting removal does nothing further.
+			return;
 		
 		final TregSimulation sim = (TregSimulation) state;
 		
@@ -148,6 +185,12 @@ public class DendriticCellMigrates extends DendriticCell
 	public boolean isMobile()
 	{	return isMobile;	}
 	
+	public int getKind()
+	{	return CellKind.DENDRITIC_CELL_MIGRATES;	}
+	
+	public int getStateCode()
+	{	return isMobile ? CellKind.MOBILE : CellKind.IMMOBILE;	}
+	
 	/**
 	 * Overridden method that allows specific behaviours to be implemented in subclasses in the event that this cell dies. 
 	 */
@@ -160,21 +203,26 @@ public class DendriticCellMigrates extends DendriticCell
 		isDead = true;
 		
 		/* replace this cell in its original compartment */
-		new DendriticCellMigrates(originalCompartment);				// homeostatic replacement of dead cells with immature ones.
+		final TregSimulation sim = simulation;
+		final Compartment location = originalCompartment;
+		CellStepPhase.performOrDefer(new Runnable() {
+			public void run() { createDendriticCellMigrates(sim, location); }	// homeostatic replacement of dead cells with immature ones.
+		});
 		
 		/* remove this cell from the simulation, and from the current compartment */
-		TregSimulation.sim.removeFromSimulationSchedule(this);		// critical, remove this cell from the simulation's schedule.
+		simulation.removeFromSimulationSchedule(this);		// critical, remove this cell from the simulation's schedule.
 		compartment.removeCellFollowingDeath(this);					// remove yourself from the compartment.
 		
-		peptidePresentationDL.logApoptoticAPEvent(this);			// record that this DCMigrates dies (this is data logging, not logic of the simulation).
+		simulation.peptidePresentationDL.logApoptoticAPEvent(this);			// record that this DCMigrates dies (this is data logging, not logic of the simulation).
+		offerForReuse(sim);
 	}
 	
 	
 	private void setTimeToStopMovingFollowingMigration()
 	{
-		timeToStopMovingAfterMaturation = TregSimulation.sim.schedule.getTime();						// set to now.
-		timeToStopMovingAfterMaturation += lengthOfTimeMovingFollowingMigration;						// add something akin to a mean. 
-		timeToStopMovingAfterMaturation += ((TregSimulation.sim.random.nextDouble() - 0.5) * 4.0); 		// add some variation. 
+		timeToStopMovingAfterMaturation = simulation.schedule.getTime();						// set to now.
+		timeToStopMovingAfterMaturation += params(simulation).lengthOfTimeMovingFollowingMigration;						// add something akin to a mean. 
+		timeToStopMovingAfterMaturation += ((random.nextDouble() - 0.5) * 4.0); 		// add some variation. 
 	}
 	
 	/**
@@ -198,13 +246,13 @@ public class DendriticCellMigrates extends DendriticCell
 	
 	public String getOriginalCompartment()
 	{
-		if(originalCompartment == TregSimulation.sim.cns)
+		if(originalCompartment == simulation.cns)
 			return "cns";
-		if(originalCompartment == TregSimulation.sim.cln)
+		if(originalCompartment == simulation.cln)
 			return "cln";
-		if(originalCompartment == TregSimulation.sim.slo)
+		if(originalCompartment == simulation.slo)
 			return "slo";
-		if(originalCompartment == TregSimulation.sim.spleen)
+		if(originalCompartment == simulation.spleen)
 			return "spleen";
 		else return "unknown";
 	}
@@ -214,10 +262,13 @@ public class DendriticCellMigrates extends DendriticCell
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("DendriticCellMigrates").item(0);
 
-		lengthOfTimeMovingFollowingMigration = Double.parseDouble(pE.getElementsByTagName("lengthOfTimeMovingFollowingMigration").item(0).getTextContent());
+		p.lengthOfTimeMovingFollowingMigration = Double.parseDouble(pE.getElementsByTagName("lengthOfTimeMovingFollowingMigration").item(0).getTextContent());
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
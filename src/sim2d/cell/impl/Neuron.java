@@ -1,19 +1,17 @@
 package sim2d.cell.impl;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import sim.engine.SimState;
+import sim2d.CellStepPhase;
 import sim2d.TregSimulation;
 import sim2d.cell.APC;
 import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
 import sim2d.compartment.Compartment;
-import sim2d.dataCollection.dataLoggers.NeuronsKilledDataLogger;
 import sim2d.molecule.MBP;
-import sim2d.molecule.Molecule;
+import sim2d.molecule.MoleculeSet;
 import sim2d.molecule.SDA;
 
 /**
@@ -31,13 +29,19 @@ import sim2d.molecule.SDA;
  */
 public class Neuron extends Cell_Impl
 {    
-	private static double apoptosisSDAThreshold;					// how much SDA this CNS cell needs to perceive at any single point in time before it becomes apoptotic.
+	private static class Parameters
+	{
+		double apoptosisSDAThreshold;					// how much SDA this CNS cell needs to perceive at any single point in time before it becomes apoptotic.
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
     
     private boolean isApoptotic = false;
 	
-	private boolean isDead = false;									// when the cell gets phagocytosed this is set to true to stop the 'step' method from re-stepping a cell that was phagocytosed by another in the same timeframe.
+	private static final MoleculeSet contents = MoleculeSet.of(MBP.instance);	// what an APC derives from phagocytosing a neuron.
 	
-	public static NeuronsKilledDataLogger neuronsKilledDL;			// data logger that records how many neurons have been killed over time. Now part of the simulation's logic.
+	private boolean isDead = false;									// when the cell gets phagocytosed this is set to true to stop the 'step' method from re-stepping a cell that was phagocytosed by another in the same timeframe.
 	
 	/**
 	 * Standard constructor to place a CNS cell in a compartment (should only be the CNS compartment). Used when initialising the simulation. The cell is placed randomly
@@ -57,7 +61,30 @@ public class Neuron extends Cell_Impl
 	 */
 	public Neuron(Compartment location, Cell placeAtThisCellsLocation)
 	{
-		super(TregSimulation.sim, location, placeAtThisCellsLocation);
+		super(location.getSimulation(), location, placeAtThisCellsLocation);
+	}
+	
+	/**
+	 * Creates a neuron at the location held by the specified cell, as the second constructor does, reusing a dead neuron if the simulation keeps them. 
+	 */
+	public static Neuron createReplacementNeuron(TregSimulation sim, Compartment location, Cell placeAtThisCellsLocation)
+	{
+		final Neuron cell = (sim.cellPools == null) ? null : sim.cellPools.neurons.take();
+		if(cell == null)
+			return new Neuron(location, placeAtThisCellsLocation);
+		cell.reset();
+		cell.enterBeside(location, placeAtThisCellsLocation);
+		return cell;
+	}
+	
+	/**
+	 * Returns this neuron to the state of a new one, for reuse. 
+	 */
+	protected void reset()
+	{
+		super.reset();
+		isApoptotic = false;
+		isDead = false;
 	}
 	
 	/**
@@ -84,9 +111,9 @@ public class Neuron extends Cell_Impl
 	private void perceiveSDA()
 	{
 		// enter apoptosis if there is more SDA at the neuron's location than the threshold governing neuron death.
-		if(apoptosisSDAThreshold < compartment.getConcentrationMolecule(SDA.instance, this)) {
+		if(params(simulation).apoptosisSDAThreshold < compartment.getConcentrationMolecule(SDA.instance, this)) {
 			isApoptotic = true;
-			neuronsKilledDL.logApoptosisEvent(this);							// log the fact that this neuron has just been killed. 
+			simulation.neuronsKilledDL.logApoptosisEvent(this);							// log the fact that this neuron has just been killed. 
 		}
 	}
 	
@@ -97,27 +124,38 @@ public class Neuron extends Cell_Impl
 	 */
 	protected void interactWithOtherCell(TregSimulation sim, Cell cell) 
 	{
-		if(cell instanceof APC)
+		if(CellKind.isIn(cell.getKind(), CellKind.APCS))
 			((APC)cell).phagocytoseCell(sim, this);									// APC handles phagocytosis of this cell. It also checks if this CNS cell is apoptotic.
 	}
+	
+	/**
+	 * Neurons interact only with APCs, which phagocytose them once apoptotic.
+	 */
+	protected int interactionPartnerKinds()
+	{	return CellKind.APCS;	}
+	
+	public int getKind()
+	{	return CellKind.NEURON;	}
 
 	/**
 	 * Handles the result of this neuron being phagocytosed. This method performs cleanup and tear down as the neuron is removed from the simulation and replaced by another. 
 	 * Neurons contain MBP, and APCs are able to derive MBP peptides from phagocytosing them, also handled by this method. 
 	 */
-	public Set<Molecule> bePhagocytosised(TregSimulation sim) 
+	public MoleculeSet bePhagocytosised(TregSimulation sim) 
 	{
 		isDead = true;															// prevent further stepping of this cell after it is dead. 
 		
-		new Neuron(this.compartment, this);									// homeostatic replacement of dead cells with immature ones.
+		final TregSimulation simulation = sim;
+		final Compartment location = this.compartment;
+		CellStepPhase.performOrDefer(new Runnable() {
+			public void run() { createReplacementNeuron(simulation, location, Neuron.this); }	// homeostatic replacement of dead cells with immature ones.
+		});
 		
 		sim.removeFromSimulationSchedule(this);									// critical, remove this cell from the simulation's schedule.
 		compartment.removeCellFollowingDeath(this);								// remove cell from compartment. 
+		offerForReuse(sim);
 	
-		Set<Molecule> contents = new HashSet<Molecule>();
-		contents.add(MBP.instance);												// place MBP contents of the cell into a hashmap, and return to the APC.  
-
-		return contents;
+		return contents;														// pass the MBP contents of the cell to the APC. 
 	}
 
 	public boolean isApoptotic() 
@@ -135,10 +173,13 @@ public class Neuron extends Cell_Impl
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("CNSCell").item(0);
 		
-		apoptosisSDAThreshold = Double.parseDouble(pE.getElementsByTagName("apoptosisSDAThreshold").item(0).getTextContent());
+		p.apoptosisSDAThreshold = Double.parseDouble(pE.getElementsByTagName("apoptosisSDAThreshold").item(0).getTextContent());
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
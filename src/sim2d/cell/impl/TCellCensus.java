@@ -0,0 +1,115 @@
+package sim2d.cell.impl;
+
+import sim2d.CellStepPhase;
+
+/**
+ * Counts the T cells held in one compartment's grid by kind, maturity and (for CD4Th cells) polarization, kept up to date as cells change rather than
+ * recounted each time data is collected. A cell is counted from when it is placed in the compartment's grid until it is removed from it (see 'enter' and
+ * 'leave', called by the compartment), and its count moves whenever its maturity or polarization changes (see 'TCell_Impl.recount'). Reading the census is
+ * then a matter of reading a handful of counters, whatever the size of the population.
+ *
+ * Kinds and polarizations are those of TCellStore.
+ *
+ * @author mark
+ *
+ */
+public final class TCellCensus
+{
+	private static final int kinds = 3;
+	private static final int maturities = TCell_Impl.Maturity.values().length;
+	private static final int polarizations = 3;
+
+	private final int[] counts = new int[kinds * maturities * polarizations];	// indexed by 'keyOf'.
+
+	/**
+	 * Starts counting the given cell, which has just been placed in the compartment's grid. A newly created cell is placed before it has any state, and is
+	 * counted once it takes its first maturity. 
+	 */
+	public void enter(TCell_Impl cell)
+	{
+		cell.census = this;
+		cell.censusKey = -1;
+		if(cell.kind < 0)
+			return;
+		final int key = keyOf(cell);
+		counts[key]++;
+		cell.censusKey = key;
+	}
+
+	/**
+	 * Stops counting the given cell, which has just been removed from the compartment's grid.
+	 */
+	public void leave(TCell_Impl cell)
+	{
+		if(cell.census != this)
+			return;
+		if(cell.censusKey >= 0)
+			counts[cell.censusKey]--;
+		cell.census = null;
+	}
+
+	/**
+	 * Moves the count of the given cell to match its present maturity and polarization.
+	 */
+	void recount(TCell_Impl cell)
+	{
+		final int key = keyOf(cell);
+		if(key == cell.censusKey)
+			return;
+		if(cell.censusKey >= 0)
+			counts[cell.censusKey]--;
+		counts[key]++;
+		cell.censusKey = key;
+	}
+
+	/**
+	 * The number of cells of the given kind, maturity and polarization.
+	 */
+	public int count(byte kind, TCell_Impl.Maturity maturity, byte polarization)
+	{	return counts[key(kind, maturity.ordinal(), polarization)];	}
+
+	/**
+	 * The number of cells of the given kind and maturity, of any polarization.
+	 */
+	public int count(byte kind, TCell_Impl.Maturity maturity)
+	{
+		final int from = key(kind, maturity.ordinal(), 0);
+		int n = 0;
+		for(int p = 0; p < polarizations; p++)
+			n += counts[from + p];
+		return n;
+	}
+
+	/**
+	 * The number of cells of the given kind.
+	 */
+	public int count(byte kind)
+	{
+		final int from = key(kind, 0, 0);
+		int n = 0;
+		for(int k = 0; k < maturities * polarizations; k++)
+			n += counts[from + k];
+		return n;
+	}
+
+	private static int key(int kind, int maturity, int polarization)
+	{	return (kind * maturities + maturity) * polarizations + polarization;	}
+
+	private static int keyOf(TCell_Impl cell)
+	{	return key(cell.code(TCellStore.KIND), cell.code(TCellStore.MATURITY), cell.code(TCellStore.POLARIZATION));	}
+
+	/**
+	 * Brings the census counting the given cell, if any, up to date with its maturity and polarization. When cells are stepped in parallel this happens once
+	 * they have all stepped, since the census is shared by every cell in the compartment.
+	 */
+	static void recountLater(final TCell_Impl cell)
+	{
+		if(cell.census == null)
+			return;
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred == null)
+			cell.census.recount(cell);
+		else
+			deferred.add(new Runnable() { public void run() { if(cell.census != null) cell.census.recount(cell); } });
+	}
+}
@@ -0,0 +1,198 @@
+package sim2d.cell.impl;
+
+import java.util.Arrays;
+
+/**
+ * Holds the state of a population of T cells as columns of primitive arrays, one row per cell, rather than as fields scattered across the cells themselves.
+ * A T cell keeps only a reference to the store holding it and its row within it (see 'TCell_Impl'), and its methods read and write its row; the cell
+ * objects are thin views over the store. Operations over the whole population, such as the census of states of maturity and the gathering of
+ * specificities, are then linear scans over a few arrays rather than a walk over every cell object in every compartment.
+ *
+ * Rows are kept dense. A cell that dies leaves the population through 'release', which copies its row into the cell's own fields (so that the dead cell can
+ * still be inspected), and moves the last row into the gap, telling the cell that owns it of its new row.
+ *
+ * When the simulation does not keep a population store, each T cell holds its state in its own fields, and no store exists.
+ *
+ * @author mark
+ *
+ */
+public final class TCellStore
+{
+	/* the kinds of T cell. */
+	public static final byte CD4TH = 0;
+	public static final byte CD4TREG = 1;
+	public static final byte CD8TREG = 2;
+
+	/* polarizations of CD4Th cells. */
+	public static final byte UNPOLARIZED = 0;
+	public static final byte TH1 = 1;
+	public static final byte TH2 = 2;
+
+	/* columns of 'codes'. */
+	static final int KIND = 0;
+	static final int MATURITY = 1;										// ordinal of 'TCell_Impl.Maturity'.
+	static final int POLARIZATION = 2;
+	static final int FLAGS = 3;
+	static final int codeColumns = 4;
+
+	/* bits of the FLAGS column. */
+	static final byte BOUND_TO_APC = 1;
+	static final byte EFFECTOR_FUNCTION = 2;								// effector function from local activation.
+
+	/* columns of 'values'. The timers hold absolute times, Double.MAX_VALUE when not set. */
+	static final int SPECIFICITY = 0;
+	static final int APOPTOSIS_NAIVE = 1;
+	static final int APOPTOSIS_PARTIAL = 2;
+	static final int AICD = 3;
+	static final int PROLIFERATION = 4;
+	static final int BECOME_EFFECTOR = 5;
+	static final int EFFECTOR_NEGLECT = 6;
+	static final int END_LOCAL_ACTIVATION_DELAY = 7;
+	static final int valueColumns = 8;
+
+	/* Each column occupies 'capacity' consecutive elements; column c of row r lies at [c * capacity + r]. */
+	private int capacity;
+	private int count = 0;
+	private TCell_Impl[] cells;
+	private byte[] codes;
+	private double[] values;
+
+	public TCellStore(int capacity)
+	{
+		this.capacity = capacity;
+		cells = new TCell_Impl[capacity];
+		codes = new byte[codeColumns * capacity];
+		values = new double[valueColumns * capacity];
+	}
+
+	/**
+	 * The number of cells held.
+	 */
+	public int size()
+	{	return count;	}
+
+	/**
+	 * Adds a row for the given cell, with all timers unset, and returns it.
+	 */
+	int add(TCell_Impl cell, byte kind)
+	{
+		if(count == capacity)
+			grow(capacity * 2);
+		final int row = count++;
+		cells[row] = cell;
+		for(int c = 0; c < codeColumns; c++)
+			codes[c * capacity + row] = 0;
+		codes[KIND * capacity + row] = kind;
+		for(int c = 0; c < valueColumns; c++)
+			values[c * capacity + row] = Double.MAX_VALUE;
+		values[SPECIFICITY * capacity + row] = 0.0;
+		return row;
+	}
+
+	/**
+	 * Takes the cell's row out of this store, the cell keeping its state in its own fields.
+	 */
+	void release(TCell_Impl cell)
+	{
+		final int row = cell.stateRow;
+		cell.leaveStore();
+
+		final int last = --count;
+		if(row != last)
+		{
+			copyRow(last, row);
+			cells[row] = cells[last];
+			cells[row].moveState(row);
+		}
+		cells[last] = null;												// do not keep dead cells from being garbage collected.
+	}
+
+	byte code(int column, int row)
+	{	return codes[column * capacity + row];	}
+
+	void setCode(int column, int row, byte code)
+	{	codes[column * capacity + row] = code;	}
+
+	double value(int column, int row)
+	{	return values[column * capacity + row];	}
+
+	void setValue(int column, int row, double value)
+	{	values[column * capacity + row] = value;	}
+
+	/**
+	 * Adds to 'counts', indexed by the ordinal of 'TCell_Impl.Maturity', the number of cells of the given kind in each state of maturity.
+	 */
+	public void countMaturities(byte kind, int[] counts)
+	{
+		final int kinds = KIND * capacity;
+		final int maturity = MATURITY * capacity;
+		for(int r = 0; r < count; r++)
+			if(codes[kinds + r] == kind)
+				counts[codes[maturity + r]]++;
+	}
+
+	/**
+	 * The number of effector CD4Th cells having the given polarization.
+	 */
+	public int countEffectorCD4Th(byte polarization)
+	{
+		final int kinds = KIND * capacity;
+		final int maturity = MATURITY * capacity;
+		final int polarizations = POLARIZATION * capacity;
+		final byte effector = (byte) TCell_Impl.Maturity.Effector.ordinal();
+		int n = 0;
+		for(int r = 0; r < count; r++)
+			if(codes[kinds + r] == CD4TH && codes[maturity + r] == effector && codes[polarizations + r] == polarization)
+				n++;
+		return n;
+	}
+
+	/**
+	 * Returns the specificities of the CD4Th cells having the given polarization, in no particular order. For UNPOLARIZED, only cells that are neither
+	 * effectors nor apoptotic are included.
+	 */
+	public double[] cd4ThSpecificities(byte polarization)
+	{
+		final int kinds = KIND * capacity;
+		final int maturity = MATURITY * capacity;
+		final int polarizations = POLARIZATION * capacity;
+		final int specificities = SPECIFICITY * capacity;
+		final byte effector = (byte) TCell_Impl.Maturity.Effector.ordinal();
+		final byte apoptotic = (byte) TCell_Impl.Maturity.Apoptotic.ordinal();
+		double[] found = new double[16];
+		int n = 0;
+		for(int r = 0; r < count; r++)
+		{
+			if(codes[kinds + r] != CD4TH || codes[polarizations + r] != polarization)
+				continue;
+			if(polarization == UNPOLARIZED && (codes[maturity + r] == effector || codes[maturity + r] == apoptotic))
+				continue;
+			if(n == found.length)
+				found = Arrays.copyOf(found, n * 2);
+			found[n++] = values[specificities + r];
+		}
+		return Arrays.copyOf(found, n);
+	}
+
+	private void grow(int newCapacity)
+	{
+		cells = Arrays.copyOf(cells, newCapacity);
+		final byte[] newCodes = new byte[codeColumns * newCapacity];
+		for(int c = 0; c < codeColumns; c++)
+			System.arraycopy(codes, c * capacity, newCodes, c * newCapacity, count);
+		final double[] newValues = new double[valueColumns * newCapacity];
+		for(int c = 0; c < valueColumns; c++)
+			System.arraycopy(values, c * capacity, newValues, c * newCapacity, count);
+		codes = newCodes;
+		values = newValues;
+		capacity = newCapacity;
+	}
+
+	private void copyRow(int fromRow, int toRow)
+	{
+		for(int c = 0; c < codeColumns; c++)
+			codes[c * capacity + toRow] = codes[c * capacity + fromRow];
+		for(int c = 0; c < valueColumns; c++)
+			values[c * capacity + toRow] = values[c * capacity + fromRow];
+	}
+}
@@ -5,12 +5,14 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import sim.engine.SimState;
+import sim2d.CellStepPhase;
+import sim2d.TimerWheel;
 import sim2d.TregSimulation;
 import sim2d.cell.APC;
 import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
 import sim2d.cell.TCell;
 import sim2d.compartment.Compartment;
-import sim2d.dataCollection.dataLoggers.TCellPrimingLocationDataLogger;
 
 /**
  * This class is a collection point for data and methods that are common to all T cells. Many of the methods here are intended to be overridden, and then explicitly
@@ -38,65 +40,82 @@ import sim2d.dataCollection.dataLoggers.TCellPrimingLocationDataLogger;
 public abstract class TCell_Impl extends Cell_Impl implements TCell
 {
 	/*
-	 * General properties of all T cells
+	 * General properties of all T cells. These are loaded once per simulation run and held by that run (see 'params(simulation)'), so that concurrent runs do not share them. 
 	 */	
-	private static double apoptosisNaiveMean;			// the mean time after which a naive cell that has not received a signal 1 becomes apoptotic.
-	private static double apoptosisNaiveStdDev;			// the std dev of mean time after which a naive cells that has not recieved a signal 1 becomes apoptotic. 
-	
-	private static double apoptosisPartialMaturityMean;		// stores the mean time in which a cell can remain partially mature before dying.
-	private static double apoptosisPartialMaturityStdDev;	// stores the standard deviation of time in which a cell can remain partially mature before dying.
-	 
-	private static double proliferationMean;				// the mean value of proliferation.
-	private static double proliferationStdDev;			// the value of a single standard deviation of proliferation.
-		// small values for this result in all potential daughters being cut off when APC binding is lost. 
-	private static double cutoffThresholdForProlifWhenBindingLost;	// if time spent proliferating a naive cell has passed this proportion of ProliferationMean when an APC binding is lost, then the naive cell will still be spawned. 
-	
-	private static double becomeEffectorMean;			// the mean time that it takes for a T cell in proliferating state to differentiate into an effector cell
-	private static double becomeEffectorStdDev;			// the standard deviation of the time that it takes for a T cell in proliferating state to differentate into an effector cell. 
-	
-	private static double AICDMean;						// the mean value of AICD.
-	private static double AICDStdDev;					// the value of a single standard deviation of AICD.
-	
-	private static int cellsPerGridspace;				// how many T cells can fit into a single grid space
-	public static boolean spatialTestEquals = true;		// this is an implementation specific test, and does not form part of simulation logic. 
-	public static int retrieveCellsPerGridspace()
-	{	return cellsPerGridspace;	}
-	
-	private static double specificityUpperLimit;			// the specificity of the T cell will be chosen from this range
-	private static double specificityLowerLimit;	
+	private static class Parameters
+	{
+		double apoptosisNaiveMean;			// the mean time after which a naive cell that has not received a signal 1 becomes apoptotic.
+		double apoptosisNaiveStdDev;			// the std dev of mean time after which a naive cells that has not recieved a signal 1 becomes apoptotic. 
+		double apoptosisPartialMaturityMean;		// stores the mean time in which a cell can remain partially mature before dying.
+		double apoptosisPartialMaturityStdDev;	// stores the standard deviation of time in which a cell can remain partially mature before dying.
+		double proliferationMean;				// the mean value of proliferation.
+		double proliferationStdDev;			// the value of a single standard deviation of proliferation.
+			// small values for this result in all potential daughters being cut off when APC binding is lost. 
+		double cutoffThresholdForProlifWhenBindingLost;	// if time spent proliferating a naive cell has passed this proportion of ProliferationMean when an APC binding is lost, then the naive cell will still be spawned. 
+		double becomeEffectorMean;			// the mean time that it takes for a T cell in proliferating state to differentiate into an effector cell
+		double becomeEffectorStdDev;			// the standard deviation of the time that it takes for a T cell in proliferating state to differentate into an effector cell. 
+		double AICDMean;						// the mean value of AICD.
+		double AICDStdDev;					// the value of a single standard deviation of AICD.
+		int cellsPerGridspace;				// how many T cells can fit into a single grid space
+		boolean spatialTestEquals = true;		// this is an implementation specific test, and does not form part of simulation logic. 
+		double specificityUpperLimit;			// the specificity of the T cell will be chosen from this range
+		double specificityLowerLimit;	
+		double timeLocalActivationInducedEffectorFunctionFor;			// how long effector function is maintained for following a 'local activation' (subsequent activation when in effector state)
+		double timeLocalActivationDelay;
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
-	private static double timeLocalActivationInducedEffectorFunctionFor;			// how long effector function is maintained for following a 'local activation' (subsequent activation when in effector state)
-	private static double timeLocalActivationDelay;
+	public static int retrieveCellsPerGridspace(TregSimulation sim)
+	{	return params(sim).cellsPerGridspace;	}
+	public static boolean retrieveSpatialTestEquals(TregSimulation sim)
+	{	return params(sim).spatialTestEquals;	}
 	
 	protected boolean isDead = false;						// when the cell gets phagocytosed this is set to true to stop the 'step' method from restepping a cell that was phagocytosed by another in the same timeframe.
 	
-	public static TCellPrimingLocationDataLogger primingDL;	// used for data logging purposes. Whenever a T cells is primed, it should be logged here. 
-	
 	/*
 	 * Properties of T Cell instances
 	 */
 	public static enum Maturity { Naive, Partial, Proliferating, Effector, Apoptotic } // the states of maturity that a T cell can exist in.
 	
-	protected Maturity maturity;
-	
-	protected double specificity;							// this is a value between 0 (no specificity for peptide) and 1.0 (perfect binding with MHC-peptide every time)
-	
-	
-	private double timeOfApoptotisNaiveMaturity = Double.MAX_VALUE;		// stores the time at which this T cell instance will die as a naive cell though neglect. 
-	private double timeOfApoptosisPartialMaturity = Double.MAX_VALUE;	// stores the amount of time that this T cell has been in a state of partial maturity.
-
-
-	private double timeOfAICD = Double.MAX_VALUE;			// the absolute time at which activation-induced cell death is to take place, following activation of a T cell.
-	private double timeOfProliferation = Double.MAX_VALUE;	// the absolute time at which this cell will next proliferate.
-
-	private double timeOfBecomeEffector = Double.MAX_VALUE;	// this timer will keep track of the absolute time at which this cell is to become an effector cell. 
-	
-	protected boolean boundToAPC = false;					// when in a proliferating state it is possible for a T cell to become attached to an APC. This will stop it from moving around the compartment.
-
-	private boolean effectorFunctionFromLocalActivation	= false;			// if this flag is false, then an effector cell cannot perform any effector function.
-	private double timeEffectorApoptotoisFromNeglect = Double.MAX_VALUE;	// during effector state, this timer points to the time at which the effector cell is to die from neglect. It is reset upon MHC:peptide binding. 
-	private double timeEndLocalActivationDelay = Double.MAX_VALUE;			// only after the absolute time that this timer holds has expired can a (recent) effector cell receive local activation. Before this time binding events are ignored. 
-	
+	private static final Maturity[] maturities = Maturity.values();
+	
+	/* This cell's maturity, specificity, timers and flags are held in row 'stateRow' of 'state' when the simulation keeps a population store (see TCellStore),
+	 * and otherwise in the fields below, 'state' being null. A cell that has died and left the store keeps its last state in those fields, such that it can
+	 * still be read. Columns of the store and fields correspond as follows, the timers holding absolute times, Double.MAX_VALUE when not set:
+	 * 	APOPTOSIS_NAIVE				(timeOfApoptotisNaiveMaturity) the time at which this cell will die as a naive cell through neglect.
+	 * 	APOPTOSIS_PARTIAL			(timeOfApoptosisPartialMaturity) the time at which this cell will die through neglect whilst partially mature.
+	 * 	AICD						(timeOfAICD) the time at which activation-induced cell death is to take place, following activation of a T cell.
+	 * 	PROLIFERATION				(timeOfProliferation) the time at which this cell will next proliferate.
+	 * 	BECOME_EFFECTOR				(timeOfBecomeEffector) the time at which this cell is to become an effector cell.
+	 * 	EFFECTOR_NEGLECT			(timeEffectorApoptotoisFromNeglect) during effector state, the time at which the effector cell is to die from neglect. It is reset upon MHC:peptide binding.
+	 * 	END_LOCAL_ACTIVATION_DELAY	(timeEndLocalActivationDelay) only after this time has passed can a (recent) effector cell receive local activation. Before this time binding events are ignored.
+	 * Specificity is a value between 0 (no specificity for peptide) and 1.0 (perfect binding with MHC-peptide every time). When in a proliferating state it is
+	 * possible for a T cell to become bound to an APC, which stops it from moving around the compartment. If the effector function flag is not set, an effector
+	 * cell cannot perform any effector function. 
+	 */
+	TCellStore state;
+	int stateRow;
+	byte kind = -1;											// the kind of this cell (see TCellStore), -1 until it first takes its state.
+	
+	private byte maturity;									// ordinal of 'Maturity'.
+	private byte polarization;
+	private byte flags;
+	private double specificity;
+	private double timeOfApoptotisNaiveMaturity;
+	private double timeOfApoptosisPartialMaturity;
+	private double timeOfAICD;
+	private double timeOfProliferation;
+	private double timeOfBecomeEffector;
+	private double timeEffectorApoptotoisFromNeglect;
+	private double timeEndLocalActivationDelay;
+	
+	/* The census of the compartment whose grid holds this cell, if it keeps one, and where this cell is counted within it; see TCellCensus. */
+	TCellCensus census;
+	int censusKey;
+	
+	private final TimerWheel.Handle timers = new TimerWheel.Handle();		// tells this cell when one of the timers above governing its state of maturity may have expired.
 	
 	/**
 	 * Getters and setters for the time-probability related values. By default we return those defined statically to this class, however concrete classes may 
@@ -105,49 +124,196 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 * Some of these methods are called 'retrieve' because they do not need to appear in the 
 	 * GUI. 
 	 */
-	protected static double retrieveApoptosisNaiveStdDev()
-	{	return apoptosisNaiveStdDev;	}
+	protected static double retrieveApoptosisNaiveStdDev(TregSimulation sim)
+	{	return params(sim).apoptosisNaiveStdDev;	}
 	
-	protected static double retrieveApoptosisNaiveMean()
-	{	return apoptosisNaiveMean;	}
+	protected static double retrieveApoptosisNaiveMean(TregSimulation sim)
+	{	return params(sim).apoptosisNaiveMean;	}
 	
-	protected static double retrieveApoptosisPartialMaturityStdDev()
-	{	return apoptosisPartialMaturityStdDev;	}
+	protected static double retrieveApoptosisPartialMaturityStdDev(TregSimulation sim)
+	{	return params(sim).apoptosisPartialMaturityStdDev;	}
 	
-	protected static double retrieveApoptosisPartialMaturityMean()
-	{	return apoptosisPartialMaturityMean;	}
+	protected static double retrieveApoptosisPartialMaturityMean(TregSimulation sim)
+	{	return params(sim).apoptosisPartialMaturityMean;	}
 	
 	protected double retrieveProliferationStdDev()
-	{	return proliferationStdDev;		}
+	{	return params(simulation).proliferationStdDev;		}
 	
 	protected double retrieveProliferationMean()
-	{	return proliferationMean;		}
+	{	return params(simulation).proliferationMean;		}
 	
-	protected static double retrieveEffectorTimeMean()
-	{	return becomeEffectorMean; 	}
+	protected static double retrieveEffectorTimeMean(TregSimulation sim)
+	{	return params(sim).becomeEffectorMean; 	}
 	
-	protected static double retrieveEffectorTimeStdDev()
-	{	return becomeEffectorStdDev;	}
+	protected static double retrieveEffectorTimeStdDev(TregSimulation sim)
+	{	return params(sim).becomeEffectorStdDev;	}
 	
 	protected double retrieveAICDStdDev()
-	{	return AICDStdDev;		}
+	{	return params(simulation).AICDStdDev;		}
 	
 	protected double retrieveAICDMean()
-	{	return AICDMean;		}
+	{	return params(simulation).AICDMean;		}
 	
-	protected static double retrieveSpecificityUpperLimit()
-	{	return specificityUpperLimit;	}
+	protected static double retrieveSpecificityUpperLimit(TregSimulation sim)
+	{	return params(sim).specificityUpperLimit;	}
 	
-	protected static double retrieveSpecificityLowerLimit()
-	{	return specificityLowerLimit;	}
+	protected static double retrieveSpecificityLowerLimit(TregSimulation sim)
+	{	return params(sim).specificityLowerLimit;	}
 	
 	public double getSpecificity()
-	{	return specificity;		}
+	{	return value(TCellStore.SPECIFICITY);		}
 	
 	protected boolean getEffectorFunctionFromLocalActivation()
-	{	return effectorFunctionFromLocalActivation;		}
+	{	return flag(TCellStore.EFFECTOR_FUNCTION);		}
+	
+	private double timer(int column)
+	{	return value(column);	}
+	
+	private void setTimer(int column, double time)
+	{	setValue(column, time);	}
+	
+	private boolean flag(byte flag)
+	{	return (code(TCellStore.FLAGS) & flag) != 0;	}
+	
+	private void setFlag(byte flag, boolean on)
+	{
+		final byte f = code(TCellStore.FLAGS);
+		setCode(TCellStore.FLAGS, (byte) (on ? (f | flag) : (f & ~flag)));
+	}
+	
+	private void setMaturity(Maturity maturity)
+	{
+		setCode(TCellStore.MATURITY, (byte) maturity.ordinal());
+		TCellCensus.recountLater(this);
+	}
+	
+	/**
+	 * The given column of this cell's state (see TCellStore), wherever it is held. 
+	 */
+	byte code(int column)
+	{
+		if(state != null)
+			return state.code(column, stateRow);
+		switch(column)
+		{
+			case TCellStore.KIND:			return kind;
+			case TCellStore.MATURITY:		return maturity;
+			case TCellStore.POLARIZATION:	return polarization;
+			default:						return flags;
+		}
+	}
+	
+	void setCode(int column, byte code)
+	{
+		if(state != null)
+		{
+			state.setCode(column, stateRow, code);
+			return;
+		}
+		switch(column)
+		{
+			case TCellStore.KIND:			kind = code;			break;
+			case TCellStore.MATURITY:		maturity = code;		break;
+			case TCellStore.POLARIZATION:	polarization = code;	break;
+			default:						flags = code;
+		}
+	}
+	
+	private double value(int column)
+	{
+		if(state != null)
+			return state.value(column, stateRow);
+		switch(column)
+		{
+			case TCellStore.SPECIFICITY:				return specificity;
+			case TCellStore.APOPTOSIS_NAIVE:			return timeOfApoptotisNaiveMaturity;
+			case TCellStore.APOPTOSIS_PARTIAL:			return timeOfApoptosisPartialMaturity;
+			case TCellStore.AICD:						return timeOfAICD;
+			case TCellStore.PROLIFERATION:				return timeOfProliferation;
+			case TCellStore.BECOME_EFFECTOR:			return timeOfBecomeEffector;
+			case TCellStore.EFFECTOR_NEGLECT:			return timeEffectorApoptotoisFromNeglect;
+			default:									return timeEndLocalActivationDelay;
+		}
+	}
+	
+	private void setValue(int column, double value)
+	{
+		if(state != null)
+		{
+			state.setValue(column, stateRow, value);
+			return;
+		}
+		switch(column)
+		{
+			case TCellStore.SPECIFICITY:				specificity = value;						break;
+			case TCellStore.APOPTOSIS_NAIVE:			timeOfApoptotisNaiveMaturity = value;		break;
+			case TCellStore.APOPTOSIS_PARTIAL:			timeOfApoptosisPartialMaturity = value;		break;
+			case TCellStore.AICD:						timeOfAICD = value;							break;
+			case TCellStore.PROLIFERATION:				timeOfProliferation = value;				break;
+			case TCellStore.BECOME_EFFECTOR:			timeOfBecomeEffector = value;				break;
+			case TCellStore.EFFECTOR_NEGLECT:			timeEffectorApoptotoisFromNeglect = value;	break;
+			default:									timeEndLocalActivationDelay = value;
+		}
+	}
+	
+	/**
+	 * Takes a row for this cell in the simulation's population store, if it keeps one, else sets its own fields afresh, exactly as a new row would be. 
+	 */
+	private void joinStore(TregSimulation sim)
+	{
+		kind = (this instanceof CD4THelper) ? TCellStore.CD4TH : (this instanceof CD4Treg) ? TCellStore.CD4TREG : TCellStore.CD8TREG;
+		if(sim.tCellStore != null)
+		{
+			state = sim.tCellStore;
+			stateRow = state.add(this, kind);
+			return;
+		}
+		state = null;
+		maturity = 0;
+		polarization = 0;
+		flags = 0;
+		specificity = 0.0;
+		for(int c = TCellStore.APOPTOSIS_NAIVE; c < TCellStore.valueColumns; c++)
+			setValue(c, Double.MAX_VALUE);
+	}
 	
+	/**
+	 * Called by the store holding this cell's state when that state is moved to another row. 
+	 */
+	void moveState(int row)
+	{	stateRow = row;	}
 	
+	/**
+	 * Called by the simulation's store as this cell's row is taken out of it, and copies the row into this cell's own fields. 
+	 */
+	void leaveStore()
+	{
+		final TCellStore store = state;
+		final int row = stateRow;
+		state = null;
+		for(int c = 0; c < TCellStore.codeColumns; c++)
+			setCode(c, store.code(c, row));
+		for(int c = 0; c < TCellStore.valueColumns; c++)
+			setValue(c, store.value(c, row));
+	}
+	
+	/**
+	 * Called once this cell has died and left the simulation, such that it no longer forms part of the population held by the simulation's store. The cell's
+	 * state moves into its own fields, and can still be read. When cells are stepped in parallel this happens once they have all stepped. 
+	 */
+	protected void leavePopulation(TregSimulation sim)
+	{
+		final TCellStore population = sim.tCellStore;
+		if(population == null)
+			return;
+		CellStepPhase.performOrDefer(new Runnable() {
+			public void run() 
+			{ 
+				if(state == population)
+					population.release(TCell_Impl.this);
+			}
+		});
+	}
 	
 	/**
 	 * Constructor places cell randomly in the specified compartment. This constructor is used to create new naive T cells. It should NOT be used to create
@@ -156,14 +322,21 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	public TCell_Impl(Compartment location)
 	{
 		super(location, true);
-		maturity = Maturity.Naive;										// set the new T cell's maturity.
-		timeOfApoptotisNaiveMaturity = calculateTimeOfApoptotisNaiveMaturity();
+		beginNaive(simulation);
+	}
+	private void beginNaive(TregSimulation sim)
+	{
+		joinStore(sim);
+		setMaturity(Maturity.Naive);										// set the new T cell's maturity.
+		setTimer(TCellStore.APOPTOSIS_NAIVE, calculateTimeOfApoptotisNaiveMaturity());
+		armTimers(sim);
 		
-		specificity = TregSimulation.sim.random.nextDouble();			// between 0 and 1.0
+		double specificity = random.nextDouble();	// between 0 and 1.0
 					// between 0.0 and (upper limit - lower limit) = get correct range
-		specificity *= retrieveSpecificityUpperLimit() - retrieveSpecificityLowerLimit();
+		specificity *= retrieveSpecificityUpperLimit(simulation) - retrieveSpecificityLowerLimit(simulation);
 					// between lower limit and upper limit = shift range
-		specificity += retrieveSpecificityLowerLimit();
+		specificity += retrieveSpecificityLowerLimit(simulation);
+		setValue(TCellStore.SPECIFICITY, specificity);
 	}
 	/**
 	 * Constructor places cell in the specified compartment, in the same location as the indicated 'parent' cell. This constructor should be used when creating cells that
@@ -174,11 +347,48 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	public TCell_Impl(TregSimulation sim, Compartment location, TCell_Impl parent)
 	{
 		super(sim, location, parent);
-		maturity = Maturity.Naive;
-		timeOfApoptotisNaiveMaturity = calculateTimeOfApoptotisNaiveMaturity();		// set timer for death by neglect. 
+		beginDaughter(sim, parent);
+	}
+	private void beginDaughter(TregSimulation sim, TCell_Impl parent)
+	{
+		joinStore(sim);
+		setMaturity(Maturity.Naive);
+		setTimer(TCellStore.APOPTOSIS_NAIVE, calculateTimeOfApoptotisNaiveMaturity());		// set timer for death by neglect. 
+		armTimers(sim);
 		
-		this.specificity = parent.specificity;						// copy across specificity. 
-		this.boundToAPC = true;										// start off bound to APC, may immediately revert though. This is an artifact of the order in which cells and compartments are stepped.
+		setValue(TCellStore.SPECIFICITY, parent.getSpecificity());	// copy across specificity. 
+		setFlag(TCellStore.BOUND_TO_APC, true);						// start off bound to APC, may immediately revert though. This is an artifact of the order in which cells and compartments are stepped.
+	}
+	
+	/**
+	 * Reuses this cell, taken from the simulation's CellPools, as a new naive T cell placed randomly in the compartment, exactly as the first constructor would 
+	 * create one. 
+	 */
+	protected final void reviveNaive(TregSimulation sim, Compartment location)
+	{
+		reset();
+		enterRandomly(location);
+		beginNaive(sim);
+	}
+	
+	/**
+	 * Reuses this cell, taken from the simulation's CellPools, as a daughter of the given parent, exactly as the second constructor would create one. 
+	 */
+	protected final void reviveDaughter(TregSimulation sim, Compartment location, TCell_Impl parent)
+	{
+		reset();
+		enterBeside(location, parent);
+		beginDaughter(sim, parent);
+	}
+	
+	/**
+	 * Returns this cell's fields to their initial values, for reuse. Its timers and flags are set afresh when it takes a new row of state. 
+	 */
+	protected void reset()
+	{
+		super.reset();
+		isDead = false;
+		timers.reset();
 	}
 	
 	/**
@@ -196,36 +406,36 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 		if(isDead)														// it is possible that cell became completely dead during 'stateMaintenance'. This is safety.
 			return;
 				
-		boundToAPC = false;				/* this will be set to true again in the following method call if there is an APC for which this cell is specific in the neighbourhood */
+		setFlag(TCellStore.BOUND_TO_APC, false);				/* this will be set to true again in the following method call if there is an APC for which this cell is specific in the neighbourhood */
 		interactWithOtherCellsGeneric(simulation);						// potential interactions with other cells in the neighbourhood. 
 	}
 	
-	
 	/**
 	 *  Update aspects of a cells state of maturity. 
 	 */
 	protected void stateMaintenance(TregSimulation sim)
 	{
-		switch (maturity)
+		final boolean timersDue = sim.timerWheel.isDue(timers);		// if none of this cell's timers can have expired, there is no need to examine them. 
+		switch (getMaturity())
 		{
 			case Naive:													// if this naive cell does not receive a signal 1 before some time, then it will become apoptotic
-				if(sim.schedule.getTime() >= timeOfApoptotisNaiveMaturity) 
+				if(timersDue && sim.schedule.getTime() >= timer(TCellStore.APOPTOSIS_NAIVE)) 
 				{
-					timeOfApoptotisNaiveMaturity = Double.MAX_VALUE;	// cell enters apoptosis, this timer is set to infinity. 
+					setTimer(TCellStore.APOPTOSIS_NAIVE, Double.MAX_VALUE);	// cell enters apoptosis, this timer is set to infinity. 
 					becomeApoptotic(sim);								// handles the specifics of entering apoptosis. 
 				}
 				break;
 		
 			case Partial:												// if a partially mature cell does not receive signal two in time, it dies of neglect. 
-				if(sim.schedule.getTime() >= timeOfApoptosisPartialMaturity)
+				if(timersDue && sim.schedule.getTime() >= timer(TCellStore.APOPTOSIS_PARTIAL))
 				{ 
-					timeOfApoptosisPartialMaturity = Double.MAX_VALUE;	// to avoid unnecessary computation be reentering this if statement every step.
+					setTimer(TCellStore.APOPTOSIS_PARTIAL, Double.MAX_VALUE);	// to avoid unnecessary computation be reentering this if statement every step.
 					becomeApoptotic(sim);
 				}
 				break;
 				
 			case Proliferating:											// note that proliferative cells cannot die of neglect, they will eventually become effectors. 
-				if(timeOfProliferation != Double.MAX_VALUE && boundToAPC == false)	// if the time to proliferation is set, but cell is not attached to an APC ... 
+				if(timer(TCellStore.PROLIFERATION) != Double.MAX_VALUE && getBoundToAPC() == false)	// if the time to proliferation is set, but cell is not attached to an APC ... 
 				{	
 					/* binding to APC lost. A decision is made as to whether the daughter cell is to be spawned or lost, depending on how much of the required APC-parent contact time
 					 * was completed before the loss of binding. 
@@ -233,39 +443,66 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 					 *  'cutoffBasedOnMean' below holds the 'safe' time for saving a naive daughter cell if the binding with the APC is lost. If the time to the spawning event is smaller
 					 *  than this threshold time, then spawning will still take place. Otherwise, the daughter cell spawning event is cancelled. 
 					 */
-					final double timeRemaining = timeOfProliferation - sim.schedule.getTime();
-					final double cutoffBasedOnMean = retrieveProliferationMean() * cutoffThresholdForProlifWhenBindingLost;
+					final double timeRemaining = timer(TCellStore.PROLIFERATION) - sim.schedule.getTime();
+					final double cutoffBasedOnMean = retrieveProliferationMean() * params(simulation).cutoffThresholdForProlifWhenBindingLost;
 			
 					if(timeRemaining > cutoffBasedOnMean) {				// if cutoff threshold has passed.
-						timeOfProliferation = Double.MAX_VALUE;			// then reset the proliferation timer - we need to be continually attached to an APC!						
+						setTimer(TCellStore.PROLIFERATION, Double.MAX_VALUE);			// then reset the proliferation timer - we need to be continually attached to an APC!						
 					}
 					// otherwise, do not cancel the spawning event.					 
 				}
 				
-				if(sim.schedule.getTime() >= timeOfProliferation)
+				if(timersDue && sim.schedule.getTime() >= timer(TCellStore.PROLIFERATION))
 				{
-					spawnDaughterCell(sim);								// proliferate, hence releasing a new naive daughter cell
-					timeOfProliferation = Double.MAX_VALUE;				// clear the timer.
+					final TregSimulation simulation = sim;
+					CellStepPhase.performOrDefer(new Runnable() {
+						public void run() { spawnDaughterCell(simulation); }	// proliferate, hence releasing a new naive daughter cell
+					});
+					setTimer(TCellStore.PROLIFERATION, Double.MAX_VALUE);				// clear the timer.
 				}				
-				if(sim.schedule.getTime() >= timeOfBecomeEffector)
+				if(timersDue && sim.schedule.getTime() >= timer(TCellStore.BECOME_EFFECTOR))
 				{
 					becomeEffector(sim);								// differentiate into an effector cell
 				}
 				break;
 				
 			case Effector:												// effector cells can die of antigen induced cell death (AICD) or neglect through lack of sufficient MHC:TCR interaction. 
-				if(sim.schedule.getTime() >= timeOfAICD)				// if time of AICD has passed...
+				if(timersDue && sim.schedule.getTime() >= timer(TCellStore.AICD))	// if time of AICD has passed...
 				{
 					becomeApoptotic(sim);
 				}
 				/* if some period of time (defined elsewhere) passes since this activated T cell last received stimulation in the form of a local activation, then it will die */ 
-				else if(sim.schedule.getTime() >= timeEffectorApoptotoisFromNeglect)
+				else if(timersDue && sim.schedule.getTime() >= timer(TCellStore.EFFECTOR_NEGLECT))
 				{
 					becomeApoptotic(sim);
 				}
 				break;
 		}
+		if(timersDue)
+			sim.timerWheel.rearm(timers, nextTimer());				// register whichever timer is now the next to expire.
+	}
+	
+	/**
+	 * Returns the earliest of the timers that govern transitions out of this cell's present state of maturity. 
+	 */
+	private double nextTimer()
+	{
+		switch (getMaturity())
+		{
+			case Naive:			return timer(TCellStore.APOPTOSIS_NAIVE);
+			case Partial:		return timer(TCellStore.APOPTOSIS_PARTIAL);
+			case Proliferating:	return Math.min(timer(TCellStore.PROLIFERATION), timer(TCellStore.BECOME_EFFECTOR));
+			case Effector:		return Math.min(timer(TCellStore.AICD), timer(TCellStore.EFFECTOR_NEGLECT));
+			default:			return Double.MAX_VALUE;
+		}
 	}
+	
+	/**
+	 * Must be called whenever one of this cell's maturity timers is brought forward, such that the simulation's timer wheel wakes this cell in time for it. 
+	 * Timers that are pushed back or cleared need not be registered; the cell will simply examine its timers, find none expired, and register again.
+	 */
+	private void armTimers(TregSimulation sim)
+	{	sim.timerWheel.schedule(timers, nextTimer());	}
 
 	/**
 	 * Method handles the proliferation of a daughter cell. causes this T cell to proliferate. A daughter cell is produced in the compartment at the same location as the parent cell.
@@ -276,7 +513,6 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 */
 	protected abstract void spawnDaughterCell(TregSimulation sim);
 
-	
 	/**
 	 * Method handles interaction between this T cell and the specified APC. The structure of this interaction is common to all T cells. Specific behaviours can be added through
 	 * overriding of certain methods. 
@@ -284,7 +520,7 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	public void interactWithAPC(TregSimulation sim, APC apc)
 	{
 		 
-		if(maturity == Maturity.Naive)
+		if(getMaturity() == Maturity.Naive)
 		{
 			if(attemptToInstigateSpecificityBasedBinding(apc))						// if the APC is expressing the required MHC-peptide complexes. This method will conduct a specificity-considered attempt at binding (binding not necessarily 100% successful). 
 			{
@@ -298,39 +534,43 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 					becomeProliferating(sim);
 				} else {
 					// this APC is tolerogenic, become Partially activated. 
-					maturity = Maturity.Partial;	
-					timeOfApoptotisNaiveMaturity = Double.MAX_VALUE;											// timer for death by neglect on a naive T cell no longer applicable in partially activated state. 
-					timeOfApoptosisPartialMaturity = calculateTimeOfApoptosisPartialMaturity();					// set timer for death by neglect for a partially activated T cell. 
+					setMaturity(Maturity.Partial);	
+					setTimer(TCellStore.APOPTOSIS_NAIVE, Double.MAX_VALUE);											// timer for death by neglect on a naive T cell no longer applicable in partially activated state. 
+					setTimer(TCellStore.APOPTOSIS_PARTIAL, calculateTimeOfApoptosisPartialMaturity());					// set timer for death by neglect for a partially activated T cell. 
+					armTimers(sim);
 				}
 			}
 		}
-		if(maturity == Maturity.Partial)
+		if(getMaturity() == Maturity.Partial)
 		{
 			if(apc.getExpressing_CoStimulatory() && attemptToInstigateSpecificityBasedBinding(apc))  			// if the APC is licensed, and expressing MHC for which we are specific																		
 			{
 				becomeProliferating(sim);					//then receive signal 2
 			}
 		}
-		if(maturity == Maturity.Proliferating)				
+		if(getMaturity() == Maturity.Proliferating)				
 		{	/* note that this code allows for a T cell to become proliferative, lose its binding with an APC (because the APC dies), and then move off to find another APC, then form a binding with that APC in a manner that is not probabilistically
 		 	 * dependent on the specificity of the T cell. This is a very minor simulation artifact. 
 			 */
 			if( specificForThisCell(apc) )					// simply checks for the relevant MHC:peptide complexes, there is no specificity related chance that a binding won't form. 
-				boundToAPC = true;	
+				setFlag(TCellStore.BOUND_TO_APC, true);	
 			
-			if(timeOfProliferation == Double.MAX_VALUE)					// if a proliferation time has not already been set (we check to avoid wiping out an existing proliferative activity.)
-				timeOfProliferation = calculateTimeOfProliferation();	// then set one following this interaction with an MHC expressing cell.
+			if(timer(TCellStore.PROLIFERATION) == Double.MAX_VALUE)					// if a proliferation time has not already been set (we check to avoid wiping out an existing proliferative activity.)
+			{
+				setTimer(TCellStore.PROLIFERATION, calculateTimeOfProliferation());	// then set one following this interaction with an MHC expressing cell.
+				armTimers(sim);
+			}
 		}
 		
 		/* we 'else if' here because we do not want to go all the way from Naive to performing effector function in one go. Actually, that is supremely unlikely to happen anyway, since there are timers governing the 
 		 * transitions between states.
 		 */ 
-		else if(maturity == Maturity.Effector && attemptToInstigateSpecificityBasedBinding(apc))		// if we are activated, AND if this APC expressed MHC for which we are specific. (binding instigation is probabilistic based on specificity).		
+		else if(getMaturity() == Maturity.Effector && attemptToInstigateSpecificityBasedBinding(apc))		// if we are activated, AND if this APC expressed MHC for which we are specific. (binding instigation is probabilistic based on specificity).		
 		{	
 			effectorTCellStimulated(sim);					// perform some housekeeping common to all effector T cells that interact with APC. 
 			interactWithAPCEffector(apc);					// the rules for interaction with an APC differ between types of activated T cells.
 		}
-		if(maturity == Maturity.Apoptotic)					// note that for CD8Treg and CD4Tregs this code is not executed, since those cells are simply removed from the simulation when they become apoptotic. Th cells are phagocytosed since they contain peptides of interest. 
+		if(getMaturity() == Maturity.Apoptotic)					// note that for CD8Treg and CD4Tregs this code is not executed, since those cells are simply removed from the simulation when they become apoptotic. Th cells are phagocytosed since they contain peptides of interest. 
 		{
 			apc.phagocytoseCell(sim, this);					// APC phagocytoses this apoptotic T cell. 
 		}
@@ -342,13 +582,14 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 */
 	protected void becomeProliferating(TregSimulation sim)
 	{
-		maturity = Maturity.Proliferating;	
-		boundToAPC = true;									// cell adheres to APC and does not move around the compartment as a result. 
-		timeOfApoptosisPartialMaturity = Double.MAX_VALUE;	// cell has passed partial maturity, set this time to infinity. 
-		timeOfProliferation = Double.MAX_VALUE;				// proliferation is induced only by subsequent MHC interaction on an already activated T cell.
-		timeOfBecomeEffector = calculateTimeOfBecomeEffector(sim);	// calculate the absolute time at which this cell will differentiate into an effector cell.
+		setMaturity(Maturity.Proliferating);	
+		setFlag(TCellStore.BOUND_TO_APC, true);									// cell adheres to APC and does not move around the compartment as a result. 
+		setTimer(TCellStore.APOPTOSIS_PARTIAL, Double.MAX_VALUE);	// cell has passed partial maturity, set this time to infinity. 
+		setTimer(TCellStore.PROLIFERATION, Double.MAX_VALUE);				// proliferation is induced only by subsequent MHC interaction on an already activated T cell.
+		setTimer(TCellStore.BECOME_EFFECTOR, calculateTimeOfBecomeEffector(sim));	// calculate the absolute time at which this cell will differentiate into an effector cell.
+		armTimers(sim);
 		
-		primingDL.logPrimingEvent(this);					// this cell is being primed, therefore, log the event. 
+		sim.primingDL.logPrimingEvent(this);					// this cell is being primed, therefore, log the event. 
 	}
 	
 	/**
@@ -357,14 +598,15 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 */
 	protected void becomeEffector(TregSimulation sim)
 	{
-		maturity = Maturity.Effector;						// reach effector status.
-		boundToAPC = false;									// effector T cell loses adhesion molecules that bind it to APC and is free to migrate around compartment. 
-		timeOfProliferation = Double.MAX_VALUE;				// proliferation does not occur once the cell has reached effector status.
-		timeOfBecomeEffector = Double.MAX_VALUE;			// can only become an effector once, clear the timer. 
-		timeOfAICD = calculateTimeOfAICD(sim);				// calculate time at which AICD will occur.
-		effectorFunctionFromLocalActivation = false;		// effector function is disabled until the cell is locally activated. 
-		timeEffectorApoptotoisFromNeglect = calculateTimeEffectorApoptotoisFromNeglect(sim);	// set timer governing death by neglect in effector cell state. 
-		timeEndLocalActivationDelay = calculateTimeEndLocalActivationDelay(sim);	// there is a delay before a cell is susceptible to local activation, this prevents local activation from occuring in the secondary lymphoid organs. 
+		setMaturity(Maturity.Effector);						// reach effector status.
+		setFlag(TCellStore.BOUND_TO_APC, false);									// effector T cell loses adhesion molecules that bind it to APC and is free to migrate around compartment. 
+		setTimer(TCellStore.PROLIFERATION, Double.MAX_VALUE);				// proliferation does not occur once the cell has reached effector status.
+		setTimer(TCellStore.BECOME_EFFECTOR, Double.MAX_VALUE);			// can only become an effector once, clear the timer. 
+		setTimer(TCellStore.AICD, calculateTimeOfAICD(sim));				// calculate time at which AICD will occur.
+		setFlag(TCellStore.EFFECTOR_FUNCTION, false);		// effector function is disabled until the cell is locally activated. 
+		setTimer(TCellStore.EFFECTOR_NEGLECT, calculateTimeEffectorApoptotoisFromNeglect(sim));	// set timer governing death by neglect in effector cell state. 
+		setTimer(TCellStore.END_LOCAL_ACTIVATION_DELAY, calculateTimeEndLocalActivationDelay(sim));	// there is a delay before a cell is susceptible to local activation, this prevents local activation from occuring in the secondary lymphoid organs. 
+		armTimers(sim);
 	}
 	
 	/**
@@ -372,11 +614,11 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 */
 	protected void becomeApoptotic(TregSimulation sim)
 	{	
-		maturity = Maturity.Apoptotic;						// become apoptotic
-		timeOfAICD = Double.MAX_VALUE;						// save unnecessary computation of reentering this if statement.
-		timeOfProliferation = Double.MAX_VALUE;				// cell will no longer proliferate
-		timeEffectorApoptotoisFromNeglect = Double.MAX_VALUE;	// resetting of timers (can save computational effort in later 'steps').
-		timeEndLocalActivationDelay = Double.MAX_VALUE;		// resetting of timers (can save computational effort in later 'steps').
+		setMaturity(Maturity.Apoptotic);						// become apoptotic
+		setTimer(TCellStore.AICD, Double.MAX_VALUE);						// save unnecessary computation of reentering this if statement.
+		setTimer(TCellStore.PROLIFERATION, Double.MAX_VALUE);				// cell will no longer proliferate
+		setTimer(TCellStore.EFFECTOR_NEGLECT, Double.MAX_VALUE);	// resetting of timers (can save computational effort in later 'steps').
+		setTimer(TCellStore.END_LOCAL_ACTIVATION_DELAY, Double.MAX_VALUE);		// resetting of timers (can save computational effort in later 'steps').
 		
 		removeCellFromSimulation(sim);
 	}
@@ -390,10 +632,10 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	{
 		// the absolute time at which the effector cell is sensitive to local activation following its differentiation into an effector cell must have passed. Otherwise do nothing.
 		// This prevents the T cells from receiving local activation whilst in the SLO (for example). There is a delay before local activation can take place. 
-		if(TregSimulation.sim.schedule.getTime() >= timeEndLocalActivationDelay) 					
+		if(simulation.schedule.getTime() >= timer(TCellStore.END_LOCAL_ACTIVATION_DELAY)) 					
 		{
-			timeEffectorApoptotoisFromNeglect = calculateTimeEffectorApoptotoisFromNeglect(sim); 	// reset the time at which the cell will die from neglect.
-			effectorFunctionFromLocalActivation = true;												// cell is capable of performing effector function (for now). 
+			setTimer(TCellStore.EFFECTOR_NEGLECT, calculateTimeEffectorApoptotoisFromNeglect(sim)); 	// reset the time at which the cell will die from neglect.
+			setFlag(TCellStore.EFFECTOR_FUNCTION, true);												// cell is capable of performing effector function (for now). 
 		}
 	}
 	
@@ -404,8 +646,10 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	protected void removeCellFromSimulation(TregSimulation sim)
 	{
 		isDead = true;
-		TregSimulation.sim.removeFromSimulationSchedule(this);		// critical, remove this cell from the simulation's schedule.
+		simulation.removeFromSimulationSchedule(this);		// critical, remove this cell from the simulation's schedule.
 		compartment.removeCellFollowingDeath(this);					// cell removes itself from the compartment. 
+		leavePopulation(sim);
+		offerForReuse(sim);
 	}
 	
 	/**
@@ -416,10 +660,10 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 */
 	private double calculateTimeOfApoptotisNaiveMaturity()
 	{
-		double interval = TregSimulation.sim.random.nextGaussian();
-		interval *= (retrieveApoptosisNaiveStdDev()/ 2.0);			// one random.gaussian stdDev = 2* stdDevs for apoptosis in partial maturity.
-		interval += retrieveApoptosisNaiveMean();					// shift the mean from 0.0 to what we desire.
-		return interval + TregSimulation.sim.schedule.getTime();	// convert into absolute time and return.
+		double interval = random.nextGaussian();
+		interval *= (retrieveApoptosisNaiveStdDev(simulation)/ 2.0);			// one random.gaussian stdDev = 2* stdDevs for apoptosis in partial maturity.
+		interval += retrieveApoptosisNaiveMean(simulation);					// shift the mean from 0.0 to what we desire.
+		return interval + simulation.schedule.getTime();	// convert into absolute time and return.
 	}
 	
 	/**
@@ -428,16 +672,16 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 */
 	private double calculateTimeOfApoptosisPartialMaturity()
 	{
-		double interval = TregSimulation.sim.random.nextGaussian();
-		interval *= (retrieveApoptosisPartialMaturityStdDev()/ 2.0);	// one random.gaussian stdDev = 2* stdDevs for apoptosis in partial maturity.
-		interval += retrieveApoptosisPartialMaturityMean();				// shift the mean from 0.0 to what we desire.
-		return interval + TregSimulation.sim.schedule.getTime();		// convert into absolute time and return.
+		double interval = random.nextGaussian();
+		interval *= (retrieveApoptosisPartialMaturityStdDev(simulation)/ 2.0);	// one random.gaussian stdDev = 2* stdDevs for apoptosis in partial maturity.
+		interval += retrieveApoptosisPartialMaturityMean(simulation);				// shift the mean from 0.0 to what we desire.
+		return interval + simulation.schedule.getTime();		// convert into absolute time and return.
 	}
 
 	protected double calculateTimeOfProliferation()
 	{
-		TregSimulation sim = TregSimulation.sim;
-		double interval = sim.random.nextGaussian();
+		TregSimulation sim = simulation;
+		double interval = random.nextGaussian();
 		interval *= (retrieveProliferationStdDev() / 2.0);	// one random.gaussian stdDev = 2*standard deviations for proliferation.
 		interval += retrieveProliferationMean();								// shift the mean from 0.0 to what we desire.
 		return interval + sim.schedule.getTime();						// convert into absolute time, and return.
@@ -445,7 +689,7 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	
 	private double calculateTimeOfAICD(TregSimulation sim)
 	{
-		double interval = sim.random.nextGaussian();
+		double interval = random.nextGaussian();
 		interval *= (retrieveAICDStdDev() / 2.0);
 		interval += retrieveAICDMean();
 		return interval + sim.schedule.getTime();
@@ -453,9 +697,9 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	
 	private double calculateTimeOfBecomeEffector(TregSimulation sim)
 	{
-		double interval = sim.random.nextGaussian();
-		interval *= (retrieveEffectorTimeStdDev() / 2.0);
-		interval += retrieveEffectorTimeMean();
+		double interval = random.nextGaussian();
+		interval *= (retrieveEffectorTimeStdDev(simulation) / 2.0);
+		interval += retrieveEffectorTimeMean(simulation);
 		return interval + sim.schedule.getTime();
 	}
 	
@@ -465,7 +709,7 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 */
 	protected double calculateTimeEffectorApoptotoisFromNeglect(TregSimulation sim)
 	{
-		return sim.schedule.getTime() + timeLocalActivationInducedEffectorFunctionFor;
+		return sim.schedule.getTime() + params(simulation).timeLocalActivationInducedEffectorFunctionFor;
 	}
 	
 	/**
@@ -473,10 +717,9 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 */
 	protected double calculateTimeEndLocalActivationDelay(TregSimulation sim)
 	{
-		return sim.schedule.getTime() + timeLocalActivationDelay;
+		return sim.schedule.getTime() + params(simulation).timeLocalActivationDelay;
 	}
 	
-	
 	/**
 	 * Depending on whether the effector T cell is CD4 or CD8 the result of interaction with an APC will be slightly different.
 	 * 
@@ -489,28 +732,34 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 * javabean getters and setters, so that these times appear in the inspectors 
 	 */
 	public double getTimeOfApopotisPartialMaturity()
-	{	return timeOfApoptosisPartialMaturity;	}
+	{	return timer(TCellStore.APOPTOSIS_PARTIAL);	}
 	
 	public double getTimeOfProliferation()
-	{	return timeOfProliferation; }
+	{	return timer(TCellStore.PROLIFERATION); }
 	
 	public double getTimeOfBecomeEffector()
-	{	return timeOfBecomeEffector; 	}
+	{	return timer(TCellStore.BECOME_EFFECTOR); 	}
 	
 	public double getTimeEffectorApoptotoisFromNeglect()
-	{	return timeEffectorApoptotoisFromNeglect;	}
+	{	return timer(TCellStore.EFFECTOR_NEGLECT);	}
 	
 	/**
 	 * return in absolute time the time at which AICD will take place. 
 	 */
 	public double getTimeOfAICD()
-	{	return timeOfAICD;	}
+	{	return timer(TCellStore.AICD);	}
 	
 	public Maturity getMaturity()
-	{		return maturity;		}
+	{		return maturities[code(TCellStore.MATURITY)];		}
+	
+	/**
+	 * The ordinal of this cell's maturity. 
+	 */
+	public int getStateCode()
+	{	return code(TCellStore.MATURITY);	}
 	
 	public boolean getBoundToAPC()
-	{	return boundToAPC;		}
+	{	return flag(TCellStore.BOUND_TO_APC);		}
 	
 
 	/**
@@ -522,15 +771,15 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	{
 		if( specificForThisCell(cell) )	
 		{
-			double probabilityOfBinding = specificity;			// binding instigation with all cells is dependent on specificity
+			double probabilityOfBinding = getSpecificity();			// binding instigation with all cells is dependent on specificity
 			
 			// if CD200 negative signalng on DCs is active, then reduce probability of binding according to how suppressed DC is. 
-			if( DendriticCell.cd200CytokineSwitching == true || DendriticCell.cd200GradualReductionPrimingCapacity == true)
+			if( DendriticCell.retrieveCD200CytokineSwitching(simulation) == true || DendriticCell.retrieveCD200GradualReductionPrimingCapacity(simulation) == true)
 				if(cell instanceof DendriticCell)
 					probabilityOfBinding *= ((DendriticCell)cell).getCD200PrimingCapacity();
 			
 												// is it expressing these MHC-peptides at the moment?			
-			return (TregSimulation.sim.random.nextDouble() <= probabilityOfBinding);	// probabilistically decide if the binding succeeds.
+			return (random.nextDouble() <= probabilityOfBinding);	// probabilistically decide if the binding succeeds.
 		}
 		return false;														// default behaviour otherwise. 
 	}
@@ -546,48 +795,49 @@ public abstract class TCell_Impl extends Cell_Impl implements TCell
 	 */
 	public boolean isApoptotic() 
 	{
-		return (maturity == Maturity.Apoptotic);
+		return (getMaturity() == Maturity.Apoptotic);
 	}
 	
-	
     /**
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("TCell").item(0);
 		
-		proliferationStdDev = Double.parseDouble(pE.getElementsByTagName("proliferationStdDev").item(0).getTextContent());
-		proliferationMean = Double.parseDouble(pE.getElementsByTagName("proliferationMean").item(0).getTextContent());
-		cutoffThresholdForProlifWhenBindingLost = Double.parseDouble(pE.getElementsByTagName("cutoffThresholdForProlifWhenBindingLost").item(0).getTextContent());
+		p.proliferationStdDev = Double.parseDouble(pE.getElementsByTagName("proliferationStdDev").item(0).getTextContent());
+		p.proliferationMean = Double.parseDouble(pE.getElementsByTagName("proliferationMean").item(0).getTextContent());
+		p.cutoffThresholdForProlifWhenBindingLost = Double.parseDouble(pE.getElementsByTagName("cutoffThresholdForProlifWhenBindingLost").item(0).getTextContent());
 		
-		AICDStdDev = Double.parseDouble(pE.getElementsByTagName("AICDStdDev").item(0).getTextContent());
-		AICDMean = Double.parseDouble(pE.getElementsByTagName("AICDMean").item(0).getTextContent());
+		p.AICDStdDev = Double.parseDouble(pE.getElementsByTagName("AICDStdDev").item(0).getTextContent());
+		p.AICDMean = Double.parseDouble(pE.getElementsByTagName("AICDMean").item(0).getTextContent());
 		
-		becomeEffectorMean = Double.parseDouble(pE.getElementsByTagName("becomeEffectorMean").item(0).getTextContent());
-		becomeEffectorStdDev = Double.parseDouble(pE.getElementsByTagName("becomeEffectorStdDev").item(0).getTextContent()); 
+		p.becomeEffectorMean = Double.parseDouble(pE.getElementsByTagName("becomeEffectorMean").item(0).getTextContent());
+		p.becomeEffectorStdDev = Double.parseDouble(pE.getElementsByTagName("becomeEffectorStdDev").item(0).getTextContent()); 
 		
-		apoptosisNaiveMean = Double.parseDouble(pE.getElementsByTagName("apoptosisNaiveMean").item(0).getTextContent());
-		apoptosisNaiveStdDev = Double.parseDouble(pE.getElementsByTagName("apoptosisNaiveMean").item(0).getTextContent());
+		p.apoptosisNaiveMean = Double.parseDouble(pE.getElementsByTagName("apoptosisNaiveMean").item(0).getTextContent());
+		p.apoptosisNaiveStdDev = Double.parseDouble(pE.getElementsByTagName("apoptosisNaiveMean").item(0).getTextContent());
 		
-		apoptosisPartialMaturityMean = Double.parseDouble(pE.getElementsByTagName("apoptosisPartialMaturityMean").item(0).getTextContent());
-		apoptosisPartialMaturityStdDev = Double.parseDouble(pE.getElementsByTagName("apoptosisPartialMaturityStdDev").item(0).getTextContent());
+		p.apoptosisPartialMaturityMean = Double.parseDouble(pE.getElementsByTagName("apoptosisPartialMaturityMean").item(0).getTextContent());
+		p.apoptosisPartialMaturityStdDev = Double.parseDouble(pE.getElementsByTagName("apoptosisPartialMaturityStdDev").item(0).getTextContent());
 		
-		cellsPerGridspace = Integer.parseInt(pE.getElementsByTagName("cellsPerGridspace").item(0).getTextContent());
+		p.cellsPerGridspace = Integer.parseInt(pE.getElementsByTagName("cellsPerGridspace").item(0).getTextContent());
 		
-		specificityUpperLimit = Double.parseDouble(pE.getElementsByTagName("specificityUpperLimit").item(0).getTextContent());
-		specificityLowerLimit = Double.parseDouble(pE.getElementsByTagName("specificityLowerLimit").item(0).getTextContent());
+		p.specificityUpperLimit = Double.parseDouble(pE.getElementsByTagName("specificityUpperLimit").item(0).getTextContent());
+		p.specificityLowerLimit = Double.parseDouble(pE.getElementsByTagName("specificityLowerLimit").item(0).getTextContent());
 		
-		timeLocalActivationInducedEffectorFunctionFor = Double.parseDouble(pE.getElementsByTagName("timeLocalActivationInducedEffectorFunctionFor").item(0).getTextContent());
-		timeLocalActivationDelay = Double.parseDouble(pE.getElementsByTagName("timeLocalActivationDelay").item(0).getTextContent());
+		p.timeLocalActivationInducedEffectorFunctionFor = Double.parseDouble(pE.getElementsByTagName("timeLocalActivationInducedEffectorFunctionFor").item(0).getTextContent());
+		p.timeLocalActivationDelay = Double.parseDouble(pE.getElementsByTagName("timeLocalActivationDelay").item(0).getTextContent());
 		
 		NodeList eqSpatialTestNL = pE.getElementsByTagName("spatialTestEquals");
 		if(eqSpatialTestNL.getLength() > 0)
 		{
-			spatialTestEquals = Boolean.parseBoolean(eqSpatialTestNL.item(0).getTextContent()); 
+			p.spatialTestEquals = Boolean.parseBoolean(eqSpatialTestNL.item(0).getTextContent()); 
 		} 
 
+		sim.setClassParameters(parameterSlot, p);
 	}
 	
 }
@@ -3,6 +3,7 @@ package sim2d.cell.impl;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import sim2d.RandomStream;
 import sim2d.TregSimulation;
 import sim2d.cell.Cell;
 import sim2d.cell.impl.TCell_Impl.Maturity;
@@ -15,13 +16,16 @@ public class Th1Polarization extends Polarization implements MHC_I_CDR12
 	/*
 	 * General properties of all CD4Th1 cells.
 	 */
-	public static double mhcUnExpressionDelayMean;						// how long, on average, it takes for a CD4Th1 cell to stop expressing Qa-1 molecules following its activation.
-	public static double mhcUnExpressionDelayStdDev;					// the standard deviation of how long it takes for a CD4Th1 cell to stop expressing Qa-1 molecules following its activation.
-
-	public static double type1SecretedPerHourWhenActivated;				// the quantity of type 1 cytokines secreted per hour by an activated CD4Th1 cell.
-	public static double type1SecretedPerTimeslice;						// the quantity of type 1 cytokines secreted per simulation time slice by an activated CD4Th1 cell.
-	 
-	
+	private static class Parameters
+	{
+		double mhcUnExpressionDelayMean;						// how long, on average, it takes for a CD4Th1 cell to stop expressing Qa-1 molecules following its activation.
+		double mhcUnExpressionDelayStdDev;					// the standard deviation of how long it takes for a CD4Th1 cell to stop expressing Qa-1 molecules following its activation.
+		double type1SecretedPerHourWhenActivated;				// the quantity of type 1 cytokines secreted per hour by an activated CD4Th1 cell.
+		double type1SecretedPerTimeslice;						// the quantity of type 1 cytokines secreted per simulation time slice by an activated CD4Th1 cell.
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
 	/*
 	 * Properties of individual CD4Th1 cell instances.
@@ -57,10 +61,10 @@ public class Th1Polarization extends Polarization implements MHC_I_CDR12
 	 */
 	public void becomeEffector()
 	{	
-		timeToMHC_I_CDR12Expression = TregSimulation.sim.schedule.getTime();						// immediate expression of MHC-I-CDR1/2 following activation
-		timeOfMHC_I_CDR12UnExpression = calculateAbsoluteTimeToMHCUnExpression(timeToMHC_I_CDR12Expression);
+		timeToMHC_I_CDR12Expression = Th.simulation.schedule.getTime();						// immediate expression of MHC-I-CDR1/2 following activation
+		timeOfMHC_I_CDR12UnExpression = calculateAbsoluteTimeToMHCUnExpression(Th.simulation, timeToMHC_I_CDR12Expression, Th.random);
 			// times for expression and unexpression have just been calculated, do a check now, to cover the extreme case that unexpression should happen immediately. 
-		updateMoleculeExpression(TregSimulation.sim);					
+		updateMoleculeExpression(Th.simulation);					
 	}
 	
 	/**
@@ -68,9 +72,9 @@ public class Th1Polarization extends Polarization implements MHC_I_CDR12
 	 */
 	public void secreteCytokines()
 	{
-		if(Th.maturity == Maturity.Effector)							// if we are activated
+		if(Th.getMaturity() == Maturity.Effector)							// if we are activated
 		{	
-			Th.compartment.receiveSecretedMolecules(Type1.instance, type1SecretedPerTimeslice, Th);	// then secrete type1 cytokine.
+			Th.compartment.receiveSecretedMolecules(Type1.instance, params(Th.simulation).type1SecretedPerTimeslice, Th);	// then secrete type1 cytokine.
 		}
 	}
 		
@@ -89,14 +93,16 @@ public class Th1Polarization extends Polarization implements MHC_I_CDR12
 	/**
 	 * Static method for calculating the time at which Qa1 will no longer be expressed. A period is picked from a distribution, and is added to the time that Qa1 was expressed to create an absolute time for Qa1 
 	 * unexpression. 
+	 * @param sim					the simulation run of the cell whose expression this is.
 	 * @param timeOfMHCExpression
+	 * @param random				the stream of the cell whose expression this is.
 	 * @return
 	 */
-	private static double calculateAbsoluteTimeToMHCUnExpression(double timeOfMHCExpression)
+	private static double calculateAbsoluteTimeToMHCUnExpression(TregSimulation sim, double timeOfMHCExpression, RandomStream random)
 	{
-		double interval = TregSimulation.sim.random.nextGaussian();			// mean = 0.0, stddev = 1.0
-		interval*= (mhcUnExpressionDelayStdDev / 2);						// manipulate gradient of curve to match std dev time. we divide by two because the figures in parameters.xml are 2sigma, not sigma. See [PG-A.7 & 7]
-		interval += mhcUnExpressionDelayMean;								// shift to the desired mean value.
+		double interval = random.nextGaussian();			// mean = 0.0, stddev = 1.0
+		interval*= (params(sim).mhcUnExpressionDelayStdDev / 2);						// manipulate gradient of curve to match std dev time. we divide by two because the figures in parameters.xml are 2sigma, not sigma. See [PG-A.7 & 7]
+		interval += params(sim).mhcUnExpressionDelayMean;								// shift to the desired mean value.
 		double absoluteTime = timeOfMHCExpression + interval;
 		
 		if(absoluteTime <= timeOfMHCExpression)								// since we are using a distribution, it is possible that we will pick a time before Qa1 was expressed! This is safety.
@@ -110,15 +116,18 @@ public class Th1Polarization extends Polarization implements MHC_I_CDR12
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("Th1Polarization").item(0);
 		
-		mhcUnExpressionDelayMean = Double.parseDouble(pE.getElementsByTagName("mhcUnExpressionDelayMean").item(0).getTextContent());
-		mhcUnExpressionDelayStdDev = Double.parseDouble(pE.getElementsByTagName("mhcUnExpressionDelayStdDev").item(0).getTextContent());
+		p.mhcUnExpressionDelayMean = Double.parseDouble(pE.getElementsByTagName("mhcUnExpressionDelayMean").item(0).getTextContent());
+		p.mhcUnExpressionDelayStdDev = Double.parseDouble(pE.getElementsByTagName("mhcUnExpressionDelayStdDev").item(0).getTextContent());
+		
+		p.type1SecretedPerHourWhenActivated = Double.parseDouble(pE.getElementsByTagName("type1SecretedPerHourWhenActivated").item(0).getTextContent());
+		p.type1SecretedPerTimeslice = p.type1SecretedPerHourWhenActivated * sim.timeSlice;
 		
-		type1SecretedPerHourWhenActivated = Double.parseDouble(pE.getElementsByTagName("type1SecretedPerHourWhenActivated").item(0).getTextContent());
-		type1SecretedPerTimeslice = type1SecretedPerHourWhenActivated * TregSimulation.sim.timeSlice;
+		sim.setClassParameters(parameterSlot, p);
 	}
 	
 }
@@ -14,18 +14,22 @@ public class Th2Polarization extends Polarization
 	 * 
 	 * some of these properties are overridden from the standard T cell to provide specific behaviours for type 2 T cells. 
 	 */
-	private static double proliferationStdDev;			// the value of a single standard deviation of proliferation.
-	private static double proliferationMean;				// the mean value of proliferation. 
-	
-	private static double type2SecretedPerHourWhenActivated;				// the quantity of type 2 cytokines secreted per house by and activated CD4Th2 cell.
-	private static double type2SecretedPerTimeslice;						// the quantity of type 2 cytokines secreted per simulation timeslice when activated. 
-	
+	private static class Parameters
+	{
+		double proliferationStdDev;			// the value of a single standard deviation of proliferation.
+		double proliferationMean;				// the mean value of proliferation. 
+		double type2SecretedPerHourWhenActivated;				// the quantity of type 2 cytokines secreted per house by and activated CD4Th2 cell.
+		double type2SecretedPerTimeslice;						// the quantity of type 2 cytokines secreted per simulation timeslice when activated. 
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
 	public double retrieveProliferationMean()
-	{	return proliferationMean;		}
+	{	return params(Th.simulation).proliferationMean;		}
 	
 	public double retrieveProliferationStdDev()
-	{	return proliferationStdDev;		}
+	{	return params(Th.simulation).proliferationStdDev;		}
 	
 	public Th2Polarization(CD4THelper Thelper)
 	{
@@ -43,9 +47,9 @@ public class Th2Polarization extends Polarization
 	 */
 	public void secreteCytokines()
 	{
-		if(Th.maturity  == Maturity.Effector)							// if we are activated
+		if(Th.getMaturity() == Maturity.Effector)							// if we are activated
 		{
-			Th.compartment.receiveSecretedMolecules(Type2.instance, type2SecretedPerTimeslice, Th);
+			Th.compartment.receiveSecretedMolecules(Type2.instance, params(Th.simulation).type2SecretedPerTimeslice, Th);
 		}
 	}
 		
@@ -53,14 +57,17 @@ public class Th2Polarization extends Polarization
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("Th2Polarization").item(0);
 		
-		proliferationStdDev = Double.parseDouble(pE.getElementsByTagName("proliferationStdDev").item(0).getTextContent());
-		proliferationMean = Double.parseDouble(pE.getElementsByTagName("proliferationMean").item(0).getTextContent());
+		p.proliferationStdDev = Double.parseDouble(pE.getElementsByTagName("proliferationStdDev").item(0).getTextContent());
+		p.proliferationMean = Double.parseDouble(pE.getElementsByTagName("proliferationMean").item(0).getTextContent());
+		
+		p.type2SecretedPerHourWhenActivated = Double.parseDouble(pE.getElementsByTagName("type2SecretedPerHourWhenActivated").item(0).getTextContent());
+		p.type2SecretedPerTimeslice = p.type2SecretedPerHourWhenActivated * sim.timeSlice;
 		
-		type2SecretedPerHourWhenActivated = Double.parseDouble(pE.getElementsByTagName("type2SecretedPerHourWhenActivated").item(0).getTextContent());
-		type2SecretedPerTimeslice = type2SecretedPerHourWhenActivated * TregSimulation.sim.timeSlice;
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
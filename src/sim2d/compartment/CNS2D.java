@@ -4,53 +4,55 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import sim2d.TregSimulation;
-import sim2d.cell.Cell;
-import sim2d.cell.impl.CD4Treg;
-import sim2d.cell.impl.CD8Treg;
+import sim2d.cell.CellKind;
 import sim2d.cell.impl.Neuron;
-import sim2d.cell.impl.CNSMacrophage;
-import sim2d.cell.impl.DendriticCell;
-import sim2d.cell.impl.DendriticCellMigrates;
 import sim2d.cell.impl.TCell_Impl;
 import sim2d.compartment.Compartment_Impl2D.VerticalMovementBoundaries;
 
 public class CNS2D extends Compartment_Impl2D
 {
-	private static int width;
-	private static int height;
-	private static double timeToCrossOrgan;
-
-	private static VerticalMovementBoundaries vmb;
-	private static VerticalMovementBoundaries vmb_recentlyMigratedDCs;						// DCMs that are migrating should not be hanging around. 
-
-	private static boolean TCellActivatedCanLeave;
+	/*
+	 * Dimensions and movement properties of this compartment. Loaded once per simulation run and held by that run (see 'params(simulation)'). 
+	 */
+	private static class Parameters
+	{
+		int width;
+		int height;
+		double timeToCrossOrgan;
+		VerticalMovementBoundaries vmb;
+		VerticalMovementBoundaries vmb_recentlyMigratedDCs;						// DCMs that are migrating should not be hanging around. 
+		boolean TCellActivatedCanLeave;
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 
 	
 	/*
 	 * these variables are for datacollection, they do not form part of the behaviour of the dendritic cells. They count how many CNS-originating DCs have adopted either a type1 or type2
-	 * polarization, in a cumulative fashion. Remember to set these to zero in 'loadParameters', or their values will be preserved between simulation runs. 
+	 * polarization, in a cumulative fashion. They belong to this compartment instance, and so start from zero in every simulation run. 
 	 */
-	public static int cumulativeCNSDCType1Polarized = 0;
-	public static int cumulativeCNSDCType2Polarized = 0;
+	public int cumulativeCNSDCType1Polarized = 0;
+	public int cumulativeCNSDCType2Polarized = 0;
 	
 	
 	public int getWidth()
-	{	return width; 	}
+	{	return params(simulation).width; 	}
 	public int getHeight()
-	{	return height;	}
+	{	return params(simulation).height;	}
 
 	
 	public CNS2D(TregSimulation sim)
 	{	super(sim);		}
 	
-	public boolean canEnter(final Cell cell)
+	public boolean canEnter(final int kind, final int state, final Compartment from)
 	{
-		if(cell instanceof CD4Treg)
+		if(kind == CellKind.CD4TREG)
 			return false;
-		if(cell instanceof CD8Treg)
+		if(kind == CellKind.CD8TREG)
 			return false;
-		if(cell instanceof TCell_Impl)
-			if( ((TCell_Impl)cell).getMaturity() == TCell_Impl.Maturity.Effector)					// naive T cells cannot enter the CNS compartment. 
+		if(CellKind.isTCell(kind))
+			if(state == TCell_Impl.Maturity.Effector.ordinal())					// naive T cells cannot enter the CNS compartment. 
 				return true;
 			else
 				return false;
@@ -58,13 +60,13 @@ public class CNS2D extends Compartment_Impl2D
 		return true;
 	}
 	
-	public boolean canLeave(final Cell cell)
+	public boolean canLeave(final int kind, final int state)
 	{
-		if(cell instanceof TCell_Impl)
-			if(((TCell_Impl)cell).getMaturity() == TCell_Impl.Maturity.Effector)
-				return TCellActivatedCanLeave;
+		if(CellKind.isTCell(kind))
+			if(state == TCell_Impl.Maturity.Effector.ordinal())
+				return params(simulation).TCellActivatedCanLeave;
 		
-		if(cell instanceof CNSMacrophage)
+		if(kind == CellKind.CNS_MACROPHAGE)
 			return false;					// CNS Macrophages cannot leave the CNS compartment.
 		
 		return true;
@@ -73,80 +75,77 @@ public class CNS2D extends Compartment_Impl2D
 	/**
 	 * Overridden method allows for compartment specific migratory behaviours to be incorporated. 
 	 */
-	protected int calculateMovementVertical(final Cell cell)
+	protected Movement verticalMovement(final int kind, final int state)
 	{
-		if(cell instanceof CNSMacrophage)
+		if(kind == CellKind.CNS_MACROPHAGE)
 		{
-			if( ((CNSMacrophage)cell).isMobile() )							// if the cell is immature, AND NOT stimulated, then we do not move. 
-				return calculateMovementVerticalUniform();					// all other CNS Macrophages move around randomly
+			if(state == CellKind.MOBILE)										// if the cell is immature, AND NOT stimulated, then we do not move. 
+				return Movement.uniform;									// all other CNS Macrophages move around randomly
 			else
-				return 0;
+				return Movement.stay;
 		}
 		
-		if(TCellActivatedCanLeave == false)
-			if(cell instanceof TCell_Impl)
-				if( ((TCell_Impl)cell).getMaturity() == TCell_Impl.Maturity.Effector )
+		if(params(simulation).TCellActivatedCanLeave == false)
+			if(CellKind.isTCell(kind))
+				if(state == TCell_Impl.Maturity.Effector.ordinal())
 						// Acticated T cells in the CNS compartment (CD4Th1 and CD4Th2) do not leave, they move around randomly. 
-					return calculateMovementVerticalUniform();
+					return Movement.uniform;
 
 		/* If immature DCs can move, then they move around randomly ignoring blood flow. If they cannot, then they will only move when they are mobile.  */
-		if(cell instanceof DendriticCellMigrates)
+		if(kind == CellKind.DENDRITIC_CELL_MIGRATES)						// only DCMs will be found in the CNS compartment. 
 		{
-			final DendriticCellMigrates dcm = (DendriticCellMigrates) cell;	// only DCMs will be found in the CNS compartment. 
-
-			if(dcm.isMobile())
-				return vmb_recentlyMigratedDCs.getMovement();				// move with blood flow (quciky)
+			if(state == CellKind.MOBILE)
+				return Movement.flow(params(simulation).vmb_recentlyMigratedDCs);		// move with blood flow (quciky)
 			else 
-				return 0;													// do not move. 
+				return Movement.stay;										// do not move. 
 		}	
 		
-		return vmb.getMovement();											// all other cell types and states follow blood flow. 
+		return Movement.flow(params(simulation).vmb);									// all other cell types and states follow blood flow. 
 	}
 	
 	/**
 	 * Overridden method allows for compartment specific migratory behaviours to be incorporated. 
 	 */
-	protected int calculateMovementHorrizontal(Cell cell)
+	protected Movement horizontalMovement(final int kind, final int state)
 	{
-		if(cell instanceof CNSMacrophage)
+		if(kind == CellKind.CNS_MACROPHAGE)
 		{
-			if( ((CNSMacrophage)cell).isMobile() )
-				return calculateMovementHorrizontalUniform();				// all other CNS Macrophages move around randomly
+			if(state == CellKind.MOBILE)
+				return Movement.uniform;									// all other CNS Macrophages move around randomly
 			else
-				return 0;												// immature CNS macrophages do not move
+				return Movement.stay;										// immature CNS macrophages do not move
 		}
 		
 		/* If immature DCs can move, then they move around randomly ignoring blood flow. If they cannot, then they will only move when they are mobile.  */
-		if(cell instanceof DendriticCellMigrates)
+		if(kind == CellKind.DENDRITIC_CELL_MIGRATES)						// the only DCs that will reside in teh CNS are those that migrate - hence DCMigrates. 
 		{
-			final DendriticCellMigrates dcm = (DendriticCellMigrates) cell;	// the only DCs that will reside in teh CNS are those that migrate - hence DCMigrates. 
-
-			if(dcm.isMobile())
-				return calculateMovementHorrizontalUniform();		// move randomly in horrizontal plane. 
+			if(state == CellKind.MOBILE)
+				return Movement.uniform;									// move randomly in horrizontal plane. 
 			else 
-				return 0;			
+				return Movement.stay;			
 		}	
 		
-		return calculateMovementHorrizontalUniform();
+		return Movement.uniform;
 	}
 	
 	/**
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("CNS2D").item(0);
 		
-		width = Integer.parseInt(pE.getElementsByTagName("width").item(0).getTextContent());
-		height = Integer.parseInt(pE.getElementsByTagName("height").item(0).getTextContent());
-		timeToCrossOrgan = Double.parseDouble(pE.getElementsByTagName("timeToCrossOrgan").item(0).getTextContent());
+		p.width = Integer.parseInt(pE.getElementsByTagName("width").item(0).getTextContent());
+		p.height = Integer.parseInt(pE.getElementsByTagName("height").item(0).getTextContent());
+		p.timeToCrossOrgan = Double.parseDouble(pE.getElementsByTagName("timeToCrossOrgan").item(0).getTextContent());
 		
-		TCellActivatedCanLeave = Boolean.parseBoolean(pE.getElementsByTagName("TCellActivatedCanLeave").item(0).getTextContent());		
+		p.TCellActivatedCanLeave = Boolean.parseBoolean(pE.getElementsByTagName("TCellActivatedCanLeave").item(0).getTextContent());		
 		/*
 		 * dynamically calculated static variables
 		 */
-		vmb = calculateVerticalMovementBoundaries(height, timeToCrossOrgan);
+		p.vmb = calculateVerticalMovementBoundaries(sim, p.height, p.timeToCrossOrgan);
 		/*
 		 * Dendritic cells that have recently become migratory have some time to move around and find a place to reside. During this time
 		 * they can move (obviously). We do not want them to move for very long, since that would interfere with T cell dynamics (hard to be bound to something
@@ -154,11 +153,8 @@ public class CNS2D extends Compartment_Impl2D
 		 * near the top of the compartment and clogging up the entrance. So we create this, blood flow bias probabilities that allow DCs to move 'mostly' downwards, 
 		 * but not in any huge hurry. This way they should find somewhere in the middle to settle
 		 */
-		vmb_recentlyMigratedDCs = calculateVerticalMovementBoundaries(height, timeToCrossOrgan/2);
-		
+		p.vmb_recentlyMigratedDCs = calculateVerticalMovementBoundaries(sim, p.height, p.timeToCrossOrgan/2);
 		
-		/* these are not parameters, they are data collection variables */
-		cumulativeCNSDCType1Polarized = 0;
-		cumulativeCNSDCType2Polarized = 0;
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
@@ -4,31 +4,39 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import sim2d.TregSimulation;
-import sim2d.cell.Cell;
 
 public class Circulation2D extends Compartment_Impl2D
 {
-	private static int width;
-	private static int height;
-	private static double timeToCrossOrgan;							// how long, on average, it will take for a cell to cross the compartment because of blood flow. 
+	/*
+	 * Dimensions and movement properties of this compartment. Loaded once per simulation run and held by that run (see 'params(simulation)'). 
+	 */
+	private static class Parameters
+	{
+		int width;
+		int height;
+		double timeToCrossOrgan;							// how long, on average, it will take for a cell to cross the compartment because of blood flow. 
+		VerticalMovementBoundaries vmb;
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
-	private static VerticalMovementBoundaries vmb;
 	
 	public int getWidth()
-	{	return width; 	}
+	{	return params(simulation).width; 	}
 	public int getHeight()
-	{	return height;	}
+	{	return params(simulation).height;	}
 	
 	
 	public Circulation2D(TregSimulation sim)
 	{	super(sim);		}
 	
-	public boolean canEnter(Cell cell)
+	public boolean canEnter(int kind, int state, Compartment from)
 	{
 		return true;
 	}
 	
-	public boolean canLeave(Cell cell)
+	public boolean canLeave(int kind, int state)
 	{
 		return true;
 	}
@@ -36,30 +44,33 @@ public class Circulation2D extends Compartment_Impl2D
 	/**
 	 * In the circulatory system all cells follow blood flow. 
 	 */
-	protected int calculateMovementVertical(Cell cell)
+	protected Movement verticalMovement(final int kind, final int state)
 	{
 		//return calculateMovementVerticalGaussian();					// all other cell types and states follow blood flow.
-		return vmb.getMovement();
+		return Movement.flow(params(simulation).vmb);
 	}
 	
-	protected int calculateMovementHorrizontal(Cell cell)
+	protected Movement horizontalMovement(final int kind, final int state)
 	{
-		return calculateMovementHorrizontalUniform();
+		return Movement.uniform;
 	}
 	
 	/**
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("Circulation2D").item(0);
 		
-		width = Integer.parseInt(pE.getElementsByTagName("width").item(0).getTextContent());
-		height = Integer.parseInt(pE.getElementsByTagName("height").item(0).getTextContent());
-		timeToCrossOrgan = Double.parseDouble(pE.getElementsByTagName("timeToCrossOrgan").item(0).getTextContent());
+		p.width = Integer.parseInt(pE.getElementsByTagName("width").item(0).getTextContent());
+		p.height = Integer.parseInt(pE.getElementsByTagName("height").item(0).getTextContent());
+		p.timeToCrossOrgan = Double.parseDouble(pE.getElementsByTagName("timeToCrossOrgan").item(0).getTextContent());
 		
 		/* dynamically calculated static variables */
-		vmb = calculateVerticalMovementBoundaries(height, timeToCrossOrgan);
+		p.vmb = calculateVerticalMovementBoundaries(sim, p.height, p.timeToCrossOrgan);
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
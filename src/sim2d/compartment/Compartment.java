@@ -1,12 +1,17 @@
 package sim2d.compartment;
 
 import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 import sim.engine.Steppable;
+import sim2d.TregSimulation;
 import sim2d.cell.Cell;
+import sim2d.cell.impl.APCCensus;
+import sim2d.cell.impl.TCellCensus;
 import sim2d.molecule.Molecule;
 
 /**
@@ -15,17 +20,125 @@ import sim2d.molecule.Molecule;
  */
 public abstract class Compartment implements Steppable
 {
-	public static boolean activatedTCellsFastTrackThroughSLOCompartments;
+	protected TregSimulation simulation;						// the simulation run this compartment belongs to. 
+	
+	/*
+	 * Properties common to all compartments, held per simulation run. 
+	 */
+	private static class Parameters
+	{
+		boolean activatedTCellsFastTrackThroughSLOCompartments;
+		int diffusionThreads = 1;							// how many threads molecule diffusion may use. 1 (the default) diffuses serially.
+		int parallelDiffusionMinGridSpaces = 10000;			// compartments with fewer grid spaces than this are always diffused serially, the overhead of parallelism outweighs the benefit.
+		ForkJoinPool diffusionPool;							// created only if diffusionThreads is greater than 1.
+		int movementThreads = 0;							// 0 (the default) moves cells one at a time, in the order the grid holds them. Otherwise cells are moved by sublattice.
+		ForkJoinPool movementPool;							// created only if movementThreads is greater than 1.
+		boolean freeSpaceIndex = false;						// whether compartments keep a FreeSpaceIndex, and place cells through it.
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
+	
+	public static boolean retrieveActivatedTCellsFastTrackThroughSLOCompartments(TregSimulation sim)
+	{	return params(sim).activatedTCellsFastTrackThroughSLOCompartments;	}
+	
+	/**
+	 * Returns the pool of threads across which molecule diffusion in a compartment of the given size is to be shared, or null if it is to be performed serially. 
+	 */
+	protected ForkJoinPool retrieveDiffusionPool(int gridSpaces)
+	{
+		final Parameters p = params(simulation);
+		if(p.diffusionPool == null || gridSpaces < p.parallelDiffusionMinGridSpaces)
+			return null;
+		return p.diffusionPool;
+	}
+	
+	/**
+	 * Returns true if cells are to be moved by sublattice, with their own random streams, rather than one at a time in the order the grid holds them. 
+	 */
+	protected boolean retrieveSublatticeMovement()
+	{	return params(simulation).movementThreads > 0;	}
+	
+	/**
+	 * Returns the pool of threads across which sublattice movement is to be shared, or null if it is to be performed on the calling thread. 
+	 */
+	protected ForkJoinPool retrieveMovementPool()
+	{	return params(simulation).movementPool;	}
+	
+	/**
+	 * Returns true if compartments are to keep an index of the grid spaces with space for another cell, and place cells through it (see FreeSpaceIndex). 
+	 */
+	protected boolean retrieveFreeSpaceIndex()
+	{	return params(simulation).freeSpaceIndex;	}
+	
+	/**
+	 * Releases the threads used for parallel diffusion and movement by the given simulation run, if there are any. Called when the simulation finishes. 
+	 */
+	public static void shutdownThreadPools(TregSimulation sim)
+	{
+		final Parameters p = params(sim);
+		if(p == null)
+			return;
+		if(p.diffusionPool != null)
+		{
+			p.diffusionPool.shutdown();
+			p.diffusionPool = null;
+		}
+		if(p.movementPool != null)
+		{
+			p.movementPool.shutdown();
+			p.movementPool = null;
+		}
+	}
+	
+	public TregSimulation getSimulation()
+	{	return simulation;	}
+	
+	public abstract int getWidth();
+	public abstract int getHeight();
+	
+	/**
+	 * The number of sublattices (colours) into which the compartment's grid spaces are divided. 
+	 */
+	public abstract int sublattices();
+	
+	/**
+	 * Returns the sublattice that grid space (x, y) belongs to. Any two grid spaces of the same sublattice are at least three apart in x and in y, so the 3x3 
+	 * blocks of grid spaces centred on them never overlap. 
+	 */
+	public abstract int sublatticeOf(int x, int y);
+	
+	/**
+	 *  Indicates whether a cell of the given kind and state (see CellKind) can enter this compartment from compartment 'from'. Consulted for every kind and 
+	 *  state when routes are compiled (see 'compileRoutes'), rather than for each cell as it migrates. 
+	 */
+	public abstract boolean canEnter(int kind, int state, Compartment from);
+	
+	/**
+	 * Indicates whether a cell of the given kind and state may leave this compartment. Consulted when routes are compiled, as 'canEnter'.
+	 */
+	public abstract boolean canLeave(int kind, int state);
 	
 	/**
-	 *  Indicates whether a cell of a certain type can enter this compartment. 
+	 * The number of grid spaces in this compartment with space for another T cell, or if 'tCell' is false, for another big cell (any other kind of cell). 
 	 */
-	public abstract boolean canEnter(Cell cell);
+	public abstract int freeGridSpaces(boolean tCell);
 	
 	/**
-	 * Indicates whether the given cell is of a type that may leave this compartment.
+	 * The census of the T cells held in this compartment, or null if the simulation does not keep one (see TregSimulation's 'census'). 
 	 */
-	public abstract boolean canLeave(Cell cell);
+	public abstract TCellCensus getTCellCensus();
+	
+	/**
+	 * The census of the APCs held in this compartment, or null if the simulation does not keep one. 
+	 */
+	public abstract APCCensus getAPCCensus();
+	
+	/**
+	 * Compiles the edges leading out of this compartment in the simulation's compartments network into the destinations that migrating cells may be sent to,
+	 * and which kinds and states of cell each destination admits. Must be called once the network is complete, and before any cell migrates.
+	 */
+	public abstract void compileRoutes();
 	
 	/**
 	 * Method handles the receipt of cytokines into a specified location in the compartment from a cell. 
@@ -46,13 +159,26 @@ public abstract class Compartment implements Steppable
 	 */
 	public abstract void enterCompartment(Cell cell);
 	
+	/**
+	 * Whilst migrants are held, cells migrating out of this compartment are removed from it but do not enter their new compartment; they are queued on the 
+	 * edge they leave by until 'admitMigrants' is called. Used by CompartmentStepPhase whilst compartments are stepped concurrently. 
+	 */
+	public abstract void holdMigrants(boolean hold);
+	
+	/**
+	 * Places the cells queued whilst migrants were held into the compartments they were migrating to, edge by edge in the order of the compartments network, 
+	 * and in the order the cells left. 
+	 */
+	public abstract void admitMigrants();
+	
 	/**
 	 *  Places the specified cell into the specified compartment at a random location. 
 	 */
 	public abstract void placeCellRandomlyInCompartmentCloseIfOccupied(Cell cell);
 	
 	/**
-	 * This method removes the cell from the compartment, regardless of its location. For example, when it is phagocytosed.
+	 * This method removes the cell from the compartment, regardless of its location. For example, when it is phagocytosed. If the simulation sweeps dead cells
+	 * (see 'TregSimulation.sweepsDeadCells') the cell is left where it is, and removed by the sweep.
 	 */
 	public abstract void removeCellFollowingDeath(Cell cell);
 	
@@ -68,6 +194,12 @@ public abstract class Compartment implements Steppable
 	 */
 	public abstract Cell[] getNeighbours(Cell cell);	
 	
+	/**
+	 * Places the cells in neighbouring grid spaces into 'into', in the same order as 'getNeighbours' would return them. Only cells whose kinds are in the 
+	 * set 'kinds' (a bitmask, see CellKind) are included. 
+	 */
+	public abstract void collectNeighbours(Cell cell, int kinds, Neighbours into);
+	
 	/**
 	 * Returns the quantity of the specified molecule at the location of the specified cell.
 	 */
@@ -78,16 +210,56 @@ public abstract class Compartment implements Steppable
 	 */
 	public abstract Collection<Cell> getAllCells();
 	
+	/**
+	 * Adds the cells in this compartment of the given kinds (a set of CellKind) to 'into', without copying the rest. 
+	 */
+	public abstract void collectCells(int kinds, Collection<Cell> into);
+	
 	public abstract int totalCells();
 	
     /**
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("Compartment").item(0);
 		
-		activatedTCellsFastTrackThroughSLOCompartments = Boolean.parseBoolean(pE.getElementsByTagName("activatedTCellsFastTrackThroughSLOCompartments").item(0).getTextContent());
+		p.activatedTCellsFastTrackThroughSLOCompartments = Boolean.parseBoolean(pE.getElementsByTagName("activatedTCellsFastTrackThroughSLOCompartments").item(0).getTextContent());
+		
+		/* parallel diffusion is optional, these tags need not be present in the parameters xml file. Results do not depend on the number of threads used. */
+		NodeList diffusionThreadsNL = pE.getElementsByTagName("diffusionThreads");
+		if(diffusionThreadsNL.getLength() > 0)
+		{
+			p.diffusionThreads = Integer.parseInt(diffusionThreadsNL.item(0).getTextContent());
+			if(p.diffusionThreads < 1)
+				throw new RuntimeException("Compartment: diffusionThreads must be at least 1, was given " + p.diffusionThreads);
+		}
+		NodeList minGridSpacesNL = pE.getElementsByTagName("parallelDiffusionMinGridSpaces");
+		if(minGridSpacesNL.getLength() > 0)
+			p.parallelDiffusionMinGridSpaces = Integer.parseInt(minGridSpacesNL.item(0).getTextContent());
+		if(p.diffusionThreads > 1)
+			p.diffusionPool = new ForkJoinPool(p.diffusionThreads);
+		
+		/* sublattice movement is optional. When the tag is present cells are moved by sublattice, with random numbers drawn from each cell's own stream. Such runs
+		 * differ from those that move cells one at a time, but do not depend on the number of threads given here. */
+		NodeList movementThreadsNL = pE.getElementsByTagName("movementThreads");
+		if(movementThreadsNL.getLength() > 0)
+		{
+			p.movementThreads = Integer.parseInt(movementThreadsNL.item(0).getTextContent());
+			if(p.movementThreads < 1)
+				throw new RuntimeException("Compartment: movementThreads must be at least 1, was given " + p.movementThreads);
+		}
+		if(p.movementThreads > 1)
+			p.movementPool = new ForkJoinPool(p.movementThreads);
+		
+		/* the free space index is optional. Placement through it is bounded in time, and cells placed close to a location are placed at the nearest free grid 
+		 * space, so runs using it differ from those that do not. */
+		NodeList freeSpaceIndexNL = pE.getElementsByTagName("freeSpaceIndex");
+		if(freeSpaceIndexNL.getLength() > 0)
+			p.freeSpaceIndex = Boolean.parseBoolean(freeSpaceIndexNL.item(0).getTextContent());
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
@@ -1,8 +1,11 @@
 package sim2d.compartment;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import sim.engine.SimState;
 import sim.field.grid.DoubleGrid2D;
@@ -11,15 +14,17 @@ import sim.field.grid.SparseGrid2D;
 import sim.field.network.Edge;
 import sim.util.Bag;
 import sim.util.Int2D;
+import sim2d.CellStepPhase;
+import sim2d.PhiloxStream;
+import sim2d.RandomStream;
 import sim2d.TregSimulation;
 import sim2d.cell.Cell;
-import sim2d.cell.impl.Neuron;
+import sim2d.cell.CellKind;
+import sim2d.cell.impl.APCCensus;
+import sim2d.cell.impl.APC_Impl;
+import sim2d.cell.impl.TCellCensus;
 import sim2d.cell.impl.TCell_Impl;
-import sim2d.molecule.INFg;
 import sim2d.molecule.Molecule;
-import sim2d.molecule.SDA;
-import sim2d.molecule.Type1;
-import sim2d.molecule.Type2;
 /**
  * 
  * @author mark
@@ -39,35 +44,118 @@ import sim2d.molecule.Type2;
  */
 public abstract class Compartment_Impl2D extends Compartment
 {
-	private TregSimulation simulation;							// we need to gain access to features (such as the random num generator) from time to time. 
+	private RandomStream random;								// random numbers drawn by the compartment itself, rather than on behalf of a cell. 
 		
-	public abstract int getWidth();
-	public abstract int getHeight();
-	
 	public SparseGrid2D cellsGrid;			// there may be a lot of empty space in our compartments, so this is more efficient than an ObjectGrid. 
 	
-	/* These grids contain the concentration of molecules in the compartment */
+	/* how many T cells, and how many big cells (all other cells), occupy each grid space, indexed [x * height + y]. These are kept in step with 'cellsGrid', 
+	 * which must only be altered through 'setCellLocation' and 'removeCellFromGrid', and make checking for space in a grid space cheap. */
+	private int[] tCellsAt;
+	private int[] bigCellsAt;
+	private FreeSpaceIndex freeSpace;						// null unless compartments keep an index of free grid spaces, kept up to date by the same two methods.
+	private TCellCensus census;								// null unless the simulation keeps a census; T cells are counted whilst the grid holds them.
+	private APCCensus apcCensus;							// likewise for APCs.
+	
+	/* These grids contain the concentration of molecules in the compartment. They are read freely, but should only be written to through 'moleculeGrids'. */
 	public DoubleGrid2D infgGrid;
 	public DoubleGrid2D sdaGrid;
 	public DoubleGrid2D type1Grid;
 	public DoubleGrid2D type2Grid;
 	
+	private MoleculeGrid[] moleculeGrids;					// one for each soluble molecule, indexed by Molecule.solubleIndex.
+	
+	private static final int movementAttempts = 8;			// how many directions a cell tries before giving up on moving this timestep.
+	private static final int minSitesPerMovementTask = 32;	// sublattice movement is not split between threads more finely than this many grid spaces.
+	
+	/* Lanes of a cell's PhiloxStream used whilst moving it, kept apart from the cell's own (lane 0). The second is used by sublattice movement for cells leaving 
+	 * the compartment. */
+	private static final int movementLane = 1;
+	private static final int leavingLane = 2;
+	
+	/* the random stream of the cell being moved on the calling thread. When null, movement draws from the simulation's generator. Only set when cells have 
+	 * random streams of their own, or are moved by sublattice. */
+	private static final ThreadLocal<PhiloxStream> movementStream = new ThreadLocal<PhiloxStream>();
+	
+	/* Buffers used in moving cells by sublattice, kept between timesteps so that movement does not allocate. Cells are indexed in the order the grid holds them. */
+	private Cell[] moving = new Cell[64];					// the cells to be moved on this timestep.
+	private int[] nextAtSite = new int[64];					// index of the next cell to be moved from the same grid space, or -1.
+	private int[] pendingX = new int[64];					// for cells that tried to leave through the bottom of the compartment, the x coordinate at which they did so. Else -1.
+	private int[] attemptsLeft = new int[64];				// for those cells, how many attempts at movement they had left.
+	private boolean[] relocated = new boolean[64];			// whether the cell has moved to a new grid space, which 'cellsGrid' is yet to be told of.
+	private int[] siteFirst;								// for each grid space, the index of the first cell to be moved from it, or -1.
+	private int[] siteLast;									// for each grid space, the index of the last cell to be moved from it.
+	private int[][] colourSites;							// for each sublattice, the grid spaces holding cells to be moved, in the order they were first met.
+	private int[] colourSiteCount;
+	
+	/* How cells of each kind and state move in this compartment, indexed by CellKind.index. Built from 'horizontalMovement' and 'verticalMovement' when the 
+	 * compartment is created, such that moving a cell is a lookup rather than a chain of tests on the cell's class and state. */
+	private Movement[] horizontalMovements;
+	private Movement[] verticalMovements;
+	
+	/* The compartments that cells leaving this one may enter, one for each edge out of it in the order the network holds them, and for each a bitmask over 
+	 * CellKind.index of the kinds and states of cell that may take that route: those that the destination admits and that may leave this compartment. 
+	 * Compiled once the network is complete (see 'compileRoutes'), such that migration is a random index and a bit test. */
+	private Compartment[] destinations;
+	private long[] admits;
+	
+	/* Cells that have migrated out of this compartment whilst migrants are held (see 'holdMigrants'), for each of 'destinations'. The queues are kept between
+	 * timesteps so that migration does not allocate. */
+	private boolean holdingMigrants = false;
+	private final ArrayList<ArrayList<Cell>> migrants = new ArrayList<ArrayList<Cell>>();
+	
 	private Compartment_Impl2D() {}							// cannot instantiate a compartment without passing the sim.
 	public Compartment_Impl2D(TregSimulation sim)
 	{
 		simulation = sim;
+		random = sim.newAgentStream();
 		
 		if(getWidth() % 2 != 0 || getHeight() % 2 != 0)
 			throw new RuntimeException("neither width nor height of this compartment may hold odd values.");	// because we use optimisations that require even numbers.
 		
 		/* create new fields for the molecules to be held in */
-		infgGrid = new DoubleGrid2D(getWidth(), getHeight());
-		sdaGrid = new DoubleGrid2D(getWidth(), getHeight());
-		type1Grid = new DoubleGrid2D(getWidth(), getHeight());
-		type2Grid = new DoubleGrid2D(getWidth(), getHeight());
+		moleculeGrids = new MoleculeGrid[Molecule.Soluble.values().length];
+		for(int i = 0; i < moleculeGrids.length; i++)
+			moleculeGrids[i] = new MoleculeGrid(getWidth(), getHeight());
+		infgGrid = moleculeGrids[Molecule.Soluble.INFg.ordinal()].grid;
+		sdaGrid = moleculeGrids[Molecule.Soluble.SDA.ordinal()].grid;
+		type1Grid = moleculeGrids[Molecule.Soluble.Type1.ordinal()].grid;
+		type2Grid = moleculeGrids[Molecule.Soluble.Type2.ordinal()].grid;
 		
 		cellsGrid = new SparseGrid2D(getWidth(), getHeight());
+		tCellsAt = new int[getWidth() * getHeight()];
+		bigCellsAt = new int[getWidth() * getHeight()];
+		census = sim.keepsCensus() ? new TCellCensus() : null;
+		apcCensus = sim.keepsCensus() ? new APCCensus() : null;
+		if(retrieveFreeSpaceIndex())
+		{
+			freeSpace = new FreeSpaceIndex(getWidth(), getHeight());
+			for(int x = 0; x < getWidth(); x++)
+				for(int y = 0; y < getHeight(); y++)
+					refreshFreeSpace(x, y);
+		}
 		
+		siteFirst = new int[getWidth() * getHeight()];
+		Arrays.fill(siteFirst, -1);
+		siteLast = new int[getWidth() * getHeight()];
+		colourSiteCount = new int[(3 + getWidth() % 3) * 3];
+		for(int x = 0; x < getWidth(); x++)						// size each sublattice's list to the number of grid spaces it holds.
+			for(int y = 0; y < getHeight(); y++)
+				colourSiteCount[sublatticeOf(x, y)]++;
+		colourSites = new int[colourSiteCount.length][];
+		for(int c = 0; c < colourSites.length; c++)
+		{
+			colourSites[c] = new int[colourSiteCount[c]];
+			colourSiteCount[c] = 0;
+		}
+		
+		horizontalMovements = new Movement[CellKind.kinds * CellKind.states];
+		verticalMovements = new Movement[CellKind.kinds * CellKind.states];
+		for(int kind = 0; kind < CellKind.kinds; kind++)
+			for(int state = 0; state < CellKind.states; state++)
+			{
+				horizontalMovements[CellKind.index(kind, state)] = horizontalMovement(kind, state);
+				verticalMovements[CellKind.index(kind, state)] = verticalMovement(kind, state);
+			}
 	}
 	
 	
@@ -76,62 +164,42 @@ public abstract class Compartment_Impl2D extends Compartment
 	 */
 	public void step(SimState state) 
 	{
-		diffuseGridContinuous( (TregSimulation)state, infgGrid);
-		diffuseGridContinuous( (TregSimulation)state, sdaGrid);
-		diffuseGridContinuous( (TregSimulation)state, type1Grid);
-		diffuseGridContinuous( (TregSimulation)state, type2Grid);
+		final TregSimulation sim = (TregSimulation) state;
+		final double gamma = halflifeDecayFactor(sim);
+		final double threshold = Molecule.retrieveDecayThreshold(simulation);
+		final ForkJoinPool pool = retrieveDiffusionPool(getWidth() * getHeight());	// null if diffusion is to be performed serially.
 		
-		/* perform halflife decay on the cytokine grids */
-		infgGrid = halflifeDecay( (TregSimulation)state, infgGrid);
-		sdaGrid = halflifeDecay( (TregSimulation)state, sdaGrid);
-		type1Grid = halflifeDecay( (TregSimulation)state, type1Grid);
-		type2Grid = halflifeDecay( (TregSimulation)state, type2Grid);
+		/* diffuse, threshold and decay each of the cytokine grids in a single pass, visiting only those regions that hold molecules. */
+		for(MoleculeGrid grid : moleculeGrids)
+			grid.diffuseAndDecay(threshold, gamma, pool);
 		
-		cellsMovement();							// there is no replacement of the grid, it is updated serially cell by cell. 
+		if(retrieveSublatticeMovement())
+			cellsMovementSublattice(sim);			// cells in the same sublattice are moved in parallel, the grid is updated once they have all moved.
+		else
+			cellsMovement(sim);						// there is no replacement of the grid, it is updated serially cell by cell. 
 	}
 	
 	/**
-	 * Method performs halflife decay on the molecules held within a grid.
+	 * Returns the proportion of molecules that survive halflife decay over a timestep.
 	 * 
 	 * number of molecules remaining after a timestep calculated as follows:
 	 * Nt+d = Nt * (1/2)^(d / halflife)   			where d is the duration of the timestep (in hours)
 	 * 
 	 * 
 	 */
-	private DoubleGrid2D halflifeDecay(final TregSimulation sim, DoubleGrid2D grid)
+	private static double halflifeDecayFactor(final TregSimulation sim)
 	{
 		final double duration = sim.timeSlice;					// the duration of a timestep, in hours.
-		final double halflife = Molecule.molecularHalflife;
-		final double gamma = Math.pow(0.5, (duration / halflife) );
-		
-		moleculeDecayThresholding(grid);
-		return grid.multiply(gamma);
-		
-		
-	}
-	
-	private void moleculeDecayThresholding(DoubleGrid2D grid)
-	{
-		final int xMax = grid.getWidth();
-		final int yMax = grid.getHeight();
-		final double treshold = Molecule.decayThreshold;
-		for(int x = 0; x < xMax; x++ )
-		{
-			for(int y = 0; y < yMax; y++)
-			{
-				// if the grid value is less than the threshold, then we set it to zero. 
-				if(grid.field[x][y] < treshold)	grid.field[x][y] = 0.0;
-			}
-		}
+		final double halflife = Molecule.retrieveMolecularHalflife(sim);
+		return Math.pow(0.5, (duration / halflife) );
 	}
 	
-		
 	/**
 	 * This returns the vertical movement of the cell, be it down (1), stay (0), or up (-1). Assumes a uniform distribution.
 	 */
 	protected int calculateMovementVerticalUniform()
 	{
-		final int i = TregSimulation.sim.random.nextInt(3);						// returns uniform int in {0,1,2} 
+		final int i = movementInt(3);												// returns uniform int in {0,1,2} 
 		return i - 1;	
 	}
 	/**
@@ -139,9 +207,35 @@ public abstract class Compartment_Impl2D extends Compartment
 	 */
 	protected int calculateMovementHorrizontalUniform()
 	{
-		final int i = TregSimulation.sim.random.nextInt(3);						// returns uniform int in {0,1,2} 
+		final int i = movementInt(3);												// returns uniform int in {0,1,2} 
 		return i - 1;														// return something in range {-1, 0, 1}
 	}
+	
+	/**
+	 * The proposed horrizontal movement of the cell, as laid down in 'horizontalMovements'.
+	 */
+	private int calculateMovementHorrizontal(final Cell cell)
+	{
+		final Movement m = horizontalMovements[CellKind.index(cell.getKind(), cell.getStateCode())];
+		if(m.rule == Movement.STAY)
+			return 0;
+		if(m.rule == Movement.UNIFORM)
+			return calculateMovementHorrizontalUniform();
+		return m.flow.getMovement(movementDouble());
+	}
+	
+	/**
+	 * The proposed vertical movement of the cell, as laid down in 'verticalMovements'.
+	 */
+	private int calculateMovementVertical(final Cell cell)
+	{
+		final Movement m = verticalMovements[CellKind.index(cell.getKind(), cell.getStateCode())];
+		if(m.rule == Movement.STAY)
+			return 0;
+		if(m.rule == Movement.UNIFORM)
+			return calculateMovementVerticalUniform();
+		return m.flow.getMovement(movementDouble());
+	}
 	/**
 	 * Moves all the cells in the grid, if possible. We iterate through all cells on the grid attempting movement. 
 	 * 
@@ -151,29 +245,38 @@ public abstract class Compartment_Impl2D extends Compartment
 	 * Either a movement will succeed, or, if every neighbouring cell is occupied the cell stays where it is.
 	 *
 	 */
-	private void cellsMovement()
+	private void cellsMovement(final TregSimulation sim)
 	{
 		final Iterator<Cell> cells = cellsGrid.getAllObjects().iterator();
-				
-		/* iterate through the cells in the compartment */
-		while(cells.hasNext())
-		{
-			final Cell cell = cells.next();
-			// go through special cases
-			if(cell instanceof Neuron)				// we do not wish to move CNS cells, move onto the next cell
-			{	/* do nothing */  }
-			else if(cell instanceof TCell_Impl)
+		final long step = sim.schedule.getSteps();
+		final PhiloxStream stream = sim.counterRandomStreams() ? new PhiloxStream(sim.runSeed) : null;	// if cells have their own streams, they move using them.
+		if(stream != null)
+			movementStream.set(stream);
+		try
+		{
+			/* iterate through the cells in the compartment */
+			while(cells.hasNext())
 			{
-				if( ((TCell_Impl) cell).getBoundToAPC() )
-				{	/* do nothing */ 	}
-				else
-					moveCell(cell);
-			}
-			else
-			{    
-				moveCell(cell);						// all other cells			
+				final Cell cell = cells.next();
+				// go through special cases
+				final int kind = cell.getKind();
+				if(kind == CellKind.NEURON)				// we do not wish to move CNS cells, move onto the next cell
+					continue;
+				if(cell.isDead())						// dead cells awaiting removal do not move.
+					continue;
+				if(CellKind.isTCell(kind) && ((TCell_Impl) cell).getBoundToAPC())
+					continue;
+				
+				if(stream != null)
+					stream.select(cell.getSerial(), step, movementLane);
+				moveCell(cell, movementAttempts);		// all other cells
 			}
 		}
+		finally
+		{
+			if(stream != null)
+				movementStream.remove();
+		}
 	}
 	
 	
@@ -183,60 +286,326 @@ public abstract class Compartment_Impl2D extends Compartment
 	 * After several attempts to move the cell, the cell remains where it is. 
 	 * @param cell
 	 */
-	private void moveCell(final Cell cell)
+	private void moveCell(final Cell cell, int attemptsAtMovement)
 	{
-		int attemptsAtMovement = 8;
-		final Int2D loc = cellsGrid.getObjectLocation(cell);			// current location of cell.
+		assert locationConsistent(cell);
+		final int locX = cell.getGridX();								// current location of cell.
+		final int locY = cell.getGridY();
 		
 		while(attemptsAtMovement > 0)
 		{
 			final int dx = calculateMovementHorrizontal(cell);	// calculate proposed horrizontal movement.
 			final int dy = calculateMovementVertical(cell);		// calculate the vertical movement. This will either follow or ignore bloodflow. 
 								
-			final int newx = cellsGrid.stx(loc.x + dx);		// calculate the new proposed coordinates (toroidal through x axis).
-			int newy = loc.y + dy;							// the proposed new y coordinate. 				
+			final int newx = cellsGrid.stx(locX + dx);		// calculate the new proposed coordinates (toroidal through x axis).
+			int newy = locY + dy;							// the proposed new y coordinate. 				
 			if(newy < 0)
 				newy = 0;									// cannot disappear up the top of the grid.
 			
-			if(newy >= cellsGrid.getHeight())				// cell trying to migrate.
-				if(migrateCell(cell) == true)				// try to migrate, and if that is successful then we break from the loop
-					break;									// break from this loop.
-				else
-					// migration failed. The cell is either allowed to stay where it is, else it is moved to teh top of the compartment.
-					newy = verticalMovementLoopOrStay(cell);		
+			if(attemptMovement(cell, newx, newy))
+				break;										// the cell has moved or migrated, break from the loop.
+			else
+				attemptsAtMovement--;						// record this attempt, and try again.
+		}
+	}
+	
+	/**
+	 * Tries to move the cell to (x, y). If y lies beyond the bottom of the compartment then the cell tries to migrate. Returns true if the cell moved or migrated.
+	 */
+	private boolean attemptMovement(final Cell cell, final int x, int y)
+	{
+		if(y >= cellsGrid.getHeight())						// cell trying to migrate.
+			if(migrateCell(cell) == true)					// try to migrate, and if that is successful then we are done.
+				return true;
+			else
+				// migration failed. The cell is either allowed to stay where it is, else it is moved to teh top of the compartment.
+				y = verticalMovementLoopOrStay(cell);
+		
+		if(spaceInGridSpace(x, y, cell))
+		{
+			setCellLocation(cell, x, y);					// place the cell in the grid space.
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Moves all the cells in the grid, as 'cellsMovement' does, but one sublattice at a time. A cell moves at most one grid space in each direction, so the 
+	 * grid spaces a cell may move into all lie within the 3x3 block centred on it. Grid spaces are coloured such that any two of the same colour are at least 
+	 * three apart in x and y (wrapping around x); the blocks around them never overlap, and so cells in grid spaces of the same colour cannot contend for 
+	 * space. The cells of each colour are moved together, with the grid spaces shared across the movement threads if there are any, and cells sharing a grid 
+	 * space moved in turn by one thread. Each cell draws its random numbers from its own stream, so the outcome does not depend on the number of threads. 
+	 * 
+	 * Cells trying to leave through the bottom of the compartment involve other compartments and the simulation's generator, so they are held back until all
+	 * colours have moved, and then handled one at a time in the order the grid holds them. 
+	 */
+	private void cellsMovementSublattice(final TregSimulation sim)
+	{
+		final long step = sim.schedule.getSteps();
+		
+		/* gather the cells to be moved, grouping them by grid space and the grid spaces by colour. */
+		final Bag cells = cellsGrid.getAllObjects();
+		int count = 0;
+		for(int i = 0; i < cells.numObjs; i++)
+		{
+			final Cell cell = (Cell) cells.objs[i];
+			final int kind = cell.getKind();
+			if(kind == CellKind.NEURON)							// we do not wish to move CNS cells.
+				continue;
+			if(cell.isDead())									// dead cells awaiting removal do not move.
+				continue;
+			if(CellKind.isTCell(kind) && ((TCell_Impl) cell).getBoundToAPC())
+				continue;
+			
+			if(count == moving.length)
+				growMovementBuffers();
+			moving[count] = cell;
+			nextAtSite[count] = -1;
+			pendingX[count] = -1;
+			relocated[count] = false;
+			final int site = cell.getGridX() * getHeight() + cell.getGridY();
+			if(siteFirst[site] < 0)
+			{
+				siteFirst[site] = count;
+				final int colour = sublatticeOf(cell.getGridX(), cell.getGridY());
+				colourSites[colour][colourSiteCount[colour]++] = site;
+			}
+			else
+				nextAtSite[siteLast[site]] = count;
+			siteLast[site] = count;
+			count++;
+		}
+		
+		/* move the cells of each colour in turn. */
+		final ForkJoinPool pool = retrieveMovementPool();
+		for(int c = 0; c < colourSites.length; c++)
+		{
+			if(pool == null || colourSiteCount[c] <= minSitesPerMovementTask)
+				moveSublatticeSites(sim, step, colourSites[c], 0, colourSiteCount[c]);
+			else
+				pool.invoke(new SublatticeMovement(sim, step, colourSites[c], 0, colourSiteCount[c]));
+		}
+		
+		/* bring 'cellsGrid' up to date with where the cells now are, and empty the grid space lists ready for the next timestep. */
+		for(int i = 0; i < count; i++)
+			if(relocated[i])
+			{
+				if(freeSpace != null)
+				{
+					final Int2D from = cellsGrid.getObjectLocation(moving[i]);
+					refreshFreeSpace(from.x, from.y);
+					refreshFreeSpace(moving[i].getGridX(), moving[i].getGridY());
+				}
+				cellsGrid.setObjectLocation(moving[i], moving[i].getGridX(), moving[i].getGridY());
+			}
+		for(int c = 0; c < colourSites.length; c++)
+		{
+			for(int s = 0; s < colourSiteCount[c]; s++)
+				siteFirst[colourSites[c][s]] = -1;
+			colourSiteCount[c] = 0;
+		}
+		
+		/* now handle the cells that tried to leave the compartment, continuing each one's attempts at movement should it be unable to. */
+		final PhiloxStream stream = new PhiloxStream(sim.runSeed);
+		movementStream.set(stream);
+		try
+		{
+			for(int i = 0; i < count; i++)
+			{
+				final Cell cell = moving[i];
+				moving[i] = null;								// do not keep dead cells from being garbage collected.
+				if(pendingX[i] < 0)
+					continue;
+				stream.select(cell.getSerial(), step, leavingLane);	// a separate stream from that used during the cell's sublattice movement.
+				if(attemptMovement(cell, pendingX[i], getHeight()) == false)
+					moveCell(cell, attemptsLeft[i] - 1);
+			}
+		}
+		finally
+		{
+			movementStream.remove();
+		}
+	}
+	
+	/**
+	 * Moves the cells in grid spaces sites[from] to sites[to - 1], all of which are of the same colour. May be called on any thread.
+	 */
+	private void moveSublatticeSites(final TregSimulation sim, final long step, final int[] sites, final int from, final int to)
+	{
+		final PhiloxStream previous = movementStream.get();
+		final PhiloxStream stream = new PhiloxStream(sim.runSeed);
+		movementStream.set(stream);
+		try
+		{
+			for(int s = from; s < to; s++)
+				for(int i = siteFirst[sites[s]]; i >= 0; i = nextAtSite[i])
+				{
+					stream.select(moving[i].getSerial(), step, movementLane);
+					moveCellOnSublattice(i);
+				}
+		}
+		finally
+		{
+			if(previous == null)
+				movementStream.remove();
+			else
+				movementStream.set(previous);
+		}
+	}
+	
+	/**
+	 * The sublattice counterpart of 'moveCell', for the cell moving[i]. Only the occupancy of the 3x3 block around the cell is read or altered, and 'cellsGrid' 
+	 * is left untouched, it is not safe for use by several threads. 
+	 */
+	private void moveCellOnSublattice(final int i)
+	{
+		final Cell cell = moving[i];
+		final int locX = cell.getGridX();
+		final int locY = cell.getGridY();
+		
+		int attemptsAtMovement = movementAttempts;
+		while(attemptsAtMovement > 0)
+		{
+			final int dx = calculateMovementHorrizontal(cell);
+			final int dy = calculateMovementVertical(cell);
+			
+			final int newx = cellsGrid.stx(locX + dx);
+			int newy = locY + dy;
+			if(newy < 0)
+				newy = 0;
 			
+			if(newy >= getHeight())							// the cell is trying to migrate, which is left until all sublattices have moved.
+			{
+				pendingX[i] = newx;
+				attemptsLeft[i] = attemptsAtMovement;
+				return;
+			}
 			if(spaceInGridSpace(newx, newy, cell))
 			{
-				cellsGrid.setObjectLocation(cell, newx, newy);		// place the cell in the grid space.
-				break;										// break from the loop.
-			} else
-				attemptsAtMovement--;						// record this attempt, and try again.
+				final int[] occupancy = CellKind.isTCell(cell.getKind()) ? tCellsAt : bigCellsAt;
+				occupancy[locX * getHeight() + locY]--;
+				occupancy[newx * getHeight() + newy]++;
+				cell.setGridLocation(newx, newy);
+				relocated[i] = true;
+				return;
+			}
+			attemptsAtMovement--;
+		}
+	}
+	
+	/**
+	 * Returns the colour of the sublattice that grid space (x, y) belongs to. Columns are coloured 0, 1, 2, 0, 1, 2..., and should the width not be a multiple
+	 * of three then each of the one or two columns left over is given a colour of its own, such that columns of the same colour remain three apart where x wraps
+	 * around. Rows are coloured 0, 1, 2, 0, 1, 2...; y does not wrap. 
+	 */
+	public int sublatticeOf(final int x, final int y)
+	{
+		final int whole = getWidth() - getWidth() % 3;			// columns falling into whole groups of three.
+		final int column = (x < whole) ? x % 3 : 3 + (x - whole);
+		return column * 3 + y % 3;
+	}
+	
+	public int sublattices()
+	{	return colourSiteCount.length;	}
+	
+	private void growMovementBuffers()
+	{
+		final int size = moving.length * 2;
+		moving = Arrays.copyOf(moving, size);
+		nextAtSite = Arrays.copyOf(nextAtSite, size);
+		pendingX = Arrays.copyOf(pendingX, size);
+		attemptsLeft = Arrays.copyOf(attemptsLeft, size);
+		relocated = Arrays.copyOf(relocated, size);
+	}
+	
+	/**
+	 * Movement draws its random numbers from the stream of the cell being moved, if there is one, else from the simulation's generator.
+	 */
+	private int movementInt(final int n)
+	{
+		final PhiloxStream stream = movementStream.get();
+		if(stream == null)
+			return simulation.random.nextInt(n);
+		return stream.nextInt(n);
+	}
+	private double movementDouble()
+	{
+		final PhiloxStream stream = movementStream.get();
+		if(stream == null)
+			return simulation.random.nextDouble();
+		return stream.nextDouble();
+	}
+	
+	/**
+	 * Returns the stream from which to draw random numbers concerning where the given cell is placed: the stream it is being moved with, if it is being moved, 
+	 * else the cell's own. 
+	 */
+	private static RandomStream placementRandom(final Cell cell)
+	{
+		final PhiloxStream stream = movementStream.get();
+		if(stream != null)
+			return stream;
+		return cell.getRandom();
+	}
+	
+	/**
+	 * Moves the cells in a range of grid spaces of the same colour, splitting the range between threads. 
+	 */
+	private class SublatticeMovement extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final TregSimulation sim;
+		private final long step;
+		private final int[] sites;
+		private final int from;
+		private final int to;
+		
+		SublatticeMovement(TregSimulation sim, long step, int[] sites, int from, int to)
+		{
+			this.sim = sim;
+			this.step = step;
+			this.sites = sites;
+			this.from = from;
+			this.to = to;
+		}
+		
+		protected void compute()
+		{
+			if(to - from <= minSitesPerMovementTask)
+			{
+				moveSublatticeSites(sim, step, sites, from, to);
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			invokeAll(new SublatticeMovement(sim, step, sites, from, mid),
+					new SublatticeMovement(sim, step, sites, mid, to));
 		}
 	}
 	
 	private boolean spaceInGridSpace(final int x, final int y, final Cell cell)
+	{	return spaceInGridSpace(x * getHeight() + y, CellKind.isTCell(cell.getKind()));	}
+	
+	private boolean spaceInGridSpace(final int index, final boolean tCell)
 	{
-		final Bag cells = cellsGrid.getObjectsAtLocation(x, y);	// get all cells at current location
-		if (cells != null)
-			for(Cell c : ((Iterable<Cell>)cells))		
-				if(c instanceof TCell_Impl == false)			// all cells other than T cells are considered to be big cells. 			
-					return false;								// any cell not a T cell is a bit cell, return false
+		if (bigCellsAt[index] != 0)								// all cells other than T cells are considered to be big cells. 
+			return false;										// any cell not a T cell is a bit cell, return false
 		
 		// at this point there are no big cells in the specified gridspace
-		if(cell instanceof TCell_Impl)
+		if(tCell)
 		{
-			final int otherCells = cellsGrid.numObjectsAtLocation(x, y);	// all these cells will be T cells, because of the loop above not returning. 
+			final int otherCells = tCellsAt[index];				// all these cells will be T cells, because of the check above not returning. 
 
-			if(TCell_Impl.spatialTestEquals == true)
+			if(TCell_Impl.retrieveSpatialTestEquals(simulation) == true)
 			{
-				if(otherCells == TCell_Impl.retrieveCellsPerGridspace())
+				if(otherCells == TCell_Impl.retrieveCellsPerGridspace(simulation))
 				{
 					return false;
 				}
 			}
 			else
 			{
-				if(otherCells >= TCell_Impl.retrieveCellsPerGridspace())
+				if(otherCells >= TCell_Impl.retrieveCellsPerGridspace(simulation))
 				{
 					return false;
 				}
@@ -251,7 +620,92 @@ public abstract class Compartment_Impl2D extends Compartment
 		 * no big cells, and if the cell we're dealing with isnt a T cell, then any cell occuping space here will mean
 		 *  there is not space for another cell. Only T cells can occupy the same space.
 		 */
-		return cellsGrid.numObjectsAtLocation(x, y) == 0;	 		
+		return tCellsAt[index] == 0;	 		
+	}
+	
+	/**
+	 * Places the cell at (x,y) in 'cellsGrid', moving it from wherever it was before, and records the change in grid space occupancy. 
+	 */
+	private void setCellLocation(final Cell cell, final int x, final int y)
+	{
+		assert locationConsistent(cell);
+		final int[] occupancy = CellKind.isTCell(cell.getKind()) ? tCellsAt : bigCellsAt;
+		final int fromX = cell.getGridX();
+		final int fromY = cell.getGridY();
+		if(fromX >= 0)
+			occupancy[fromX * getHeight() + fromY]--;
+		cellsGrid.setObjectLocation(cell, x, y);
+		cell.setGridLocation(x, y);
+		occupancy[x * getHeight() + y]++;
+		if(freeSpace != null)
+		{
+			if(fromX >= 0)
+				refreshFreeSpace(fromX, fromY);
+			refreshFreeSpace(x, y);
+		}
+		if(census != null && fromX < 0 && CellKind.isTCell(cell.getKind()))
+			census.enter((TCell_Impl) cell);
+		if(apcCensus != null && fromX < 0 && CellKind.isIn(cell.getKind(), CellKind.APCS))
+			apcCensus.enter((APC_Impl) cell);
+	}
+	
+	/**
+	 * Removes the cell from 'cellsGrid', if it is there, and records the change in grid space occupancy. 
+	 */
+	private void removeCellFromGrid(final Cell cell)
+	{
+		assert locationConsistent(cell);
+		if(cell.getGridX() < 0)
+			return;
+		final int[] occupancy = CellKind.isTCell(cell.getKind()) ? tCellsAt : bigCellsAt;
+		occupancy[cell.getGridX() * getHeight() + cell.getGridY()]--;
+		if(freeSpace != null)
+			refreshFreeSpace(cell.getGridX(), cell.getGridY());
+		if(census != null && CellKind.isTCell(cell.getKind()))
+			census.leave((TCell_Impl) cell);
+		if(apcCensus != null && CellKind.isIn(cell.getKind(), CellKind.APCS))
+			apcCensus.leave((APC_Impl) cell);
+		cellsGrid.remove(cell);
+		cell.setGridLocation(-1, -1);
+	}
+	
+	/**
+	 * Brings 'freeSpace' up to date with the occupancy of grid space (x, y). 
+	 */
+	private void refreshFreeSpace(final int x, final int y)
+	{
+		final int index = x * getHeight() + y;
+		freeSpace.update(x, y, spaceInGridSpace(index, false), spaceInGridSpace(index, true));
+	}
+	
+	public TCellCensus getTCellCensus()
+	{	return census;	}
+	
+	public APCCensus getAPCCensus()
+	{	return apcCensus;	}
+	
+	public int freeGridSpaces(final boolean tCell)
+	{
+		if(freeSpace != null)
+			return freeSpace.free(tCell);
+		int free = 0;
+		for(int index = 0; index < tCellsAt.length; index++)
+			if(spaceInGridSpace(index, tCell))
+				free++;
+		return free;
+	}
+	
+	/**
+	 * Used when assertions are enabled (java -ea) to check that the location a cell holds for itself matches where 'cellsGrid' has it. 
+	 */
+	private boolean locationConsistent(final Cell cell)
+	{
+		final Int2D location = cellsGrid.getObjectLocation(cell);
+		if(location == null && cell.getGridX() == -1 && cell.getGridY() == -1)
+			return true;
+		if(location != null && location.x == cell.getGridX() && location.y == cell.getGridY())
+			return true;
+		throw new AssertionError("cell " + cell + " holds location (" + cell.getGridX() + "," + cell.getGridY() + ") but the grid has it at " + location);
 	}
 	
 	/**
@@ -260,61 +714,135 @@ public abstract class Compartment_Impl2D extends Compartment
 	private int verticalMovementLoopOrStay(final Cell cell)
 	{
 		if (this instanceof CNS2D)
-			if(cell instanceof TCell_Impl)							// the reason that we do not check for whether T cell's can actually leave is because they would already have left if they could at this point in the code.
-				if( ((TCell_Impl)cell).getMaturity() == TCell_Impl.Maturity.Effector)
+			if(CellKind.isTCell(cell.getKind()))					// the reason that we do not check for whether T cell's can actually leave is because they would already have left if they could at this point in the code.
+				if(cell.getStateCode() == TCell_Impl.Maturity.Effector.ordinal())
 					return 0;											// loops back to the top of the compartment.
 		
 		return cellsGrid.getHeight() - 1;							// in all other cases the cell stays at the bottom of the compartment
 	}
 	
 	/**
-	 * Some cells have different behaviours in different compartments. This method is overridden by concrete compartment implemenetations to provide that behaviour. 
+	 * Some cells have different behaviours in different compartments. This method is overridden by concrete compartment implemenetations to provide that behaviour,
+	 * giving how cells of the given kind and state (see CellKind) move vertically. Called once for each kind and state when the compartment is created. 
 	 */
-	protected abstract int calculateMovementVertical(final Cell cell);
+	protected abstract Movement verticalMovement(final int kind, final int state);
 	
 	/**
-	 * Some cells have different behaviours in different compartments. This method is overridden by concrete compartment implemenetations to provide that behaviour. 
+	 * Some cells have different behaviours in different compartments. This method is overridden by concrete compartment implemenetations to provide that behaviour,
+	 * giving how cells of the given kind and state (see CellKind) move horrizontally. Called once for each kind and state when the compartment is created. 
 	 */
-	protected abstract int calculateMovementHorrizontal(final Cell cell);
+	protected abstract Movement horizontalMovement(final int kind, final int state);
+	
+	/**
+	 * How a cell moves along one axis on each attempt at movement: it stays where it is, picks a direction uniformly at random, or follows a flow given by 
+	 * 'VerticalMovementBoundaries' (vertical movement only). 
+	 */
+	protected static final class Movement
+	{
+		private static final byte STAY = 0;
+		private static final byte UNIFORM = 1;
+		private static final byte FLOW = 2;
+		
+		public static final Movement stay = new Movement(STAY, null);
+		public static final Movement uniform = new Movement(UNIFORM, null);
+		
+		private final byte rule;
+		private final VerticalMovementBoundaries flow;
+		
+		private Movement(final byte rule, final VerticalMovementBoundaries flow)
+		{
+			this.rule = rule;
+			this.flow = flow;
+		}
+		
+		public static Movement flow(final VerticalMovementBoundaries vmb)
+		{	return new Movement(FLOW, vmb);	}
+	}
 	
 	/**
 	 * When a cell leaves down the bottom of the grid (past y=height) it is deemed to have migrated to another location. This method handles that posibility. 
 	 */
 	protected boolean migrateCell(Cell cell)
 	{	
-		final Bag c = simulation.compartmentsNetwork.getEdgesOut(this);		// retrieve the compartments to which a cell can transit from the one it presently occupies.
-		final int index = simulation.random.nextInt(c.size());				// index of the next compartment we are going to enter, randomly chosen.
-		final Edge newCompartmentEdge = (Edge)c.get(index);
-		final Compartment newCompartment = (Compartment) newCompartmentEdge.to();
-		if(newCompartment.canEnter(cell) && this.canLeave(cell))			// check to see if this cell can actually enter the proposed new compartment, and if it may leave this one. 
+		final int index = placementRandom(cell).nextInt(destinations.length);	// index of the next compartment we are going to enter, randomly chosen.
+		final Compartment newCompartment = destinations[index];
+		if((admits[index] & (1L << CellKind.index(cell.getKind(), cell.getStateCode()))) != 0)	// check to see if this cell can actually enter the proposed new compartment, and if it may leave this one. 
 		{			
-			cellsGrid.remove(cell);											// remove this cell from this compartment.			
-			newCompartment.enterCompartment(cell);							// and enter the new compartment.
+			removeCellFromGrid(cell);										// remove this cell from this compartment.			
+			if(holdingMigrants)
+				migrants.get(index).add(cell);								// the cell enters the new compartment once all compartments have stepped.
+			else
+				newCompartment.enterCompartment(cell);						// and enter the new compartment.
 			return true;													// cell successfully migrated.
 		} else
 			return false;													// cell did not migrate out of this compartment. 
 	}
 	
+	public void compileRoutes()
+	{
+		final Bag edges = simulation.compartmentsNetwork.getEdgesOut(this);
+		destinations = new Compartment[edges.size()];
+		admits = new long[edges.size()];
+		for(int e = 0; e < edges.size(); e++)
+		{
+			final Compartment destination = (Compartment) ((Edge) edges.get(e)).to();
+			destinations[e] = destination;
+			for(int kind = 0; kind < CellKind.kinds; kind++)
+				for(int state = 0; state < CellKind.states; state++)
+					if(destination.canEnter(kind, state, this) && canLeave(kind, state))
+						admits[e] |= 1L << CellKind.index(kind, state);
+		}
+		migrants.clear();
+		for(int e = 0; e < destinations.length; e++)
+			migrants.add(new ArrayList<Cell>());
+	}
+	
+	public void holdMigrants(final boolean hold)
+	{	holdingMigrants = hold;		}
+	
+	public void admitMigrants()
+	{
+		if(holdingMigrants)
+			throw new RuntimeException("Compartment: migrants cannot be admitted whilst they are held.");
+		for(int e = 0; e < migrants.size(); e++)
+		{
+			final ArrayList<Cell> queue = migrants.get(e);
+			for(int i = 0; i < queue.size(); i++)
+				destinations[e].enterCompartment(queue.get(i));
+			queue.clear();
+		}
+	}
+	
 	/**
 	 * Places the specified cell in this compartment. 
 	 * 
 	 * Method attempts to place cell in a grid space not already occupied, but after some number of attempts will place it in a space regardless of whether 
-	 * that space is occupied or not. 
+	 * that space is occupied or not. With a free space index, the cell is placed in a free grid space of the top row picked at random, or if there are none,
+	 * in any grid space of the top row. 
 	 */
 	public void enterCompartment(final Cell cell)
 	{	 		
 		int x, y;						// the location of the cell in the new compartment. 
 		y = 0;							// cells enter at the top and leave through the bottom of the compartment
+		if(freeSpace != null)
+		{
+			final boolean tCell = CellKind.isTCell(cell.getKind());
+			final int free = freeSpace.freeInRow(y, tCell);
+			x = (free > 0) ? freeSpace.nthFreeInRow(y, placementRandom(cell).nextInt(free), tCell) : placementRandom(cell).nextInt(getWidth());
+			setCellLocation(cell, x, y);
+			cell.migrateIntoCompartment(this);
+			return;
+		}
 		int attempts = getWidth();		// it is conceivable that the entire top of the compartment is occupied, in which case the cell cannot enter. 
 		do
 		{
-			x = simulation.random.nextInt(getWidth());						// random placement across width of compartment (but still at the top)
+			x = placementRandom(cell).nextInt(getWidth());					// random placement across width of compartment (but still at the top)
 			attempts --;				// record the attempt
 			if(attempts == 0)			// when we have attempted enough times we move to a different height and try there. 
 				break;					// after so many attempts we will place the cell at x, regardless of whether that space is occupied or not. 
 	
 		} while (spaceInGridSpace(x, y, cell) == false);					// if there is no space for the cell in the specified gridspace, try again... 
-		cellsGrid.setObjectLocation(cell, x, y);							// place the cell at the location  (x, y)
+		setCellLocation(cell, x, y);										// place the cell at the location  (x, y)
 		
 		cell.migrateIntoCompartment(this);									// record that the cell is now within a different comparmtent.
 	}
@@ -356,8 +884,8 @@ public abstract class Compartment_Impl2D extends Compartment
 					final int remainder = here - (share * 8);
 					for(int i = 0; i < remainder; i++)
 					{
-						final int xi = sim.random.nextInt(3) - 1;	// the randomly chosen x direction
-						final int yi = sim.random.nextInt(3) - 1;	// the randomly chosen y direction
+						final int xi = random.nextInt(3) - 1;		// the randomly chosen x direction
+						final int yi = random.nextInt(3) - 1;		// the randomly chosen y direction
 						grid.field[x][y] -= 1;						// take one away from the current cell
 						grid.field[grid.stx(x + xi)][grid.sty(y + yi)] += 1;	// move it to the randomly determined neighbour cell. 
 					}
@@ -365,62 +893,12 @@ public abstract class Compartment_Impl2D extends Compartment
 			}
 		}
 	}
-	/**
-	 * Given a grid (of molecules) this method will diffuse the molecules from each cell into the neighouring cells.  
-	 * Before diffusion takes place we take a snap shot of the original grid, and reference the snap shot in making changes to the orginal grid.  
-	 *  
-	 * TODO inherrent assumption about movement of molecules here. 
-	 */
-	private void diffuseGridContinuous(final TregSimulation sim, DoubleGrid2D grid)
-	{
-		DoubleGrid2D newGrid = new DoubleGrid2D(grid);		// clone the existing grid, and use that snapshot to make alterations to the original 'grid'. 
-		for(int x = 0; x < grid.getWidth(); x++)			// scan along x	
-		{
-			for(int y = 0; y < grid.getHeight(); y++)		// scal along y 
-			{
-				double here = newGrid.get(x, y);			// pull out the original value for this cell.
-				if(here != 0.0)								// if this cell does not contain any molecules then we do not need to continue with this cell. 
-				{
-					double share = here / 8.0;				// 8 neighbours. The remainder will stay where it is. TODO consider changing this last part. 
-				
-					grid.field[x][y] -= (share * 8);		// reduce the number of this cell, in the new grid. 
-					
-					/* add share to the neighbours */ 
-					grid.field[grid.stx(x - 1)][grid.sty(y - 1)] 	+= share;		// bottom left 		
-					grid.field[grid.stx(x - 1)][y]				  	+= share;		// bottom
-					grid.field[grid.stx(x - 1)][grid.sty(y + 1)] 	+= share;		// bottom right
-					
-					grid.field[grid.stx(x)][grid.sty(y - 1)] 	+= share;			// middle left
-					grid.field[grid.stx(x)][grid.sty(y + 1)] 	+= share;			// middle right
-							
-					grid.field[grid.stx(x + 1)][grid.sty(y - 1)] 	+= share;		// top left		
-					grid.field[grid.stx(x + 1)][y]				  	+= share;		// top
-					grid.field[grid.stx(x + 1)][grid.sty(y + 1)] 	+= share;		// top right				
-				}
-			}
-		}
-	}
-
-
-
 	/**
 	 * Method through which molecules are secreted into spaces in the compartment.
 	 */
 	public void receiveMolecules(Molecule m, double quantity, int x, int y) 
 	{
-		DoubleGrid2D grid = null;
-		
-		/* identify the correct molecule type */
-		if (m instanceof INFg)
-			grid = infgGrid;
-		else if (m instanceof SDA)
-			grid = sdaGrid;
-		else if (m instanceof Type1)
-			grid = type1Grid;
-		else if (m instanceof Type2)
-			grid = type2Grid;
-		
-		grid.field[x][y] += quantity;		// add the quantity to the appropriate cell.
+		moleculeGrids[m.solubleIndex].add(x, y, quantity);		// add the quantity to the appropriate cell.
 	}
 	
 	/**
@@ -428,20 +906,14 @@ public abstract class Compartment_Impl2D extends Compartment
 	 */
 	public void receiveSecretedMolecules(Molecule m, double quantity, Cell cell)
 	{
-		DoubleGrid2D grid = null;				// we identify the grid below. 
-		Int2D location = cellsGrid.getObjectLocation(cell);
-		
-		/* identify the correct molecule type */
-		if (m instanceof INFg)
-			grid = infgGrid;
-		else if (m instanceof SDA)
-			grid = sdaGrid;
-		else if (m instanceof Type1)
-			grid = type1Grid;
-		else if (m instanceof Type2)
-			grid = type2Grid;
-		
-		grid.field[location.x][location.y] += quantity;		// add the quantity to the appropriate cell.
+		assert locationConsistent(cell);
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred != null)										// cells are being stepped in parallel, the molecules arrive once they have all stepped.
+		{
+			deferred.addMolecules(this, m, quantity, cell.getGridX(), cell.getGridY());
+			return;
+		}
+		moleculeGrids[m.solubleIndex].add(cell.getGridX(), cell.getGridY(), quantity);		// add the quantity to the appropriate cell.
 	}
 	
 	/**
@@ -451,13 +923,14 @@ public abstract class Compartment_Impl2D extends Compartment
 	 */
 	public void receiveDaugherCell(Cell daughter, Cell parent) 
 	{
-		final Int2D location = cellsGrid.getObjectLocation(parent);	// location of parent cell. Will try to place the daughter here first
-		
-		placeCellAsCloseToLocationAsPossible(daughter, location.x, location.y);
+		assert locationConsistent(parent);
+		placeCellAsCloseToLocationAsPossible(daughter, parent.getGridX(), parent.getGridY());	// location of parent cell. Will try to place the daughter here first
 	}
 	
 	/**
-	 * This method will place the given cell as close as (is reasonably) possible to the location (x,y). 
+	 * This method will place the given cell as close as (is reasonably) possible to the location (x,y). With a free space index the cell is placed in the
+	 * nearest free grid space (see 'FreeSpaceIndex.nearestFree'), or at (x,y) if the compartment is full. Without one, grid spaces diagonally 'distance'
+	 * away are tried at random, moving further out every 8 attempts; once the distance exceeds the size of the compartment the cell is placed at (x,y). 
 	 * 
 	 * @param cell
 	 * @param x
@@ -465,7 +938,17 @@ public abstract class Compartment_Impl2D extends Compartment
 	 */
 	private void placeCellAsCloseToLocationAsPossible(final Cell cell, final int x, final int y)
 	{
-		int attempts = 8;											// after 5 attempts to place the cell, it will be placed in a location regardless of how many cells already occupy it (this stops endless loops)
+		if(freeSpace != null)
+		{
+			final int site = freeSpace.nearestFree(x, y, CellKind.isTCell(cell.getKind()), placementRandom(cell));
+			if(site < 0)
+				setCellLocation(cell, x, y);						// the compartment is full, the cell is placed regardless.
+			else
+				setCellLocation(cell, site / getHeight(), site % getHeight());
+			return;
+		}
+		int attempts = 8;											// attempts left at the current distance.
+		final int maxDistance = Math.max(getWidth(), getHeight());	// beyond this every distance has been tried, and the cell is placed regardless (this stops endless loops).
 		int x1 = x;													// temp x and y variables, we do not actually want to chance x and y. 
 		int y1 = y;
 		
@@ -473,11 +956,11 @@ public abstract class Compartment_Impl2D extends Compartment
 		while(spaceInGridSpace(x1, y1, cell) == false)
 		{
 			// assign x and y to either +- distance, randomly. 
-			x1 = ( TregSimulation.sim.random.nextBoolean() ) ? ( x + distance ) : ( x - distance );
-			y1 = ( TregSimulation.sim.random.nextBoolean() ) ? y + distance : y - distance ;
+			x1 = ( placementRandom(cell).nextBoolean() ) ? ( x + distance ) : ( x - distance );
+			y1 = ( placementRandom(cell).nextBoolean() ) ? y + distance : y - distance ;
 			
 			// place x and y back into the grid, in case the last operations selected co-ordinates outside of the grid. 
-			x1 = cellsGrid.stx(x);									// toroidal x
+			x1 = cellsGrid.stx(x1);									// toroidal x
 			if(y1 < 0) 				y1 = 0;
 			if(y1 >= getHeight())	y1 = getHeight() - 1;
 			attempts --;											// record this attempt at placement
@@ -485,9 +968,15 @@ public abstract class Compartment_Impl2D extends Compartment
 			{
 				distance++;
 				attempts = 8;
+				if(distance > maxDistance)
+				{
+					x1 = x;
+					y1 = y;
+					break;
+				}
 			}
 		}
-		cellsGrid.setObjectLocation(cell, x1, y1);				// place cell in grid
+		setCellLocation(cell, x1, y1);							// place cell in grid
 	}
 	
 	/**
@@ -498,8 +987,8 @@ public abstract class Compartment_Impl2D extends Compartment
 	public void placeCellRandomlyInCompartmentCloseIfOccupied(final Cell cell) 
 	{	
 		// pick a random location.
-		final int x = simulation.random.nextInt(getWidth());
-		final int y = simulation.random.nextInt(getHeight());
+		final int x = placementRandom(cell).nextInt(getWidth());
+		final int y = placementRandom(cell).nextInt(getHeight());
 		
 		placeCellAsCloseToLocationAsPossible(cell, x, y);			// place the cell as close to that random location as we can. 
 	}
@@ -507,17 +996,54 @@ public abstract class Compartment_Impl2D extends Compartment
 	
 	/**
 	 * Places the specified cell in a random location within this compartment. If the location is occupied, then
-	 * another is picked, at random. 
+	 * another is picked, at random. With a free space index the location is picked from the free grid spaces alone, or from any grid space if the
+	 * compartment is full. Without one, after as many random picks as there are grid spaces the first grid space with room is taken, searching from the
+	 * last pick, or that pick itself if the compartment is full. 
 	 */
 	public void placeCellRandomlyInCompartment(Cell cell) 
 	{
 		int x, y;													// where the cell will be placed in the compartment.
+		if(freeSpace != null)
+		{
+			final int free = freeSpace.free(CellKind.isTCell(cell.getKind()));
+			if(free > 0)
+			{
+				final int site = freeSpace.nthFree(placementRandom(cell).nextInt(free), CellKind.isTCell(cell.getKind()));
+				x = site / getHeight();
+				y = site % getHeight();
+			}
+			else
+			{
+				x = placementRandom(cell).nextInt(getWidth());
+				y = placementRandom(cell).nextInt(getHeight());
+			}
+			setCellLocation(cell, x, y);
+			return;
+		}
+		int attempts = getWidth() * getHeight();
 		do
 		{
-			x = simulation.random.nextInt(getWidth());
-			y = simulation.random.nextInt(getHeight());
-		} while (spaceInGridSpace(x, y, cell) == false);			// if there is no space for an additional (specified) cell, then try again.  
-		cellsGrid.setObjectLocation(cell, x, y);					// place the cell at that location
+			x = placementRandom(cell).nextInt(getWidth());
+			y = placementRandom(cell).nextInt(getHeight());
+			attempts--;
+		} while (spaceInGridSpace(x, y, cell) == false && attempts > 0);	// if there is no space for an additional (specified) cell, then try again.  
+		
+		if(spaceInGridSpace(x, y, cell) == false)					// the compartment is (nearly) full, search it rather than keep guessing.
+		{
+			final int from = x * getHeight() + y;
+			final boolean tCell = CellKind.isTCell(cell.getKind());
+			for(int i = 1; i < getWidth() * getHeight(); i++)
+			{
+				final int site = (from + i) % (getWidth() * getHeight());
+				if(spaceInGridSpace(site, tCell))
+				{
+					x = site / getHeight();
+					y = site % getHeight();
+					break;
+				}
+			}
+		}
+		setCellLocation(cell, x, y);								// place the cell at that location
 	}
 	
 	/**
@@ -525,7 +1051,15 @@ public abstract class Compartment_Impl2D extends Compartment
 	 */
 	public void removeCellFollowingDeath(final Cell cell)
 	{
-		cellsGrid.remove(cell);										// remove cell from field
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred != null)										// cells are being stepped in parallel, the grid is left untouched until they have all stepped.
+		{
+			deferred.removeFollowingDeath(this, cell);
+			return;
+		}
+		if(simulation.sweepsDeadCells())					// the cell stays as a tombstone until dead cells are swept at the end of the timestep.
+			return;
+		removeCellFromGrid(cell);									// remove cell from field
 		cell.migrateIntoCompartment(null);							// record that cell no longer occupies any compartment.
 	}
 	
@@ -535,26 +1069,49 @@ public abstract class Compartment_Impl2D extends Compartment
 	 * We assume toroidal world along x axis, but not along y axis. 
 	 */
 	public Cell[] getNeighbours(final Cell cell) 
+	{
+		final Neighbours neighbours = Neighbours.acquire();
+		collectNeighbours(cell, CellKind.ANY, neighbours);
+		Cell[] cells = new Cell[neighbours.size()];						// copy into array of Cell objects...
+		for(int i = 0; i < cells.length; i++)
+			cells[i] = neighbours.get(i);
+		neighbours.release();
+		return cells;													// ... and return.
+	}
+	
+	/**
+	 * As 'getNeighbours', but places the neighbouring cells into a reusable buffer rather than allocating, and includes only cells of the given kinds. 
+	 * 
+	 * We assume toroidal world along x axis, but not along y axis. 
+	 */
+	public void collectNeighbours(final Cell cell, final int kinds, final Neighbours into)
 	{
 		final int distance = 1;											// so that we can change it at a later date, if we choose. CANNOT EXCEED MIN(WIDTH, HEIGHT) 		
-		final Int2D loc = cellsGrid.getObjectLocation(cell);			// location of the cell in the grid.
-		ArrayList<Cell> neighbours = new ArrayList<Cell>();				// where we will store the neighbouring cells. 
+		assert locationConsistent(cell);
+		final int locX = cell.getGridX();								// location of the cell in the grid.
+		final int locY = cell.getGridY();
 		
-		for(int x0 = loc.x - distance ; x0 <= loc.x + distance ; x0++)	// iterate over x coordinates
+		for(int x0 = locX - distance ; x0 <= locX + distance ; x0++)	// iterate over x coordinates
 		{
 			final int x1 = cellsGrid.stx(x0);							// toroidal world around the x axis. (but not the y axis)
-			for(int y0 = loc.y - distance; y0 <= loc.y + distance; y0++)	// iterate over y coordinates
+			for(int y0 = locY - distance; y0 <= locY + distance; y0++)		// iterate over y coordinates
 				if( (y0 < getHeight()) && (y0 >= 0) )					// if this is not the case then we skip examination of this grid space (off the edge of the field)
 				{
-					final Bag cellsBag = cellsGrid.getObjectsAtLocation(x1, y0);	
-					if (cellsBag != null)								// cellsBag will be null if there were no objects in that location of the SparseGrid2D.				
-						for(Object o : cellsBag)
-							neighbours.add( (Cell) o );					// cast objects into Cells and place into array list.					
+					into.location.x = x1;								// not 'getObjectsAtLocation(x1, y0)', whose key is shared by all threads.
+					into.location.y = y0;
+					final Bag cellsBag = cellsGrid.getObjectsAtLocation(into.location);	
+					if (cellsBag == null)								// cellsBag will be null if there were no objects in that location of the SparseGrid2D.
+						continue;
+					for(int i = 0; i < cellsBag.numObjs; i++)
+					{
+						final Cell o = (Cell) cellsBag.objs[i];
+						if(o == cell)									// the cell is not in its own neighbourhood. 
+							continue;
+						if(CellKind.isIn(o.getKind(), kinds) && o.isDead() == false)	// dead cells awaiting removal are not neighbours.
+							into.add(o);
+					}
 				}
 		}		
-		neighbours.remove(cell);										// remove the cell from being in its own neighbourhood. 
-		Cell[] cells = new Cell[neighbours.size()];						// cast into array of Cell objects...
-		return neighbours.toArray(cells);								// ... and return.
 	}
 	
 	/**
@@ -562,17 +1119,10 @@ public abstract class Compartment_Impl2D extends Compartment
 	 */
 	public double getConcentrationMolecule(final Molecule m, final Cell c)
 	{
-		Int2D location = cellsGrid.getObjectLocation(c);
-		
-		if(m instanceof INFg)
-			return infgGrid.field[location.x][location.y];
-		else if(m instanceof SDA)
-			return sdaGrid.field[location.x][location.y];
-		else if(m instanceof Type1)
-			return type1Grid.field[location.x][location.y];
-		else if(m instanceof Type2)
-			return type2Grid.field[location.x][location.y];
-		return 0;
+		assert locationConsistent(c);
+		if(m.solubleIndex < 0)									// molecules that are not soluble are never found in the compartment.
+			return 0;
+		return moleculeGrids[m.solubleIndex].grid.field[c.getGridX()][c.getGridY()];
 	}
 	
 	/**
@@ -580,16 +1130,9 @@ public abstract class Compartment_Impl2D extends Compartment
 	 */
 	public void removeQuantityMolecule(Molecule m, int quantity, Cell cell)
 	{
-		Int2D location = cellsGrid.getObjectLocation(cell);
-
-		if(m instanceof INFg)
-			infgGrid.field[location.x][location.y] -= quantity;
-		else if(m instanceof SDA)
-			sdaGrid.field[location.x][location.y] -= quantity;
-		else if(m instanceof Type1)
-			type1Grid.field[location.x][location.y] -= quantity;
-		else if(m instanceof Type2)
-			type2Grid.field[location.x][location.y] -= quantity;
+		assert locationConsistent(cell);
+		if(m.solubleIndex >= 0)
+			moleculeGrids[m.solubleIndex].add(cell.getGridX(), cell.getGridY(), -quantity);
 	}
 
 
@@ -603,6 +1146,17 @@ public abstract class Compartment_Impl2D extends Compartment
 		return new ArrayList<Cell>(b);			// do not return the bag itself, because modifying it is dangerous. 
 	}
 	
+	public void collectCells(final int kinds, final Collection<Cell> into)
+	{
+		final Bag b = cellsGrid.allObjects;
+		for(int i = 0; i < b.numObjs; i++)
+		{
+			final Cell cell = (Cell) b.objs[i];
+			if(CellKind.isIn(cell.getKind(), kinds))
+				into.add(cell);
+		}
+	}
+	
 	public int totalCells()
 	{
 		return cellsGrid.allObjects.size();
@@ -613,13 +1167,14 @@ public abstract class Compartment_Impl2D extends Compartment
 	 * 64 - 72. 
 	 * 
 	 * 
+	 * @param sim the simulation run whose timeslice the boundaries are for.
 	 * @param compartmentHeight
 	 * @param timeToCrossCompartment
 	 * @return
 	 */
-	public static VerticalMovementBoundaries calculateVerticalMovementBoundaries(int compartmentHeight, double timeToCrossCompartment)
+	public static VerticalMovementBoundaries calculateVerticalMovementBoundaries(TregSimulation sim, int compartmentHeight, double timeToCrossCompartment)
 	{		
-		final int timestepsInCompartment = (int) (timeToCrossCompartment / TregSimulation.sim.timeSlice);
+		final int timestepsInCompartment = (int) (timeToCrossCompartment / sim.timeSlice);
 		final double alpha = (double) compartmentHeight / (double) timestepsInCompartment;
 		
 		final double x = (1.0 + (1.5 * alpha)) / 3.0;		// size of region representing 'down'
@@ -672,9 +1227,9 @@ public abstract class Compartment_Impl2D extends Compartment
 			boundary2 = b2;
 		}
 		
-		public int getMovement()
+		/** Returns the vertical movement for the given uniform random number in [0, 1). */
+		public int getMovement(final double rand)
 		{
-			final double rand = TregSimulation.sim.random.nextDouble();
 			if(rand < boundary1)
 				return 1;
 			else if(rand < boundary2)
@@ -0,0 +1,176 @@
+package sim2d.compartment;
+
+import sim2d.RandomStream;
+
+/**
+ * Records which grid spaces of a compartment have space for another cell, such that a cell can be placed in a free grid space, at random or as close as
+ * possible to a given location, in bounded time, and such that the number of free grid spaces is known without visiting them. Space is recorded separately
+ * for big cells (everything other than T cells) and for T cells, since the two are judged differently (see 'Compartment_Impl2D.spaceInGridSpace').
+ *
+ * Each is held as a bitset in which every row of the grid (grid spaces sharing a y coordinate) starts on a fresh word, along with the number of free grid
+ * spaces in each row. The index does not judge space itself; the compartment tells it whenever the occupancy of a grid space changes (see 'update').
+ *
+ * Grid spaces are identified as they are by the compartment, as x * height + y.
+ *
+ * @author mark
+ *
+ */
+class FreeSpaceIndex
+{
+	private final int width;
+	private final int height;
+	private final int rowWords;								// words of each bitset given over to each row.
+
+	private final long[] bigFree;
+	private final long[] tFree;
+	private final int[] bigFreeInRow;
+	private final int[] tFreeInRow;
+	private int bigFreeTotal = 0;
+	private int tFreeTotal = 0;
+
+	FreeSpaceIndex(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		rowWords = (width + 63) >>> 6;
+		bigFree = new long[rowWords * height];
+		tFree = new long[rowWords * height];
+		bigFreeInRow = new int[height];
+		tFreeInRow = new int[height];
+	}
+
+	/**
+	 * Records whether grid space (x, y) has space for a big cell, and for a T cell.
+	 */
+	void update(int x, int y, boolean spaceForBigCell, boolean spaceForTCell)
+	{
+		final int word = y * rowWords + (x >>> 6);
+		final long bit = 1L << (x & 63);
+		if(((bigFree[word] & bit) != 0) != spaceForBigCell)
+		{
+			bigFree[word] ^= bit;
+			final int change = spaceForBigCell ? 1 : -1;
+			bigFreeInRow[y] += change;
+			bigFreeTotal += change;
+		}
+		if(((tFree[word] & bit) != 0) != spaceForTCell)
+		{
+			tFree[word] ^= bit;
+			final int change = spaceForTCell ? 1 : -1;
+			tFreeInRow[y] += change;
+			tFreeTotal += change;
+		}
+	}
+
+	/**
+	 * The number of grid spaces with space for a T cell, or for a big cell.
+	 */
+	int free(boolean tCell)
+	{	return tCell ? tFreeTotal : bigFreeTotal;	}
+
+	int freeInRow(int y, boolean tCell)
+	{	return tCell ? tFreeInRow[y] : bigFreeInRow[y];	}
+
+	boolean isFree(int x, int y, boolean tCell)
+	{	return ((tCell ? tFree : bigFree)[y * rowWords + (x >>> 6)] & (1L << (x & 63))) != 0;		}
+
+	/**
+	 * Returns the x coordinate of the n'th (from 0) free grid space in row y, counting in order of x. There must be more than n.
+	 */
+	int nthFreeInRow(int y, int n, boolean tCell)
+	{
+		final long[] bits = tCell ? tFree : bigFree;
+		for(int w = 0; w < rowWords; w++)
+		{
+			long word = bits[y * rowWords + w];
+			final int count = Long.bitCount(word);
+			if(n >= count)
+			{
+				n -= count;
+				continue;
+			}
+			for(; n > 0; n--)
+				word &= word - 1;							// clear the lowest set bit.
+			return (w << 6) + Long.numberOfTrailingZeros(word);
+		}
+		throw new RuntimeException("FreeSpaceIndex: row " + y + " holds fewer free grid spaces than asked for.");
+	}
+
+	/**
+	 * Returns the n'th (from 0) free grid space in the grid, counting row by row. There must be more than n.
+	 */
+	int nthFree(int n, boolean tCell)
+	{
+		final int[] inRow = tCell ? tFreeInRow : bigFreeInRow;
+		for(int y = 0; y < height; y++)
+		{
+			if(n < inRow[y])
+				return nthFreeInRow(y, n, tCell) * height + y;
+			n -= inRow[y];
+		}
+		throw new RuntimeException("FreeSpaceIndex: the grid holds fewer free grid spaces than asked for.");
+	}
+
+	/**
+	 * Returns a free grid space as close as possible to (x, y), picked at random from those that are equally close, or -1 if there are none. Distance is the
+	 * larger of the distances along x (around which the grid wraps) and along y (which it does not). The grid spaces at each distance are visited in turn,
+	 * so the search ends with the first distance at which any is free.
+	 */
+	int nearestFree(int x, int y, boolean tCell, RandomStream random)
+	{
+		if(free(tCell) == 0)
+			return -1;
+		for(int distance = 0; ; distance++)
+		{
+			final int candidates = visitRing(x, y, distance, tCell, -1);
+			if(candidates > 0)
+				return visitRing(x, y, distance, tCell, (candidates == 1) ? 0 : random.nextInt(candidates));
+		}
+	}
+
+	/**
+	 * Visits the grid spaces at the given distance from (x, y). If 'pick' is negative, returns how many of them are free; otherwise returns the pick'th free
+	 * one (from 0).
+	 */
+	private int visitRing(int x, int y, int distance, boolean tCell, int pick)
+	{
+		int found = 0;
+		for(int y1 = Math.max(0, y - distance); y1 <= Math.min(height - 1, y + distance); y1++)
+		{
+			final boolean edge = (y1 == y - distance || y1 == y + distance);	// every column within 'distance' lies on the ring here, else only those at 'distance'.
+			final int first;
+			final int last;
+			if(edge)
+			{
+				if(2 * distance + 1 >= width)					// the span reaches around the whole grid.
+				{
+					first = 0;
+					last = width - 1;
+				}
+				else
+				{
+					first = x - distance;
+					last = x + distance;
+				}
+			}
+			else
+			{
+				if(2 * distance > width)						// no column lies this far away along x.
+					continue;
+				first = x - distance;
+				last = (2 * distance == width || distance == 0) ? first : x + distance;
+			}
+			for(int x0 = first; x0 <= last; x0 += (edge || last == first) ? 1 : last - first)
+			{
+				final int x1 = Math.floorMod(x0, width);
+				if(isFree(x1, y1, tCell))
+				{
+					if(found == pick)
+						return x1 * height + y1;
+					found++;
+				}
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,305 @@
+package sim2d.compartment;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import sim.field.grid.DoubleGrid2D;
+
+/**
+ * Holds the concentration of one molecule across a compartment, and performs its diffusion, thresholding and halflife decay each timestep.
+ *
+ * The grid is divided into square tiles, and each tile is flagged as active if it may hold molecules. Since molecules diffuse no further than one grid
+ * space in a timestep, only tiles that are active, or that neighbour an active tile, need be visited; all others are certain to hold nothing after
+ * diffusion. A grid that holds no molecules at all costs nothing. Anything that places molecules into the grid must do so through this class (or call
+ * 'markActive'), so that the tile they land in is flagged.
+ *
+ * The tile flags never alter the results: the grid spaces that are visited are calculated exactly as they would otherwise be, and those that are not are
+ * zero either way.
+ *
+ * @author mark
+ *
+ */
+class MoleculeGrid
+{
+	private static final int tileSize = 8;					// width and height, in grid spaces, of a tile.
+
+	final DoubleGrid2D grid;								// the concentrations. Its field is swapped with 'spare' each timestep, but the object itself is never replaced.
+	private double[][] spare;								// the buffer into which the grid is diffused, after which the two are swapped.
+
+	private final int width;
+	private final int height;
+	private final int tilesX;
+	private final int tilesY;
+
+	private boolean[][] active;								// tiles of the grid's field that may hold molecules.
+	private boolean[][] spareDirty;							// tiles of the spare buffer that may hold (stale) molecules, and must be cleared before the buffer is reused.
+	private boolean[][] nextActive;							// working space, the tiles that will be active after diffusion.
+	private final boolean[][] visit;						// working space, the tiles that must be visited during diffusion.
+	private boolean anyActive = false;
+
+	MoleculeGrid(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		grid = new DoubleGrid2D(width, height);
+		spare = new double[width][height];
+
+		tilesX = (width + tileSize - 1) / tileSize;
+		tilesY = (height + tileSize - 1) / tileSize;
+		active = new boolean[tilesX][tilesY];
+		spareDirty = new boolean[tilesX][tilesY];
+		nextActive = new boolean[tilesX][tilesY];
+		visit = new boolean[tilesX][tilesY];
+	}
+
+	/**
+	 * Adds the given quantity of molecules to grid space (x,y). The quantity may be negative, for molecules that are removed.
+	 */
+	void add(int x, int y, double quantity)
+	{
+		grid.field[x][y] += quantity;
+		markActive(x, y);
+	}
+
+	/**
+	 * Must be called whenever grid space (x,y) is altered other than through this class.
+	 */
+	void markActive(int x, int y)
+	{
+		active[x / tileSize][y / tileSize] = true;
+		anyActive = true;
+	}
+
+	/**
+	 * Diffuses the molecules in the grid, sets concentrations below the decay threshold to zero, and applies halflife decay, all in a single pass over the
+	 * grid. The molecules in each grid space are divided equally amongst its 8 neighbours.
+	 *
+	 * Rather than each grid space scattering its molecules to its neighbours, each grid space gathers the shares of its neighbours from the (unaltered) grid
+	 * into the spare buffer, which then becomes the grid's field. The shares are summed in the same order that a scatter scanning along x then y would have
+	 * added them, such that the results are identical to the last bit. Grid spaces on the edges of the compartment, whose neighbours wrap around, are handled
+	 * separately so that the loop over the interior needs no toroidal arithmetic.
+	 *
+	 * If a pool of threads is supplied, columns of tiles are processed in parallel. Since each grid space is written only by the thread that computes it,
+	 * from the unaltered grid, the results are identical to those of the serial kernel whatever the number of threads.
+	 *
+	 * The model of movement this assumes is that every molecule leaves its grid space each timestep, split equally between the 8 neighbours whatever the
+	 * kind of molecule, the cells present or the concentrations around it; the grid wraps along both x and y.
+	 */
+	void diffuseAndDecay(final double threshold, final double gamma, final ForkJoinPool pool)
+	{
+		if(threshold <= 0.0)								// concentrations of zero could decay to below zero. Visit every tile.
+			fill(active, true);
+		else if(anyActive == false)
+			return;											// the grid holds no molecules, and will hold none after diffusion.
+
+		/* a tile must be visited if it, or any of its neighbours, is active. */
+		for(int tx = 0; tx < tilesX; tx++)
+			for(int ty = 0; ty < tilesY; ty++)
+			{
+				boolean v = false;
+				for(int dx = -1; dx <= 1 && !v; dx++)
+					for(int dy = -1; dy <= 1 && !v; dy++)
+						v = active[Math.floorMod(tx + dx, tilesX)][Math.floorMod(ty + dy, tilesY)];
+				visit[tx][ty] = v;
+			}
+
+		final double[][] src = grid.field;
+		final double[][] dst = spare;
+		if(pool == null)
+			diffuseAndDecayTiles(src, dst, 0, tilesX, threshold, gamma);
+		else
+		{
+			final int minStripe = Math.max(1, tilesX / (pool.getParallelism() * 4));	// a few stripes per thread, so that threads finishing early can take more work.
+			pool.invoke(new DiffusionStripe(src, dst, 0, tilesX, threshold, gamma, minStripe));
+		}
+
+		/* swap buffers. The field's tile flags now describe the spare buffer, and vice versa. */
+		grid.field = dst;
+		spare = src;
+		final boolean[][] t = spareDirty;
+		spareDirty = active;
+		active = nextActive;
+		nextActive = t;
+
+		anyActive = false;
+		for(int tx = 0; tx < tilesX && !anyActive; tx++)
+			for(int ty = 0; ty < tilesY && !anyActive; ty++)
+				anyActive = active[tx][ty];
+	}
+
+	/**
+	 * Diffuses, thresholds and decays the tiles lying in tile columns txFrom (inclusive) to txTo (exclusive), writing the results into 'dst' and recording
+	 * which of them hold molecules afterwards.
+	 */
+	private void diffuseAndDecayTiles(final double[][] src, final double[][] dst, final int txFrom, final int txTo, final double threshold, final double gamma)
+	{
+		for(int tx = txFrom; tx < txTo; tx++)
+		{
+			final int x0 = tx * tileSize;
+			final int x1 = Math.min(x0 + tileSize, width);
+			for(int ty = 0; ty < tilesY; ty++)
+			{
+				final int y0 = ty * tileSize;
+				final int y1 = Math.min(y0 + tileSize, height);
+				if(visit[tx][ty] == false)
+				{
+					if(spareDirty[tx][ty])						// nothing can diffuse into this tile, but the buffer may hold stale values from an earlier timestep.
+						for(int x = x0; x < x1; x++)
+							for(int y = y0; y < y1; y++)
+								dst[x][y] = 0.0;
+					nextActive[tx][ty] = false;
+					continue;
+				}
+
+				/* interior grid spaces of the tile. */
+				boolean holdsMolecules = diffuseAndDecayInterior(src, dst, Math.max(x0, 1), Math.min(x1, width - 1), Math.max(y0, 1), Math.min(y1, height - 1), threshold, gamma);
+
+				/* grid spaces of the tile lying on the edges of the compartment. */
+				if(x0 == 0)
+					for(int y = y0; y < y1; y++)
+						holdsMolecules |= (dst[0][y] = decay(gatherWrapped(src, 0, y), threshold, gamma)) != 0.0;
+				if(x1 == width)
+					for(int y = y0; y < y1; y++)
+						holdsMolecules |= (dst[width - 1][y] = decay(gatherWrapped(src, width - 1, y), threshold, gamma)) != 0.0;
+				for(int x = Math.max(x0, 1); x < Math.min(x1, width - 1); x++)
+				{
+					if(y0 == 0)
+						holdsMolecules |= (dst[x][0] = decay(gatherWrapped(src, x, 0), threshold, gamma)) != 0.0;
+					if(y1 == height)
+						holdsMolecules |= (dst[x][height - 1] = decay(gatherWrapped(src, x, height - 1), threshold, gamma)) != 0.0;
+				}
+				nextActive[tx][ty] = holdsMolecules;
+			}
+		}
+	}
+
+	/**
+	 * Diffuses, thresholds and decays the interior grid spaces of 'src' lying within [xFrom, xTo) and [yFrom, yTo), writing the results into 'dst'.
+	 * Columns 0 and width-1, and rows 0 and height-1, are edges and must not be included. Returns true if any of the results are non-zero.
+	 */
+	private static boolean diffuseAndDecayInterior(final double[][] src, final double[][] dst, final int xFrom, final int xTo, final int yFrom, final int yTo,
+			final double threshold, final double gamma)
+	{
+		boolean holdsMolecules = false;
+		for(int x = xFrom; x < xTo; x++)
+		{
+			final double[] left = src[x - 1];
+			final double[] middle = src[x];
+			final double[] right = src[x + 1];
+			final double[] out = dst[x];
+			for(int y = yFrom; y < yTo; y++)
+			{
+				double m = middle[y];
+				m += left[y - 1] * 0.125;
+				m += left[y] * 0.125;
+				m += left[y + 1] * 0.125;
+				m += middle[y - 1] * 0.125;
+				m -= (middle[y] * 0.125) * 8;		// this grid space gives all of its molecules away...
+				m += middle[y + 1] * 0.125;
+				m += right[y - 1] * 0.125;
+				m += right[y] * 0.125;
+				m += right[y + 1] * 0.125;
+
+				if(m < threshold)	m = 0.0;		// concentrations below the threshold are set to zero.
+				out[y] = m * gamma;
+				holdsMolecules |= m != 0.0;
+			}
+		}
+		return holdsMolecules;
+	}
+
+	/**
+	 * A stripe of tile columns to be diffused. Stripes wider than 'minStripe' are split in two, and the halves processed in parallel.
+	 */
+	private class DiffusionStripe extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final double[][] src;
+		private final double[][] dst;
+		private final int txFrom;
+		private final int txTo;
+		private final double threshold;
+		private final double gamma;
+		private final int minStripe;
+
+		DiffusionStripe(double[][] src, double[][] dst, int txFrom, int txTo, double threshold, double gamma, int minStripe)
+		{
+			this.src = src;
+			this.dst = dst;
+			this.txFrom = txFrom;
+			this.txTo = txTo;
+			this.threshold = threshold;
+			this.gamma = gamma;
+			this.minStripe = minStripe;
+		}
+
+		protected void compute()
+		{
+			if(txTo - txFrom <= minStripe)
+			{
+				diffuseAndDecayTiles(src, dst, txFrom, txTo, threshold, gamma);
+				return;
+			}
+			final int mid = (txFrom + txTo) >>> 1;
+			invokeAll(new DiffusionStripe(src, dst, txFrom, mid, threshold, gamma, minStripe),
+					new DiffusionStripe(src, dst, mid, txTo, threshold, gamma, minStripe));
+		}
+	}
+
+	private static double decay(double m, final double threshold, final double gamma)
+	{
+		if(m < threshold)	m = 0.0;
+		return m * gamma;
+	}
+
+	/**
+	 * Returns the concentration in grid space (x,y) following diffusion, for a grid space whose neighbours may wrap around the edges of the compartment.
+	 * Neighbouring grid spaces are visited in the order that a scan along x then y would visit them. On very narrow grids a neighbour may lie on both
+	 * sides of (x,y), in which case it contributes two shares.
+	 */
+	private double gatherWrapped(final double[][] src, final int x, final int y)
+	{
+		final int xa = grid.stx(x - 1), xc = grid.stx(x + 1);
+		final int ya = grid.sty(y - 1), yc = grid.sty(y + 1);
+
+		double m = src[x][y];
+		for(int sx = nextAbove(-1, xa, x, xc); sx != Integer.MAX_VALUE; sx = nextAbove(sx, xa, x, xc))
+		{
+			for(int sy = nextAbove(-1, ya, y, yc); sy != Integer.MAX_VALUE; sy = nextAbove(sy, ya, y, yc))
+			{
+				final double share = src[sx][sy] * 0.125;
+				if(sx == x && sy == y)
+				{
+					m -= share * 8;					// this grid space gives all of its molecules away...
+					continue;
+				}
+				for(int dx = -1; dx <= 1; dx++)		// ... and receives a share from each neighbour for which it lies in that neighbour's neighbourhood.
+					for(int dy = -1; dy <= 1; dy++)
+						if((dx != 0 || dy != 0) && grid.stx(sx + dx) == x && grid.sty(sy + dy) == y)
+							m += share;
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Returns the smallest of a, b and c that is greater than 'previous', or Integer.MAX_VALUE if there is none. Used to visit the distinct values of a, b
+	 * and c in ascending order.
+	 */
+	private static int nextAbove(final int previous, final int a, final int b, final int c)
+	{
+		int next = Integer.MAX_VALUE;
+		if(a > previous && a < next)	next = a;
+		if(b > previous && b < next)	next = b;
+		if(c > previous && c < next)	next = c;
+		return next;
+	}
+
+	private static void fill(boolean[][] flags, boolean value)
+	{
+		for(boolean[] column : flags)
+			Arrays.fill(column, value);
+	}
+}
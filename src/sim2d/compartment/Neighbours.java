@@ -0,0 +1,70 @@
+package sim2d.compartment;
+
+import sim.util.MutableInt2D;
+import sim2d.cell.Cell;
+
+/**
+ * A reusable buffer into which a compartment places the cells neighbouring some cell. Buffers are taken with 'acquire' and handed back with 'release',
+ * such that querying a cell's neighbours on every step does not allocate. Each thread keeps its own list of spare buffers, so buffers may be acquired by
+ * simulations running on several threads at once, and a second buffer may be acquired whilst one is still in use (for instance, should an interaction
+ * between cells itself query neighbours).
+ *
+ * Each buffer also carries the key with which the grid is searched. MASON's 'SparseGrid2D.getObjectsAtLocation(int, int)' writes the coordinates into a
+ * single key held by the grid, so two threads querying the same compartment at once could each be handed the cells of the other's grid space.
+ *
+ * @author mark
+ *
+ */
+public final class Neighbours
+{
+	private static final ThreadLocal<Neighbours> spares = new ThreadLocal<Neighbours>();	// head of this thread's list of buffers not presently in use.
+
+	private Cell[] cells = new Cell[16];
+	private int size = 0;
+	private Neighbours nextSpare;								// next buffer in the list of spares, when this one is not in use.
+	final MutableInt2D location = new MutableInt2D();			// the grid space being searched, owned by whichever thread holds this buffer.
+
+	private Neighbours() {}
+
+	/**
+	 * Returns an empty buffer. It must be handed back with 'release' once finished with.
+	 */
+	public static Neighbours acquire()
+	{
+		final Neighbours n = spares.get();
+		if(n == null)
+			return new Neighbours();
+		spares.set(n.nextSpare);
+		n.nextSpare = null;
+		return n;
+	}
+
+	/**
+	 * Empties this buffer and returns it to the calling thread's spares. The buffer must not be used after this.
+	 */
+	public void release()
+	{
+		for(int i = 0; i < size; i++)
+			cells[i] = null;									// do not keep dead cells from being garbage collected.
+		size = 0;
+		nextSpare = spares.get();
+		spares.set(this);
+	}
+
+	public int size()
+	{	return size;	}
+
+	public Cell get(int i)
+	{	return cells[i];	}
+
+	void add(Cell cell)
+	{
+		if(size == cells.length)
+		{
+			Cell[] larger = new Cell[cells.length * 2];
+			System.arraycopy(cells, 0, larger, 0, size);
+			cells = larger;
+		}
+		cells[size++] = cell;
+	}
+}
@@ -4,27 +4,33 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import sim2d.TregSimulation;
-import sim2d.cell.Cell;
-import sim2d.cell.TCell;
-import sim2d.cell.impl.DendriticCell;
-import sim2d.cell.impl.DendriticCellMigrates;
+import sim2d.cell.CellKind;
 import sim2d.cell.impl.TCell_Impl;
 
 public class SLO2D extends Compartment_Impl2D
 {
 	
-	private static int width;
-	private static int height;
-	private static double timeToCrossOrgan;
+	/*
+	 * Dimensions and movement properties of this compartment. Loaded once per simulation run and held by that run (see 'params(simulation)'). 
+	 */
+	private static class Parameters
+	{
+		int width;
+		int height;
+		double timeToCrossOrgan;
+		VerticalMovementBoundaries vmb;									// standard rate at which cells move through the lymph node, driven by blood flow.
+		VerticalMovementBoundaries vmb_recentlyMigratedDCs;				// recently migrated DCs move a little slower.
+		VerticalMovementBoundaries vmb_activatedTCell;					// activated/effector T cells migrate through the lymph node very quickly. 
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
-	private static VerticalMovementBoundaries vmb;									// standard rate at which cells move through the lymph node, driven by blood flow.
-	private static VerticalMovementBoundaries vmb_recentlyMigratedDCs;				// recently migrated DCs move a little slower.
-	private static VerticalMovementBoundaries vmb_activatedTCell;					// activated/effector T cells migrate through the lymph node very quickly. 
 	
 	public int getWidth()
-	{	return width; 	}
+	{	return params(simulation).width; 	}
 	public int getHeight()
-	{	return height;	}
+	{	return params(simulation).height;	}
 	
 	
 	public SLO2D(TregSimulation sim)
@@ -33,16 +39,13 @@ public class SLO2D extends Compartment_Impl2D
 	/**
 	 * Overridden method that defines which cells can enter this compartment from elsewhere.  
 	 */
-	public boolean canEnter(final Cell cell)
+	public boolean canEnter(final int kind, final int state, final Compartment from)
 	{
-		if(cell instanceof TCell_Impl) 
+		if(CellKind.isTCell(kind)) 
 		{
-			final TCell_Impl tcell = (TCell_Impl) cell;
-			final TCell_Impl.Maturity maturity = tcell.getMaturity();
-			
-			if(maturity == TCell_Impl.Maturity.Effector) 				
+			if(state == TCell_Impl.Maturity.Effector.ordinal()) 				
 				return false;													// effector T cells cannot migrate through the HEV. 
-			else if( tcell.getMaturity() == TCell_Impl.Maturity.Apoptotic) 					 
+			else if(state == TCell_Impl.Maturity.Apoptotic.ordinal()) 					 
 				return false;													// apoptotic T cells cannot migrate through the HEV.
 				 
 			return true;														// all other states of T cell can.
@@ -54,7 +57,7 @@ public class SLO2D extends Compartment_Impl2D
 	/**
 	 * Overridden method hat defines which cells can leave this compartment. 
 	 */
-	public boolean canLeave(final Cell cell)
+	public boolean canLeave(final int kind, final int state)
 	{	
 		return true;
 	}
@@ -63,74 +66,72 @@ public class SLO2D extends Compartment_Impl2D
 	/**
 	 * Overridden method that allows movement of various cell types in the simulation to be tailored for this compartment. 
 	 */
-	protected int calculateMovementVertical(final Cell cell)
+	protected Movement verticalMovement(final int kind, final int state)
 	{
 		/* Calculate movements for migratory dendritic cells. Note that DCs immediately removed upon becoming apoptotic, so there is no behaviour required for apoptotic DCs. */ 	
-		if(cell instanceof DendriticCellMigrates)
+		if(kind == CellKind.DENDRITIC_CELL_MIGRATES)
 		{
-			final DendriticCellMigrates dcm = (DendriticCellMigrates) cell;
-			if(dcm.isMobile() == true)
+			if(state == CellKind.MOBILE)
 				// lets DCs move downards before settling, but not as fast as other cells. We want movement downwards to stop them blocking the entrance.  
-				return vmb_recentlyMigratedDCs.getMovement();
+				return Movement.flow(params(simulation).vmb_recentlyMigratedDCs);
 			else 
-				return 0; 											// non-mobile DCMigrates do not move. 
+				return Movement.stay; 								// non-mobile DCMigrates do not move. 
 		}
 			
 		/* handles generic DCs, rather than DCMs */
-		if(cell instanceof DendriticCell)							// dendritic cells are static. 
-			return 0;
+		if(kind == CellKind.DENDRITIC_CELL)							// dendritic cells are static. 
+			return Movement.stay;
 		
 		/* Usually T cell movement behaviour defaults to the default. However, activated T cells are encouraged to leave the compartment very quickly, and so there is a different
 		 * movement mechanism for them, implemented through 'vmb_activatedTCell'. 
 		 */
-		if(cell instanceof TCell)
+		if(CellKind.isTCell(kind))
 		{
-			TCell_Impl tcell = (TCell_Impl) cell;
-			if(tcell.getMaturity() == TCell_Impl.Maturity.Effector)
-				return vmb_activatedTCell.getMovement();
+			if(state == TCell_Impl.Maturity.Effector.ordinal())
+				return Movement.flow(params(simulation).vmb_activatedTCell);
 		}
 		
 		/* default behaviour */
-		return vmb.getMovement();
+		return Movement.flow(params(simulation).vmb);
 	}
 	
 	/**
 	 * Overridden method that allows movement of various cell types in the simulation to be tailored for this compartment. 
 	 */
-	protected int calculateMovementHorrizontal(final Cell cell)
+	protected Movement horizontalMovement(final int kind, final int state)
 	{	
-		if(cell instanceof DendriticCellMigrates)
+		if(kind == CellKind.DENDRITIC_CELL_MIGRATES)
 		{
-			final DendriticCellMigrates dcm = (DendriticCellMigrates) cell;
-			if(dcm.isMobile() == true)
-				return calculateMovementHorrizontalUniform();		// mobile DCMigrates can move. Pick random direction in the horrizontal plane. 			
+			if(state == CellKind.MOBILE)
+				return Movement.uniform;					// mobile DCMigrates can move. Pick random direction in the horrizontal plane. 			
 			else 
-				return 0; 											// non-mobile DCMigrates do not move. 
+				return Movement.stay; 								// non-mobile DCMigrates do not move. 
 		}
 		
 		/* handles generic DCs, rather than DCMs */
-		if(cell instanceof DendriticCell)							// dendritic cells are static. 
-			return 0;
+		if(kind == CellKind.DENDRITIC_CELL)							// dendritic cells are static. 
+			return Movement.stay;
 		
-		return calculateMovementHorrizontalUniform();
+		return Movement.uniform;
 	}
 	
 	/**
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("SLO2D").item(0);
 		
-		width = Integer.parseInt(pE.getElementsByTagName("width").item(0).getTextContent());
-		height = Integer.parseInt(pE.getElementsByTagName("height").item(0).getTextContent());
-		timeToCrossOrgan = Double.parseDouble(pE.getElementsByTagName("timeToCrossOrgan").item(0).getTextContent());
+		p.width = Integer.parseInt(pE.getElementsByTagName("width").item(0).getTextContent());
+		p.height = Integer.parseInt(pE.getElementsByTagName("height").item(0).getTextContent());
+		p.timeToCrossOrgan = Double.parseDouble(pE.getElementsByTagName("timeToCrossOrgan").item(0).getTextContent());
 
 		/*
 		 * Dynamically calculated static variables. 
 		 */
-		vmb = calculateVerticalMovementBoundaries(height, timeToCrossOrgan);
+		p.vmb = calculateVerticalMovementBoundaries(sim, p.height, p.timeToCrossOrgan);
 		/*
 		 * Dendritic cells that have recently migrated into the SLO compartment have some time to move around and find a place to reside. During this time
 		 * they can move (obviously). We do not want them to move for very long, since that would interfere with T cell dynamics (hard to be bound to something
@@ -138,7 +139,7 @@ public class SLO2D extends Compartment_Impl2D
 		 * near the top of the compartment and clogging up the entrance. So we create this, blood flow bias probabilities that allow DCs to move 'mostly' downwards, 
 		 * but not in any huge hurry. This way they should find somewhere in the middle to settle
 		 */
-		vmb_recentlyMigratedDCs = calculateVerticalMovementBoundaries(height, timeToCrossOrgan/2);
+		p.vmb_recentlyMigratedDCs = calculateVerticalMovementBoundaries(sim, p.height, p.timeToCrossOrgan/2);
 		
 		/*
 		 * This movement mechanism specific for activated T cells represents an attempt to have T cells that have become activated to vacate the SLO compartment as
@@ -147,8 +148,10 @@ public class SLO2D extends Compartment_Impl2D
 		 * This is an attempt to investigate if their speedy migration (as opposed to the relatively leisurely departure that the standard vmb setup affords)
 		 * will result in more regulation of their number. Hence we set the time to cross organ to 1 hour, this will ensure that they leave as fast as possible. 
 		 */
-		vmb_activatedTCell = calculateVerticalMovementBoundaries(height, 6.0);
-		if(activatedTCellsFastTrackThroughSLOCompartments == false)
-			vmb_activatedTCell = vmb;			// same movement dynamics apply to activated T cells. 
+		p.vmb_activatedTCell = calculateVerticalMovementBoundaries(sim, p.height, 6.0);
+		if(retrieveActivatedTCellsFastTrackThroughSLOCompartments(sim) == false)
+			p.vmb_activatedTCell = p.vmb;			// same movement dynamics apply to activated T cells. 
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
@@ -4,10 +4,8 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import sim2d.TregSimulation;
-import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
 import sim2d.cell.impl.CD4THelper;
-import sim2d.cell.impl.DendriticCell;
-import sim2d.cell.impl.DendriticCellMigrates;
 
 /**
  * A 2 dimensional representation of the spleen compartment. The spleen contains many dendritic cells keyed into removing apopototic cells from the 
@@ -17,17 +15,26 @@ import sim2d.cell.impl.DendriticCellMigrates;
  */
 public class Spleen2D extends Compartment_Impl2D
 {
-	private static int width;
-	private static int height;
-	private static double timeToCrossOrgan;
+	/*
+	 * Dimensions and movement properties of this compartment. Loaded once per simulation run and held by that run (see 'params(simulation)'). 
+	 */
+	private static class Parameters
+	{
+		int width;
+		int height;
+		double timeToCrossOrgan;
+		VerticalMovementBoundaries vmb;
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
-	private static VerticalMovementBoundaries vmb;
 
 	
 	public int getWidth()
-	{	return width; 	}
+	{	return params(simulation).width; 	}
 	public int getHeight()
-	{	return height;	}
+	{	return params(simulation).height;	}
 
 	
 	
@@ -37,7 +44,7 @@ public class Spleen2D extends Compartment_Impl2D
 	/**
 	 * Method handles entry grants/denies for the spleen compartment. All cells can enter the spleen.
 	 */
-	public boolean canEnter(final Cell cell)
+	public boolean canEnter(final int kind, final int state, final Compartment from)
 	{
 
 		return true;						// all cells can enter the spleen.
@@ -46,7 +53,7 @@ public class Spleen2D extends Compartment_Impl2D
 	/**
 	 * Method handles departure grants/denies for the spleen compartment. All cells cen leave the spleen. 
 	 */
-	public boolean canLeave(final Cell cell)
+	public boolean canLeave(final int kind, final int state)
 	{	
 		return true;
 	}
@@ -55,61 +62,62 @@ public class Spleen2D extends Compartment_Impl2D
 	 * Overridden method that handles the vertical movement of the cells in the compartment. Different cells may behave differently in different compartments,
 	 * and overriding this method allows for cell-compartment specific behaviours to be programmed in. 
 	 */
-	protected int calculateMovementVertical(final Cell cell)
+	protected Movement verticalMovement(final int kind, final int state)
 	{
 		/* Calculate movements for migratory dendritic cells. Note that DCs immediately removed upon becoming apoptotic, so there is no behaviour required for apoptotic DCs. */ 	
-		if( cell instanceof DendriticCellMigrates )
+		if(kind == CellKind.DENDRITIC_CELL_MIGRATES)
 		{
-			final DendriticCellMigrates dcm = (DendriticCellMigrates) cell;
-			if(dcm.isMobile())
-				return calculateMovementVerticalUniform();
+			if(state == CellKind.MOBILE)
+				return Movement.uniform;
 			else 
-				return 0;
+				return Movement.stay;
 		}
 		
 		/* handles generic DCs, rather than DCMs */
-		if( cell instanceof DendriticCell )
-			return 0;
+		if(kind == CellKind.DENDRITIC_CELL)
+			return Movement.stay;
 		
 		/* default behaviour */
-		return vmb.getMovement();
+		return Movement.flow(params(simulation).vmb);
 	}
 	
 	/**
 	 * Overridden method that allows movement of various cell types in the simulation to be tailored for this compartment. 
 	 */
-	protected int calculateMovementHorrizontal(final Cell cell)
+	protected Movement horizontalMovement(final int kind, final int state)
 	{
-		if(cell instanceof DendriticCellMigrates)
+		if(kind == CellKind.DENDRITIC_CELL_MIGRATES)
 		{
-			final DendriticCellMigrates dcm = (DendriticCellMigrates) cell;
-			if(dcm.isMobile())
-				return calculateMovementHorrizontalUniform();
+			if(state == CellKind.MOBILE)
+				return Movement.uniform;
 			else 
-				return 0;
+				return Movement.stay;
 		}
 		
 		/* handles generic DCs, rather than DCMs */
-		if( cell instanceof DendriticCell )
-			return 0;												// vanilla dendritic cells never move. 
+		if(kind == CellKind.DENDRITIC_CELL)
+			return Movement.stay;									// vanilla dendritic cells never move. 
 		
 		/* default behaviour */
-		return calculateMovementHorrizontalUniform();
+		return Movement.uniform;
 	}
 	
 	/**
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("Spleen2D").item(0);
 		
-		width = Integer.parseInt(pE.getElementsByTagName("width").item(0).getTextContent());
-		height = Integer.parseInt(pE.getElementsByTagName("height").item(0).getTextContent());
-		timeToCrossOrgan = Double.parseDouble(pE.getElementsByTagName("timeToCrossOrgan").item(0).getTextContent());
+		p.width = Integer.parseInt(pE.getElementsByTagName("width").item(0).getTextContent());
+		p.height = Integer.parseInt(pE.getElementsByTagName("height").item(0).getTextContent());
+		p.timeToCrossOrgan = Double.parseDouble(pE.getElementsByTagName("timeToCrossOrgan").item(0).getTextContent());
 		
 		/* dynamically calculated static variables */		
-		vmb = calculateVerticalMovementBoundaries(height, timeToCrossOrgan);
+		p.vmb = calculateVerticalMovementBoundaries(sim, p.height, p.timeToCrossOrgan);
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
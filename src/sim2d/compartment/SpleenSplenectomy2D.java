@@ -20,8 +20,17 @@ import sim2d.cell.impl.CD4THelper;
 public class SpleenSplenectomy2D extends Spleen2D
 {
 
-	private static boolean splenectomyFastTrack = true;		// when set to true, cells will go straight through the spleen with immediate effect, they do not take any time to traverse the compartment. 
-																// (as if the spleen were not really there!). Set to true by default. 
+	/*
+	 * Splenectomy specific properties, held per simulation run. 
+	 */
+	private static class Parameters
+	{
+		boolean splenectomyFastTrack = true;		// when set to true, cells will go straight through the spleen with immediate effect, they do not take any time to traverse the compartment. 
+													// (as if the spleen were not really there!). Set to true by default. 
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
 	
 	public SpleenSplenectomy2D(TregSimulation sim)
 	{	super(sim);		}
@@ -38,11 +47,11 @@ public class SpleenSplenectomy2D extends Spleen2D
 		if(cell instanceof CD4THelper && ((CD4THelper)cell).isApoptotic())// the following checks identify CD4TH cells in apoptotic state. 
 		{
 			CD4THelper cd4th = (CD4THelper) cell;
-			cd4th.bePhagocytosised(TregSimulation.sim);			// instruct the apoptotic CD4Th cell to remove itself from the simulation. 	
+			cd4th.bePhagocytosised(simulation);			// instruct the apoptotic CD4Th cell to remove itself from the simulation. 	
 		}
 		else {
 			// if cells go through the spleen in zero time, then migrate all other cells (NOT cd4th cells though, they will be placed in another compartment as they are deleted from this one!). 
-			if (splenectomyFastTrack)	migrateCell(cell);			
+			if (params(simulation).splenectomyFastTrack)	migrateCell(cell);			
 		}
 	}
 	
@@ -52,15 +61,18 @@ public class SpleenSplenectomy2D extends Spleen2D
 	 * This method calls the super method, but in addition to that will also search for any parameters relevant to splenectomy experiments. 
 	 * @param params
 	 */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{		
-		Spleen2D.loadParameters(params);							// do everything that would normally be done.
+		Spleen2D.loadParameters(sim, params);							// do everything that would normally be done.
+		final Parameters p = new Parameters();
 	
 		Element pE = (Element) params.getElementsByTagName("Spleen2D").item(0);
 		
 		Node n = pE.getElementsByTagName("splenectomyFastTrack").item(0);						// try and find a 'splenectomy' tag in the parameter file. 		
 		if (n != null)																	// if there is one, then set the corresponding parameter in the simulation. 
-			splenectomyFastTrack = Boolean.parseBoolean(n.getTextContent());
+			p.splenectomyFastTrack = Boolean.parseBoolean(n.getTextContent());
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 	
 }
@@ -0,0 +1,32 @@
+package sim2d.dataCollection;
+
+/**
+ * A titled column of values logged over the course of a simulation run, one value per sample. Values are held in primitive arrays (see the subclasses) that
+ * grow by doubling, and are read by their index in the column. 
+ * 
+ * @author mark
+ *
+ */
+public abstract class DataColumn
+{
+	protected static final int initialCapacity = 64;
+	
+	final String title;
+	int length = 0;								// the number of values logged.
+	
+	protected DataColumn(String name)
+	{
+		title = name;
+	}
+	
+	/**
+	 * Writes the value at the given index to the given StringBuilder, formatted as it is written to the output table. 
+	 */
+	public abstract void appendValue(StringBuilder output, int index);
+	
+	public String getTitle()
+	{	return title;	}
+	
+	public int getLength()
+	{	return length;		}
+}
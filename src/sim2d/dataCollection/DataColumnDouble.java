@@ -1,44 +1,30 @@
 package sim2d.dataCollection;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 
-public class DataColumnDouble
+public class DataColumnDouble extends DataColumn
 {
-	String title;
-	ArrayList<Double> data = new ArrayList<Double>();;	
+	private double[] data = new double[initialCapacity];
 	
 	public DataColumnDouble(String name)
 	{
-		title = name;
+		super(name);
 	}
 	
 	public void logValue(double value)
 	{
-		data.add(value);
+		if(length == data.length)
+			data = Arrays.copyOf(data, 2 * data.length);
+		data[length++] = value;
 	}
 	
-	public Iterator getIterator()
+	public double get(int index)
 	{
-		return data.iterator();
+		if(index >= length)
+			throw new ArrayIndexOutOfBoundsException("DataColumnDouble " + title + ": index " + index + " beyond length " + length);
+		return data[index];
 	}
 	
-	/**
-	 * Converts the data into a string format and returns an iterator on that data instead.
-	 */
-	public Iterator getStringIterator()
-	{
-		ArrayList<String> stringData = new ArrayList<String>();
-		for(Double d : data)
-			stringData.add(Double.toString(d));
-		
-		return stringData.iterator();
-	}
-			
-	public String getTitle()
-	{	return title;	}
-	
-	public int getLength()
-	{	return data.size();		}
-	
+	public void appendValue(StringBuilder output, int index)
+	{	output.append(get(index));	}
 }
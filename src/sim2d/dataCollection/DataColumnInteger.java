@@ -1,44 +1,31 @@
 package sim2d.dataCollection;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 
 
-public class DataColumnInteger
+public class DataColumnInteger extends DataColumn
 {
-	String title;
-	ArrayList<Integer> data = new ArrayList<Integer>();;	
+	private int[] data = new int[initialCapacity];
 	
 	public DataColumnInteger(String name)
 	{
-		title = name;
+		super(name);
 	}
 	
 	public void logValue(int value)
 	{
-		data.add(value);
+		if(length == data.length)
+			data = Arrays.copyOf(data, 2 * data.length);
+		data[length++] = value;
 	}
 	
-	public Iterator getIterator()
+	public int get(int index)
 	{
-		return data.iterator();
+		if(index >= length)
+			throw new ArrayIndexOutOfBoundsException("DataColumnInteger " + title + ": index " + index + " beyond length " + length);
+		return data[index];
 	}
 	
-	/**
-	 * Converts the data into a string format and returns an iterator on that data instead.
-	 */
-	public Iterator getStringIterator()
-	{
-		ArrayList<String> stringData = new ArrayList<String>();
-		for(Integer i : data)
-			stringData.add(Integer.toString(i));
-		
-		return stringData.iterator();
-	}
-			
-	public String getTitle()
-	{	return title;	}
-	
-	public int getLength()
-	{	return data.size();		}
+	public void appendValue(StringBuilder output, int index)
+	{	output.append(get(index));	}
 }
@@ -45,4 +45,17 @@ public class MedianDataDouble
 	
 	public int getQuantityValuesLogged()
 	{	return data.size();	}
+	
+	/**
+	 * Finds the median of the given values, as 'findMedian' would had they been logged, sorting them in place. The median of no values is 0.0.
+	 */
+	public static double findMedian(double[] values)
+	{
+		if(values.length == 0)
+			return 0.0;
+		Arrays.sort(values);
+		if(values.length % 2 == 0)
+			return (values[values.length / 2] + values[(values.length / 2) - 1]) / 2;
+		return values[values.length / 2];
+	}
 }
\ No newline at end of file
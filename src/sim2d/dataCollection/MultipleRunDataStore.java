@@ -541,9 +541,9 @@ public class MultipleRunDataStore
 			}
 				
 			// retrieve all values in source and log them in data. 
-			for(int i = 0; i < source.data.size(); i++)
+			for(int i = 0; i < source.getLength(); i++)
 			{
-				data[i].logValue(source.data.get(i));
+				data[i].logValue(source.get(i));
 			}
 		}
 		
@@ -557,9 +557,9 @@ public class MultipleRunDataStore
 			}
 				
 			// retrieve all values in source and log them in data. 
-			for(int i = 0; i < source.data.size(); i++)
+			for(int i = 0; i < source.getLength(); i++)
 			{
-				data[i].logValue(source.data.get(i));
+				data[i].logValue(source.get(i));
 			}
 		}
 		
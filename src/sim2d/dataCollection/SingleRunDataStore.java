@@ -4,25 +4,30 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
 
 import sim.engine.SimState;
 import sim.engine.Steppable;
 import sim2d.TregSimulation;
 import sim2d.cell.Cell;
+import sim2d.cell.CellKind;
+import sim2d.cell.impl.APCCensus;
 import sim2d.cell.impl.APC_Impl;
 import sim2d.cell.impl.CD4THelper;
 import sim2d.cell.impl.CD4Treg;
 import sim2d.cell.impl.CD8Treg;
-import sim2d.cell.impl.Neuron;
 import sim2d.cell.impl.DendriticCell;
-import sim2d.cell.impl.DendriticCellMigrates;
+import sim2d.cell.impl.TCellCensus;
+import sim2d.cell.impl.TCellStore;
 import sim2d.cell.impl.TCell_Impl;
 import sim2d.cell.impl.Th1Polarization;
 import sim2d.cell.impl.Th2Polarization;
 import sim2d.compartment.CNS2D;
+import sim2d.compartment.Compartment;
 
 
 /**
@@ -280,6 +285,8 @@ public class SingleRunDataStore implements Steppable
 	
 	private String tableKey = "";
 	
+	private final ArrayList<Cell> cd4ThCells = new ArrayList<Cell>();		// reused when taking the specificities of CD4Th cells alongside a census.
+	
 	public SingleRunDataStore()
 	{	}
 	
@@ -291,67 +298,103 @@ public class SingleRunDataStore implements Steppable
 		
 		time = sim.schedule.getTime();						// the time in hours.
 		
-		Collection<Cell> circulationCells = sim.circulation.getAllCells();
-		Collection<Cell> cnsCells = sim.cns.getAllCells();
-		Collection<Cell> clnCells = sim.cln.getAllCells();
-		Collection<Cell> sloCells = sim.slo.getAllCells();
-		Collection<Cell> spleenCells = sim.spleen.getAllCells();
-					
+		if(sim.keepsCensus())
+		{
+			// each compartment keeps a census of its T cells and APCs, read it there rather than visiting every cell.
+			countTotalCells(sim.circulation, sim.cns, sim.cln, sim.slo, sim.spleen);
+			countCLN(sim.cln.getTCellCensus(), sim.cln.getAPCCensus());
+			countCNS(sim.cns.getTCellCensus(), sim.cns.getAPCCensus());
+			countSLO(sim.slo.getAPCCensus());
+			countSpleen(sim.spleen.getTCellCensus(), sim.spleen.getAPCCensus());
+			
+			if(sim.tCellStore != null)
+				countCD4ThSpecificities(sim.tCellStore);
+			else
+			{
+				cd4ThCells.clear();									// specificities are per cell, so the CD4Th cells themselves are still needed.
+				final int cd4Th = CellKind.bit(CellKind.CD4TH);
+				sim.circulation.collectCells(cd4Th, cd4ThCells);
+				sim.cns.collectCells(cd4Th, cd4ThCells);
+				sim.cln.collectCells(cd4Th, cd4ThCells);
+				sim.slo.collectCells(cd4Th, cd4ThCells);
+				sim.spleen.collectCells(cd4Th, cd4ThCells);
+				countCD4ThSpecificities(cd4ThCells);
+				cd4ThCells.clear();									// do not keep dead cells from being garbage collected.
+			}
+		}
+		else
+		{
+			Collection<Cell> circulationCells = sim.circulation.getAllCells();
+			Collection<Cell> cnsCells = sim.cns.getAllCells();
+			Collection<Cell> clnCells = sim.cln.getAllCells();
+			Collection<Cell> sloCells = sim.slo.getAllCells();
+			Collection<Cell> spleenCells = sim.spleen.getAllCells();
+			
+			Collection<Cell> allCells = null;						// only needed if there is no T cell store to take specificities from.
+			if(sim.tCellStore == null)
+			{
+				allCells = new ArrayList<Cell>();
+				allCells.addAll(circulationCells);
+				allCells.addAll(cnsCells);
+				allCells.addAll(clnCells);
+				allCells.addAll(sloCells);
+				allCells.addAll(spleenCells);
+			}
+			
+			// log the values for this timestep
+			if(sim.tCellStore != null)
+				countTotalCells(sim.tCellStore);					// the T cell population is held in a store, count it there.
+			else
+				countTotalCells(allCells);
+			
+			// counting cells pertaining to a specific compartment
+			countCLN(clnCells);
+			countCNS(cnsCells);
+			countSLO(sloCells);
+			countSpleen(spleenCells);
+			
+			// log median specificity of all cells in the simulation
+			if(sim.tCellStore != null)
+				countCD4ThSpecificities(sim.tCellStore);
+			else
+				countCD4ThSpecificities(allCells);					// log the specificities of all CD4Th cells in the system.
+		}
 		
-		Collection<Cell> allCells = new ArrayList<Cell>();
-		allCells.addAll(circulationCells);
-		allCells.addAll(cnsCells);
-		allCells.addAll(clnCells);
-		allCells.addAll(sloCells);
-		allCells.addAll(spleenCells);
-		
-		// log the values for this timestep
-		countTotalCells(allCells);
-		
-		// counting cells pertaining to a specific compartment
-		countCLN(clnCells);
-		countCNS(cnsCells);
-		countSLO(sloCells);
-		countSpleen(spleenCells);
-		
-		// log median specificity of all cells in the simulation
-		countCD4ThSpecificities(allCells);							// log the specificities of all CD4Th cells in the system.
-		
-		cumulativeTh1Killed = CD8Treg.cd4Th1ApopDL.getApoptosisedTotal();
-		cumulativeTh1KilledCirculatory = CD8Treg.cd4Th1ApopDL.getApoptosisedCirculatory();
-		cumulativeTh1KilledCLN = CD8Treg.cd4Th1ApopDL.getApoptosisedCLN();
-		cumulativeTh1KilledCNS = CD8Treg.cd4Th1ApopDL.getApoptosisedCNS();
-		cumulativeTh1KilledSLO = CD8Treg.cd4Th1ApopDL.getApoptosisedSLO();
-		cumulativeTh1KilledSpleen = CD8Treg.cd4Th1ApopDL.getApoptosisedSpleen();
-		
-		cumulativeCNSDCType1 = CNS2D.cumulativeCNSDCType1Polarized;
-		cumulativeCNSDCType2 = CNS2D.cumulativeCNSDCType2Polarized;
-		
-		cd4ThPrimedCirculatory = TCell_Impl.primingDL.getCD4ThCirculation();
-		cd4ThPrimedCLN = TCell_Impl.primingDL.getCD4ThCLN();
-		cd4ThPrimedCNS = TCell_Impl.primingDL.getCD4ThCNS();
-		cd4ThPrimedSLO = TCell_Impl.primingDL.getCD4ThSLO();
-		cd4ThPrimedSpleen = TCell_Impl.primingDL.getCD4ThSpleen();
+		cumulativeTh1Killed = sim.cd4Th1ApopDL.getApoptosisedTotal();
+		cumulativeTh1KilledCirculatory = sim.cd4Th1ApopDL.getApoptosisedCirculatory();
+		cumulativeTh1KilledCLN = sim.cd4Th1ApopDL.getApoptosisedCLN();
+		cumulativeTh1KilledCNS = sim.cd4Th1ApopDL.getApoptosisedCNS();
+		cumulativeTh1KilledSLO = sim.cd4Th1ApopDL.getApoptosisedSLO();
+		cumulativeTh1KilledSpleen = sim.cd4Th1ApopDL.getApoptosisedSpleen();
+		
+		cumulativeCNSDCType1 = ((CNS2D) sim.cns).cumulativeCNSDCType1Polarized;
+		cumulativeCNSDCType2 = ((CNS2D) sim.cns).cumulativeCNSDCType2Polarized;
+		
+		cd4ThPrimedCirculatory = sim.primingDL.getCD4ThCirculation();
+		cd4ThPrimedCLN = sim.primingDL.getCD4ThCLN();
+		cd4ThPrimedCNS = sim.primingDL.getCD4ThCNS();
+		cd4ThPrimedSLO = sim.primingDL.getCD4ThSLO();
+		cd4ThPrimedSpleen = sim.primingDL.getCD4ThSpleen();
 
-		cd4TregPrimedCirculatory = TCell_Impl.primingDL.getCD4TregCirculation();
-		cd4TregPrimedCLN = TCell_Impl.primingDL.getCD4TregCLN();
-		cd4TregPrimedCNS = TCell_Impl.primingDL.getCD4TregCNS();
-		cd4TregPrimedSLO = TCell_Impl.primingDL.getCD4TregSLO();
-		cd4TregPrimedSpleen = TCell_Impl.primingDL.getCD4TregSpleen();
-		
-		cd8TregPrimedCirculatory = TCell_Impl.primingDL.getCD8TregCirculation();
-		cd8TregPrimedCLN = TCell_Impl.primingDL.getCD8TregCLN();
-		cd8TregPrimedCNS = TCell_Impl.primingDL.getCD8TregCNS();
-		cd8TregPrimedSLO = TCell_Impl.primingDL.getCD8TregSLO();
-		cd8TregPrimedSpleen = TCell_Impl.primingDL.getCD8TregSpleen();	
-		
-		neuronsKilledCumulative = Neuron.neuronsKilledDL.getCumulativeCountNeuronsApoptosised();
-		
-		dcmPeptidePresentationMBP = DendriticCellMigrates.peptidePresentationDL.getApoptosedMBPTotal();
-		dcmPeptidePresentationType1 = DendriticCellMigrates.peptidePresentationDL.getApoptosedType1Total();
-		dcmPeptidePresentationBoth = DendriticCellMigrates.peptidePresentationDL.getApoptosedBothTotal();
-		dcmPeptidePresentationNone = DendriticCellMigrates.peptidePresentationDL.getApoptosedNullTotal();
-		dcmPeptidePresentationTotal = DendriticCellMigrates.peptidePresentationDL.getApoptosedDCTotal();
+		cd4TregPrimedCirculatory = sim.primingDL.getCD4TregCirculation();
+		cd4TregPrimedCLN = sim.primingDL.getCD4TregCLN();
+		cd4TregPrimedCNS = sim.primingDL.getCD4TregCNS();
+		cd4TregPrimedSLO = sim.primingDL.getCD4TregSLO();
+		cd4TregPrimedSpleen = sim.primingDL.getCD4TregSpleen();
+		
+		cd8TregPrimedCirculatory = sim.primingDL.getCD8TregCirculation();
+		cd8TregPrimedCLN = sim.primingDL.getCD8TregCLN();
+		cd8TregPrimedCNS = sim.primingDL.getCD8TregCNS();
+		cd8TregPrimedSLO = sim.primingDL.getCD8TregSLO();
+		cd8TregPrimedSpleen = sim.primingDL.getCD8TregSpleen();	
+		
+		neuronsKilledCumulative = sim.neuronsKilledDL.getCumulativeCountNeuronsApoptosised();
+		
+		dcmPeptidePresentationMBP = sim.peptidePresentationDL.getApoptosedMBPTotal();
+		dcmPeptidePresentationType1 = sim.peptidePresentationDL.getApoptosedType1Total();
+		dcmPeptidePresentationBoth = sim.peptidePresentationDL.getApoptosedBothTotal();
+		dcmPeptidePresentationNone = sim.peptidePresentationDL.getApoptosedNullTotal();
+		dcmPeptidePresentationTotal = sim.peptidePresentationDL.getApoptosedDCTotal();
 		
 		storeData();												// log the values into the data stores. 
 	}
@@ -397,6 +440,16 @@ public class SingleRunDataStore implements Steppable
 		cd4Th2Specificities = allCD4Th2Specificities.findMedian();
 	}
 	
+	/**
+	 * As above, but gathers the specificities of CD4Th cells from the simulation's T cell population store. As above, the median of no cells is 0.0. 
+	 */
+	private void countCD4ThSpecificities(TCellStore store)
+	{
+		cd4ThSpecificities = MedianDataDouble.findMedian(store.cd4ThSpecificities(TCellStore.UNPOLARIZED));
+		cd4Th1Specificities = MedianDataDouble.findMedian(store.cd4ThSpecificities(TCellStore.TH1));
+		cd4Th2Specificities = MedianDataDouble.findMedian(store.cd4ThSpecificities(TCellStore.TH2));
+	}
+	
 	
 	
 	private void countCLN(Collection<Cell> compartmentCells)
@@ -469,6 +522,29 @@ public class SingleRunDataStore implements Steppable
 		}
 	}
 	
+	/**
+	 * As above, but reads the censuses kept by the CLN compartment. 
+	 */
+	private void countCLN(TCellCensus census, APCCensus apcs)
+	{
+		clnDC += apcs.count(APCCensus.DENDRITIC_CELL);
+		clnDCImmature += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.IMMATURE);
+		clnDCTolerogenic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.TOLEROGENIC);
+		clnDCImmunogenic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.IMMUNOGENIC);
+		clnDCApoptotic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.APOPTOTIC);
+		clnDCPolarizationType1 += apcs.countPresenting(DendriticCell.Polarization.Type1);
+		clnDCPolarizationType2 += apcs.countPresenting(DendriticCell.Polarization.Type2);
+		
+		clnCD8TregProlif += census.count(TCellStore.CD8TREG, TCell_Impl.Maturity.Proliferating);
+		clnCD8TregEffector += census.count(TCellStore.CD8TREG, TCell_Impl.Maturity.Effector);
+		clnCD4TregProlif += census.count(TCellStore.CD4TREG, TCell_Impl.Maturity.Proliferating);
+		clnCD4TregEffector += census.count(TCellStore.CD4TREG, TCell_Impl.Maturity.Effector);
+		clnTh1Prolif += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Proliferating, TCellStore.TH1);
+		clnTh2Prolif += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Proliferating, TCellStore.TH2);
+		clnTh1Effector += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Effector, TCellStore.TH1);
+		clnTh2Effector += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Effector, TCellStore.TH2);
+	}
+	
 	/**
 	 * Count cells and their states that are specific to the CNS compartment. 
 	 */
@@ -504,6 +580,21 @@ public class SingleRunDataStore implements Steppable
 		}
 	}
 	
+	/**
+	 * As above, but reads the censuses kept by the CNS compartment. 
+	 */
+	private void countCNS(TCellCensus census, APCCensus apcs)
+	{
+		cnsAPC += apcs.count(APCCensus.DENDRITIC_CELL) + apcs.count(APCCensus.OTHER_APC);
+		cnsAPCImmature += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.IMMATURE) + apcs.count(APCCensus.OTHER_APC, APCCensus.IMMATURE);
+		cnsAPCTolerogenic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.TOLEROGENIC) + apcs.count(APCCensus.OTHER_APC, APCCensus.TOLEROGENIC);
+		cnsAPCImmunogenic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.IMMUNOGENIC) + apcs.count(APCCensus.OTHER_APC, APCCensus.IMMUNOGENIC);
+		cnsAPCApoptotic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.APOPTOTIC) + apcs.count(APCCensus.OTHER_APC, APCCensus.APOPTOTIC);
+		
+		cnsCD4Th1 += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Effector, TCellStore.TH1);
+		cnsCD4Th2 += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Effector, TCellStore.TH2);
+	}
+	
 	/**
 	 * Count cells and their states that are specific to the SLO compartment. 
 	 */
@@ -527,6 +618,19 @@ public class SingleRunDataStore implements Steppable
 			}
 		}
 	}
+	
+	/**
+	 * As above, but reads the census of APCs kept by the SLO compartment. 
+	 */
+	private void countSLO(APCCensus apcs)
+	{
+		sloDC += apcs.count(APCCensus.DENDRITIC_CELL);
+		sloDCImmature += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.IMMATURE);
+		sloDCTolerogenic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.TOLEROGENIC);
+		sloDCImmunogenic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.IMMUNOGENIC);
+		sloDCApoptotic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.APOPTOTIC);
+	}
+	
 	/**
 	 * Count cells and their states that are specific to the Spleen compartment. 
 	 */
@@ -594,6 +698,29 @@ public class SingleRunDataStore implements Steppable
 		}
 	}
 	
+	/**
+	 * As above, but reads the censuses kept by the Spleen compartment. 
+	 */
+	private void countSpleen(TCellCensus census, APCCensus apcs)
+	{
+		spleenDC += apcs.count(APCCensus.DENDRITIC_CELL);
+		spleenDCImmature += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.IMMATURE);
+		spleenDCTolerogenic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.TOLEROGENIC);
+		spleenDCImmunogenic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.IMMUNOGENIC);
+		spleenDCApoptotic += apcs.count(APCCensus.DENDRITIC_CELL, APCCensus.APOPTOTIC);
+		
+		spleenCD8TregTotal += census.count(TCellStore.CD8TREG);
+		spleenCD8TregProlif += census.count(TCellStore.CD8TREG, TCell_Impl.Maturity.Proliferating);
+		spleenCD8TregEffector += census.count(TCellStore.CD8TREG, TCell_Impl.Maturity.Effector);
+		spleenCD4TregTotal += census.count(TCellStore.CD4TREG);
+		spleenCD4TregProlif += census.count(TCellStore.CD4TREG, TCell_Impl.Maturity.Proliferating);
+		spleenCD4TregEffector += census.count(TCellStore.CD4TREG, TCell_Impl.Maturity.Effector);
+		spleenTh1Prolif += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Proliferating, TCellStore.TH1);
+		spleenTh2Prolif += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Proliferating, TCellStore.TH2);
+		spleenCD4Th1 += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Effector, TCellStore.TH1);
+		spleenCD4Th2 += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Effector, TCellStore.TH2);
+	}
+	
 	
 	/**
 	 * Method takes all the cells in *THE SIMULATION* and tallies up their total numbers, states, ect, across all compartments (and this is done in one go).
@@ -681,6 +808,75 @@ public class SingleRunDataStore implements Steppable
 		}
 	}
 	
+	/**
+	 * As above, but takes the census of T cells from the simulation's T cell population store, which holds every living T cell. 
+	 */
+	private void countTotalCells(TCellStore store)
+	{
+		final int[] counts = new int[TCell_Impl.Maturity.values().length];
+		store.countMaturities(TCellStore.CD4TH, counts);
+		totalCD4ThNaive += counts[TCell_Impl.Maturity.Naive.ordinal()];
+		totalCD4ThPartial += counts[TCell_Impl.Maturity.Partial.ordinal()];
+		totalCD4ThProliferating += counts[TCell_Impl.Maturity.Proliferating.ordinal()];
+		totalCD4Th1 += store.countEffectorCD4Th(TCellStore.TH1);
+		totalCD4Th2 += store.countEffectorCD4Th(TCellStore.TH2);
+		totalCD4ThApoptotic += counts[TCell_Impl.Maturity.Apoptotic.ordinal()];
+		for(int c : counts)
+			totalCD4Th += c;
+		
+		Arrays.fill(counts, 0);
+		store.countMaturities(TCellStore.CD4TREG, counts);
+		totalCD4TregNaive += counts[TCell_Impl.Maturity.Naive.ordinal()];
+		totalCD4TregPartial += counts[TCell_Impl.Maturity.Partial.ordinal()];
+		totalCD4TregProliferating += counts[TCell_Impl.Maturity.Proliferating.ordinal()];
+		totalCD4TregActivated += counts[TCell_Impl.Maturity.Effector.ordinal()];
+		totalCD4TregApoptotic += counts[TCell_Impl.Maturity.Apoptotic.ordinal()];
+		for(int c : counts)
+			totalCD4Treg += c;
+		
+		Arrays.fill(counts, 0);
+		store.countMaturities(TCellStore.CD8TREG, counts);
+		totalCD8TregNaive += counts[TCell_Impl.Maturity.Naive.ordinal()];
+		totalCD8TregPartial += counts[TCell_Impl.Maturity.Partial.ordinal()];
+		totalCD8TregProliferating += counts[TCell_Impl.Maturity.Proliferating.ordinal()];
+		totalCD8TregActivated += counts[TCell_Impl.Maturity.Effector.ordinal()];
+		totalCD8TregApoptotic += counts[TCell_Impl.Maturity.Apoptotic.ordinal()];
+		for(int c : counts)
+			totalCD8Treg += c;
+	}
+	
+	/**
+	 * As above, but reads the census of T cells kept by each of the given compartments. 
+	 */
+	private void countTotalCells(Compartment... compartments)
+	{
+		for(Compartment compartment : compartments)
+		{
+			final TCellCensus census = compartment.getTCellCensus();
+			totalCD4Th += census.count(TCellStore.CD4TH);
+			totalCD4ThNaive += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Naive);
+			totalCD4ThPartial += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Partial);
+			totalCD4ThProliferating += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Proliferating);
+			totalCD4Th1 += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Effector, TCellStore.TH1);
+			totalCD4Th2 += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Effector, TCellStore.TH2);
+			totalCD4ThApoptotic += census.count(TCellStore.CD4TH, TCell_Impl.Maturity.Apoptotic);
+			
+			totalCD4Treg += census.count(TCellStore.CD4TREG);
+			totalCD4TregNaive += census.count(TCellStore.CD4TREG, TCell_Impl.Maturity.Naive);
+			totalCD4TregPartial += census.count(TCellStore.CD4TREG, TCell_Impl.Maturity.Partial);
+			totalCD4TregProliferating += census.count(TCellStore.CD4TREG, TCell_Impl.Maturity.Proliferating);
+			totalCD4TregActivated += census.count(TCellStore.CD4TREG, TCell_Impl.Maturity.Effector);
+			totalCD4TregApoptotic += census.count(TCellStore.CD4TREG, TCell_Impl.Maturity.Apoptotic);
+			
+			totalCD8Treg += census.count(TCellStore.CD8TREG);
+			totalCD8TregNaive += census.count(TCellStore.CD8TREG, TCell_Impl.Maturity.Naive);
+			totalCD8TregPartial += census.count(TCellStore.CD8TREG, TCell_Impl.Maturity.Partial);
+			totalCD8TregProliferating += census.count(TCellStore.CD8TREG, TCell_Impl.Maturity.Proliferating);
+			totalCD8TregActivated += census.count(TCellStore.CD8TREG, TCell_Impl.Maturity.Effector);
+			totalCD8TregApoptotic += census.count(TCellStore.CD8TREG, TCell_Impl.Maturity.Apoptotic);
+		}
+	}
+	
 	private void storeData()
 	{
 		colTime.logValue(time);
@@ -929,254 +1125,68 @@ public class SingleRunDataStore implements Steppable
 	}
 	
 	
+	/**
+	 * The columns of the output table, in the order in which they are written.
+	 */
+	private DataColumn[] tableColumns()
+	{
+		return new DataColumn[] {
+			colTime, colTotalCD4Th, colTotalCD4ThNaive, colTotalCD4ThPartial, colTotalCD4ThProliferating, colTotalCD4Th1, colTotalCD4Th2,
+			colTotalCD4ThApoptotic, colTotalCD4Treg, colTotalCD4TregNaive, colTotalCD4TregPartial, colTotalCD4TregProliferating, colTotalCD4TregActivated,
+			colTotalCD4TregApoptotic, colTotalCD8Treg, colTotalCD8TregNaive, colTotalCD8TregPartial, colTotalCD8TregProliferating, colTotalCD8TregActivated,
+			colTotalCD8TregApoptotic, colCNSAPC, colCNSAPCImmature, colCNSAPCTolerogenic, colCNSAPCImmunogenic, colCNSAPCApoptotic, colCLNDC,
+			colCLNDCImmature, colCLNDCTolerogenic, colCLNDCImmunogenic, colCLNDCApoptotic, colSLODC, colSLODCImmature, colSLODCTolerogenic,
+			colSLODCImmunogenic, colSLODCApoptotic, colCNSCD4Th1, colCNSCD4Th2, colCD4ThMedianSpecificity, colCD4Th1MedianSpecificity,
+			colCD4Th2MedianSpecificity, colCumulativeTh1Killed, colCLNDCPolarizationType1, colCLNDCPolarizationType2, colCumulativeCNSDCType1,
+			colCumulativeCNSDCType2, colSpleenDC, colSpleenDCImmature, colSpleenDCTolerogenic, colSpleenDCImmunogenic, colSpleenDCApoptotic,
+			colSpleenCD4TregTotal, colSpleenCD4TregEffector, colSpleenCD8TregTotal, colSpleenCD8TregEffector, colSpleenCD4Th1, colSpleenCD4Th2,
+			colSpleenCD4TregProlif, colSpleenCD8TregProlif, colSpleenTh1Prolif, colSpleenTh2Prolif, colCLNCD4TregProlif, colCLNCD8TregProlif, colCLNTh1Prolif,
+			colCLNTh2Prolif, colCLNCD4TregEffector, colCLNCD8TregEffector, colCLNTh1Effector, colCLNTh2Effector, colCumulativeTh1KilledCirculatory,
+			colCumulativeTh1KilledCLN, colCumulativeTh1KilledCNS, colCumulativeTh1KilledSLO, colCumulativeTh1KilledSpleen, colCD4ThPrimedCirculatory,
+			colCD4ThPrimedCLN, colCD4ThPrimedCNS, colCD4ThPrimedSLO, colCD4ThPrimedSpleen, colCD4TregPrimedCirculatory, colCD4TregPrimedCLN,
+			colCD4TregPrimedCNS, colCD4TregPrimedSLO, colCD4TregPrimedSpleen, colCD8TregPrimedCirculatory, colCD8TregPrimedCLN, colCD8TregPrimedCNS,
+			colCD8TregPrimedSLO, colCD8TregPrimedSpleen, colNeuronsKilledCumulative, colDCMPeptidePresentationMBP, colDCMPeptidePresentationType1,
+			colDCMPeptidePresentationBoth, colDCMPeptidePresentationNone, colDCMPeptidePresentationTotal
+		};
+	}
+	
 	public String compileTableToString()
 	{
-		StringBuilder output = new StringBuilder();
+		StringWriter output = new StringWriter();
+		writeTable(new PrintWriter(output));
+		return output.toString();
+	}
+	
+	/**
+	 * Writes the table of logged data to the given writer one row at a time, such that the table as a whole need never be held in memory as text.
+	 */
+	public void writeTable(PrintWriter output)
+	{
+		final DataColumn[] columns = tableColumns();
+		
 		StringBuilder key = new StringBuilder();
+		for(DataColumn column : columns)
+			key.append(column.getTitle() + " ");
+		tableKey = key.toString();
 		
-		Iterator<Double> timeIter = colTime.getIterator();											key.append(colTime.getTitle() + " ");
-		
-		Iterator<Integer> totalCD4ThIter = colTotalCD4Th.getIterator();								key.append(colTotalCD4Th.getTitle() + " ");
-		Iterator<Integer> totalCD4ThNaiveIter = colTotalCD4ThNaive.getIterator();					key.append(colTotalCD4ThNaive.getTitle() + " ");
-		Iterator<Integer> totalCD4ThPartialIter = colTotalCD4ThPartial.getIterator();				key.append(colTotalCD4ThPartial.getTitle() + " ");
-		Iterator<Integer> totalCD4ThProliferatingIter = colTotalCD4ThProliferating.getIterator();	key.append(colTotalCD4ThProliferating.getTitle() + " ");
-		Iterator<Integer> totalCD4Th1Iter = colTotalCD4Th1.getIterator();							key.append(colTotalCD4Th1.getTitle() + " ");
-		Iterator<Integer> totalCD4Th2Iter = colTotalCD4Th2.getIterator();							key.append(colTotalCD4Th2.getTitle() + " ");
-		Iterator<Integer> totalCD4ThApoptoticIter = colTotalCD4ThApoptotic.getIterator();			key.append(colTotalCD4ThApoptotic.getTitle() + " ");
-		
-		Iterator<Integer> totalCD4TregIter = colTotalCD4Treg.getIterator();							key.append(colTotalCD4Treg.getTitle() + " ");
-		Iterator<Integer> totalCD4TregNaiveIter = colTotalCD4TregNaive.getIterator();				key.append(colTotalCD4TregNaive.getTitle() + " ");
-		Iterator<Integer> totalCD4TregPartialIter = colTotalCD4TregPartial.getIterator();			key.append(colTotalCD4TregPartial.getTitle() + " ");
-		Iterator<Integer> totalCD4TregProliferatingIter = colTotalCD4TregProliferating.getIterator();key.append(colTotalCD4TregProliferating.getTitle() + " ");
-		Iterator<Integer> totalCD4TregActivatedIter = colTotalCD4TregActivated.getIterator();		key.append(colTotalCD4TregActivated.getTitle() + " ");
-		Iterator<Integer> totalCD4TregApoptoticIter = colTotalCD4TregApoptotic.getIterator();		key.append(colTotalCD4TregApoptotic.getTitle() + " ");
-		
-		Iterator<Integer> totalCD8TregIter = colTotalCD8Treg.getIterator();							key.append(colTotalCD8Treg.getTitle() + " ");
-		Iterator<Integer> totalCD8TregNaiveIter = colTotalCD8TregNaive.getIterator();				key.append(colTotalCD8TregNaive.getTitle() + " ");
-		Iterator<Integer> totalCD8TregPartialIter = colTotalCD8TregPartial.getIterator();			key.append(colTotalCD8TregPartial.getTitle() + " ");
-		Iterator<Integer> totalCD8TregProliferatingIter = colTotalCD8TregProliferating.getIterator();key.append(colTotalCD8TregProliferating.getTitle() + " ");
-		Iterator<Integer> totalCD8TregActivatedIter = colTotalCD8TregActivated.getIterator();		key.append(colTotalCD8TregActivated.getTitle() + " ");
-		Iterator<Integer> totalCD8TregApoptoticIter = colTotalCD8TregApoptotic.getIterator();		key.append(colTotalCD8TregApoptotic.getTitle() + " ");
-		
-		Iterator<Integer> cnsAPCIter = colCNSAPC.getIterator();										key.append(colCNSAPC.getTitle() + " ");
-		Iterator<Integer> cnsAPCImmatureIter = colCNSAPCImmature.getIterator();						key.append(colCNSAPCImmature.getTitle() + " ");
-		Iterator<Integer> cnsAPCTolerogenicIter = colCNSAPCTolerogenic.getIterator();				key.append(colCNSAPCTolerogenic.getTitle() + " ");
-		Iterator<Integer> cnsAPCImmunogenicIter = colCNSAPCImmunogenic.getIterator();				key.append(colCNSAPCImmunogenic.getTitle() + " ");
-		Iterator<Integer> cnsAPCApoptoticIter = colCNSAPCApoptotic.getIterator();					key.append(colCNSAPCApoptotic.getTitle() + " ");
-		
-		Iterator<Integer> clnDCIter = colCLNDC.getIterator();										key.append(colCLNDC.getTitle() + " ");
-		Iterator<Integer> clnDCImmatureIter = colCLNDCImmature.getIterator();						key.append(colCLNDCImmature.getTitle() + " ");
-		Iterator<Integer> clnDCTolerogenicIter = colCLNDCTolerogenic.getIterator();					key.append(colCLNDCTolerogenic.getTitle() + " ");
-		Iterator<Integer> clnDCImmunogenicIter = colCLNDCImmunogenic.getIterator();					key.append(colCLNDCImmunogenic.getTitle() + " ");
-		Iterator<Integer> clnDCApoptoticIter = colCLNDCApoptotic.getIterator();						key.append(colCLNDCApoptotic.getTitle() + " ");
-		
-		Iterator<Integer> sloDCIter = colSLODC.getIterator();										key.append(colSLODC.getTitle() + " ");
-		Iterator<Integer> sloDCImmatureIter = colSLODCImmature.getIterator();						key.append(colSLODCImmature.getTitle() + " ");
-		Iterator<Integer> sloDCTolerogenicIter = colSLODCTolerogenic.getIterator();					key.append(colSLODCTolerogenic.getTitle() + " ");
-		Iterator<Integer> sloDCImmunogenicIter = colSLODCImmunogenic.getIterator();					key.append(colSLODCImmunogenic.getTitle() + " ");
-		Iterator<Integer> sloDCApoptoticIter = colSLODCApoptotic.getIterator();						key.append(colSLODCApoptotic.getTitle() + " ");
-		
-		Iterator<Integer> cnsCD4Th1Iter = colCNSCD4Th1.getIterator();								key.append(colCNSCD4Th1.getTitle() + " ");								
-		Iterator<Integer> cnsCD4Th2Iter = colCNSCD4Th2.getIterator();								key.append(colCNSCD4Th2.getTitle() + " ");
-		
-		Iterator<Double> allCD4ThMedianSpecificityIter = colCD4ThMedianSpecificity.getIterator();	key.append(colCD4ThMedianSpecificity.getTitle() + " ");
-		Iterator<Double> allCD4Th1MedianSpecificityIter = colCD4Th1MedianSpecificity.getIterator();	key.append(colCD4Th1MedianSpecificity.getTitle() + " ");
-		Iterator<Double> allCD4Th2MedianSpecificityIter = colCD4Th2MedianSpecificity.getIterator();	key.append(colCD4Th2MedianSpecificity.getTitle() + " ");
-		
-		Iterator<Integer> cumulativeTh1KilledIter = colCumulativeTh1Killed.getIterator();			key.append(colCumulativeTh1Killed.getTitle() + " ");
-	
-		Iterator<Integer> clnDCPolarizationType1Iter = colCLNDCPolarizationType1.getIterator();		key.append(colCLNDCPolarizationType1.getTitle() + " ");
-		Iterator<Integer>clnDCPolarizationType2Iter = colCLNDCPolarizationType2.getIterator();		key.append(colCLNDCPolarizationType2.getTitle() + " ");
-		
-		Iterator<Integer> cumulativeCNSDCType1Iter = colCumulativeCNSDCType1.getIterator();			key.append(colCumulativeCNSDCType1.getTitle() + " ");
-		Iterator<Integer> cumulativeCNSDCType2Iter = colCumulativeCNSDCType2.getIterator();			key.append(colCumulativeCNSDCType2.getTitle() + " ");
-			
-		Iterator<Integer> spleenDCIter = colSpleenDC.getIterator();									key.append(colSpleenDC.getTitle() + " ");
-		Iterator<Integer> spleenDCImmatureIter = colSpleenDCImmature.getIterator();					key.append(colSpleenDCImmature.getTitle() + " ");
-		Iterator<Integer> spleenDCTolerogenicIter = colSpleenDCTolerogenic.getIterator();			key.append(colSpleenDCTolerogenic.getTitle() + " ");
-		Iterator<Integer> spleenDCImmunogenicIter = colSpleenDCImmunogenic.getIterator();			key.append(colSpleenDCImmunogenic.getTitle() + " ");
-		Iterator<Integer> spleenDCApoptoticIter = colSpleenDCApoptotic.getIterator();				key.append(colSpleenDCApoptotic.getTitle() + " ");
-		
-		Iterator<Integer> spleenCD4TregTotalIter = colSpleenCD4TregTotal.getIterator();				key.append(colSpleenCD4TregTotal.getTitle() + " ");
-		Iterator<Integer> spleenCD4TregEffectorIter = colSpleenCD4TregEffector.getIterator();		key.append(colSpleenCD4TregEffector.getTitle() + " ");
-		Iterator<Integer> spleenCD8TregTotalIter = colSpleenCD8TregTotal.getIterator();				key.append(colSpleenCD8TregTotal.getTitle() + " ");
-		Iterator<Integer> spleenCD8TregEffectorIter = colSpleenCD8TregEffector.getIterator();		key.append(colSpleenCD8TregEffector.getTitle() + " ");
-		Iterator<Integer> spleenCD4Th1Iter = colSpleenCD4Th1.getIterator();							key.append(colSpleenCD4Th1.getTitle() + " ");
-		Iterator<Integer> spleenCD4Th2Iter = colSpleenCD4Th2.getIterator();							key.append(colSpleenCD4Th2.getTitle() + " ");
-				
-		Iterator<Integer> spleenCD4TregProlifIter = colSpleenCD4TregProlif.getIterator();			key.append(colSpleenCD4TregProlif.getTitle() + " ");
-		Iterator<Integer> spleenCD8TregProlifIter = colSpleenCD8TregProlif.getIterator();			key.append(colSpleenCD8TregProlif.getTitle() + " ");
-		Iterator<Integer> spleenTh1ProlifIter = colSpleenTh1Prolif.getIterator();					key.append(colSpleenTh1Prolif.getTitle() + " ");
-		Iterator<Integer> spleenTh2ProlifIter = colSpleenTh2Prolif.getIterator();					key.append(colSpleenTh2Prolif.getTitle() + " ");
-		
-		Iterator<Integer> clnCD4TregProlifIter = colCLNCD4TregProlif.getIterator();					key.append(colCLNCD4TregProlif.getTitle() + " ");
-		Iterator<Integer> clnCD8TregProlifIter = colCLNCD8TregProlif.getIterator();					key.append(colCLNCD8TregProlif.getTitle() + " ");
-		Iterator<Integer> clnTh1ProlifIter = colCLNTh1Prolif.getIterator();							key.append(colCLNTh1Prolif.getTitle() + " ");
-		Iterator<Integer> clnTh2ProlifIter = colCLNTh2Prolif.getIterator();							key.append(colCLNTh2Prolif.getTitle() + " ");
-		
-		Iterator<Integer> clnCD4TregEffectorIter = colCLNCD4TregEffector.getIterator();				key.append(colCLNCD4TregEffector.getTitle() + " ");
-		Iterator<Integer> clnCD8TregEffectorIter = colCLNCD8TregEffector.getIterator();				key.append(colCLNCD8TregEffector.getTitle() + " ");
-		Iterator<Integer> clnTh1EffectorIter = colCLNTh1Effector.getIterator();						key.append(colCLNTh1Effector.getTitle() + " ");
-		Iterator<Integer> clnTh2EffectorIter = colCLNTh2Effector.getIterator();						key.append(colCLNTh2Effector.getTitle() + " ");
-		
-		Iterator<Integer> cumulativeCD4Th1KilledCirculatoryIter = colCumulativeTh1KilledCirculatory.getIterator(); key.append(colCumulativeTh1KilledCirculatory.getTitle() + " ");
-		Iterator<Integer> cumulativeCD4Th1KilledCLNIter = colCumulativeTh1KilledCLN.getIterator(); 	key.append(colCumulativeTh1KilledCLN.getTitle() + " ");
-		Iterator<Integer> cumulativeCD4Th1KilledCNSIter = colCumulativeTh1KilledCNS.getIterator(); 	key.append(colCumulativeTh1KilledCNS.getTitle() + " ");		
-		Iterator<Integer> cumulativeCD4Th1KilledSLOIter = colCumulativeTh1KilledSLO.getIterator(); 	key.append(colCumulativeTh1KilledSLO.getTitle() + " ");
-		Iterator<Integer> cumulativeCD4Th1KilledSpleenIter = colCumulativeTh1KilledSpleen.getIterator(); key.append(colCumulativeTh1KilledSpleen.getTitle() + " ");
-		
-		Iterator<Integer> cd4ThPrimedCirculatoryIter = colCD4ThPrimedCirculatory.getIterator(); 		key.append(colCD4ThPrimedCirculatory.getTitle() + " ");
-		Iterator<Integer> cd4ThPrimedCLNIter = colCD4ThPrimedCLN.getIterator(); 						key.append(colCD4ThPrimedCLN.getTitle() + " ");
-		Iterator<Integer> cd4ThPrimedCNSIter = colCD4ThPrimedCNS.getIterator(); 						key.append(colCD4ThPrimedCNS.getTitle() + " ");
-		Iterator<Integer> cd4ThPrimedSLOIter = colCD4ThPrimedSLO.getIterator(); 						key.append(colCD4ThPrimedSLO.getTitle() + " ");
-		Iterator<Integer> cd4ThPrimedSpleenIter = colCD4ThPrimedSpleen.getIterator(); 				key.append(colCD4ThPrimedSpleen.getTitle() + " ");
-		
-		Iterator<Integer> cd4TregPrimedCirculatoryIter = colCD4TregPrimedCirculatory.getIterator(); 	key.append(colCD4TregPrimedCirculatory.getTitle() + " ");
-		Iterator<Integer> cd4TregPrimedCLNIter = colCD4TregPrimedCLN.getIterator(); 					key.append(colCD4TregPrimedCLN.getTitle() + " ");
-		Iterator<Integer> cd4TregPrimedCNSIter = colCD4TregPrimedCNS.getIterator(); 					key.append(colCD4TregPrimedCNS.getTitle() + " ");
-		Iterator<Integer> cd4TregPrimedSLOIter = colCD4TregPrimedSLO.getIterator(); 					key.append(colCD4TregPrimedSLO.getTitle() + " ");
-		Iterator<Integer> cd4TregPrimedSpleenIter = colCD4TregPrimedSpleen.getIterator(); 			key.append(colCD4TregPrimedSpleen.getTitle() + " ");
-		
-		Iterator<Integer> cd8TregPrimedCirculatoryIter = colCD8TregPrimedCirculatory.getIterator(); 	key.append(colCD8TregPrimedCirculatory.getTitle() + " ");
-		Iterator<Integer> cd8TregPrimedCLNIter = colCD8TregPrimedCLN.getIterator(); 					key.append(colCD8TregPrimedCLN.getTitle() + " ");
-		Iterator<Integer> cd8TregPrimedCNSIter = colCD8TregPrimedCLN.getIterator(); 					key.append(colCD8TregPrimedCNS.getTitle() + " ");
-		Iterator<Integer> cd8TregPrimedSLOIter = colCD8TregPrimedSLO.getIterator(); 					key.append(colCD8TregPrimedSLO.getTitle() + " ");
-		Iterator<Integer> cd8TregPrimedSpleenIter = colCD8TregPrimedSpleen.getIterator(); 			key.append(colCD8TregPrimedSpleen.getTitle() + " ");
-		
-		Iterator<Integer> neuronsKilledCumulativeIter = colNeuronsKilledCumulative.getIterator(); 	key.append(colNeuronsKilledCumulative.getTitle() + " ");
-
-		Iterator<Integer> dcmPeptidePresentationMBPIter = colDCMPeptidePresentationMBP.getIterator();		key.append(colDCMPeptidePresentationMBP.getTitle() + " ");
-		Iterator<Integer> dcmPeptidePresentationType1Iter = colDCMPeptidePresentationType1.getIterator();	key.append(colDCMPeptidePresentationType1.getTitle() + " ");
-		Iterator<Integer> dcmPeptidePresentationBothIter = colDCMPeptidePresentationBoth.getIterator();		key.append(colDCMPeptidePresentationBoth.getTitle() + " ");
-		Iterator<Integer> dcmPeptidePresentationNoneIter = colDCMPeptidePresentationNone.getIterator();		key.append(colDCMPeptidePresentationNone.getTitle() + " ");
-		Iterator<Integer> dcmPeptidePresentationTotalIter = colDCMPeptidePresentationTotal.getIterator();	key.append(colDCMPeptidePresentationTotal.getTitle() + " ");
+		for(int c = 0; c < columns.length; c++)
+			if(columns[c] == colCD8TregPrimedCNS)
+				columns[c] = colCD8TregPrimedCLN;		// the CD8TregPrimedCNS column of the table has always held the CLN values; kept so that tables remain comparable.
 		
-		tableKey = key.toString();
-		output.append("#" + tableKey + "\n");
-		while(timeIter.hasNext())
+		output.print("#" + tableKey + "\n");
+		StringBuilder row = new StringBuilder();
+		for(int r = 0; r < colTime.getLength(); r++)
 		{
-			output.append(timeIter.next()); output.append(" ");
-			
-			output.append(totalCD4ThIter.next()); output.append(" ");
-			
-			output.append(totalCD4ThNaiveIter.next()); output.append(" ");
-			output.append(totalCD4ThPartialIter.next()); output.append(" ");
-			output.append(totalCD4ThProliferatingIter.next()); output.append(" ");
-			output.append(totalCD4Th1Iter.next()); output.append(" ");
-			output.append(totalCD4Th2Iter.next()); output.append(" ");
-			output.append(totalCD4ThApoptoticIter.next()); output.append(" ");
-			
-			output.append(totalCD4TregIter.next()); output.append(" ");
-			output.append(totalCD4TregNaiveIter.next()); output.append(" ");
-			output.append(totalCD4TregPartialIter.next()); output.append(" ");
-			output.append(totalCD4TregProliferatingIter.next()); output.append(" ");
-			output.append(totalCD4TregActivatedIter.next()); output.append(" ");
-			output.append(totalCD4TregApoptoticIter.next()); output.append(" ");
-			
-			output.append(totalCD8TregIter.next()); output.append(" ");
-			output.append(totalCD8TregNaiveIter.next()); output.append(" ");
-			output.append(totalCD8TregPartialIter.next()); output.append(" ");
-			output.append(totalCD8TregProliferatingIter.next()); output.append(" ");
-			output.append(totalCD8TregActivatedIter.next()); output.append(" ");
-			output.append(totalCD8TregApoptoticIter.next()); output.append(" ");
-			
-			output.append(cnsAPCIter.next()); output.append(" ");
-			output.append(cnsAPCImmatureIter.next()); output.append(" ");
-			output.append(cnsAPCTolerogenicIter.next()); output.append(" ");
-			output.append(cnsAPCImmunogenicIter.next()); output.append(" ");
-			output.append(cnsAPCApoptoticIter.next()); output.append(" ");
-			
-			output.append(clnDCIter.next()); output.append(" ");
-			output.append(clnDCImmatureIter.next()); output.append(" ");
-			output.append(clnDCTolerogenicIter.next()); output.append(" ");
-			output.append(clnDCImmunogenicIter.next()); output.append(" ");
-			output.append(clnDCApoptoticIter.next()); output.append(" ");
-			
-			output.append(sloDCIter.next()); output.append(" ");
-			output.append(sloDCImmatureIter.next()); output.append(" ");
-			output.append(sloDCTolerogenicIter.next()); output.append(" ");
-			output.append(sloDCImmunogenicIter.next()); output.append(" ");
-			output.append(sloDCApoptoticIter.next()); output.append(" ");
-			
-			output.append(cnsCD4Th1Iter.next()); output.append(" ");
-			output.append(cnsCD4Th2Iter.next()); output.append(" ");
-			
-			output.append(allCD4ThMedianSpecificityIter.next()); output.append(" ");
-			output.append(allCD4Th1MedianSpecificityIter.next()); output.append(" ");
-			output.append(allCD4Th2MedianSpecificityIter.next()); output.append(" ");
-			
-			output.append(cumulativeTh1KilledIter.next()); output.append(" ");
-			
-			output.append(clnDCPolarizationType1Iter.next()); output.append(" ");
-			output.append(clnDCPolarizationType2Iter.next()); output.append(" ");
-			
-			output.append(cumulativeCNSDCType1Iter.next()); output.append(" ");
-			output.append(cumulativeCNSDCType2Iter.next()); output.append(" ");
-			
-			output.append(spleenDCIter.next()); output.append(" ");
-			output.append(spleenDCImmatureIter.next()); output.append(" ");
-			output.append(spleenDCTolerogenicIter.next()); output.append(" ");
-			output.append(spleenDCImmunogenicIter.next()); output.append(" ");
-			output.append(spleenDCApoptoticIter.next()); output.append(" ");
-			
-			output.append(spleenCD4TregTotalIter.next()); output.append(" ");
-			output.append(spleenCD4TregEffectorIter.next()); output.append(" ");
-			output.append(spleenCD8TregTotalIter.next()); output.append(" ");
-			output.append(spleenCD8TregEffectorIter.next()); output.append(" ");
-			output.append(spleenCD4Th1Iter.next()); output.append(" ");
-			output.append(spleenCD4Th2Iter.next()); output.append(" ");
-			
-			output.append(spleenCD4TregProlifIter.next()); output.append(" ");
-			output.append(spleenCD8TregProlifIter.next()); output.append(" ");
-			output.append(spleenTh1ProlifIter.next()); output.append(" ");
-			output.append(spleenTh2ProlifIter.next()); output.append(" ");
-			
-			output.append(clnCD4TregProlifIter.next()); output.append(" ");
-			output.append(clnCD8TregProlifIter.next()); output.append(" ");
-			output.append(clnTh1ProlifIter.next()); output.append(" ");
-			output.append(clnTh2ProlifIter.next()); output.append(" ");
-			
-			output.append(clnCD4TregEffectorIter.next()); output.append(" ");
-			output.append(clnCD8TregEffectorIter.next()); output.append(" ");
-			output.append(clnTh1EffectorIter.next()); output.append(" ");
-			output.append(clnTh2EffectorIter.next()); output.append(" ");
-			
-			output.append(cumulativeCD4Th1KilledCirculatoryIter.next()); output.append(" ");
-			output.append(cumulativeCD4Th1KilledCLNIter.next()); output.append(" ");
-			output.append(cumulativeCD4Th1KilledCNSIter.next()); output.append(" ");			
-			output.append(cumulativeCD4Th1KilledSLOIter.next()); output.append(" ");
-			output.append(cumulativeCD4Th1KilledSpleenIter.next()); output.append(" ");
-			
-			output.append(cd4ThPrimedCirculatoryIter.next()); output.append(" ");
-			output.append(cd4ThPrimedCLNIter.next()); output.append(" ");
-			output.append(cd4ThPrimedCNSIter.next()); output.append(" ");
-			output.append(cd4ThPrimedSLOIter.next()); output.append(" ");
-			output.append(cd4ThPrimedSpleenIter.next()); output.append(" ");
-
-			output.append(cd4TregPrimedCirculatoryIter.next()); output.append(" ");
-			output.append(cd4TregPrimedCLNIter.next()); output.append(" ");
-			output.append(cd4TregPrimedCNSIter.next()); output.append(" ");
-			output.append(cd4TregPrimedSLOIter.next()); output.append(" ");
-			output.append(cd4TregPrimedSpleenIter.next()); output.append(" ");
-			
-			output.append(cd8TregPrimedCirculatoryIter.next()); output.append(" ");
-			output.append(cd8TregPrimedCLNIter.next()); output.append(" ");
-			output.append(cd8TregPrimedCNSIter.next()); output.append(" ");
-			output.append(cd8TregPrimedSLOIter.next()); output.append(" ");
-			output.append(cd8TregPrimedSpleenIter.next()); output.append(" ");
-			
-			output.append(neuronsKilledCumulativeIter.next()); output.append(" ");
-			
-			output.append(dcmPeptidePresentationMBPIter.next()); output.append(" ");
-			output.append(dcmPeptidePresentationType1Iter.next()); output.append(" ");
-			output.append(dcmPeptidePresentationBothIter.next()); output.append(" ");
-			output.append(dcmPeptidePresentationNoneIter.next()); output.append(" ");
-			output.append(dcmPeptidePresentationTotalIter.next()); output.append(" ");
-			
-			output.append("\n");
+			row.setLength(0);
+			for(DataColumn column : columns)
+			{
+				column.appendValue(row, r);
+				row.append(" ");
+			}
+			row.append("\n");
+			output.print(row);
 		}
-		
-		return output.toString();
+		output.flush();
 	}
 	
 	/**
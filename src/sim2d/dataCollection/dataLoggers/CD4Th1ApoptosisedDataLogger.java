@@ -1,5 +1,6 @@
 package sim2d.dataCollection.dataLoggers;
 
+import sim2d.CellStepPhase;
 import sim2d.cell.impl.CD8Treg;
 import sim2d.compartment.CLN2D;
 import sim2d.compartment.CNS2D;
@@ -25,8 +26,15 @@ public class CD4Th1ApoptosisedDataLogger
 	private int apoptosisedSpleen;
 	private int apoptosisedTotal;
 		
-	public void logApoptosisEvent(CD8Treg cell)
+	public void logApoptosisEvent(final CD8Treg cell)
 	{
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred != null)										// cells are being stepped in parallel, log the event once they have all stepped.
+		{
+			deferred.add(new Runnable() { public void run() { logApoptosisEvent(cell); } });
+			return;
+		}
+
 		apoptosisedTotal++;
 		
 		Compartment location = cell.compartment;
@@ -1,5 +1,6 @@
 package sim2d.dataCollection.dataLoggers;
 
+import sim2d.CellStepPhase;
 import sim2d.cell.impl.DendriticCellMigrates;
 
 
@@ -21,8 +22,15 @@ public class DCApoptosedPeptidePresentationDataLogger
 	private int dcApoptosedNullTotal;
 	private int dcApoptosedTotal;
 	
-	public void logApoptoticAPEvent(DendriticCellMigrates cell)
+	public void logApoptoticAPEvent(final DendriticCellMigrates cell)
 	{
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred != null)										// cells are being stepped in parallel, log the event once they have all stepped.
+		{
+			deferred.add(new Runnable() { public void run() { logApoptoticAPEvent(cell); } });
+			return;
+		}
+
 		dcApoptosedTotal ++;
 		
 		// Check to see if DCMigrates is expressing MBP, but not CDR1/2 or Fr3
@@ -1,5 +1,6 @@
 package sim2d.dataCollection.dataLoggers;
 
+import sim2d.CellStepPhase;
 import sim2d.cell.impl.Neuron;
 
 
@@ -14,8 +15,15 @@ public class NeuronsKilledDataLogger
 	private int cumulativeCountNeuronsApoptosised = 0;
 	
 	
-	public void logApoptosisEvent(Neuron cell)
+	public void logApoptosisEvent(final Neuron cell)
 	{
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred != null)										// cells are being stepped in parallel, log the event once they have all stepped.
+		{
+			deferred.add(new Runnable() { public void run() { logApoptosisEvent(cell); } });
+			return;
+		}
+
 		cumulativeCountNeuronsApoptosised++;	
 	}
 	
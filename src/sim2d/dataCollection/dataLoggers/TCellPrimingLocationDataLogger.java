@@ -1,5 +1,6 @@
 package sim2d.dataCollection.dataLoggers;
 
+import sim2d.CellStepPhase;
 import sim2d.cell.impl.CD4THelper;
 import sim2d.cell.impl.CD4Treg;
 import sim2d.cell.impl.CD8Treg;
@@ -40,8 +41,15 @@ public class TCellPrimingLocationDataLogger
 	private int cd8TregSLO;
 	private int cd8TregSpleen;
 	
-	public void logPrimingEvent(TCell_Impl cell)
+	public void logPrimingEvent(final TCell_Impl cell)
 	{
+		final CellStepPhase.Commands deferred = CellStepPhase.deferred();
+		if(deferred != null)										// cells are being stepped in parallel, log the event once they have all stepped.
+		{
+			deferred.add(new Runnable() { public void run() { logPrimingEvent(cell); } });
+			return;
+		}
+
 		Compartment location = cell.compartment;
 		if (cell instanceof CD4THelper)
 		{
@@ -8,6 +8,7 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
@@ -41,6 +42,8 @@ public class PercentageSensitivityAnalysis
 	private static double time = 1000.0;									// how long individual runs should be run for, ie, time of execution
 	private static boolean singleRunRawData = false;						// whether or not the raw data from individual runs should be output to filesystem.
 	private static boolean runDefault = false;								// whether or not 'default' testcase should be executed
+	private static int threads = 1;											// how many simulation runs may execute concurrently. Results do not depend on this. 
+	private static boolean longestJobFirst = false;							// whether test cases expected to take longest are started first, reducing the total time taken by a sweep. 
 	
 	public static void main(String[] args)
 	{
@@ -93,6 +96,16 @@ public class PercentageSensitivityAnalysis
 					runDefault = Boolean.parseBoolean(arg);
 					System.out.println("the default test case will be executed = " + runDefault);
 				}
+				if(command.equals("-threads"))							// how many simulation runs are executed concurrently, each on its own thread. 
+				{
+					threads = Integer.parseInt(arg);
+					System.out.println("simulation runs will be executed on " + threads + " threads.");
+				}
+				if(command.equals("-longestFirst"))						// start the test cases expected to take longest first. 
+				{
+					longestJobFirst = Boolean.parseBoolean(arg);
+					System.out.println("test cases expected to take longest are started first = " + longestJobFirst);
+				}
 			}
 			
 		}
@@ -121,20 +134,47 @@ public class PercentageSensitivityAnalysis
 	    TestCase[] testParameters = prepareTestCases(percentParams, pathToStandardParametersFile);
 
 	    /*
-	     * Perform sensitivity analysis on each test case parameter
+	     * Perform sensitivity analysis on each test case parameter. Every (test case, replicate) pair is an independent simulation run, and these are executed
+	     * concurrently on 'threads' threads. The seeds of all runs are drawn up front, in the order in which they were drawn when runs were performed one 
+	     * after another, so results do not depend on the number of threads used. 
 	     */
-	    for(TestCase testCase : testParameters)
+	    final String[] workingDirs = new String[testParameters.length];
+	    final Document[] parameters = new Document[testParameters.length];
+	    final long[][] seeds = new long[testParameters.length][runs];
+	    for(int t = 0; t < testParameters.length; t++)
 	    {
+	    	TestCase testCase = testParameters[t];
 	    	String workingDir = expDir + File.separator + testCase.parameterName + "_-_" + testCase.parameterValue;
 	    	
-	    	System.out.println("Starting test case - " + workingDir);
+	    	System.out.println("Preparing test case - " + workingDir);
 	    	
 	    	// create the working directory into which the results of sensitivity analysis are to be written
 	    	if( new File(workingDir).mkdirs() == false )			
 	    		throw new RuntimeException("Failed to create the working directory : " + workingDir);
 	    	
-	    	performSensitivityAnalysisOnParameter(testCase.parameters, workingDir);
+	    	/* write current parameters.xml document file to the filesystem */
+	    	FileSystemIO.writeXMLFile(testCase.parameters, workingDir, "run_parameters.xml");
+	    	
+	    	workingDirs[t] = workingDir;
+	    	parameters[t] = testCase.parameters;
+	    	for(int r = 0; r < runs; r++)
+	    		seeds[t][r] = rand.nextLong();
 	    }
+	    
+	    SweepExecutor<SingleRunDataStore> sweep = new SweepExecutor<SingleRunDataStore>(threads, longestJobFirst);
+	    final double[] endTimes = new double[parameters.length];		// every test case is run for the same length of time.
+	    Arrays.fill(endTimes, time);
+	    sweep.execute(parameters, endTimes, seeds, 
+	    		new SweepExecutor.Replicate<SingleRunDataStore>()
+	    		{
+	    			public SingleRunDataStore run(int testCase, int replicate, long seed, Document params)
+	    			{	return performSingleRun(params, workingDirs[testCase], replicate, seed);	}
+	    		},
+	    		new SweepExecutor.TestCaseCompletion<SingleRunDataStore>()
+	    		{
+	    			public void testCaseComplete(int testCase, List<SingleRunDataStore> dataStores)
+	    			{	completeTestCase(workingDirs[testCase], dataStores);	}
+	    		});
 	     
 		
 		System.out.println("finished percentage based sensitivity analysis.");
@@ -142,57 +182,57 @@ public class PercentageSensitivityAnalysis
 	
 	
 	/**
-	 * Performs sensitivity analysis on a single parameter.
-	 * 
-	 * @param parameters 
-	 * @param workingDirectory
+	 * Performs a single simulation run of a test case, writing its raw data (if requested) into the test case's working directory. This is called 
+	 * concurrently for different runs. Returns the run's data, or null if the simulation failed. 
 	 */
-	private static void performSensitivityAnalysisOnParameter(Document parameters, String workingDirectory)
+	private static SingleRunDataStore performSingleRun(Document parameters, String workingDirectory, int r, long seed)
 	{
-		/* write current parameters.xml document file to the filesystem */
-	    FileSystemIO.writeXMLFile(parameters, workingDirectory, "run_parameters.xml");
-	    
-	    MultipleRunDataStore multiple = new MultipleRunDataStore();			// will store average results in this. 
+    	System.out.println("starting simulation run number " + (r + 1) + " in " + workingDirectory);
+    	
+    	// set up the single run.
+	    SingleRunDataStore dataStore = new SingleRunDataStore();
+	    TregSimulation simulation = new TregSimulation(seed, TregSimulation.Dimension.TwoD, parameters, 300);
 	    
-	    /* perform 'runs' single runs of the simulation and collect results */
-	    for(int r = 0; r < runs; r++)
+	    // run the simulation, and pass in the datastore. 
+	    long startTime = System.currentTimeMillis();
+	    try 
 	    {
-	    	System.out.print("starting simulation run number " + (r + 1) );
-	    	
-	    	// set up the single run.
-		    long seed = rand.nextLong();
-		    SingleRunDataStore dataStore = new SingleRunDataStore();
-		    TregSimulation simulation = new TregSimulation(seed, TregSimulation.Dimension.TwoD, parameters, 300);
+		    simulation.run(time, dataStore);
+		    
+		    System.out.println("simulation run number " + (r + 1) + " in " + workingDirectory + ", ran in " + ((System.currentTimeMillis() - startTime) / 1000) + " seconds.");
 		    
-		    // run the simulation, and pass in the datastore. 
-		    long startTime = System.currentTimeMillis();
-		    try 
+		    // only write the results of single runs if asked to. 
+		    if(singleRunRawData)
 		    {
-			    simulation.run(time, dataStore);
-			    
-			    System.out.println(", which ran in " + ((System.currentTimeMillis() - startTime) / 1000) + " seconds.");
-			    
-			    // lot the results of this single run.
-			    multiple.logSingleRunResults(dataStore);
-			    
-			    // only write the results of single runs if asked to. 
-			    if(singleRunRawData)
-			    {
-				    // write the results of the single run to the filesystem.
-				    File singleRunData = new File(workingDirectory + File.separator + "simOutputData_" + r + ".txt");
-				    PrintWriter dataOutput;
-				    try{
-				    	dataOutput = new PrintWriter(singleRunData);
-				    	dataOutput.print(dataStore.compileTableToString());
-				    	dataOutput.close();
-				    } catch (Exception e)  {	
-				    	System.out.println("PercentagePerturbation: exception whilst writing data to filesystem. " + e.getStackTrace());
-				    }
+			    // write the results of the single run to the filesystem.
+			    File singleRunData = new File(workingDirectory + File.separator + "simOutputData_" + r + ".txt");
+			    PrintWriter dataOutput;
+			    try{
+			    	dataOutput = new PrintWriter(singleRunData);
+			    	dataStore.writeTable(dataOutput);
+			    	dataOutput.close();
+			    } catch (Exception e)  {	
+			    	System.out.println("PercentagePerturbation: exception whilst writing data to filesystem. " + e.getStackTrace());
 			    }
-		    } catch (Exception e) {
-		    	System.out.println("PercentagePerturbation: caught an exception whilst running simulation, however will continue : " + e.getStackTrace().toString());
 		    }
+		    return dataStore;
+	    } catch (Exception e) {
+	    	System.out.println("PercentagePerturbation: caught an exception whilst running simulation, however will continue : " + e.getStackTrace().toString());
+	    	return null;
 	    }
+	}
+	
+	/**
+	 * Called once all the runs of a test case have completed. Compiles median data from those runs that succeeded, in run order, and writes it to the filesystem.  
+	 */
+	private static void completeTestCase(String workingDirectory, List<SingleRunDataStore> dataStores)
+	{
+	    MultipleRunDataStore multiple = new MultipleRunDataStore();			// will store average results in this. 
+	    for(SingleRunDataStore dataStore : dataStores)
+	    	if(dataStore != null)
+	    		multiple.logSingleRunResults(dataStore);						// log the results of this single run.
+	    
+	    System.out.println("test case complete - " + workingDirectory);
 	    
 	   /* Write the multiple data file to the filesystem. */
 	   File multipleRunData = new File(workingDirectory + File.separator + "multipleDataOutput.txt");
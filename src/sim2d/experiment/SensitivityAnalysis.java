@@ -5,8 +5,10 @@ import java.io.FilenameFilter;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Random;
 
 import org.w3c.dom.Document;
@@ -50,6 +52,8 @@ public class SensitivityAnalysis
 	private static int startNumber = 0;										// but it can run out of memory for very large numbers of long runs. There's a matlab script that will do the same computation though. 
 	private static boolean startNumberSet = false;
 	private static int timeOut = 30;
+	private static int threads = 1;											// how many simulation runs may execute concurrently. Results do not depend on this. 
+	private static boolean longestJobFirst = false;							// whether test cases expected to take longest are started first, reducing the total time taken by a sweep. 
 	
 	public static void main(String[] args)
 	{
@@ -131,6 +135,16 @@ public class SensitivityAnalysis
 					
 					System.out.println("Real-world time limit for the simulation's execution, before forced termination = " + timeOut);
 				}
+				if(command.equals("-threads"))							// how many simulation runs are executed concurrently, each on its own thread. 
+				{
+					threads = Integer.parseInt(arg);
+					System.out.println("simulation runs will be executed on " + threads + " threads.");
+				}
+				if(command.equals("-longestFirst"))						// start the test cases expected to take longest first. 
+				{
+					longestJobFirst = Boolean.parseBoolean(arg);
+					System.out.println("test cases expected to take longest are started first = " + longestJobFirst);
+				}
 			}
 			
 		}
@@ -211,14 +225,20 @@ public class SensitivityAnalysis
 	    TestCase[] testParameters = prepareParameters(sensParams, pathToStandardParametersFile);
 
 	    /*
-	     * Perform sensitivity analysis on each test case parameter
+	     * Perform sensitivity analysis on each test case parameter. Every (test case, replicate) pair is an independent simulation run, and these are executed
+	     * concurrently on 'threads' threads. The seeds of all runs are drawn up front, in the order in which they were drawn when runs were performed one 
+	     * after another, so results do not depend on the number of threads used. 
 	     */
-	    for(TestCase testCase : testParameters)
+	    final String[] workingDirs = new String[testParameters.length];
+	    final Document[] parameters = new Document[testParameters.length];
+	    final long[][] seeds = new long[testParameters.length][runs];
+	    for(int t = 0; t < testParameters.length; t++)
 	    {
+	    	TestCase testCase = testParameters[t];
 	    	// each test case is written into a unique directory, containing the name of the parameter file and its value, separated by reserved symbols that analysis scripts can query.
 	    	String workingDir = expDir + File.separator + testCase.parameterName + "_-_" + testCase.parameterValue;		 
 	    	
-	    	System.out.println("Starting test case - " + workingDir);
+	    	System.out.println("Preparing test case - " + workingDir);
 	    	
 	    	// create the working directory into which the results of sensitivity analysis are to be written
 	    	if( new File(workingDir).mkdirs() == false )	
@@ -227,8 +247,31 @@ public class SensitivityAnalysis
 	    			throw new RuntimeException("Failed to create the working directory : " + workingDir);
 	    		}
 	    	
-	    	performSensitivityAnalysisOnParameter(testCase.parameters, workingDir);
+	    	/* write current parameters.xml document file to the filesystem */
+	    	File f = new File(workingDir + "/" +  "run_parameters.xml");
+	    	if(f.exists() == false)													// only overwrite the file if it doesn't already exist. 
+	    		FileSystemIO.writeXMLFile(testCase.parameters, workingDir, "run_parameters.xml");
+	    	
+	    	workingDirs[t] = workingDir;
+	    	parameters[t] = testCase.parameters;
+	    	for(int r = 0; r < runs; r++)
+	    		seeds[t][r] = rand.nextLong();
 	    }
+	    
+	    SweepExecutor<Long> sweep = new SweepExecutor<Long>(threads, longestJobFirst);
+	    final double[] endTimes = new double[parameters.length];		// every test case is run for the same length of time.
+	    Arrays.fill(endTimes, time);
+	    sweep.execute(parameters, endTimes, seeds, 
+	    		new SweepExecutor.Replicate<Long>()
+	    		{
+	    			public Long run(int testCase, int replicate, long seed, Document params)
+	    			{	return performSingleRun(params, workingDirs[testCase], replicate + startNumber, seed);	}
+	    		},
+	    		new SweepExecutor.TestCaseCompletion<Long>()
+	    		{
+	    			public void testCaseComplete(int testCase, List<Long> runTimes)
+	    			{	completeTestCase(workingDirs[testCase], runTimes);	}
+	    		});
 	     
 		
 		System.out.println("finished sensitivity analysis.");
@@ -236,72 +279,64 @@ public class SensitivityAnalysis
 	
 	
 	/**
-	 * Performs sensitivity analysis on a single parameter set.
-	 * 
-	 * @param parameters 
-	 * @param workingDirectory
+	 * Performs a single simulation run of a test case, writing its seed and (if requested) its raw data into the test case's working directory. This is 
+	 * called concurrently for different runs. Returns how long, in seconds, the run took to execute. 
 	 */
-	private static void performSensitivityAnalysisOnParameter(Document parameters, String workingDirectory)
+	private static long performSingleRun(Document parameters, String workingDirectory, int runNumber, long runSeed)
 	{
-		/* write current parameters.xml document file to the filesystem */
-		File f = new File(workingDirectory + "/" +  "run_parameters.xml");
-		if(f.exists() == false)													// only overwrite the file if it doesn't already exist. 
-			FileSystemIO.writeXMLFile(parameters, workingDirectory, "run_parameters.xml");
+    	System.out.println("starting simulation run number " + (runNumber + 1) + " in " + workingDirectory);
+    	
+    	// write the seed for this simulation run to the filesystem. 
+	    File singleRunSeed = new File(workingDirectory + File.separator + "simRunSeed_" + runNumber);
+	    try{
+	    	PrintWriter dataOutput = new PrintWriter(singleRunSeed);
+	    	dataOutput.print(runSeed);
+	    	dataOutput.close();
+	    } catch (Exception e)
+	    {	System.out.println("SingleRun: exception whilst writing single run seed to filesystem. " + e.getStackTrace());		    	
+	    }	
+    	
 	    
-		
-	    MedianDataDouble runTimes = new MedianDataDouble();						// will store all the runtimes for this this set of runs, and print out the median runtime at the end. 
+	    SingleRunDataStore dataStore = new SingleRunDataStore();
+	    
+	    TregSimulation simulation = new TregSimulation(runSeed, TregSimulation.Dimension.TwoD, parameters, timeOut*60);
+	    
+	    // run the simulation, and pass in the datastore. 
+	    long startTime = System.currentTimeMillis();
+	    simulation.run(time, dataStore);
 	    
-	    /* perform 'runs' single runs of the simulation and collect results */
-	    for(int r = 0; r < runs; r++)
+	    long runTime = (System.currentTimeMillis() - startTime) / 1000;						// calculate how long this simulation execution took. 
+	    
+	    System.out.println("simulation run number " + (runNumber + 1) + " in " + workingDirectory + ", ran in " + runTime + " seconds. " + prepareMemoryAnalysis());
+	    		    
+	    // only write the results of single runs if asked to. 
+	    if(singleRunRawData)
 	    {
-	    	int runNumber = r + startNumber;
-	    	System.out.print("starting simulation run number " + (runNumber + 1) );
-	    	
-	    	// set up the single run.
-		    long runSeed = rand.nextLong();
-	    	
-	    	// write the seed for this simulation run to the filesystem. 
-		    File singleRunSeed = new File(workingDirectory + File.separator + "simRunSeed_" + runNumber);
+		    // write the results of the single run to the filesystem.
+		    File singleRunData = new File(workingDirectory + File.separator + singleRunFilePrefix + runNumber + ".txt");
+		    PrintWriter dataOutput;
 		    try{
-		    	PrintWriter dataOutput = new PrintWriter(singleRunSeed);
-		    	dataOutput.print(runSeed);
+		    	dataOutput = new PrintWriter(singleRunData);
+		    	dataStore.writeTable(dataOutput);
 		    	dataOutput.close();
 		    } catch (Exception e)
-		    {	System.out.println("SingleRun: exception whilst writing single run seed to filesystem. " + e.getStackTrace());		    	
-		    }	
-	    	
-		    
-		    SingleRunDataStore dataStore = new SingleRunDataStore();
-		    
-		    TregSimulation simulation = new TregSimulation(runSeed, TregSimulation.Dimension.TwoD, parameters, timeOut*60);
-		    
-		    // run the simulation, and pass in the datastore. 
-		    long startTime = System.currentTimeMillis();
-		    simulation.run(time, dataStore);
-		    
-		    long runTime = (System.currentTimeMillis() - startTime) / 1000;						// calculate how long this simulation execution took, and log it. 
-		    runTimes.logValue(runTime);
-		    
-		    System.out.print(", which ran in " + runTime + " seconds. ");
-		    System.out.println(prepareMemoryAnalysis());										// print out java memory usage. 
-		    		    
-		    // only write the results of single runs if asked to. 
-		    if(singleRunRawData)
-		    {
-			    // write the results of the single run to the filesystem.
-			    File singleRunData = new File(workingDirectory + File.separator + singleRunFilePrefix + runNumber + ".txt");
-			    PrintWriter dataOutput;
-			    try{
-			    	dataOutput = new PrintWriter(singleRunData);
-			    	dataOutput.print(dataStore.compileTableToString());
-			    	dataOutput.close();
-			    } catch (Exception e)
-			    {	System.out.println("Sensitivity Analysis: exception whilst writing data to filesystem. " + e.getStackTrace());
-			    }
+		    {	System.out.println("Sensitivity Analysis: exception whilst writing data to filesystem. " + e.getStackTrace());
 		    }
-		}
-
-	    System.out.println("median time for runs = " + runTimes.findMedian());
+	    }
+	    return runTime;
+	}
+	
+	/**
+	 * Called once all the runs of a test case have completed. Reports the median run time and, if requested, compiles median data for the test case. 
+	 */
+	private static void completeTestCase(String workingDirectory, List<Long> runTimes)
+	{
+	    MedianDataDouble medianRunTime = new MedianDataDouble();					// will store all the runtimes for this this set of runs, and print out the median runtime at the end. 
+	    for(Long runTime : runTimes)
+	    	medianRunTime.logValue(runTime);
+	    
+	    System.out.println("test case complete - " + workingDirectory);
+	    System.out.println("median time for runs = " + medianRunTime.findMedian());
 	    
 	    // very large jobs have caused memory related issues when compiling medians, hence median value compilation can be disabled. There is a matlab script that will do the same job without running out of memory.
 	    if(compileMedians)
@@ -3,8 +3,14 @@ package sim2d.experiment;
 import java.io.File;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.w3c.dom.Document;
 
@@ -34,6 +40,7 @@ public class SingleRun
 	private static int startNumber = 0;										// but it can run out of memory for very large numbers of long runs. There's a matlab script that will do the same computation though. 
 	private static boolean startNumberSet = false;	
 	private static int timeOut = 30;										// simulation is terminated after it has executed for this many real-world minutes. 
+	private static int threads = 1;											// how many simulation runs may execute concurrently. Results do not depend on this. 
 	
 	public static void main(String[] args)
 	{
@@ -108,6 +115,13 @@ public class SingleRun
 					
 					System.out.println("Real-world time limit for the simulation's execution, before forced termination = " + timeOut);
 				}
+				if(command.equals("-threads"))							// how many simulation runs are executed concurrently, each on its own thread. 
+				{
+					threads = Integer.parseInt(arg);
+					if(threads < 1)
+						throw new RuntimeException("Single Run: the number of threads must be at least 1, was given " + arg);
+					System.out.println("simulation runs will be executed on " + threads + " threads.");
+				}
 			}			
 		}
 		
@@ -162,18 +176,106 @@ public class SingleRun
 	     * It is not recommended that large numbers of runs are executed using this mechanism, 
 	     * it is more computationally efficient (and gives greater control of seeds) to run 
 	     * each individual simulation execution on a cluster as a separate invocation of ARTIMMUS.   
+	     * 
+	     * Runs are executed on a pool of 'threads' worker threads. Every run's seed is drawn up front, in run order, so that a run receives the same
+	     * seed (and hence produces the same results) regardless of how many threads are used. 
 	     */
+	    final long[] seeds = new long[runs];
 	    for(int r = 0; r < runs; r++)
 	    {
-	    	int runNumber = r + startNumber;
-	    	System.out.print("starting simulation run number " + (r + 1) + " corresponding to run number " + runNumber );
-	    
 	    	// if only performing one run, then use the user supplied seed directly in the simulation run. 
 	    	// if there are multiple runs to be performed, then use the user supplied seed in the Mersenne Twister
 	    	// instance, and pull seeds from that. 
 	    	if (runs != 1)
 	    	{	seed = rand.nextLong();	}
+	    	seeds[r] = seed;
+	    }
+	    
+	    ExecutorService pool = Executors.newFixedThreadPool(threads);
+	    List<Future<SingleRunDataStore>> results = new ArrayList<Future<SingleRunDataStore>>();
+	    for(int r = 0; r < runs; r++)
+	    {
+	    	// DOM documents are not safe to read from several threads at once, so each run is handed its own copy of the parameters. 
+	    	final Document runParams = (Document) params.cloneNode(true);
+	    	results.add(pool.submit(new Replicate(r, r + startNumber, seeds[r], runParams, expDir)));
+	    }
+	    pool.shutdown();
+	    
+	    // collect the results in run order, such that median data is compiled exactly as it would be were the runs performed serially. 
+	    for(int r = 0; r < runs; r++)
+	    {
+	    	SingleRunDataStore dataStore;
+	    	try {
+	    		dataStore = results.get(r).get();
+	    	} catch (Exception e) {
+	    		pool.shutdownNow();
+	    		throw new RuntimeException("Single Run: exception raised whilst executing run number " + (r + startNumber), e);
+	    	}
+	    	results.set(r, null);											// release the run's data as soon as it has been used. 
 	    	
+		    if(compileMedians)
+		    {
+			    // log the results of this single run.
+			    multiple.logSingleRunResults(dataStore);
+		    }
+	    }
+
+	    /* Not recommended that this be done for large numbers of simulation runs, since it requires 
+	     * a lot of memory, and has a tendency to crash if too many runs are attempted. For larger
+	     * scale experimentation, run each simulation individually (perhaps using a cluster) and use
+	     * the supplied data analysis scripts. There is a matlab script that can handle large numbers
+	     * of simulation executions. 
+	     */
+	    if(compileMedians)
+	    {
+		    /* Write the multiple data file to the filesystem. */
+			File multipleRunData = new File(expDir + File.separator	+ "multipleDataOutput.txt");
+			try {
+				PrintWriter dataOutput = new PrintWriter(multipleRunData);
+				dataOutput.print(multiple.compileTableToString());
+				dataOutput.close();
+			} catch (Exception e) {
+				System.out.println("SingleRun: exception whilst writing multiple run data to filesystem. "	+ e.getStackTrace());
+			}	    
+	    
+			/* print the key for the table */
+			File tableKey = new File(expDir + File.separator + "tableKey.txt");
+			try {
+				PrintWriter dataOutput = new PrintWriter(tableKey);
+				dataOutput.print(multiple.getTableKey());
+				dataOutput.close();
+			} catch (Exception e) {
+				System.out.println("SingleRun: exception whilst writing table key to filesystem. " + e.getStackTrace());
+			}
+	    }
+		System.out.println("finished single run.");
+	}
+	
+	/**
+	 * A single simulation run. The simulation is constructed and executed on the worker thread that calls this, and the seed and (if requested) raw data 
+	 * files for the run are written as soon as it completes. Returns the run's data store if median data is to be compiled, and null otherwise. 
+	 */
+	private static class Replicate implements Callable<SingleRunDataStore>
+	{
+		private final int index;										// position of this run within this invocation.
+		private final int runNumber;									// number used to label this run's files. 
+		private final long seed;
+		private final Document params;
+		private final String expDir;
+		
+		public Replicate(int index, int runNumber, long seed, Document params, String expDir)
+		{
+			this.index = index;
+			this.runNumber = runNumber;
+			this.seed = seed;
+			this.params = params;
+			this.expDir = expDir;
+		}
+		
+		public SingleRunDataStore call()
+		{
+			System.out.println("starting simulation run number " + (index + 1) + " corresponding to run number " + runNumber);
+			
 	    	SingleRunDataStore dataStore = new SingleRunDataStore();
 	    	
 	    	// write the seed for this simulation run to the filesystem. 
@@ -186,7 +288,6 @@ public class SingleRun
 		    {	System.out.println("SingleRun: exception whilst writing single run data to filesystem. " + e.getStackTrace());
 		    }	
 	    	
-
 	    	TregSimulation simulation = new TregSimulation( seed, 
 															TregSimulation.Dimension.TwoD,
 															params,
@@ -204,13 +305,8 @@ public class SingleRun
 				{}
 				
 		    }
-		    System.out.println(" which ran in " + ((System.currentTimeMillis() - startTime)/1000) + " seconds.");
+		    System.out.println("simulation run number " + runNumber + " ran in " + ((System.currentTimeMillis() - startTime)/1000) + " seconds.");
 		    
-		    if(compileMedians)
-		    {
-			    // log the results of this single run.
-			    multiple.logSingleRunResults(dataStore);
-		    }
 		    // only write the results of single runs if asked to. 
 		    if(singleRunRawData)
 		    {
@@ -218,7 +314,7 @@ public class SingleRun
 			    File singleRunData = new File(expDir + File.separator + "simOutputData_" + runNumber + ".txt");
 			    try{
 			    	PrintWriter dataOutput = new PrintWriter(singleRunData);
-			    	dataOutput.print(dataStore.compileTableToString());
+			    	dataStore.writeTable(dataOutput);
 			    	dataOutput.flush();		// try to ensure that the while output really is written
 			    							// I've had some weird occurrences of the file getting lost.
 			    							// this might be a problem with the SGE, but I'm not sure. 
@@ -226,38 +322,11 @@ public class SingleRun
 			    } catch (Exception e)
 			    {	System.out.println("SingleRun: exception whilst writing single run data to filesystem. " + e.getStackTrace());
 			    }			    
-			    
 		    }
-	    }
-
-	    /* Not recommended that this be done for large numbers of simulation runs, since it requires 
-	     * a lot of memory, and has a tendency to crash if too many runs are attempted. For larger
-	     * scale experimentation, run each simulation individually (perhaps using a cluster) and use
-	     * the supplied data analysis scripts. There is a matlab script that can handle large numbers
-	     * of simulation executions. 
-	     */
-	    if(compileMedians)
-	    {
-		    /* Write the multiple data file to the filesystem. */
-			File multipleRunData = new File(expDir + File.separator	+ "multipleDataOutput.txt");
-			try {
-				PrintWriter dataOutput = new PrintWriter(multipleRunData);
-				dataOutput.print(multiple.compileTableToString());
-				dataOutput.close();
-			} catch (Exception e) {
-				System.out.println("SingleRun: exception whilst writing multiple run data to filesystem. "	+ e.getStackTrace());
-			}	    
-	    
-			/* print the key for the table */
-			File tableKey = new File(expDir + File.separator + "tableKey.txt");
-			try {
-				PrintWriter dataOutput = new PrintWriter(tableKey);
-				dataOutput.print(multiple.getTableKey());
-				dataOutput.close();
-			} catch (Exception e) {
-				System.out.println("SingleRun: exception whilst writing table key to filesystem. " + e.getStackTrace());
-			}
-	    }
-		System.out.println("finished single run.");
+		    
+		    if(compileMedians)
+		    	return dataStore;
+		    return null;
+		}
 	}
 }
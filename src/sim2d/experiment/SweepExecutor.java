@@ -0,0 +1,214 @@
+package sim2d.experiment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Executes the simulation runs of a parameter sweep (such as a sensitivity analysis) concurrently. A sweep consists of a number of test cases, each of
+ * which is run a number of times (replicates); every (test case, replicate) pair is an independent work item, and these are shared out across a pool
+ * of worker threads.
+ *
+ * Seeds are supplied by the caller for every work item before execution begins, so a run's results do not depend on the number of threads or on the
+ * order in which work items are executed. Once all the replicates of a test case have finished, their results are handed back to the caller (on the
+ * thread that called 'execute') in replicate order, such that anything compiled from them is identical to what a serial sweep would produce.
+ *
+ * Work items are normally started in test case order. Optionally, test cases that are expected to take longest are started first (longest job first),
+ * which stops one long test case from being left running on its own at the end of a sweep.
+ *
+ * @author mark
+ *
+ */
+public class SweepExecutor<R>
+{
+	/**
+	 * A single simulation run of a test case. Called on a worker thread; the value returned is passed to 'TestCaseCompletion' once the test case has finished.
+	 */
+	public interface Replicate<R>
+	{
+		public R run(int testCase, int replicate, long seed, Document parameters) throws Exception;
+	}
+
+	/**
+	 * Called, on the thread that called 'execute', once every replicate of a test case has finished. The results are in replicate order.
+	 */
+	public interface TestCaseCompletion<R>
+	{
+		public void testCaseComplete(int testCase, List<R> results);
+	}
+
+	private final int threads;										// how many simulation runs may execute at once.
+	private final boolean longestJobFirst;							// whether the test cases expected to take longest are started first.
+
+	public SweepExecutor(int threads, boolean longestJobFirst)
+	{
+		if(threads < 1)
+			throw new RuntimeException("SweepExecutor: the number of threads must be at least 1, was given " + threads);
+		this.threads = threads;
+		this.longestJobFirst = longestJobFirst;
+	}
+
+	/**
+	 * Executes every replicate of every test case.
+	 *
+	 * @param parameters	the parameters Document for each test case. Each run is given its own copy, taken when the run starts, because DOM documents may not be
+	 * 						read by several threads at once.
+	 * @param endTimes		endTimes[t] is the simulated time that the runs of test case t are executed until, used to order test cases longest job first.
+	 * @param seeds			seeds[t][r] is the seed for replicate r of test case t.
+	 * @param replicate		performs a single simulation run.
+	 * @param completion	receives the results of each test case as it finishes.
+	 */
+	public void execute(final Document[] parameters, final double[] endTimes, final long[][] seeds, final Replicate<R> replicate, final TestCaseCompletion<R> completion)
+	{
+		final int numTestCases = parameters.length;
+
+		/* decide the order in which test cases are started. */
+		Integer[] order = new Integer[numTestCases];
+		for(int t = 0; t < numTestCases; t++)
+			order[t] = t;
+		if(longestJobFirst)
+		{
+			final double[] cost = new double[numTestCases];
+			for(int t = 0; t < numTestCases; t++)
+				cost[t] = estimateRunCost(parameters[t], endTimes[t]);
+			Arrays.sort(order, new Comparator<Integer>()			// a stable sort, so test cases of equal cost retain their original order.
+					{
+						public int compare(Integer a, Integer b)
+						{	return Double.compare(cost[b], cost[a]);	}
+					});
+		}
+
+		/* results are held here until all of the replicates of their test case have finished. */
+		final List<List<R>> results = new ArrayList<List<R>>();
+		final int[] outstanding = new int[numTestCases];
+		for(int t = 0; t < numTestCases; t++)
+		{
+			final List<R> testCaseResults = new ArrayList<R>();
+			for(int r = 0; r < seeds[t].length; r++)
+				testCaseResults.add(null);
+			results.add(testCaseResults);
+			outstanding[t] = seeds[t].length;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<WorkItem> service = new ExecutorCompletionService<WorkItem>(pool);
+		int submitted = 0;
+		for(int t : order)
+		{
+			if(outstanding[t] == 0)										// a test case without replicates is complete straight away.
+				completion.testCaseComplete(t, results.get(t));
+			for(int r = 0; r < seeds[t].length; r++)
+			{
+				final WorkItem item = new WorkItem(t, r, seeds[t][r], parameters[t], replicate);
+				service.submit(item, item);
+				submitted++;
+			}
+		}
+		pool.shutdown();
+
+		try {
+			for(int i = 0; i < submitted; i++)
+			{
+				Future<WorkItem> done = service.take();
+				WorkItem item = done.get();
+
+				results.get(item.testCase).set(item.replicate, item.result);
+				outstanding[item.testCase]--;
+				if(outstanding[item.testCase] == 0)
+				{
+					completion.testCaseComplete(item.testCase, results.get(item.testCase));
+					results.set(item.testCase, null);					// release the test case's results as soon as they have been used.
+				}
+			}
+		} catch (Exception e) {
+			pool.shutdownNow();
+			throw new RuntimeException("SweepExecutor: exception raised whilst executing a simulation run.", e);
+		}
+	}
+
+	/**
+	 * Provides a relative estimate of how long a simulation run with the given parameters, executed until 'endTime', will take, used to order test cases
+	 * longest job first. Execution time is dominated by the number of timesteps (endTime / timeSlice), and for each timestep, by the grid spaces of all compartments (molecule diffusion and decay)
+	 * and by the number of cells (movement and interaction). The basal cell numbers are used as an indication of the latter. Only the ordering of these
+	 * estimates matters, not their absolute values.
+	 */
+	public static double estimateRunCost(Document parameters, double endTime)
+	{
+		Element root = parameters.getDocumentElement();
+		Element sim = (Element) root.getElementsByTagName("Simulation").item(0);
+
+		final double timeSlice = Double.parseDouble(sim.getElementsByTagName("timeSlice").item(0).getTextContent());
+
+		double work = 0.0;
+		final String[] compartments = {"Circulation2D", "CNS2D", "CLN2D", "SLO2D", "Spleen2D"};
+		for(String c : compartments)
+		{
+			NodeList nl = root.getElementsByTagName(c);
+			if(nl.getLength() == 0)
+				continue;
+			Element cE = (Element) nl.item(0);
+			work += Double.parseDouble(cE.getElementsByTagName("width").item(0).getTextContent())
+					* Double.parseDouble(cE.getElementsByTagName("height").item(0).getTextContent());
+		}
+
+		final String[] populations = {"numCD4Th", "numCD4Treg", "numCD8Treg", "numCNS", "numCNSMacrophage", "numDC", "numDCCNS", "numDCSpleen"};
+		for(String p : populations)
+		{
+			NodeList nl = sim.getElementsByTagName(p);
+			if(nl.getLength() != 0)
+				work += Double.parseDouble(nl.item(0).getTextContent());
+		}
+
+		return work * endTime / timeSlice;
+	}
+
+	/**
+	 * A single (test case, replicate) pair, and, once executed, its result. The test case's parameters are only copied when the run starts, so that
+	 * queued runs do not each hold a copy, and the reference is dropped once the run has finished.
+	 */
+	private class WorkItem implements Runnable
+	{
+		final int testCase;
+		final int replicate;
+		final long seed;
+		Document parameters;										// the test case's parameters, shared by its replicates; not to be modified.
+		final Replicate<R> task;
+		R result;
+
+		WorkItem(int testCase, int replicate, long seed, Document parameters, Replicate<R> task)
+		{
+			this.testCase = testCase;
+			this.replicate = replicate;
+			this.seed = seed;
+			this.parameters = parameters;
+			this.task = task;
+		}
+
+		public void run()
+		{
+			final Document source = parameters;
+			final Document copy;
+			synchronized(source)								// other replicates of this test case may be copying it at the same time.
+			{	copy = (Document) source.cloneNode(true);	}
+			try {
+				result = task.run(testCase, replicate, seed, copy);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			} finally {
+				parameters = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package sim2d.experiment;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import sim2d.TregSimulation;
+import sim2d.dataCollection.SingleRunDataStore;
+import sim2d.filesystem.FileSystemIO;
+
+/**
+ * Checks that stepping cells on several threads (see CellStepPhase) gives the same results as stepping them on one. The simulation is run twice from the same
+ * seed and parameters, once with 'cellStepThreads' set to 1 and once with it set to the number of threads given, and the two output tables are compared line
+ * by line. The process exits with status 1 if they differ, so that the check can be scripted.
+ *
+ * Races between threads only show themselves when threads genuinely run at the same time, so this should be run on a machine with several cores, with at
+ * least as many threads as there are cores. Run with java -ea to also check that cells and their compartments agree on where each cell is.
+ *
+ * Options: -param (parameters file, default parameters.xml), -seed (default 1), -time (hours to simulate, default 200), -threads (default the number of cores).
+ *
+ * @author mark
+ *
+ */
+public class TestCellStepThreads
+{
+	public static void main(String[] args)
+	{
+		String paramFile = "parameters.xml";
+		long seed = 1;
+		double time = 200.0;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for(int i = 0; i < args.length; i = i + 2)
+		{
+			String command = args[i];
+			String arg = args[i+1];
+			if(command.equals("-param"))
+				paramFile = arg;
+			if(command.equals("-seed"))
+				seed = Long.valueOf(arg);
+			if(command.equals("-time"))
+				time = Double.valueOf(arg);
+			if(command.equals("-threads"))
+				threads = Integer.valueOf(arg);
+		}
+		if(threads < 2)
+			threads = 2;
+		if(Runtime.getRuntime().availableProcessors() < 2)
+			System.out.println("TestCellStepThreads: this machine has a single core, threads will only interleave, races may go unnoticed.");
+
+		final String[] one = run(paramFile, seed, time, 1).split("\n");
+		final String[] many = run(paramFile, seed, time, threads).split("\n");
+
+		for(int line = 0; line < Math.max(one.length, many.length); line++)
+		{
+			final String a = (line < one.length) ? one[line] : "<no line>";
+			final String b = (line < many.length) ? many[line] : "<no line>";
+			if(a.equals(b) == false)
+			{
+				System.out.println("TestCellStepThreads: FAILED, output differs between 1 and " + threads + " threads from line " + (line + 1) + ".");
+				System.out.println("1 thread:    " + a);
+				System.out.println(threads + " threads:   " + b);
+				System.exit(1);
+			}
+		}
+		System.out.println("TestCellStepThreads: passed, " + one.length + " lines of output identical on 1 and " + threads + " threads.");
+	}
+
+	/**
+	 * Runs the simulation with cells stepped on the given number of threads, and returns its output table.
+	 */
+	private static String run(String paramFile, long seed, double time, int threads)
+	{
+		final Document params = FileSystemIO.openXMLFile(paramFile);
+		setSimulationParameter(params, "randomStreams", "Counter");					// required for cells to be stepped on several threads.
+		setSimulationParameter(params, "cellStepThreads", Integer.toString(threads));
+
+		final SingleRunDataStore dataStore = new SingleRunDataStore();
+		final TregSimulation simulation = new TregSimulation(seed, TregSimulation.Dimension.TwoD, params, 30 * 60);
+		final long startTime = System.currentTimeMillis();
+		simulation.run(time, dataStore);
+		System.out.println("ran on " + threads + " threads in " + ((System.currentTimeMillis() - startTime)/1000) + " seconds.");
+		return dataStore.compileTableToString();
+	}
+
+	/**
+	 * Sets the value of the named tag under 'Simulation', adding the tag if the parameters file does not have it.
+	 */
+	private static void setSimulationParameter(Document params, String name, String value)
+	{
+		final Element pE = (Element) params.getElementsByTagName("Simulation").item(0);
+		final NodeList nl = pE.getElementsByTagName(name);
+		if(nl.getLength() > 0)
+			nl.item(0).setTextContent(value);
+		else
+		{
+			final Element e = params.createElement(name);
+			e.setTextContent(value);
+			pE.appendChild(e);
+		}
+	}
+}
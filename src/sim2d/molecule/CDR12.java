@@ -8,6 +8,9 @@ package sim2d.molecule;
 public class CDR12 extends Molecule 
 {
 	public static final CDR12 instance = new CDR12();
+	
+	private CDR12()
+	{	super(Peptide.CDR12);	}
 
 	public String getName()
 	{
@@ -9,6 +9,9 @@ public class Fr3 extends Molecule
 {
 	public static final Fr3 instance = new Fr3();
 	
+	private Fr3()
+	{	super(Peptide.Fr3);	}
+	
 	public String getName()
 	{
 		return "Fr3";
@@ -9,6 +9,9 @@ public class INFg extends Molecule
 {
 	public static final INFg instance = new INFg();
 	
+	private INFg()
+	{	super(Soluble.INFg);	}
+	
 	public String getName()
 	{
 		return "INF-g";
@@ -9,6 +9,9 @@ public class MBP extends Molecule
 {
 	public static final MBP instance = new MBP();
 	
+	private MBP()
+	{	super(Peptide.MBP);	}
+	
 	public String getName()
 	{
 		return "MBP";
@@ -3,6 +3,8 @@ package sim2d.molecule;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import sim2d.TregSimulation;
+
 
 /**
  * Abstract class from which molecules in the simulation inherit. It contains certain parameters common to all molecules, such as molecular half life, and
@@ -18,8 +20,59 @@ import org.w3c.dom.Element;
  */
 public abstract class Molecule 
 {
-	public static double molecularHalflife;
-	public static double decayThreshold;
+	/*
+	 * Properties common to all molecules, held per simulation run. 
+	 */
+	private static class Parameters
+	{
+		double molecularHalflife;
+		double decayThreshold;
+	}
+	private static final int parameterSlot = TregSimulation.newParameterSlot();
+	private static Parameters params(TregSimulation sim)
+	{	return (Parameters) sim.getClassParameters(parameterSlot);	}
+	
+	public static double retrieveMolecularHalflife(TregSimulation sim)
+	{	return params(sim).molecularHalflife;	}
+	public static double retrieveDecayThreshold(TregSimulation sim)
+	{	return params(sim).decayThreshold;		}
+	
+	/**
+	 * The molecules that are soluble, and hence diffuse through the compartments. Each compartment holds a grid of concentrations for every soluble molecule, 
+	 * indexed by its position in this enumeration. A new soluble molecule is added by adding it here, and passing its constant to the Molecule constructor. 
+	 */
+	public static enum Soluble { INFg, SDA, Type1, Type2 }
+	
+	/**
+	 * The peptides, which are only ever found within cells, and are passed to the APCs that phagocytose those cells. Sets of peptides are held as bitmasks 
+	 * (see MoleculeSet), each peptide's bit given by its position in this enumeration. 
+	 */
+	public static enum Peptide { MBP, Fr3, CDR12 }
+	
+	/**
+	 * Index of this molecule's grid within the compartments, or -1 if this molecule is not soluble (eg, peptides, which are only ever found within cells).
+	 */
+	public final int solubleIndex;
+	
+	/**
+	 * This molecule's bit within a MoleculeSet, or 0 if this molecule is not a peptide. 
+	 */
+	public final int peptideBit;
+	
+	protected Molecule()
+	{	this(null, null);		}
+	
+	protected Molecule(Soluble soluble)
+	{	this(soluble, null);	}
+	
+	protected Molecule(Peptide peptide)
+	{	this(null, peptide);	}
+	
+	private Molecule(Soluble soluble, Peptide peptide)
+	{
+		solubleIndex = (soluble == null) ? -1 : soluble.ordinal();
+		peptideBit = (peptide == null) ? 0 : 1 << peptide.ordinal();
+	}
 	
 	/**
 	 * Used for testing and IO.
@@ -31,11 +84,14 @@ public abstract class Molecule
      * Given the parameters.xml file (represented as a 'Document') this method loads the relevant default values for this class.
      * @param params
      */
-	public static void loadParameters(Document params)
+	public static void loadParameters(TregSimulation sim, Document params)
 	{
+		final Parameters p = new Parameters();
 		Element pE = (Element) params.getElementsByTagName("Molecule").item(0);
 		
-		molecularHalflife = Double.parseDouble(pE.getElementsByTagName("molecularHalflife").item(0).getTextContent());
-		decayThreshold  = Double.parseDouble(pE.getElementsByTagName("decayThreshold").item(0).getTextContent());
+		p.molecularHalflife = Double.parseDouble(pE.getElementsByTagName("molecularHalflife").item(0).getTextContent());
+		p.decayThreshold  = Double.parseDouble(pE.getElementsByTagName("decayThreshold").item(0).getTextContent());
+		
+		sim.setClassParameters(parameterSlot, p);
 	}
 }
@@ -0,0 +1,44 @@
+package sim2d.molecule;
+
+/**
+ * An immutable set of peptides, as yielded by a cell when it is phagocytosed and then processed by the APC that phagocytosed it. The set is held as a bitmask
+ * over 'Molecule.Peptide', and membership is a bit test. Every possible set is created once, up front, so sets are handed out without allocation; cells
+ * hold the sets they yield as constants.
+ *
+ * @author mark
+ *
+ */
+public final class MoleculeSet
+{
+	private static final MoleculeSet[] sets = new MoleculeSet[1 << Molecule.Peptide.values().length];	// indexed by mask.
+	static
+	{
+		for(int mask = 0; mask < sets.length; mask++)
+			sets[mask] = new MoleculeSet(mask);
+	}
+
+	public static final MoleculeSet EMPTY = sets[0];
+
+	private final int mask;
+
+	private MoleculeSet(int mask)
+	{	this.mask = mask;	}
+
+	/**
+	 * Returns the set holding the given peptides. Only peptides may be held.
+	 */
+	public static MoleculeSet of(Molecule... molecules)
+	{
+		int mask = 0;
+		for(Molecule m : molecules)
+		{
+			if(m.peptideBit == 0)
+				throw new RuntimeException("MoleculeSet: " + m.getName() + " is not a peptide, and cannot be held.");
+			mask |= m.peptideBit;
+		}
+		return sets[mask];
+	}
+
+	public boolean contains(Molecule m)
+	{	return (mask & m.peptideBit) != 0;	}
+}
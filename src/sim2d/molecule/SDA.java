@@ -10,6 +10,9 @@ public class SDA extends Molecule {
 
 	public static final SDA instance = new SDA();
 	
+	private SDA()
+	{	super(Soluble.SDA);	}
+	
 	public String getName()
 	{
 		return "TNF-a";
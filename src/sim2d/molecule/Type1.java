@@ -9,6 +9,9 @@ public class Type1 extends Molecule {
 
 	public static final Type1 instance = new Type1();
 	
+	private Type1()
+	{	super(Soluble.Type1);	}
+	
 	public String getName()
 	{
 		return "Type1";
@@ -9,6 +9,9 @@ public class Type2 extends Molecule {
 
 	public static final Type2 instance = new Type2();
 	
+	private Type2()
+	{	super(Soluble.Type2);	}
+	
 	public String getName()
 	{
 		return "Type2";